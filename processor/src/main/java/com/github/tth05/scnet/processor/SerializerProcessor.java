@@ -0,0 +1,264 @@
+package com.github.tth05.scnet.processor;
+
+import com.github.tth05.scnet.message.annotation.SerializedField;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a serializer for every class which declares fields annotated with {@link SerializedField}. The serializer
+ * reads and writes the fields in their declaration order using straight-line calls to the message streams, and
+ * pre-sizes the output buffer with the length of all fixed size fields plus the lengths of the variable ones. No
+ * reflection is used at runtime.
+ */
+public class SerializerProcessor extends AbstractProcessor {
+
+    private static final String INPUT_STREAM = "com.github.tth05.scnet.util.ByteBufferInputStream";
+    private static final String OUTPUT_STREAM = "com.github.tth05.scnet.util.ByteBufferOutputStream";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(SerializedField.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        //Group the fields by their class, keeping the declaration order
+        Map<TypeElement, List<VariableElement>> fieldsByClass = new LinkedHashMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(SerializedField.class)) {
+            if (element.getKind() != ElementKind.FIELD)
+                continue;
+
+            fieldsByClass.computeIfAbsent((TypeElement) element.getEnclosingElement(), k -> new ArrayList<>());
+        }
+
+        for (TypeElement type : fieldsByClass.keySet()) {
+            List<VariableElement> fields = fieldsByClass.get(type);
+            for (Element element : type.getEnclosedElements()) {
+                if (element.getKind() == ElementKind.FIELD && element.getAnnotation(SerializedField.class) != null)
+                    fields.add((VariableElement) element);
+            }
+
+            if (isValid(type, fields))
+                generateSerializer(type, fields);
+        }
+
+        return true;
+    }
+
+    /**
+     * Reports an error for every field which the generated serializer can't access or doesn't support.
+     *
+     * @return {@code true} if a serializer can be generated; {@code false} otherwise
+     */
+    private boolean isValid(TypeElement type, List<VariableElement> fields) {
+        boolean valid = true;
+        if (type.getModifiers().contains(Modifier.PRIVATE)) {
+            error(type, "Classes with serialized fields must not be private");
+            valid = false;
+        }
+
+        for (VariableElement field : fields) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+                error(field, "Serialized fields must not be private, static or final");
+                valid = false;
+            } else if (getFixedSize(field.asType()) == -1 && !isString(field.asType()) && !isByteArray(field.asType())) {
+                error(field, "Unsupported type " + field.asType() + ", only primitives, String and byte[] can be serialized");
+                valid = false;
+            }
+        }
+
+        return valid;
+    }
+
+    private void generateSerializer(TypeElement type, List<VariableElement> fields) {
+        PackageElement packageElement = this.processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = packageElement.getQualifiedName().toString();
+        String messageName = type.getQualifiedName().toString();
+        String serializerName = getSerializerName(type);
+
+        int fixedSize = 0;
+        StringBuilder variableSize = new StringBuilder();
+        StringBuilder read = new StringBuilder();
+        StringBuilder write = new StringBuilder();
+        for (VariableElement field : fields) {
+            TypeMirror fieldType = field.asType();
+            String name = "message." + field.getSimpleName();
+
+            if (isString(fieldType)) {
+                //The length in chars is a lower bound for the UTF-8 length
+                fixedSize += Integer.BYTES;
+                variableSize.append(" + ").append(name).append(".length()");
+                read.append("        ").append(name).append(" = messageStream.readString();\n");
+                write.append("        messageStream.writeString(").append(name).append(");\n");
+                continue;
+            }
+            if (isByteArray(fieldType)) {
+                fixedSize += Integer.BYTES;
+                variableSize.append(" + ").append(name).append(".length");
+                read.append("        ").append(name).append(" = messageStream.readByteArray(messageStream.readInt());\n");
+                write.append("        messageStream.writeInt(").append(name).append(".length);\n");
+                write.append("        messageStream.writeByteArray(").append(name).append(");\n");
+                continue;
+            }
+
+            fixedSize += getFixedSize(fieldType);
+            read.append("        ").append(name).append(" = ").append(getReadExpression(fieldType.getKind())).append(";\n");
+            write.append("        ").append(getWriteStatement(fieldType.getKind(), name)).append(";\n");
+        }
+
+        StringBuilder source = new StringBuilder();
+        if (!packageElement.isUnnamed())
+            source.append("package ").append(packageName).append(";\n\n");
+        source.append("/**\n")
+                .append(" * Reads and writes the serialized fields of {@link ").append(messageName).append("}. Generated by the SCNet\n")
+                .append(" * annotation processor, do not edit.\n")
+                .append(" */\n")
+                .append("public final class ").append(serializerName).append(" {\n\n")
+                .append("    /**\n")
+                .append("     * The amount of bytes which are written for every message, not including the content of strings and arrays\n")
+                .append("     */\n")
+                .append("    public static final int FIXED_SIZE = ").append(fixedSize).append(";\n\n")
+                .append("    private ").append(serializerName).append("() {\n")
+                .append("    }\n\n")
+                .append("    public static void read(").append(messageName).append(" message, ").append(INPUT_STREAM).append(" messageStream) {\n")
+                .append(read)
+                .append("    }\n\n")
+                .append("    public static void write(").append(messageName).append(" message, ").append(OUTPUT_STREAM).append(" messageStream) {\n")
+                .append("        messageStream.ensureCapacity(FIXED_SIZE").append(variableSize).append(");\n")
+                .append(write)
+                .append("    }\n")
+                .append("}\n");
+
+        String qualifiedName = packageElement.isUnnamed() ? serializerName : packageName + "." + serializerName;
+        try {
+            JavaFileObject file = this.processingEnv.getFiler().createSourceFile(qualifiedName, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source.toString());
+            }
+        } catch (IOException e) {
+            error(type, "Unable to generate serializer: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the name of the serializer, which for nested classes includes the names of the enclosing classes, for
+     * example {@code Outer_InnerSerializer}
+     */
+    private static String getSerializerName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName()).append("Serializer");
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing.getKind().isClass() || enclosing.getKind().isInterface()) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+            enclosing = enclosing.getEnclosingElement();
+        }
+
+        return name.toString();
+    }
+
+    /**
+     * @return the amount of bytes of the given primitive type, or {@code -1} if it's not a primitive
+     */
+    private static int getFixedSize(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+            case BYTE:
+                return Byte.BYTES;
+            case SHORT:
+            case CHAR:
+                return Short.BYTES;
+            case INT:
+            case FLOAT:
+                return Integer.BYTES;
+            case LONG:
+            case DOUBLE:
+                return Long.BYTES;
+            default:
+                return -1;
+        }
+    }
+
+    private static String getReadExpression(TypeKind kind) {
+        switch (kind) {
+            case BOOLEAN:
+                return "messageStream.readBoolean()";
+            case BYTE:
+                return "messageStream.readByte()";
+            case SHORT:
+                return "messageStream.readShort()";
+            case CHAR:
+                return "(char) messageStream.readShort()";
+            case INT:
+                return "messageStream.readInt()";
+            case FLOAT:
+                return "Float.intBitsToFloat(messageStream.readInt())";
+            case LONG:
+                return "messageStream.readLong()";
+            case DOUBLE:
+                return "Double.longBitsToDouble(messageStream.readLong())";
+            default:
+                throw new IllegalArgumentException(kind.toString());
+        }
+    }
+
+    private static String getWriteStatement(TypeKind kind, String name) {
+        switch (kind) {
+            case BOOLEAN:
+                return "messageStream.writeBoolean(" + name + ")";
+            case BYTE:
+                return "messageStream.writeByte(" + name + ")";
+            case SHORT:
+                return "messageStream.writeShort(" + name + ")";
+            case CHAR:
+                return "messageStream.writeShort((short) " + name + ")";
+            case INT:
+                return "messageStream.writeInt(" + name + ")";
+            case FLOAT:
+                return "messageStream.writeInt(Float.floatToRawIntBits(" + name + "))";
+            case LONG:
+                return "messageStream.writeLong(" + name + ")";
+            case DOUBLE:
+                return "messageStream.writeLong(Double.doubleToRawLongBits(" + name + "))";
+            default:
+                throw new IllegalArgumentException(kind.toString());
+        }
+    }
+
+    private static boolean isString(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && type.toString().equals(String.class.getName());
+    }
+
+    private static boolean isByteArray(TypeMirror type) {
+        return type.getKind() == TypeKind.ARRAY && ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE;
+    }
+
+    private void error(Element element, String message) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
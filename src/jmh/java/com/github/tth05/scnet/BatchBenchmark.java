@@ -0,0 +1,103 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.Batch;
+import com.github.tth05.scnet.message.impl.DefaultMessageBus;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time per record when every record is sent as its own message, compared to sending all of them in one
+ * {@link Batch}. Both processors run on the benchmark thread and are connected by a pipe, so the result contains the
+ * whole send and receive path without any thread hand-offs. Batches are read by a batch listener using a cursor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchBenchmark {
+
+    private static final int RECORDS = 10000;
+
+    private Pipe pipe;
+    private DefaultMessageProcessor sender;
+    private DefaultMessageProcessor receiver;
+    /**
+     * Only listens for records, otherwise every record of a batch would be created and posted on its own as well
+     */
+    private DefaultMessageBus recordBus;
+    private DefaultMessageBus batchBus;
+    private List<Position> positions;
+    private int received;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.pipe = Pipe.open();
+        this.pipe.sink().configureBlocking(false);
+        this.pipe.source().configureBlocking(false);
+
+        this.sender = new DefaultMessageProcessor();
+        this.receiver = new DefaultMessageProcessor();
+        for (DefaultMessageProcessor processor : new DefaultMessageProcessor[]{this.sender, this.receiver}) {
+            processor.registerRecord((short) 1, Position.class);
+            processor.registerBatch((short) 2, Position.class);
+        }
+
+        this.recordBus = new DefaultMessageBus();
+        this.recordBus.listenAlways(Position.class, (p) -> this.received++);
+        this.batchBus = new DefaultMessageBus();
+        this.batchBus.listenBatches(Position.class, (b) -> {
+            int x = b.getComponentIndex("x");
+            Batch<Position>.Cursor cursor = b.cursor();
+            double sum = 0;
+            while (cursor.next())
+                sum += cursor.getFloat(x);
+            if (sum >= 0)
+                this.received += b.size();
+        });
+
+        this.positions = new ArrayList<>();
+        for (int i = 0; i < RECORDS; i++)
+            this.positions.add(new Position(i, i * 0.5f, i * 0.25f));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.pipe.sink().close();
+        this.pipe.source().close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public int sendRecords() {
+        for (Position position : this.positions)
+            this.sender.enqueueMessage(position);
+        return transfer(this.recordBus);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public int sendBatch() {
+        this.sender.enqueueMessage(Batch.of(Position.class, this.positions));
+        return transfer(this.batchBus);
+    }
+
+    private int transfer(DefaultMessageBus messageBus) {
+        int expected = this.received + RECORDS;
+        while (this.received < expected) {
+            this.sender.write(this.pipe.sink());
+            this.receiver.read(this.pipe.source(), messageBus);
+        }
+        return expected;
+    }
+
+    public record Position(int entity, float x, float y) {
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.tth05.scnet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the two copy strategies of the bulk array methods of the message streams at the lengths around their
+ * threshold: absolute-index puts and gets of every element, and a single copy through a typed buffer view. Writes use
+ * a heap buffer like {@link com.github.tth05.scnet.util.ByteBufferOutputStream}, reads use a direct buffer like the
+ * read buffer of the message processor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkCopyThresholdBenchmark {
+
+    @Param({"32", "64", "128", "256", "512"})
+    public int length;
+
+    private int[] ints;
+    private double[] doubles;
+
+    private ByteBuffer heapBuffer;
+    private ByteBuffer directBuffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.ints = new int[this.length];
+        this.doubles = new double[this.length];
+        for (int i = 0; i < this.length; i++) {
+            this.ints[i] = i * 31;
+            this.doubles[i] = i * 0.5;
+        }
+
+        this.heapBuffer = ByteBuffer.allocate(this.length * Double.BYTES);
+        this.directBuffer = ByteBuffer.allocateDirect(this.length * Double.BYTES);
+    }
+
+    @Benchmark
+    public ByteBuffer writeIntIndexed() {
+        ByteBuffer buffer = this.heapBuffer;
+        for (int i = 0; i < this.length; i++)
+            buffer.putInt(i * Integer.BYTES, this.ints[i]);
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer writeIntView() {
+        ByteBuffer buffer = this.heapBuffer;
+        buffer.asIntBuffer().put(this.ints, 0, this.length);
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer writeDoubleIndexed() {
+        ByteBuffer buffer = this.heapBuffer;
+        for (int i = 0; i < this.length; i++)
+            buffer.putDouble(i * Double.BYTES, this.doubles[i]);
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer writeDoubleView() {
+        ByteBuffer buffer = this.heapBuffer;
+        buffer.asDoubleBuffer().put(this.doubles, 0, this.length);
+        return buffer;
+    }
+
+    @Benchmark
+    public int[] readIntIndexed() {
+        ByteBuffer buffer = this.directBuffer;
+        for (int i = 0; i < this.length; i++)
+            this.ints[i] = buffer.getInt(i * Integer.BYTES);
+        return this.ints;
+    }
+
+    @Benchmark
+    public int[] readIntView() {
+        this.directBuffer.asIntBuffer().get(this.ints, 0, this.length);
+        return this.ints;
+    }
+
+    @Benchmark
+    public double[] readDoubleIndexed() {
+        ByteBuffer buffer = this.directBuffer;
+        for (int i = 0; i < this.length; i++)
+            this.doubles[i] = buffer.getDouble(i * Double.BYTES);
+        return this.doubles;
+    }
+
+    @Benchmark
+    public double[] readDoubleView() {
+        this.directBuffer.asDoubleBuffer().get(this.doubles, 0, this.length);
+        return this.doubles;
+    }
+}
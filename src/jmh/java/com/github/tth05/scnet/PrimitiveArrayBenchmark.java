@@ -0,0 +1,105 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the bulk array methods of the message streams with writing and reading every element on its own. Reads
+ * use a direct buffer, like the read buffer of the message processor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrimitiveArrayBenchmark {
+
+    @Param({"16", "64", "1024"})
+    public int length;
+
+    private int[] ints;
+    private double[] doubles;
+
+    private ByteBufferOutputStream outputStream;
+    private ByteBuffer encoded;
+    private ByteBufferInputStream inputStream;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.ints = new int[this.length];
+        this.doubles = new double[this.length];
+        for (int i = 0; i < this.length; i++) {
+            this.ints[i] = i * 31;
+            this.doubles[i] = i * 0.5;
+        }
+
+        this.outputStream = new ByteBufferOutputStream(this.length * Double.BYTES);
+        this.encoded = ByteBuffer.allocateDirect(this.length * Double.BYTES);
+        this.inputStream = new ByteBufferInputStream(this.encoded);
+    }
+
+    @Benchmark
+    public ByteBufferOutputStream writeIntArrayBulk() {
+        this.outputStream.getBuffer().clear();
+        this.outputStream.writeIntArray(this.ints);
+        return this.outputStream;
+    }
+
+    @Benchmark
+    public ByteBufferOutputStream writeIntArrayLoop() {
+        this.outputStream.getBuffer().clear();
+        for (int i : this.ints)
+            this.outputStream.writeInt(i);
+        return this.outputStream;
+    }
+
+    @Benchmark
+    public ByteBufferOutputStream writeDoubleArrayBulk() {
+        this.outputStream.getBuffer().clear();
+        this.outputStream.writeDoubleArray(this.doubles);
+        return this.outputStream;
+    }
+
+    @Benchmark
+    public ByteBufferOutputStream writeDoubleArrayLoop() {
+        this.outputStream.getBuffer().clear();
+        for (double d : this.doubles)
+            this.outputStream.writeLong(Double.doubleToRawLongBits(d));
+        return this.outputStream;
+    }
+
+    @Benchmark
+    public int[] readIntArrayBulk() {
+        this.encoded.clear();
+        this.inputStream.readIntArray(this.ints, 0, this.length);
+        return this.ints;
+    }
+
+    @Benchmark
+    public int[] readIntArrayLoop() {
+        this.encoded.clear();
+        for (int i = 0; i < this.length; i++)
+            this.ints[i] = this.inputStream.readInt();
+        return this.ints;
+    }
+
+    @Benchmark
+    public double[] readDoubleArrayBulk() {
+        this.encoded.clear();
+        this.inputStream.readDoubleArray(this.doubles, 0, this.length);
+        return this.doubles;
+    }
+
+    @Benchmark
+    public double[] readDoubleArrayLoop() {
+        this.encoded.clear();
+        for (int i = 0; i < this.length; i++)
+            this.doubles[i] = Double.longBitsToDouble(this.inputStream.readLong());
+        return this.doubles;
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.AbstractMessage;
+import com.github.tth05.scnet.message.MessagePriority;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the round trip latency of a small message while a background thread keeps the outgoing queue of the client
+ * filled with low priority bulk messages. Look at the high percentiles to compare the tail latency of each
+ * {@link MessagePriority}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PriorityLatencyBenchmark {
+
+    /**
+     * The amount of bulk messages which are kept in the queue
+     */
+    private static final int BACKLOG = 32768;
+
+    @Param({"HIGH", "NORMAL", "LOW"})
+    public MessagePriority priority;
+
+    private Server server;
+    private Client client;
+    private Thread fillerThread;
+    private volatile boolean running;
+    private volatile int received;
+    private final AtomicLong bulkReceived = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        this.server = new Server();
+        this.client = new Client();
+        this.server.getMessageProcessor().registerMessage((short) 1, WaitStrategyBenchmark.PingMessage.class);
+        this.client.getMessageProcessor().registerMessage((short) 1, WaitStrategyBenchmark.PingMessage.class);
+        this.server.getMessageProcessor().registerMessage((short) 2, BulkMessage.class);
+        this.client.getMessageProcessor().registerMessage((short) 2, BulkMessage.class);
+        ((DefaultMessageProcessor) this.client.getMessageProcessor()).setMessagePriority(BulkMessage.class, MessagePriority.LOW);
+
+        this.server.getMessageBus().listenAlways(WaitStrategyBenchmark.PingMessage.class, (m) -> this.server.getMessageProcessor().enqueueMessage(m));
+        this.server.getMessageBus().listenAlways(BulkMessage.class, (m) -> this.bulkReceived.incrementAndGet());
+        this.client.getMessageBus().listenAlways(WaitStrategyBenchmark.PingMessage.class, (m) -> this.received++);
+
+        this.server.bind(new InetSocketAddress(6970));
+        if (!this.client.connect(new InetSocketAddress(6970)))
+            throw new IllegalStateException("Unable to connect");
+        while (!this.server.isClientConnected())
+            Thread.sleep(10);
+
+        this.running = true;
+        this.fillerThread = new Thread(() -> {
+            BulkMessage message = new BulkMessage();
+            long sent = 0;
+            while (this.running) {
+                if (sent - this.bulkReceived.get() < BACKLOG) {
+                    this.client.getMessageProcessor().enqueueMessage(message);
+                    sent++;
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+        }, "Bulk filler");
+        this.fillerThread.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        this.running = false;
+        this.fillerThread.join();
+        this.client.close();
+        this.server.close();
+    }
+
+    @Benchmark
+    public int roundTrip() {
+        int expected = this.received + 1;
+        this.client.getMessageProcessor().enqueueMessage(new WaitStrategyBenchmark.PingMessage(), this.priority);
+        while (this.received < expected)
+            Thread.onSpinWait();
+        return expected;
+    }
+
+    public static final class BulkMessage extends AbstractMessage {
+
+        private byte[] data = new byte[1024];
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            this.data = messageStream.readByteArray(messageStream.readInt());
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeInt(this.data.length);
+            messageStream.writeByteArray(this.data);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.AbstractMessage;
+import com.github.tth05.scnet.message.impl.RecordCodec;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing and reading a record using its {@link RecordCodec} with an equivalent hand-written
+ * {@link AbstractMessage}. Both write the same bytes into a reused buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordCodecBenchmark {
+
+    private static final RecordCodec<Entity> CODEC = RecordCodec.of(Entity.class);
+
+    private final Entity entity = new Entity(42, Kind.PLAYER, new Vector(1.5, -2.5, 3.5), 0.75f, "Player 42", true);
+    private final EntityMessage message = new EntityMessage(this.entity);
+
+    private ByteBufferOutputStream outputStream;
+    private ByteBuffer encoded;
+    private ByteBufferInputStream inputStream;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.outputStream = new ByteBufferOutputStream(256);
+        CODEC.write(this.entity, this.outputStream);
+        this.encoded = this.outputStream.getBuffer().flip();
+        this.inputStream = new ByteBufferInputStream(this.encoded);
+    }
+
+    @Benchmark
+    public ByteBufferOutputStream writeRecord() {
+        this.outputStream.getBuffer().clear();
+        CODEC.write(this.entity, this.outputStream);
+        return this.outputStream;
+    }
+
+    @Benchmark
+    public ByteBufferOutputStream writeHandWritten() {
+        this.outputStream.getBuffer().clear();
+        this.message.write(this.outputStream);
+        return this.outputStream;
+    }
+
+    @Benchmark
+    public Entity readRecord() {
+        this.encoded.rewind();
+        return CODEC.read(this.inputStream);
+    }
+
+    @Benchmark
+    public EntityMessage readHandWritten() {
+        this.encoded.rewind();
+        EntityMessage message = new EntityMessage();
+        message.read(this.inputStream);
+        return message;
+    }
+
+    public enum Kind {
+        PLAYER, MOB
+    }
+
+    public record Vector(double x, double y, double z) {
+    }
+
+    public record Entity(int id, Kind kind, Vector position, float health, String name, boolean alive) {
+    }
+
+    public static class EntityMessage extends AbstractMessage {
+
+        private Entity entity;
+
+        public EntityMessage() {
+        }
+
+        public EntityMessage(Entity entity) {
+            this.entity = entity;
+        }
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            this.entity = new Entity(
+                    messageStream.readInt(),
+                    Kind.values()[messageStream.readInt()],
+                    new Vector(
+                            Double.longBitsToDouble(messageStream.readLong()),
+                            Double.longBitsToDouble(messageStream.readLong()),
+                            Double.longBitsToDouble(messageStream.readLong())
+                    ),
+                    Float.intBitsToFloat(messageStream.readInt()),
+                    messageStream.readString(),
+                    messageStream.readBoolean()
+            );
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeInt(this.entity.id());
+            messageStream.writeInt(this.entity.kind().ordinal());
+            messageStream.writeLong(Double.doubleToRawLongBits(this.entity.position().x()));
+            messageStream.writeLong(Double.doubleToRawLongBits(this.entity.position().y()));
+            messageStream.writeLong(Double.doubleToRawLongBits(this.entity.position().z()));
+            messageStream.writeInt(Float.floatToRawIntBits(this.entity.health()));
+            messageStream.writeString(this.entity.name());
+            messageStream.writeBoolean(this.entity.alive());
+        }
+    }
+}
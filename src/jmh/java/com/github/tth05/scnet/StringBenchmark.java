@@ -0,0 +1,80 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the String methods of the message streams with encoding to and decoding from an intermediate
+ * {@code byte[]}, which is what they did before. Reads use a direct buffer, like the read buffer of the message
+ * processor. Run with {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StringBenchmark {
+
+    @Param({"ascii", "unicode"})
+    public String content;
+
+    private String string;
+    private StringBuilder builder;
+
+    private ByteBufferOutputStream outputStream;
+    private ByteBuffer encoded;
+    private ByteBufferInputStream inputStream;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.string = this.content.equals("ascii") ? "minecraft:zombie_villager" : "Gr\u00fc\u00dfe aus K\u00f6ln \u20ac";
+        this.builder = new StringBuilder();
+
+        this.outputStream = new ByteBufferOutputStream(256);
+        this.outputStream.writeString(this.string);
+        this.encoded = ByteBuffer.allocateDirect(256);
+        this.encoded.put(this.outputStream.getBuffer().flip()).flip();
+        this.inputStream = new ByteBufferInputStream(this.encoded);
+    }
+
+    @Benchmark
+    public ByteBufferOutputStream writeString() {
+        this.outputStream.getBuffer().clear();
+        this.outputStream.writeString(this.string);
+        return this.outputStream;
+    }
+
+    @Benchmark
+    public ByteBufferOutputStream writeStringViaArray() {
+        this.outputStream.getBuffer().clear();
+        byte[] bytes = this.string.getBytes(StandardCharsets.UTF_8);
+        this.outputStream.writeInt(bytes.length);
+        this.outputStream.writeByteArray(bytes);
+        return this.outputStream;
+    }
+
+    @Benchmark
+    public String readString() {
+        this.encoded.rewind();
+        return this.inputStream.readString();
+    }
+
+    @Benchmark
+    public String readStringViaArray() {
+        this.encoded.rewind();
+        return new String(this.inputStream.readByteArray(this.inputStream.readInt()), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public StringBuilder readStringIntoBuilder() {
+        this.encoded.rewind();
+        this.builder.setLength(0);
+        return this.inputStream.readString(this.builder);
+    }
+}
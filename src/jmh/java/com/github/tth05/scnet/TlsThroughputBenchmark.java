@@ -0,0 +1,119 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.AbstractMessage;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many messages per second are transferred over loopback with and without TLS. Each invocation sends a
+ * batch of messages and waits until the server received all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TlsThroughputBenchmark {
+
+    private static final int BATCH = 256;
+
+    @Param({"false", "true"})
+    public boolean tls;
+    @Param({"64", "16384"})
+    public int size;
+
+    private Server server;
+    private Client client;
+    private DataMessage message;
+    private volatile int received;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.server = new Server();
+        this.client = new Client();
+        if (this.tls) {
+            SSLContext context = createContext();
+            this.server.setTlsOptions(new TlsOptions(context));
+            this.client.setTlsOptions(new TlsOptions(context));
+        }
+
+        this.server.getMessageProcessor().registerMessage((short) 1, DataMessage.class);
+        this.client.getMessageProcessor().registerMessage((short) 1, DataMessage.class);
+        this.server.getMessageBus().listenAlways(DataMessage.class, (m) -> this.received++);
+        this.message = new DataMessage(this.size);
+
+        this.server.bind(new InetSocketAddress(6970));
+        if (!this.client.connect(new InetSocketAddress("localhost", 6970)))
+            throw new IllegalStateException("Unable to connect");
+        while (!this.server.isClientConnected() || (this.tls && this.client.getTlsSession() == null))
+            Thread.sleep(10);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.client.close();
+        this.server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int sendBatch() {
+        int expected = this.received + BATCH;
+        for (int i = 0; i < BATCH; i++)
+            this.client.getMessageProcessor().enqueueMessage(this.message);
+        while (this.received < expected)
+            Thread.onSpinWait();
+        return expected;
+    }
+
+    private static SSLContext createContext() throws Exception {
+        char[] password = "changeit".toCharArray();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = TlsThroughputBenchmark.class.getResourceAsStream("/tls/keystore.p12")) {
+            keyStore.load(in, password);
+        }
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, password);
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+        return context;
+    }
+
+    public static final class DataMessage extends AbstractMessage {
+
+        private byte[] data;
+
+        public DataMessage() {
+        }
+
+        public DataMessage(int size) {
+            this.data = new byte[size];
+        }
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            this.data = messageStream.readByteArray(messageStream.readInt());
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeInt(this.data.length);
+            messageStream.writeByteArray(this.data);
+        }
+    }
+}
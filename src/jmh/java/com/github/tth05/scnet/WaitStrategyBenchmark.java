@@ -0,0 +1,127 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.AbstractMessage;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import com.github.tth05.scnet.wait.*;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the round trip latency of a small message for each {@link IWaitStrategy}. The CPU time used by the SCNet
+ * threads is printed after each iteration, which shows the CPU cost of each strategy. Spinning strategies need at least
+ * three free cores to give meaningful results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WaitStrategyBenchmark {
+
+    @Param({"busy-spin", "yielding", "backoff", "blocking", "sleeping"})
+    public String strategy;
+
+    private Server server;
+    private Client client;
+    private volatile int received;
+
+    private long cpuTimeStart;
+    private long wallTimeStart;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        this.server = new Server();
+        this.client = new Client();
+        this.server.getMessageProcessor().setWaitStrategy(createStrategy());
+        this.client.getMessageProcessor().setWaitStrategy(createStrategy());
+        this.server.getMessageProcessor().registerMessage((short) 1, PingMessage.class);
+        this.client.getMessageProcessor().registerMessage((short) 1, PingMessage.class);
+
+        this.server.getMessageBus().listenAlways(PingMessage.class, (m) -> this.server.getMessageProcessor().enqueueMessage(m));
+        this.client.getMessageBus().listenAlways(PingMessage.class, (m) -> this.received++);
+
+        this.server.bind(new InetSocketAddress(6970));
+        if (!this.client.connect(new InetSocketAddress(6970)))
+            throw new IllegalStateException("Unable to connect");
+        while (!this.server.isClientConnected())
+            Thread.sleep(10);
+    }
+
+    @Setup(Level.Iteration)
+    public void startCpuMeasurement() {
+        this.cpuTimeStart = scnetCpuTime();
+        this.wallTimeStart = System.nanoTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printCpuUsage() {
+        double cores = (scnetCpuTime() - this.cpuTimeStart) / (double) (System.nanoTime() - this.wallTimeStart);
+        System.out.printf("%n%s: %.2f cores busy%n", this.strategy, cores);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.client.close();
+        this.server.close();
+    }
+
+    @Benchmark
+    public int roundTrip() {
+        int expected = this.received + 1;
+        this.client.getMessageProcessor().enqueueMessage(new PingMessage());
+        while (this.received < expected)
+            Thread.onSpinWait();
+        return expected;
+    }
+
+    private IWaitStrategy createStrategy() {
+        switch (this.strategy) {
+            case "busy-spin":
+                return new BusySpinWaitStrategy();
+            case "yielding":
+                return new YieldingWaitStrategy();
+            case "backoff":
+                return new BackoffWaitStrategy();
+            case "blocking":
+                return new BlockingWaitStrategy();
+            case "sleeping":
+                return new SleepingWaitStrategy();
+            default:
+                throw new IllegalArgumentException(this.strategy);
+        }
+    }
+
+    private static long scnetCpuTime() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        long cpuTime = 0;
+        for (ThreadInfo info : threadBean.getThreadInfo(threadBean.getAllThreadIds())) {
+            if (info != null && info.getThreadName().startsWith("SCNet"))
+                cpuTime += Math.max(0, threadBean.getThreadCpuTime(info.getThreadId()));
+        }
+
+        return cpuTime;
+    }
+
+    public static final class PingMessage extends AbstractMessage {
+
+        private long timestamp = System.nanoTime();
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            this.timestamp = messageStream.readLong();
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeLong(this.timestamp);
+        }
+    }
+}
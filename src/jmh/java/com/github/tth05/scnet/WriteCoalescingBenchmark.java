@@ -0,0 +1,80 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.impl.DefaultMessageBus;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.channels.Pipe;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time per message when every message is written as soon as it is enqueued, like an event loop which
+ * wakes up for every message, compared to coalescing the writes until 8KB are pending. Both processors run on the
+ * benchmark thread and are connected by a pipe, so the difference is the cost of the additional write calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteCoalescingBenchmark {
+
+    private static final int MESSAGES = 1000;
+
+    @Param({"false", "true"})
+    public boolean coalescing;
+
+    private Pipe pipe;
+    private DefaultMessageProcessor sender;
+    private DefaultMessageProcessor receiver;
+    private DefaultMessageBus messageBus;
+    private int received;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.pipe = Pipe.open();
+        this.pipe.sink().configureBlocking(false);
+        this.pipe.source().configureBlocking(false);
+
+        this.sender = new DefaultMessageProcessor();
+        this.receiver = new DefaultMessageProcessor();
+        this.sender.registerRecord((short) 1, Tick.class);
+        this.receiver.registerRecord((short) 1, Tick.class);
+        if (this.coalescing)
+            this.sender.setWriteCoalescing(8192, 1, TimeUnit.SECONDS);
+
+        this.messageBus = new DefaultMessageBus();
+        this.messageBus.listenAlways(Tick.class, (t) -> this.received++);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.pipe.sink().close();
+        this.pipe.source().close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public int send() {
+        int expected = this.received + MESSAGES;
+        for (int i = 0; i < MESSAGES; i++) {
+            this.sender.enqueueMessage(new Tick(i, i * 0.5));
+            this.sender.write(this.pipe.sink());
+            //Keep the pipe from filling up
+            if (i % 256 == 255)
+                this.receiver.read(this.pipe.source(), this.messageBus);
+        }
+
+        this.sender.flush();
+        while (this.received < expected) {
+            this.sender.write(this.pipe.sink());
+            this.receiver.read(this.pipe.source(), this.messageBus);
+        }
+        return expected;
+    }
+
+    public record Tick(int sequence, double price) {
+    }
+}
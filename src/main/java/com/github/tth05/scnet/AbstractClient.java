@@ -7,33 +7,33 @@ import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.NotYetConnectedException;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Base class for any client.
+ * Base class for any client. A connected client is registered with an {@link EventLoop}, which reads incoming and
+ * writes outgoing messages. If TLS is enabled, the messages are read and written through a {@link TlsChannel}, and no
+ * messages are exchanged until the handshake completed.
  */
 public abstract class AbstractClient implements AutoCloseable {
 
-    /**
-     * Selector used to check for {@link SelectionKey#OP_CONNECT}, {@link SelectionKey#OP_READ} and
-     * {@link SelectionKey#OP_WRITE}.
-     */
-    @NotNull
-    protected Selector selector;
     /**
      * Internal socket channel used for the connection
      */
-    @NotNull
-    protected SocketChannel socketChannel;
+    @Nullable
+    protected volatile SocketChannel socketChannel;
 
     /**
      * The message bus
@@ -53,82 +53,279 @@ public abstract class AbstractClient implements AutoCloseable {
     protected List<IConnectionListener> connectionListeners = Collections.synchronizedList(new ArrayList<>());
 
     /**
-     * A lock to prevent {@link #close()}ing the selector and channel while the {@link #process()} loop is working.
+     * The loop which the current {@link #socketChannel} is registered with
+     */
+    @Nullable
+    private volatile EventLoop eventLoop;
+    /**
+     * Encrypts the data of the current {@link #socketChannel}, or {@code null} if TLS is disabled
+     */
+    @Nullable
+    private volatile TlsChannel tlsChannel;
+    /**
+     * The key of the current {@link #socketChannel}. Only accessed by the {@link #eventLoop}.
+     */
+    @Nullable
+    private SelectionKey selectionKey;
+    /**
+     * Writes the bytes which are held back by the message processor once they are due. Only accessed by the
+     * {@link #eventLoop}.
+     */
+    @Nullable
+    private ScheduledFuture<?> flushTimer;
+    /**
+     * Guards against closing the same connection twice, for example if both sides disconnect at the same time
      */
     @NotNull
-    private final ReentrantLock selectorLock = new ReentrantLock();
+    private final AtomicBoolean closed = new AtomicBoolean(true);
+    /**
+     * Receives the events of the {@link #eventLoop}
+     */
+    @NotNull
+    private final ISelectionHandler selectionHandler = new ISelectionHandler() {
+        @Override
+        public void handleSelection(@NotNull SelectionKey key) {
+            if (key.isWritable())
+                handleIteration();
+            if (key.isValid() && key.isReadable())
+                read();
+        }
+
+        @Override
+        public boolean handleIteration() {
+            return write();
+        }
+
+        @Override
+        public void handleClose() {
+            //The loop is gone, therefore this must not trigger a reconnect
+            AbstractClient.this.messageProcessor.reset();
+            closeConnection();
+        }
+    };
 
     public AbstractClient() {
         this(null);
     }
 
     public AbstractClient(@Nullable SocketChannel socketChannel) {
-        initChannelAndSelector(socketChannel);
+        this.socketChannel = socketChannel;
     }
 
     /**
-     * Initializes the {@link #selector} and the {@link #socketChannel}. If the {@code socketChannel} parameter is null,
-     * a new channel is opened.
-     * <br>
-     * This method is used when connecting because a {@link SocketChannel} cannot be bound to a different address.
+     * Registers the connected {@link #socketChannel} with the given {@code eventLoop} and notifies all
+     * {@link #connectionListeners} on the loop thread, after the TLS handshake if TLS is enabled.
      *
-     * @param socketChannel a pre-existing {@link SocketChannel} to use
+     * @param eventLoop the loop which will serve this connection
+     * @throws IOException if the channel could not be configured
      */
-    protected void initChannelAndSelector(@Nullable SocketChannel socketChannel) {
-        try {
-            this.selector = Selector.open();
+    void register(@NotNull EventLoop eventLoop) throws IOException {
+        SocketChannel channel = this.socketChannel;
+        if (channel == null)
+            throw new IllegalStateException("No channel");
 
-            if (socketChannel != null)
-                this.socketChannel = socketChannel;
-            else
-                this.socketChannel = SocketChannel.open();
+        channel.configureBlocking(false);
+        SSLEngine engine = createSslEngine();
+        TlsChannel tlsChannel = engine != null ? new TlsChannel(channel, engine, eventLoop::wakeup) : null;
+        this.tlsChannel = tlsChannel;
+        this.eventLoop = eventLoop;
+        this.closed.set(false);
+        this.messageProcessor.setWakeupHandler(eventLoop::wakeup);
+        eventLoop.register(channel, SelectionKey.OP_READ, this.selectionHandler).whenComplete((key, t) -> {
+            if (t != null) {
+                disconnect();
+                return;
+            }
 
-            this.socketChannel.configureBlocking(false);
-            this.socketChannel.register(this.selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            this.selectionKey = key;
+            if (tlsChannel == null)
+                this.connectionListeners.forEach(IConnectionListener::onConnected);
+        });
+    }
+
+    /**
+     * @return a new engine for the next connection, or {@code null} if TLS is disabled
+     */
+    @Nullable
+    SSLEngine createSslEngine() {
+        return null;
+    }
+
+    /**
+     * Reads all available messages. Disconnects this client if the connection was closed. Has to be called on the
+     * loop thread.
+     */
+    void read() {
+        SocketChannel channel = this.socketChannel;
+        if (channel == null || this.closed.get())
+            return;
+
+        TlsChannel tlsChannel = this.tlsChannel;
+        if (tlsChannel != null && !tlsChannel.isHandshakeComplete()) {
+            handshake(tlsChannel);
+            return;
         }
+
+        if (!this.messageProcessor.read(tlsChannel != null ? tlsChannel : channel, this.messageBus))
+            disconnect();
     }
 
     /**
-     * Wrapper method for {@link IMessageProcessor#process(Selector, SocketChannel, IMessageBus)} which includes a lock
-     * to prevent calls to {@link #close()} while messages are being processed.
+     * Writes pending messages. If the channel does not accept all bytes, this client waits for
+     * {@link SelectionKey#OP_WRITE} until the rest can be written. Has to be called on the loop thread.
      *
-     * @return same as {@link IMessageProcessor#process(Selector, SocketChannel, IMessageBus)}
+     * @return {@code true} if anything was written; {@code false} otherwise
      */
-    protected boolean process() {
-        //Allow other threads to acquire this lock before us. The while loop in the Client won't allow other threads to
-        // acquire this lock
-        if (this.selectorLock.hasQueuedThreads()) {
+    private boolean write() {
+        SocketChannel channel = this.socketChannel;
+        SelectionKey key = this.selectionKey;
+        if (channel == null || key == null || this.closed.get())
+            return false;
+
+        TlsChannel tlsChannel = this.tlsChannel;
+        if (tlsChannel != null) {
+            if (!tlsChannel.isHandshakeComplete())
+                return handshake(tlsChannel);
+            if (!this.messageProcessor.hasPendingWrites() && !tlsChannel.hasPendingOutput())
+                return false;
+
             try {
-                Thread.sleep(5);
-            } catch (InterruptedException ignored) {}
+                tlsChannel.flush();
+            } catch (IOException e) {
+                disconnect();
+                return false;
+            }
+        } else if (!this.messageProcessor.hasPendingWrites()) {
+            return false;
         }
 
-        //Prevent #close call while we're doing this
-        this.selectorLock.lock();
-        if (!this.selector.isOpen()) {
-            this.selectorLock.unlock();
+        if (!this.messageProcessor.write(tlsChannel != null ? tlsChannel : channel)) {
+            disconnect();
             return false;
         }
-        boolean b = this.messageProcessor.process(this.selector, this.socketChannel, this.messageBus);
-        this.selectorLock.unlock();
-        return b;
+
+        boolean pending = this.messageProcessor.hasPendingWrites() || (tlsChannel != null && tlsChannel.hasPendingOutput());
+        updateInterestOps(key, pending);
+        scheduleFlush();
+        //Wait for OP_WRITE instead of spinning if the channel is full
+        return !pending;
     }
 
-    public boolean isConnected() {
-        if (!this.socketChannel.isConnected() || !this.socketChannel.isOpen())
-            return false;
+    /**
+     * Schedules a write for the time at which the bytes which are held back by the message processor have to be
+     * written, because the loop might be waiting for its selector until then.
+     */
+    private void scheduleFlush() {
+        EventLoop eventLoop = this.eventLoop;
+        long delay = this.messageProcessor.getFlushDelay();
+        ScheduledFuture<?> flushTimer = this.flushTimer;
+        if (eventLoop == null || delay < 0 || (flushTimer != null && !flushTimer.isDone()))
+            return;
+
+        this.flushTimer = eventLoop.schedule(() -> {
+            //The task runs on the calling thread if the loop terminated in the meantime
+            if (eventLoop.inEventLoop())
+                write();
+        }, delay, TimeUnit.NANOSECONDS);
+    }
 
+    /**
+     * Continues the TLS handshake. Once it completes, the {@link #connectionListeners} are notified and any data
+     * which arrived together with the last handshake message is read.
+     *
+     * @return {@code true} if the handshake completed; {@code false} otherwise
+     */
+    private boolean handshake(@NotNull TlsChannel tlsChannel) {
+        boolean complete;
         try {
-            //Write twice to make it fail
-            this.socketChannel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 0, 0, 0}));
-            this.socketChannel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 0, 0, 0}));
-        } catch (IOException | NotYetConnectedException e) {
+            complete = tlsChannel.handshake();
+        } catch (IOException e) {
+            disconnect();
+            return false;
+        }
+
+        SelectionKey key = this.selectionKey;
+        if (key != null)
+            updateInterestOps(key, tlsChannel.hasPendingOutput());
+        if (!complete)
             return false;
+
+        this.connectionListeners.forEach(IConnectionListener::onConnected);
+        read();
+        return true;
+    }
+
+    /**
+     * Waits for {@link SelectionKey#OP_WRITE} if there are pending bytes, and only for {@link SelectionKey#OP_READ}
+     * otherwise.
+     */
+    private static void updateInterestOps(@NotNull SelectionKey key, boolean pendingWrites) {
+        if (!key.isValid())
+            return;
+
+        int ops = pendingWrites ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (key.interestOps() != ops)
+            key.interestOps(ops);
+    }
+
+    /**
+     * Resets the message processor and closes the connection. The processor is reset first, so that a reconnect
+     * which happens right after the connection is closed cannot lose any messages.
+     */
+    void disconnect() {
+        EventLoop eventLoop = this.eventLoop;
+        if (eventLoop != null && !eventLoop.inEventLoop()) {
+            //The processor must not be reset while the loop is using it
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            eventLoop.execute(() -> {
+                disconnect();
+                future.complete(null);
+            });
+            try {
+                future.get(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                e.printStackTrace();
+            }
+            return;
         }
 
-        return this.socketChannel.isConnected() && this.socketChannel.isOpen();
+        this.messageProcessor.reset();
+        closeConnection();
+        onConnectionLost();
+    }
+
+    /**
+     * Called by {@link #disconnect()} after the connection was closed.
+     */
+    void onConnectionLost() {
+    }
+
+    /**
+     * @return {@code true} if this client was closed since it was registered, or was never registered
+     */
+    boolean isClosed() {
+        return this.closed.get();
+    }
+
+    /**
+     * @return the session of the current connection, or {@code null} if TLS is disabled or the handshake did not
+     * complete yet
+     */
+    @Nullable
+    public SSLSession getTlsSession() {
+        TlsChannel tlsChannel = this.tlsChannel;
+        return tlsChannel != null && tlsChannel.isHandshakeComplete() ? tlsChannel.getSession() : null;
+    }
+
+    /**
+     * @return {@code true} if the connection is open. Messages are only exchanged once the TLS handshake completed, if
+     * TLS is enabled.
+     */
+    public boolean isConnected() {
+        SocketChannel channel = this.socketChannel;
+        return channel != null && !this.closed.get() && channel.isConnected() && channel.isOpen();
     }
 
     /**
@@ -149,16 +346,51 @@ public abstract class AbstractClient implements AutoCloseable {
         this.connectionListeners.forEach(IConnectionListener::onDisconnected);
     }
 
+    /**
+     * Closes the connection. The channel is removed from its event loop before it is closed, therefore once this
+     * method returns, no more messages are read or written.
+     */
     @Override
     public void close() {
+        closeConnection();
+    }
+
+    /**
+     * Closes the current connection, which is shared by {@link #close()} and {@link #disconnect()}.
+     */
+    void closeConnection() {
+        if (!this.closed.compareAndSet(false, true))
+            return;
+
+        SocketChannel channel = this.socketChannel;
+        EventLoop eventLoop = this.eventLoop;
+        if (eventLoop != null && channel != null) {
+            try {
+                //Wait for the loop to let go of the channel, unless we're on the loop thread ourselves
+                eventLoop.deregister(channel, this.selectionHandler).get(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                e.printStackTrace();
+            }
+        }
+
+        this.messageProcessor.setWakeupHandler(null);
+        this.selectionKey = null;
+        this.flushTimer = null;
+        this.eventLoop = null;
+        TlsChannel tlsChannel = this.tlsChannel;
+        this.tlsChannel = null;
+        if (tlsChannel != null)
+            tlsChannel.close();
         try {
-            this.selectorLock.lock();
-            this.selector.close();
-            this.selectorLock.unlock();
-            this.socketChannel.close();
+            if (channel != null)
+                channel.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
+
+        onDisconnected();
     }
 
     public void setMessageProcessor(@NotNull IMessageProcessor messageProcessor) {
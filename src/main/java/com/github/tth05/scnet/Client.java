@@ -1,23 +1,71 @@
 package com.github.tth05.scnet;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import javax.net.ssl.SSLEngine;
+import java.io.IOException;
 import java.net.ConnectException;
 import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
-import java.util.Iterator;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class Client extends AbstractClient {
 
     /**
-     * The executor on which the client thread will run
+     * The executor on which the client thread will run, if this client does not use a shared {@link EventLoopGroup}
      */
-    @NotNull
+    @Nullable
     private final Executor executor;
+    /**
+     * The shared group which this client is registered with, or {@code null} if every connection gets a dedicated
+     * loop on the {@link #executor}
+     */
+    @Nullable
+    private final EventLoopGroup sharedGroup;
+    /**
+     * The dedicated group of the current connection
+     */
+    @Nullable
+    private EventLoopGroup dedicatedGroup;
+    /**
+     * The attempt started by the last call to {@link #connectAsync(SocketAddress, ConnectOptions)}, until it completes
+     */
+    @Nullable
+    private volatile ConnectAttempt pendingConnect;
+    /**
+     * The address of the last connect call, used to reconnect
+     */
+    @Nullable
+    private volatile SocketAddress address;
+    /**
+     * @see #setAutoReconnect(ConnectOptions)
+     */
+    @Nullable
+    private volatile ConnectOptions reconnectOptions;
+    /**
+     * @see #setTlsOptions(TlsOptions)
+     */
+    @Nullable
+    private volatile TlsOptions tlsOptions;
+    /**
+     * @see #setSocketOptions(SocketOptions)
+     */
+    @Nullable
+    private volatile SocketOptions socketOptions;
+    /**
+     * Set while this client is closed on purpose, which prevents reconnecting
+     */
+    private volatile boolean closing;
 
     public Client() {
         this(new ThreadPoolExecutor(1, 1,
@@ -37,11 +85,24 @@ public class Client extends AbstractClient {
     public Client(@NotNull Executor executor) {
         super();
         this.executor = executor;
+        this.sharedGroup = null;
+    }
+
+    /**
+     * @param eventLoopGroup a group whose threads are shared with other clients and servers. The group is not closed
+     *                       when this client is closed.
+     */
+    public Client(@NotNull EventLoopGroup eventLoopGroup) {
+        super();
+        this.executor = null;
+        this.sharedGroup = eventLoopGroup;
     }
 
     /**
      * Tries to connect this client to the given {@code address} using {@link #connect(SocketAddress)}. After each
      * failed attempt, the current thread will wait at least {@code timeout} milliseconds.
+     * <br>
+     * Use {@link #connectAsync(SocketAddress, ConnectOptions)} to connect without blocking the current thread.
      *
      * @param address the address to connect to
      * @param timeout the timeout in milliseconds between each failed attempt
@@ -67,54 +128,358 @@ public class Client extends AbstractClient {
      * @return {@code true} if the connection succeeded; {@code false} otherwise
      */
     public boolean connect(@NotNull SocketAddress address) {
+        close();
+        this.closing = false;
+        this.address = address;
+
+        SocketChannel channel = null;
         try {
-            close();
-            initChannelAndSelector(null);
+            channel = SocketChannel.open();
+            applySocketOptions(channel);
+            channel.socket().connect(address, 1000);
+            this.socketChannel = channel;
+
+            //Reset before returning, otherwise messages which are enqueued right after connecting could be lost
+            this.messageProcessor.reset();
+            register(nextEventLoop());
+            return true;
+        } catch (ConnectException | SocketTimeoutException e) {
+            closeChannel(channel);
+            return false;
+        } catch (Throwable e) {
+            closeChannel(channel);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Same as {@link #connectAsync(SocketAddress, ConnectOptions)} with the default {@link ConnectOptions}, which
+     * make a single attempt.
+     */
+    @NotNull
+    public CompletableFuture<Void> connectAsync(@NotNull SocketAddress address) {
+        return connectAsync(address, new ConnectOptions());
+    }
+
+    /**
+     * Connects this client to the given {@code address} without blocking the calling thread. The connection is
+     * established on the event loop, and failed attempts are retried as configured by the {@code options}.
+     * <br>
+     * Cancelling the returned future or calling {@link #close()} aborts the current attempt and any further retries.
+     *
+     * @param address the address to connect to
+     * @param options the timeout and retry options
+     * @return a future which completes once the client is connected, or completes exceptionally with the cause of
+     * the last failed attempt
+     */
+    @NotNull
+    public CompletableFuture<Void> connectAsync(@NotNull SocketAddress address, @NotNull ConnectOptions options) {
+        close();
+        this.closing = false;
+        this.address = address;
+        return startConnect(address, options);
+    }
+
+    /**
+     * Enables reconnecting to the last address automatically when the connection drops. Combined with a
+     * {@link com.github.tth05.scnet.message.impl.ReliableSession}, the connection is resumed without losing any
+     * messages. Closing the client on purpose never causes a reconnect.
+     *
+     * @param reconnectOptions the options used to reconnect, or {@code null} to disable reconnecting
+     */
+    public void setAutoReconnect(@Nullable ConnectOptions reconnectOptions) {
+        this.reconnectOptions = reconnectOptions;
+    }
+
+    @Nullable
+    public ConnectOptions getAutoReconnect() {
+        return this.reconnectOptions;
+    }
+
+    /**
+     * Enables TLS for all following connections. The handshake is performed on the event loop after the TCP connection
+     * was established, {@link #connect(SocketAddress)} and {@link #connectAsync(SocketAddress)} therefore don't wait
+     * for it. Messages which are enqueued in the meantime are sent once the handshake completed, which is also when the
+     * connection listeners are notified.
+     * <br>
+     * Sessions are resumed when reconnecting to the same host and port with the same {@link TlsOptions}.
+     *
+     * @param tlsOptions the options, or {@code null} to disable TLS
+     */
+    public void setTlsOptions(@Nullable TlsOptions tlsOptions) {
+        this.tlsOptions = tlsOptions;
+    }
+
+    @Nullable
+    public TlsOptions getTlsOptions() {
+        return this.tlsOptions;
+    }
+
+    /**
+     * Sets the socket options for all following connections, for example to disable Nagle's algorithm for latency
+     * sensitive messages.
+     *
+     * @param socketOptions the options, or {@code null} to use the defaults of the operating system
+     */
+    public void setSocketOptions(@Nullable SocketOptions socketOptions) {
+        this.socketOptions = socketOptions;
+    }
+
+    @Nullable
+    public SocketOptions getSocketOptions() {
+        return this.socketOptions;
+    }
+
+    /**
+     * Applies the {@link #socketOptions} to a channel which is about to connect.
+     */
+    private void applySocketOptions(@NotNull SocketChannel channel) throws IOException {
+        SocketOptions socketOptions = this.socketOptions;
+        if (socketOptions != null)
+            socketOptions.apply(channel);
+    }
+
+    @Nullable
+    @Override
+    SSLEngine createSslEngine() {
+        TlsOptions tlsOptions = this.tlsOptions;
+        return tlsOptions != null ? tlsOptions.createEngine(this.address) : null;
+    }
+
+    /**
+     * Closes this client and ends its reliable session, if it has one.
+     */
+    @Override
+    public void close() {
+        this.closing = true;
+        //Abort a pending connect before closing, so that it can't register the channel afterwards
+        ConnectAttempt attempt = this.pendingConnect;
+        this.pendingConnect = null;
+        if (attempt != null)
+            attempt.future.cancel(false);
+
+        super.close();
+        this.messageProcessor.endSession();
+        this.messageProcessor.releaseResources();
+        closeDedicatedGroup();
+    }
+
+    /**
+     * Reconnects if {@link #setAutoReconnect(ConnectOptions) enabled}, otherwise releases the dedicated loop.
+     */
+    @Override
+    void onConnectionLost() {
+        ConnectOptions reconnectOptions = this.reconnectOptions;
+        SocketAddress address = this.address;
+        if (reconnectOptions != null && address != null && !this.closing)
+            startConnect(address, reconnectOptions);
+        else
+            closeDedicatedGroup();
+    }
+
+    @NotNull
+    private CompletableFuture<Void> startConnect(@NotNull SocketAddress address, @NotNull ConnectOptions options) {
+        ConnectAttempt attempt = new ConnectAttempt(address, options, nextEventLoop());
+        this.pendingConnect = attempt;
+        //Closed concurrently
+        if (this.closing)
+            attempt.future.cancel(false);
 
-            this.socketChannel.register(this.selector, SelectionKey.OP_CONNECT);
-            this.socketChannel.connect(address);
+        attempt.eventLoop.execute(attempt::start);
+        return attempt.future;
+    }
+
+    private void closeDedicatedGroup() {
+        EventLoopGroup group;
+        synchronized (this) {
+            group = this.dedicatedGroup;
+            this.dedicatedGroup = null;
+        }
+        if (group != null)
+            group.close();
+    }
+
+    /**
+     * @return a loop of the shared group, or the dedicated loop which runs on the {@link #executor}
+     */
+    @NotNull
+    private synchronized EventLoop nextEventLoop() {
+        if (this.sharedGroup != null)
+            return this.sharedGroup.next();
 
-            int selected = this.selector.select(1000);
-            if (selected < 1)
-                return false;
+        //Reconnects keep using the current loop
+        if (this.dedicatedGroup == null)
+            this.dedicatedGroup = new EventLoopGroup(Objects.requireNonNull(this.executor), 1, () -> this.messageProcessor.getWaitStrategy(), false);
+        return this.dedicatedGroup.next();
+    }
+
+    /**
+     * Establishes a connection on the event loop, retrying failed attempts with an exponential backoff. All methods
+     * except the constructor are called on the loop thread.
+     */
+    private final class ConnectAttempt implements ISelectionHandler {
+
+        @NotNull
+        private final SocketAddress address;
+        @NotNull
+        private final ConnectOptions options;
+        @NotNull
+        private final EventLoop eventLoop;
+        @NotNull
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        /**
+         * The number of started attempts
+         */
+        private int attempts;
+        /**
+         * The channel of the current attempt
+         */
+        @Nullable
+        private SocketChannel channel;
+        /**
+         * The timeout of the current attempt or the delay before the next one
+         */
+        @Nullable
+        private ScheduledFuture<?> timer;
+
+        private ConnectAttempt(@NotNull SocketAddress address, @NotNull ConnectOptions options, @NotNull EventLoop eventLoop) {
+            this.address = address;
+            this.options = options;
+            this.eventLoop = eventLoop;
+            this.future.whenComplete((v, t) -> {
+                if (this.future.isCancelled())
+                    eventLoop.execute(this::abort);
+            });
+        }
 
-            for (Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator(); iterator.hasNext(); ) {
-                SelectionKey key = iterator.next();
-                if (!key.isConnectable())
-                    throw new IllegalStateException("Invalid key");
+        /**
+         * Starts a new attempt
+         */
+        private void start() {
+            if (this.future.isDone())
+                return;
 
-                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-                iterator.remove();
+            this.attempts++;
+            try {
+                SocketChannel channel = SocketChannel.open();
+                this.channel = channel;
+                applySocketOptions(channel);
+                channel.configureBlocking(false);
+                if (channel.connect(this.address)) {
+                    onConnected();
+                    return;
+                }
+
+                this.eventLoop.register(channel, SelectionKey.OP_CONNECT, this);
+                int attempt = this.attempts;
+                this.timer = this.eventLoop.schedule(() -> {
+                    //The timer might have fired just before the attempt completed
+                    if (this.attempts == attempt)
+                        retry(new SocketTimeoutException("Connect timed out"));
+                }, this.options.getConnectTimeout(), TimeUnit.MILLISECONDS);
+            } catch (IOException e) {
+                retry(e);
+            } catch (Throwable t) {
+                abort();
+                this.future.completeExceptionally(t);
             }
+        }
 
-            if (!this.socketChannel.finishConnect())
-                return false;
+        @Override
+        public void handleSelection(@NotNull SelectionKey key) {
+            if (!key.isConnectable())
+                return;
 
-            if (this.socketChannel.isConnected()) {
-                this.executor.execute(() -> {
-                    this.messageProcessor.reset();
+            try {
+                if (Objects.requireNonNull(this.channel).finishConnect())
+                    onConnected();
+            } catch (IOException e) {
+                retry(e);
+            }
+        }
 
-                    this.connectionListeners.forEach(IConnectionListener::onConnected);
+        @Override
+        public void handleClose() {
+            abort();
+            this.future.completeExceptionally(new ClosedChannelException());
+        }
 
-                    while (this.selector.isOpen()) {
-                        if (!this.process()) {
-                            this.messageProcessor.reset();
-                            this.close();
-                            onDisconnected();
-                            return;
-                        }
-                    }
-                });
-                return true;
+        /**
+         * Hands the connected channel over to the client
+         */
+        private void onConnected() {
+            cancelTimer();
+            if (this.future.isDone()) {
+                abort();
+                return;
             }
 
-            return false;
-        } catch (ConnectException e) {
-            close();
-            return false;
-        } catch (Throwable e) {
-            close();
-            throw new RuntimeException(e);
+            SocketChannel channel = Objects.requireNonNull(this.channel);
+            this.channel = null;
+            Client.this.socketChannel = channel;
+            Client.this.messageProcessor.reset();
+            try {
+                //Replaces this handler
+                register(this.eventLoop);
+            } catch (IOException e) {
+                closeChannel(channel);
+                this.future.completeExceptionally(e);
+                return;
+            }
+
+            if (Client.this.pendingConnect == this)
+                Client.this.pendingConnect = null;
+            //Cancelled concurrently
+            if (!this.future.complete(null))
+                disconnect();
+        }
+
+        /**
+         * Closes the channel of the failed attempt and schedules the next one, if any attempts are left.
+         */
+        private void retry(@NotNull Throwable cause) {
+            if (this.channel == null)
+                return;
+
+            abort();
+            if (this.attempts >= this.options.getMaxAttempts()) {
+                this.future.completeExceptionally(cause);
+                return;
+            }
+
+            this.timer = this.eventLoop.schedule(this::start, this.options.getBackoffDelay(this.attempts), TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Closes the channel of the current attempt and cancels the current timer.
+         */
+        private void abort() {
+            cancelTimer();
+
+            SocketChannel channel = this.channel;
+            this.channel = null;
+            if (channel == null)
+                return;
+
+            this.eventLoop.deregister(channel, this);
+            closeChannel(channel);
+        }
+
+        private void cancelTimer() {
+            if (this.timer != null) {
+                this.timer.cancel(false);
+                this.timer = null;
+            }
+        }
+    }
+
+    private static void closeChannel(@Nullable SocketChannel channel) {
+        try {
+            if (channel != null)
+                channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 }
@@ -0,0 +1,141 @@
+package com.github.tth05.scnet;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.SocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Options for {@link Client#connectAsync(SocketAddress, ConnectOptions)}. Failed attempts are retried after an
+ * exponentially growing delay, which is randomly shortened by up to {@link #getJitter()} to spread out reconnects of
+ * many clients.
+ * <pre>{@code
+ * client.connectAsync(address, new ConnectOptions()
+ *         .setMaxAttempts(10)
+ *         .setInitialBackoff(100)
+ *         .setMaxBackoff(5000));
+ * }</pre>
+ */
+public class ConnectOptions {
+
+    private long connectTimeout = 1000;
+    private int maxAttempts = 1;
+    private long initialBackoff = 100;
+    private long maxBackoff = 10000;
+    private double backoffMultiplier = 2;
+    private double jitter = 0.2;
+
+    /**
+     * @param connectTimeout the time in milliseconds after which a single attempt is aborted
+     */
+    @NotNull
+    public ConnectOptions setConnectTimeout(long connectTimeout) {
+        if (connectTimeout < 1)
+            throw new IllegalArgumentException("connectTimeout has to be greater than zero");
+
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    /**
+     * @param maxAttempts the maximum number of attempts, or {@link Integer#MAX_VALUE} to retry until the connection
+     *                    succeeds or the future is cancelled
+     */
+    @NotNull
+    public ConnectOptions setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("maxAttempts has to be greater than zero");
+
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * @param initialBackoff the delay in milliseconds after the first failed attempt
+     */
+    @NotNull
+    public ConnectOptions setInitialBackoff(long initialBackoff) {
+        if (initialBackoff < 0)
+            throw new IllegalArgumentException("initialBackoff has to be positive");
+
+        this.initialBackoff = initialBackoff;
+        return this;
+    }
+
+    /**
+     * @param maxBackoff the upper bound in milliseconds for the delay between two attempts
+     */
+    @NotNull
+    public ConnectOptions setMaxBackoff(long maxBackoff) {
+        if (maxBackoff < 0)
+            throw new IllegalArgumentException("maxBackoff has to be positive");
+
+        this.maxBackoff = maxBackoff;
+        return this;
+    }
+
+    /**
+     * @param backoffMultiplier the factor by which the delay grows after every failed attempt
+     */
+    @NotNull
+    public ConnectOptions setBackoffMultiplier(double backoffMultiplier) {
+        if (backoffMultiplier < 1)
+            throw new IllegalArgumentException("backoffMultiplier has to be at least 1");
+
+        this.backoffMultiplier = backoffMultiplier;
+        return this;
+    }
+
+    /**
+     * @param jitter the maximum fraction by which each delay is randomly shortened, between {@code 0} and {@code 1}
+     */
+    @NotNull
+    public ConnectOptions setJitter(double jitter) {
+        if (jitter < 0 || jitter > 1)
+            throw new IllegalArgumentException("jitter has to be between 0 and 1");
+
+        this.jitter = jitter;
+        return this;
+    }
+
+    @Contract(pure = true)
+    public long getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    @Contract(pure = true)
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    @Contract(pure = true)
+    public long getInitialBackoff() {
+        return this.initialBackoff;
+    }
+
+    @Contract(pure = true)
+    public long getMaxBackoff() {
+        return this.maxBackoff;
+    }
+
+    @Contract(pure = true)
+    public double getBackoffMultiplier() {
+        return this.backoffMultiplier;
+    }
+
+    @Contract(pure = true)
+    public double getJitter() {
+        return this.jitter;
+    }
+
+    /**
+     * @param failedAttempts the number of attempts which failed so far, at least {@code 1}
+     * @return the delay in milliseconds before the next attempt
+     */
+    public long getBackoffDelay(int failedAttempts) {
+        double delay = this.initialBackoff * Math.pow(this.backoffMultiplier, failedAttempts - 1);
+        delay = Math.min(delay, this.maxBackoff);
+        return (long) (delay * (1 - this.jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+}
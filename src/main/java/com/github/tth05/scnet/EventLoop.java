@@ -0,0 +1,294 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.wait.IWaitStrategy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A single thread which owns a {@link Selector} and serves all channels registered with it. Channels are registered
+ * together with an {@link ISelectionHandler}, which is called when the channel is selected and once in every loop
+ * iteration.
+ */
+final class EventLoop {
+
+    /**
+     * The selector which all channels of this loop are registered with
+     */
+    @NotNull
+    private final Selector selector;
+    /**
+     * Supplies the wait strategy for every iteration, which allows dedicated loops to follow changes of the message
+     * processor's strategy
+     */
+    @NotNull
+    private final Supplier<IWaitStrategy> waitStrategy;
+    /**
+     * Tasks which have to be run on the loop thread
+     */
+    @NotNull
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    /**
+     * All registered handlers. Only accessed by the loop thread.
+     */
+    @NotNull
+    private final List<ISelectionHandler> handlers = new ArrayList<>();
+
+    /**
+     * The thread which runs this loop
+     */
+    @Nullable
+    private volatile Thread thread;
+    private volatile boolean running = true;
+    /**
+     * Set once the loop exited. Tasks submitted afterwards are run by the submitting thread.
+     */
+    private volatile boolean terminated;
+    /**
+     * The amount of consecutive iterations without any work
+     */
+    private int idleCount;
+    /**
+     * Set while the selected keys are dispatched to their handlers
+     */
+    private boolean dispatching;
+
+    EventLoop(@NotNull Supplier<IWaitStrategy> waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs this loop on the current thread until {@link #shutdown()} is called.
+     */
+    void run() {
+        this.thread = Thread.currentThread();
+        try {
+            while (this.running) {
+                boolean worked = runTasks();
+                for (int i = 0; i < this.handlers.size(); i++)
+                    worked |= handleIteration(this.handlers.get(i));
+
+                int selected;
+                if (worked)
+                    selected = this.selector.selectNow();
+                else
+                    selected = this.waitStrategy.get().select(this.selector, this.idleCount);
+
+                this.idleCount = worked || selected > 0 ? 0 : this.idleCount + 1;
+                //Keys might also have been selected while deregistering a channel
+                if (this.selector.selectedKeys().isEmpty())
+                    continue;
+
+                this.dispatching = true;
+                for (Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator(); iterator.hasNext(); ) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    if (key.isValid())
+                        handleSelection(key);
+                }
+                this.dispatching = false;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (ClosedSelectorException ignored) {
+        } finally {
+            this.terminated = true;
+            for (ISelectionHandler handler : new ArrayList<>(this.handlers))
+                handler.handleClose();
+            this.handlers.clear();
+            try {
+                this.selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            runTasks();
+        }
+    }
+
+    /**
+     * Registers the given {@code channel} with this loop. If the channel is already registered, its interest set and
+     * handler are replaced.
+     *
+     * @param channel the channel, which has to be in non-blocking mode
+     * @param ops     the interest set
+     * @param handler the handler which will receive events for the channel
+     * @return a future which completes with the selection key once the channel is registered
+     */
+    @NotNull
+    CompletableFuture<SelectionKey> register(@NotNull SelectableChannel channel, int ops, @NotNull ISelectionHandler handler) {
+        CompletableFuture<SelectionKey> future = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                //Registering a channel again replaces its previous handler
+                SelectionKey previousKey = channel.keyFor(this.selector);
+                if (previousKey != null)
+                    this.handlers.remove((ISelectionHandler) previousKey.attachment());
+
+                SelectionKey key = channel.register(this.selector, ops, handler);
+                this.handlers.add(handler);
+                future.complete(key);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Removes the given {@code channel} and its {@code handler} from this loop. After the returned future completes,
+     * the handler will not be called anymore.
+     *
+     * @return a future which completes once the channel is deregistered
+     */
+    @NotNull
+    CompletableFuture<Void> deregister(@NotNull SelectableChannel channel, @NotNull ISelectionHandler handler) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                SelectionKey key = channel.keyFor(this.selector);
+                if (key != null) {
+                    key.cancel();
+                    //Flush the cancelled key, otherwise closing the channel is delayed until the next select. While
+                    // dispatching, the selected keys can't be modified, but the loop will select right afterwards.
+                    if (!this.dispatching)
+                        this.selector.selectNow();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (ClosedSelectorException ignored) {
+            }
+
+            this.handlers.remove(handler);
+            future.complete(null);
+        });
+        return future;
+    }
+
+    /**
+     * Runs the given {@code task} on the loop thread. If called from the loop thread, the task is run immediately.
+     */
+    void execute(@NotNull Runnable task) {
+        if (inEventLoop()) {
+            task.run();
+            return;
+        }
+
+        this.tasks.offer(task);
+        //Nobody will pick up the task anymore
+        if (this.terminated)
+            runTasks();
+        else
+            wakeup();
+    }
+
+    /**
+     * Runs the given {@code task} on the loop thread after the given {@code delay}. The delay is tracked by a shared
+     * timer thread, so that the wait strategy of the loop doesn't need to know about it.
+     *
+     * @return a future which can be used to cancel the task
+     */
+    @NotNull
+    ScheduledFuture<?> schedule(@NotNull Runnable task, long delay, @NotNull TimeUnit unit) {
+        return Timer.INSTANCE.schedule(() -> execute(task), delay, unit);
+    }
+
+    /**
+     * Notifies the loop about new work using the current {@link IWaitStrategy#signal(Selector)}.
+     */
+    void wakeup() {
+        this.waitStrategy.get().signal(this.selector);
+    }
+
+    /**
+     * Stops the loop after its current iteration. Handlers which are still registered are closed.
+     */
+    void shutdown() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    /**
+     * @return {@code true} if the current thread is the thread of this loop
+     */
+    boolean inEventLoop() {
+        return Thread.currentThread() == this.thread;
+    }
+
+    /**
+     * @return {@code true} if any task was run
+     */
+    private boolean runTasks() {
+        boolean ranTask = false;
+        Runnable task;
+        while ((task = this.tasks.poll()) != null) {
+            ranTask = true;
+            try {
+                task.run();
+            } catch (Throwable t) {
+                System.err.println("Exception occurred in event loop task");
+                t.printStackTrace();
+            }
+        }
+
+        return ranTask;
+    }
+
+    private static boolean handleIteration(@NotNull ISelectionHandler handler) {
+        try {
+            return handler.handleIteration();
+        } catch (Throwable t) {
+            System.err.println("Exception occurred in event loop");
+            t.printStackTrace();
+            return false;
+        }
+    }
+
+    private static void handleSelection(@NotNull SelectionKey key) {
+        try {
+            ((ISelectionHandler) key.attachment()).handleSelection(key);
+        } catch (CancelledKeyException ignored) {
+        } catch (Throwable t) {
+            System.err.println("Exception occurred in event loop");
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * Holds the timer thread which is shared by all loops, created on first use
+     */
+    private static final class Timer {
+
+        private static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r);
+            t.setName("SCNet Timer");
+            t.setDaemon(true);
+            return t;
+        });
+
+        static {
+            INSTANCE.setRemoveOnCancelPolicy(true);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.wait.BlockingWaitStrategy;
+import com.github.tth05.scnet.wait.IWaitStrategy;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A fixed set of event loop threads which can be shared between multiple {@link Client} and {@link Server} instances.
+ * Each connection is assigned to one of the loops, so the amount of threads scales with the size of this group
+ * instead of the amount of connections.
+ * <pre>{@code
+ * try (EventLoopGroup group = new EventLoopGroup(2)) {
+ *     Client c1 = new Client(group);
+ *     Client c2 = new Client(group);
+ * }
+ * }</pre>
+ * Closing the group closes all connections which are still registered with it.
+ */
+public class EventLoopGroup implements AutoCloseable {
+
+    /**
+     * Used to name the threads of groups which create their own threads
+     */
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /**
+     * The loops of this group
+     */
+    @NotNull
+    private final EventLoop[] eventLoops;
+    /**
+     * The executor created by this group, which is shut down when the group is closed
+     */
+    @Nullable
+    private final ExecutorService ownedExecutor;
+    /**
+     * Used to assign loops round-robin
+     */
+    @NotNull
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    /**
+     * Creates a group with one thread per available processor.
+     */
+    public EventLoopGroup() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a group with the given amount of threads, which use a {@link BlockingWaitStrategy}.
+     */
+    public EventLoopGroup(int threads) {
+        this(threads, new BlockingWaitStrategy());
+    }
+
+    /**
+     * Creates a group with the given amount of threads.
+     *
+     * @param threads      the amount of threads
+     * @param waitStrategy the strategy which all loops of this group use
+     */
+    public EventLoopGroup(int threads, @NotNull IWaitStrategy waitStrategy) {
+        this(createExecutor(threads), threads, () -> waitStrategy, true);
+    }
+
+    /**
+     * Creates a group which runs its loops on the given {@code executor}.
+     *
+     * @param executor     the executor, which needs to have {@code threads} available threads
+     * @param threads      the amount of loops
+     * @param waitStrategy the strategy which all loops of this group use
+     */
+    public EventLoopGroup(@NotNull Executor executor, int threads, @NotNull IWaitStrategy waitStrategy) {
+        this(executor, threads, () -> waitStrategy, false);
+    }
+
+    EventLoopGroup(@NotNull Executor executor, int threads, @NotNull Supplier<IWaitStrategy> waitStrategy, boolean ownsExecutor) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads has to be greater than zero");
+
+        this.ownedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+        this.eventLoops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            this.eventLoops[i] = new EventLoop(waitStrategy);
+            executor.execute(this.eventLoops[i]::run);
+        }
+    }
+
+    /**
+     * @return the next loop which a channel should be registered with
+     */
+    @NotNull
+    EventLoop next() {
+        return this.eventLoops[Math.floorMod(this.nextIndex.getAndIncrement(), this.eventLoops.length)];
+    }
+
+    /**
+     * @return the amount of loops in this group
+     */
+    @Contract(pure = true)
+    public int getThreadCount() {
+        return this.eventLoops.length;
+    }
+
+    /**
+     * Stops all loops of this group and closes all connections which are still registered with them.
+     */
+    @Override
+    public void close() {
+        for (EventLoop eventLoop : this.eventLoops)
+            eventLoop.shutdown();
+        if (this.ownedExecutor != null)
+            this.ownedExecutor.shutdown();
+    }
+
+    @NotNull
+    private static ExecutorService createExecutor(int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r);
+            t.setName("SCNet EventLoop #" + THREAD_COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.tth05.scnet;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.channels.SelectionKey;
+
+/**
+ * A handler for a channel which is registered with an {@link EventLoop}. All methods are called on the thread of the
+ * event loop.
+ */
+interface ISelectionHandler {
+
+    /**
+     * Called when the key of the registered channel was selected.
+     *
+     * @param key the selected key
+     */
+    void handleSelection(@NotNull SelectionKey key);
+
+    /**
+     * Called once in every iteration of the event loop, before it waits for its selector.
+     *
+     * @return {@code true} if any work was done, which prevents the loop from waiting; {@code false} otherwise
+     */
+    default boolean handleIteration() {
+        return false;
+    }
+
+    /**
+     * Called when the event loop shuts down while this handler is still registered.
+     */
+    void handleClose();
+}
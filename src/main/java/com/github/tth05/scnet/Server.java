@@ -1,5 +1,7 @@
 package com.github.tth05.scnet;
 
+import com.github.tth05.scnet.message.AbstractMessage;
+import com.github.tth05.scnet.message.EncodedMessage;
 import com.github.tth05.scnet.message.IMessageBus;
 import com.github.tth05.scnet.message.IMessageProcessor;
 import com.github.tth05.scnet.message.impl.DefaultMessageBus;
@@ -9,25 +11,37 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.net.SocketAddress;
-import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.channels.SocketChannel;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class Server implements AutoCloseable {
 
     /**
-     * The executor on which the server thread will run
+     * The executor on which the server thread will run, if this server does not use a shared {@link EventLoopGroup}
      */
-    @NotNull
+    @Nullable
     private final Executor executor;
+    /**
+     * The shared group which this server is registered with, or {@code null} if the server gets a dedicated loop on
+     * the {@link #executor}
+     */
+    @Nullable
+    private final EventLoopGroup sharedGroup;
+    /**
+     * The dedicated group, created when binding
+     */
+    @Nullable
+    private EventLoopGroup dedicatedGroup;
 
     /**
      * The message bus
@@ -41,24 +55,53 @@ public class Server implements AutoCloseable {
     private IMessageProcessor messageProcessor = new DefaultMessageProcessor();
 
     /**
-     * These listeners are notified when a connection is established
+     * These listeners are notified when a connection is established. This list is shared with the accepted clients.
      */
-    private final List<IConnectionListener> connectionListeners = new ArrayList<>();
+    private final List<IConnectionListener> connectionListeners = new CopyOnWriteArrayList<>();
 
-    /**
-     * Selector used to check for {@link SelectionKey#OP_ACCEPT}.
-     */
-    private final Selector selector;
     /**
      * Internal socket channel used to accept clients
      */
     private final ServerSocketChannel serverSocketChannel;
+    /**
+     * The loop which the {@link #serverSocketChannel} is registered with. Accepted clients are registered with the
+     * same loop.
+     */
+    @Nullable
+    private volatile EventLoop eventLoop;
+    /**
+     * Accepts new clients when the {@link #serverSocketChannel} is selected
+     */
+    @NotNull
+    private final ISelectionHandler acceptHandler = new ISelectionHandler() {
+        @Override
+        public void handleSelection(@NotNull SelectionKey key) {
+            if (key.isAcceptable())
+                acceptClient();
+        }
+
+        @Override
+        public void handleClose() {
+            closeClient();
+        }
+    };
+
+    /**
+     * @see #setTlsOptions(TlsOptions)
+     */
+    @Nullable
+    private volatile TlsOptions tlsOptions;
+    /**
+     * @see #setSocketOptions(SocketOptions)
+     */
+    @Nullable
+    private volatile SocketOptions socketOptions;
 
     /**
      * The currently connected client
      */
     @Nullable
-    private ServerClient client;
+    private volatile ServerClient client;
 
     public Server() {
         this(new ThreadPoolExecutor(1, 1,
@@ -76,12 +119,23 @@ public class Server implements AutoCloseable {
      *                 thread.
      */
     public Server(@NotNull Executor executor) {
+        this(executor, null);
+    }
+
+    /**
+     * @param eventLoopGroup a group whose threads are shared with other clients and servers. The group is not closed
+     *                       when this server is closed.
+     */
+    public Server(@NotNull EventLoopGroup eventLoopGroup) {
+        this(null, eventLoopGroup);
+    }
+
+    private Server(@Nullable Executor executor, @Nullable EventLoopGroup sharedGroup) {
         this.executor = executor;
+        this.sharedGroup = sharedGroup;
         try {
-            this.selector = Selector.open();
             this.serverSocketChannel = ServerSocketChannel.open();
             this.serverSocketChannel.configureBlocking(false);
-            this.serverSocketChannel.register(this.selector, SelectionKey.OP_ACCEPT);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -94,120 +148,207 @@ public class Server implements AutoCloseable {
      */
     public void bind(SocketAddress address) {
         try {
+            SocketOptions socketOptions = this.socketOptions;
+            //Accepted connections inherit the receive buffer, which has to be set before they are established
+            if (socketOptions != null)
+                socketOptions.applyReceiveBufferSize(this.serverSocketChannel);
             this.serverSocketChannel.bind(address, 1);
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
 
-        this.executor.execute(() -> {
-            while (this.selector.isOpen()) {
-                acceptClient();
-                if (this.client != null) {
-                    if (!this.client.process()) {
-                        this.messageProcessor.reset();
-                        this.client.close();
-                        this.client = null;
-                    }
-                }
+        EventLoop eventLoop;
+        if (this.sharedGroup != null) {
+            eventLoop = this.sharedGroup.next();
+        } else {
+            EventLoopGroup group = new EventLoopGroup(Objects.requireNonNull(this.executor), 1, () -> this.messageProcessor.getWaitStrategy(), false);
+            synchronized (this) {
+                this.dedicatedGroup = group;
             }
-        });
+            eventLoop = group.next();
+        }
+
+        this.eventLoop = eventLoop;
+        eventLoop.register(this.serverSocketChannel, SelectionKey.OP_ACCEPT, this.acceptHandler);
     }
 
     /**
-     * Queries this {@link #selector} for {@link SelectionKey#OP_ACCEPT} and accepts any new clients. If the connection
-     * with the current client is still open, any new clients trying to connect will get their connection closed.
+     * Accepts any new clients. If the connection with the current client is still open, any new clients trying to
+     * connect will get their connection closed. Called on the loop thread.
      */
     private void acceptClient() {
-        if (!this.selector.isOpen())
+        EventLoop eventLoop = this.eventLoop;
+        if (eventLoop == null)
             return;
 
         try {
-            int select;
-            if (this.client == null) //We add some delay here to save the processor
-                select = this.selector.select(10);
-            else
-                select = this.selector.selectNow();
-
-            if (select < 1)
-                return;
-
-            for (Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator(); iterator.hasNext(); ) {
-                SelectionKey key = iterator.next();
-                if (key.isAcceptable()) {
-                    iterator.remove();
-
-                    //Check if the current client is still valid
-                    boolean hasClient = this.client != null && this.client.isConnected();
-                    if (!hasClient)
-                        this.client = null;
-
-                    if (!hasClient) { //Accept a new client
-                        this.messageProcessor.reset();
-
-                        this.client = new ServerClient(
-                                this.serverSocketChannel.accept(),
-                                this.connectionListeners,
-                                getMessageProcessor(),
-                                getMessageBus()
-                        );
-                    } else { //Block other clients trying to connect
-                        this.serverSocketChannel.accept().close();
-                    }
-                } else {
-                    throw new IllegalStateException("Unknown key " + key);
+            SocketChannel channel;
+            while ((channel = this.serverSocketChannel.accept()) != null) {
+                //Check if the current client is still valid. Pending data might reveal that it already disconnected.
+                ServerClient client = this.client;
+                if (client != null)
+                    client.read();
+
+                if (this.client == null) { //Accept a new client
+                    this.messageProcessor.reset();
+                    SocketOptions socketOptions = this.socketOptions;
+                    if (socketOptions != null)
+                        socketOptions.apply(channel);
+
+                    client = new ServerClient(channel, this);
+                    client.register(eventLoop);
+                    this.client = client;
+                } else { //Block other clients trying to connect
+                    channel.close();
                 }
             }
         } catch (IOException e) {
             e.printStackTrace();
-        } catch (ClosedSelectorException ignored) {
         }
     }
 
+    /**
+     * Called by the current client once it was closed.
+     */
+    void onClientDisconnected(@NotNull ServerClient client) {
+        if (this.client == client)
+            this.client = null;
+    }
+
+    /**
+     * @return the connection listeners, which are shared with the accepted clients
+     */
+    @NotNull
+    List<IConnectionListener> getConnectionListeners() {
+        return this.connectionListeners;
+    }
+
     /**
      * @return {@code true} if a client is connected and the connection is open; {@code false} otherwise
      */
     public boolean isClientConnected() {
-        return this.client != null && this.client.isConnected();
+        ServerClient client = this.client;
+        return client != null && client.isConnected();
     }
 
     /**
      * Closes the connection to the current client
      */
     public void closeClient() {
-        if (this.client != null)
-            this.client.close();
+        ServerClient client = this.client;
+        if (client != null)
+            client.disconnect();
+    }
+
+    /**
+     * Sends the given {@code message} to the clients of all given servers, while only encoding it once. Servers
+     * without a connected client, and servers whose processor did not register the message type for sending, are
+     * skipped.
+     * <pre>{@code
+     * //One server per subscriber, sharing the threads of a group
+     * List<Server> subscribers = ...;
+     * Server.broadcast(new PriceUpdateMessage(price), subscribers);
+     * }</pre>
+     *
+     * @param message the message to send
+     * @param servers the servers whose clients should receive the message
+     * @return the number of servers which the message was enqueued on
+     */
+    public static int broadcast(@NotNull AbstractMessage message, @NotNull Iterable<? extends Server> servers) {
+        EncodedMessage encodedMessage = null;
+        int count = 0;
+        for (Server server : servers) {
+            IMessageProcessor processor = server.getMessageProcessor();
+            if (!server.isClientConnected() || !processor.canSend(message.getClass()))
+                continue;
+
+            //Encode lazily, nobody might be interested in this message
+            if (encodedMessage == null)
+                encodedMessage = EncodedMessage.encode(message);
+
+            encodedMessage.retain();
+            processor.enqueueMessage(encodedMessage);
+            count++;
+        }
+
+        if (encodedMessage != null)
+            encodedMessage.release();
+        return count;
     }
 
     @Override
     public void close() {
+        closeClient();
+
+        EventLoop eventLoop = this.eventLoop;
+        this.eventLoop = null;
+        try {
+            if (eventLoop != null)
+                eventLoop.deregister(this.serverSocketChannel, this.acceptHandler).get(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            e.printStackTrace();
+        }
+
         try {
-            this.selector.close();
             this.serverSocketChannel.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
+
+        EventLoopGroup group;
+        synchronized (this) {
+            group = this.dedicatedGroup;
+            this.dedicatedGroup = null;
+        }
+        if (group != null)
+            group.close();
+        this.messageProcessor.releaseResources();
+    }
+
+    /**
+     * Enables TLS for all clients which are accepted afterwards. The connection listeners are notified once the
+     * handshake completed, a client which fails the handshake is disconnected.
+     *
+     * @param tlsOptions the options, or {@code null} to disable TLS
+     */
+    public void setTlsOptions(@Nullable TlsOptions tlsOptions) {
+        this.tlsOptions = tlsOptions;
+    }
+
+    @Nullable
+    public TlsOptions getTlsOptions() {
+        return this.tlsOptions;
+    }
+
+    /**
+     * Sets the socket options for all clients which are accepted afterwards. The receive buffer size is set on the
+     * listening socket, and therefore only takes effect if the options are set before binding.
+     *
+     * @param socketOptions the options, or {@code null} to use the defaults of the operating system
+     */
+    public void setSocketOptions(@Nullable SocketOptions socketOptions) {
+        this.socketOptions = socketOptions;
+    }
+
+    @Nullable
+    public SocketOptions getSocketOptions() {
+        return this.socketOptions;
     }
 
     /**
      * Adds a listener that is notified about connection events.
      */
     public void addConnectionListener(IConnectionListener listener) {
-        synchronized (this.connectionListeners) {
-            this.connectionListeners.add(listener);
-            if (this.client != null)
-                this.client.addConnectionListener(listener);
-        }
+        this.connectionListeners.add(listener);
     }
 
     /**
      * Removes a connection listener
      */
     public void removeConnectionListener(IConnectionListener listener) {
-        synchronized (this.connectionListeners) {
-            this.connectionListeners.remove(listener);
-            if (this.client != null)
-                this.client.removeConnectionListener(listener);
-        }
+        this.connectionListeners.remove(listener);
     }
 
     public void setMessageProcessor(@NotNull IMessageProcessor messageProcessor) {
@@ -1,29 +1,41 @@
 package com.github.tth05.scnet;
 
-import com.github.tth05.scnet.message.IMessageBus;
-import com.github.tth05.scnet.message.IMessageProcessor;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import javax.net.ssl.SSLEngine;
 import java.nio.channels.SocketChannel;
-import java.util.List;
 
 /**
  * Wrapper class for any client which is accepted by the server.
  */
 class ServerClient extends AbstractClient {
 
-    ServerClient(@NotNull SocketChannel socketChannel, @NotNull List<IConnectionListener> connectionListeners, @NotNull IMessageProcessor messageProcessor, @NotNull IMessageBus messageBus) {
+    /**
+     * The server which accepted this client
+     */
+    @NotNull
+    private final Server server;
+
+    ServerClient(@NotNull SocketChannel socketChannel, @NotNull Server server) {
         super(socketChannel);
-        setMessageProcessor(messageProcessor);
-        setMessageBus(messageBus);
+        this.server = server;
+        setMessageProcessor(server.getMessageProcessor());
+        setMessageBus(server.getMessageBus());
+
+        this.connectionListeners = server.getConnectionListeners();
+    }
 
-        this.connectionListeners = connectionListeners;
-        this.connectionListeners.forEach(IConnectionListener::onConnected);
+    @Nullable
+    @Override
+    SSLEngine createSslEngine() {
+        TlsOptions tlsOptions = this.server.getTlsOptions();
+        return tlsOptions != null ? tlsOptions.createEngine(null) : null;
     }
 
     @Override
-    public void close() {
-        super.close();
-        onDisconnected();
+    protected void onDisconnected() {
+        this.server.onClientDisconnected(this);
+        super.onDisconnected();
     }
 }
@@ -0,0 +1,115 @@
+package com.github.tth05.scnet;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.NetworkChannel;
+
+/**
+ * Socket level options for the connections of a {@link Client} or {@link Server}. Options which are not set keep the
+ * defaults of the operating system.
+ * <pre>{@code
+ * //Latency: send small messages right away
+ * client.setSocketOptions(new SocketOptions().setTcpNoDelay(true));
+ * //Throughput: large kernel buffers
+ * server.setSocketOptions(new SocketOptions()
+ *         .setSendBufferSize(1 << 20)
+ *         .setReceiveBufferSize(1 << 20));
+ * }</pre>
+ * The options are applied before connecting, and to the listening socket before binding, because a receive buffer
+ * larger than 64KB only takes full effect if it is set before the connection is established. Changing the options
+ * afterwards only affects the following connections.
+ */
+public class SocketOptions {
+
+    @Nullable
+    private Boolean tcpNoDelay;
+    @Nullable
+    private Integer sendBufferSize;
+    @Nullable
+    private Integer receiveBufferSize;
+
+    /**
+     * @param tcpNoDelay {@code true} to disable Nagle's algorithm, which sends small writes immediately instead of
+     *                   waiting for outstanding acknowledgements
+     */
+    @NotNull
+    public SocketOptions setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    /**
+     * @param sendBufferSize the size in bytes of the kernel send buffer ({@code SO_SNDBUF})
+     */
+    @NotNull
+    public SocketOptions setSendBufferSize(int sendBufferSize) {
+        if (sendBufferSize < 1)
+            throw new IllegalArgumentException("sendBufferSize has to be greater than zero");
+
+        this.sendBufferSize = sendBufferSize;
+        return this;
+    }
+
+    /**
+     * @param receiveBufferSize the size in bytes of the kernel receive buffer ({@code SO_RCVBUF})
+     */
+    @NotNull
+    public SocketOptions setReceiveBufferSize(int receiveBufferSize) {
+        if (receiveBufferSize < 1)
+            throw new IllegalArgumentException("receiveBufferSize has to be greater than zero");
+
+        this.receiveBufferSize = receiveBufferSize;
+        return this;
+    }
+
+    /**
+     * @return the value of {@code TCP_NODELAY}, or {@code null} if the default is used
+     */
+    @Nullable
+    @Contract(pure = true)
+    public Boolean getTcpNoDelay() {
+        return this.tcpNoDelay;
+    }
+
+    /**
+     * @return the value of {@code SO_SNDBUF}, or {@code null} if the default is used
+     */
+    @Nullable
+    @Contract(pure = true)
+    public Integer getSendBufferSize() {
+        return this.sendBufferSize;
+    }
+
+    /**
+     * @return the value of {@code SO_RCVBUF}, or {@code null} if the default is used
+     */
+    @Nullable
+    @Contract(pure = true)
+    public Integer getReceiveBufferSize() {
+        return this.receiveBufferSize;
+    }
+
+    /**
+     * Sets all options on the given socket channel, which should not be connected yet.
+     */
+    void apply(@NotNull NetworkChannel channel) throws IOException {
+        if (this.tcpNoDelay != null)
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, this.tcpNoDelay);
+        if (this.sendBufferSize != null)
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, this.sendBufferSize);
+        applyReceiveBufferSize(channel);
+    }
+
+    /**
+     * Sets the receive buffer size on the given channel, which is the only option of a listening socket. Accepted
+     * connections inherit it.
+     */
+    void applyReceiveBufferSize(@NotNull NetworkChannel channel) throws IOException {
+        if (this.receiveBufferSize != null)
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, this.receiveBufferSize);
+    }
+}
@@ -0,0 +1,394 @@
+package com.github.tth05.scnet;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encrypts and decrypts the data of a non-blocking {@link SocketChannel} using an {@link SSLEngine}. The message
+ * processor reads from and writes to this channel instead of the socket channel, while the socket channel stays
+ * registered with the event loop.
+ * <br>
+ * The handshake is driven by repeatedly calling {@link #handshake()} on the loop thread. The delegated tasks of the
+ * engine, for example certificate validation, run on a separate executor, after which the loop is woken up again.
+ * The network buffers are taken from a pool which is shared by all connections.
+ */
+final class TlsChannel implements ByteChannel {
+
+    private static final int MAX_POOLED_BUFFERS = 64;
+    /**
+     * Direct buffers of released channels
+     */
+    private static final Queue<ByteBuffer> BUFFER_POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED_BUFFERS = new AtomicInteger();
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    @NotNull
+    private final SocketChannel channel;
+    @NotNull
+    private final SSLEngine engine;
+    /**
+     * Runs the delegated tasks of the engine
+     */
+    @NotNull
+    private final Executor taskExecutor;
+    /**
+     * Wakes up the loop once the delegated tasks completed
+     */
+    @NotNull
+    private final Runnable taskCompletionHandler;
+
+    /**
+     * Contains received encrypted bytes in {@code [0;position[}
+     */
+    @NotNull
+    private ByteBuffer netIn;
+    /**
+     * Contains encrypted bytes which still have to be written in {@code [0;position[}
+     */
+    @NotNull
+    private ByteBuffer netOut;
+    /**
+     * Contains decrypted bytes which were not read yet in {@code [0;position[}
+     */
+    @NotNull
+    private ByteBuffer appIn;
+
+    private volatile boolean runningTasks;
+    private boolean handshakeComplete;
+    private boolean closed;
+
+    TlsChannel(@NotNull SocketChannel channel, @NotNull SSLEngine engine, @NotNull Runnable taskCompletionHandler) throws SSLException {
+        this(channel, engine, ForkJoinPool.commonPool(), taskCompletionHandler);
+    }
+
+    TlsChannel(@NotNull SocketChannel channel, @NotNull SSLEngine engine, @NotNull Executor taskExecutor, @NotNull Runnable taskCompletionHandler) throws SSLException {
+        this.channel = channel;
+        this.engine = engine;
+        this.taskExecutor = taskExecutor;
+        this.taskCompletionHandler = taskCompletionHandler;
+
+        SSLSession session = engine.getSession();
+        this.netIn = acquireBuffer(session.getPacketBufferSize());
+        this.netOut = acquireBuffer(session.getPacketBufferSize());
+        this.appIn = acquireBuffer(session.getApplicationBufferSize());
+        engine.beginHandshake();
+    }
+
+    /**
+     * Continues the handshake as far as possible without blocking.
+     *
+     * @return {@code true} if the handshake is complete; {@code false} if it has to wait for data, for the socket to
+     * accept more data, or for delegated tasks
+     * @throws IOException if the handshake failed or the connection was closed
+     */
+    boolean handshake() throws IOException {
+        if (this.handshakeComplete)
+            return true;
+        if (!flush())
+            return false;
+
+        while (true) {
+            switch (this.engine.getHandshakeStatus()) {
+                case NEED_WRAP:
+                    wrap(EMPTY);
+                    if (!flush())
+                        return false;
+                    break;
+                case NEED_UNWRAP:
+                case NEED_UNWRAP_AGAIN:
+                    SSLEngineResult result = unwrap();
+                    if (result.getStatus() == SSLEngineResult.Status.CLOSED)
+                        throw new EOFException("Connection closed during the TLS handshake");
+                    if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        int read = readNetwork();
+                        if (read < 0)
+                            throw new EOFException("Connection closed during the TLS handshake");
+                        if (read == 0)
+                            return false;
+                    }
+                    break;
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    return false;
+                default:
+                    this.handshakeComplete = true;
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * Reads and decrypts as many bytes as are available and fit into the given buffer. Received data is only kept
+     * back if the buffer is full, so the socket channel being selected for reading is enough to know that there's more
+     * to read.
+     */
+    @Override
+    public int read(@NotNull ByteBuffer dst) throws IOException {
+        int total = drainAppIn(dst);
+        while (dst.hasRemaining()) {
+            SSLEngineResult result = unwrap();
+            handlePostHandshake(result);
+            switch (result.getStatus()) {
+                case OK:
+                    total += drainAppIn(dst);
+                    break;
+                case BUFFER_UNDERFLOW:
+                    int read = readNetwork();
+                    if (read < 0)
+                        return total > 0 ? total : -1;
+                    if (read == 0)
+                        return total;
+                    break;
+                default:
+                    return total > 0 ? total : -1;
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Encrypts bytes of the given buffer until the socket channel does not accept any more data.
+     *
+     * @return the amount of bytes which were consumed from the given buffer. Consumed bytes might still be pending in
+     * this channel, which is indicated by {@link #hasPendingOutput()}.
+     */
+    @Override
+    public int write(@NotNull ByteBuffer src) throws IOException {
+        if (!flush())
+            return 0;
+
+        int consumed = 0;
+        while (src.hasRemaining()) {
+            SSLEngineResult result = wrap(src);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED)
+                throw new SSLException("Engine is closed");
+
+            consumed += result.bytesConsumed();
+            if (!flush())
+                break;
+        }
+
+        return consumed;
+    }
+
+    /**
+     * Writes pending encrypted bytes to the socket channel.
+     *
+     * @return {@code true} if nothing is pending anymore; {@code false} otherwise
+     */
+    boolean flush() throws IOException {
+        if (this.netOut.position() == 0)
+            return true;
+
+        this.netOut.flip();
+        try {
+            while (this.netOut.hasRemaining()) {
+                if (this.channel.write(this.netOut) < 1)
+                    break;
+            }
+        } finally {
+            this.netOut.compact();
+        }
+        return this.netOut.position() == 0;
+    }
+
+    /**
+     * @return {@code true} if encrypted bytes are waiting for the socket channel to accept them; {@code false}
+     * otherwise
+     */
+    boolean hasPendingOutput() {
+        return this.netOut.position() > 0;
+    }
+
+    boolean isHandshakeComplete() {
+        return this.handshakeComplete;
+    }
+
+    @NotNull
+    SSLSession getSession() {
+        return this.engine.getSession();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !this.closed && this.channel.isOpen();
+    }
+
+    /**
+     * Sends a close notification if the socket channel accepts it right away, and returns the buffers to the pool.
+     * The socket channel is not closed. Must not be called while the loop is still using this channel.
+     */
+    @Override
+    public void close() {
+        if (this.closed)
+            return;
+
+        this.closed = true;
+        this.engine.closeOutbound();
+        try {
+            wrap(EMPTY);
+            flush();
+        } catch (IOException ignored) {
+            //The connection is closed anyway
+        }
+
+        releaseBuffer(this.netIn);
+        releaseBuffer(this.netOut);
+        releaseBuffer(this.appIn);
+    }
+
+    /**
+     * Unwraps the next record of the {@link #netIn} buffer into the {@link #appIn} buffer, growing the latter if
+     * needed.
+     */
+    @NotNull
+    private SSLEngineResult unwrap() throws SSLException {
+        while (true) {
+            SSLEngineResult result;
+            this.netIn.flip();
+            try {
+                result = this.engine.unwrap(this.netIn, this.appIn);
+            } finally {
+                this.netIn.compact();
+            }
+
+            if (result.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW)
+                return result;
+            this.appIn = grow(this.appIn, this.engine.getSession().getApplicationBufferSize());
+        }
+    }
+
+    /**
+     * Wraps the given buffer into the {@link #netOut} buffer, growing the latter if needed.
+     */
+    @NotNull
+    private SSLEngineResult wrap(@NotNull ByteBuffer src) throws SSLException {
+        while (true) {
+            SSLEngineResult result = this.engine.wrap(src, this.netOut);
+            if (result.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW)
+                return result;
+            this.netOut = grow(this.netOut, this.engine.getSession().getPacketBufferSize());
+        }
+    }
+
+    /**
+     * Reads from the socket channel into the {@link #netIn} buffer, growing it if a record does not fit.
+     *
+     * @return the amount of read bytes, or {@code -1} if the end of the stream was reached
+     */
+    private int readNetwork() throws IOException {
+        if (!this.netIn.hasRemaining())
+            this.netIn = grow(this.netIn, this.engine.getSession().getPacketBufferSize());
+        return this.channel.read(this.netIn);
+    }
+
+    /**
+     * Handles the handshake messages which arrive after the initial handshake, for example new session tickets or
+     * key updates.
+     */
+    private void handlePostHandshake(@NotNull SSLEngineResult result) throws IOException {
+        SSLEngineResult.HandshakeStatus status = result.getHandshakeStatus();
+        if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+            Runnable task;
+            while ((task = this.engine.getDelegatedTask()) != null)
+                task.run();
+            status = this.engine.getHandshakeStatus();
+        }
+        if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+            wrap(EMPTY);
+            flush();
+        }
+    }
+
+    /**
+     * Runs the delegated tasks of the engine on the {@link #taskExecutor}, unless they're already running.
+     */
+    private void runDelegatedTasks() {
+        if (this.runningTasks)
+            return;
+
+        this.runningTasks = true;
+        this.taskExecutor.execute(() -> {
+            Runnable task;
+            while ((task = this.engine.getDelegatedTask()) != null)
+                task.run();
+            this.runningTasks = false;
+            this.taskCompletionHandler.run();
+        });
+    }
+
+    /**
+     * Copies as many decrypted bytes as possible into the given buffer.
+     *
+     * @return the amount of copied bytes
+     */
+    private int drainAppIn(@NotNull ByteBuffer dst) {
+        if (this.appIn.position() == 0)
+            return 0;
+
+        this.appIn.flip();
+        int length = Math.min(this.appIn.remaining(), dst.remaining());
+        int limit = this.appIn.limit();
+        this.appIn.limit(this.appIn.position() + length);
+        dst.put(this.appIn);
+        this.appIn.limit(limit);
+        this.appIn.compact();
+        return length;
+    }
+
+    /**
+     * Moves the content of the given buffer, which is in write mode, into a bigger buffer.
+     */
+    @NotNull
+    private static ByteBuffer grow(@NotNull ByteBuffer buffer, int minimumIncrease) {
+        ByteBuffer newBuffer = acquireBuffer(buffer.capacity() + Math.max(minimumIncrease, buffer.capacity()));
+        buffer.flip();
+        newBuffer.put(buffer);
+        releaseBuffer(buffer);
+        return newBuffer;
+    }
+
+    @NotNull
+    private static ByteBuffer acquireBuffer(int size) {
+        ByteBuffer buffer;
+        while ((buffer = BUFFER_POOL.poll()) != null) {
+            POOLED_BUFFERS.decrementAndGet();
+            //Smaller buffers are dropped, there's usually only a single size
+            if (buffer.capacity() >= size) {
+                buffer.clear();
+                return buffer;
+            }
+        }
+
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    private static void releaseBuffer(@NotNull ByteBuffer buffer) {
+        if (POOLED_BUFFERS.incrementAndGet() <= MAX_POOLED_BUFFERS)
+            BUFFER_POOL.offer(buffer);
+        else
+            POOLED_BUFFERS.decrementAndGet();
+    }
+
+    /**
+     * @return the amount of buffers which are currently in the pool
+     */
+    static int getPooledBufferCount() {
+        return POOLED_BUFFERS.get();
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.tth05.scnet;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * Enables TLS for a {@link Client} or {@link Server}. The keys and trusted certificates are provided by the given
+ * {@link SSLContext}.
+ * <pre>{@code
+ * client.setTlsOptions(new TlsOptions(sslContext)
+ *         .setProtocols("TLSv1.3")
+ *         .setEndpointIdentification(true));
+ * }</pre>
+ * Clients re-use the same options for every connection, which allows the {@link SSLContext} to resume the previous
+ * session when reconnecting to the same address, instead of doing a full handshake.
+ */
+public class TlsOptions {
+
+    @NotNull
+    private final SSLContext sslContext;
+    private String @Nullable [] protocols;
+    private String @Nullable [] cipherSuites;
+    private boolean endpointIdentification;
+    private boolean needClientAuth;
+
+    public TlsOptions(@NotNull SSLContext sslContext) {
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * @param protocols the enabled protocols, or {@code null} to use the defaults of the context
+     */
+    @NotNull
+    public TlsOptions setProtocols(String @Nullable ... protocols) {
+        this.protocols = protocols != null ? protocols.clone() : null;
+        return this;
+    }
+
+    /**
+     * @param cipherSuites the enabled cipher suites, or {@code null} to use the defaults of the context
+     */
+    @NotNull
+    public TlsOptions setCipherSuites(String @Nullable ... cipherSuites) {
+        this.cipherSuites = cipherSuites != null ? cipherSuites.clone() : null;
+        return this;
+    }
+
+    /**
+     * @param endpointIdentification {@code true} if a client should verify that the certificate of the server matches
+     *                               the host name it connected to
+     */
+    @NotNull
+    public TlsOptions setEndpointIdentification(boolean endpointIdentification) {
+        this.endpointIdentification = endpointIdentification;
+        return this;
+    }
+
+    /**
+     * @param needClientAuth {@code true} if a server should require clients to authenticate with a certificate
+     */
+    @NotNull
+    public TlsOptions setNeedClientAuth(boolean needClientAuth) {
+        this.needClientAuth = needClientAuth;
+        return this;
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    public SSLContext getSslContext() {
+        return this.sslContext;
+    }
+
+    @Contract(pure = true)
+    public boolean isEndpointIdentification() {
+        return this.endpointIdentification;
+    }
+
+    @Contract(pure = true)
+    public boolean isNeedClientAuth() {
+        return this.needClientAuth;
+    }
+
+    /**
+     * Creates an engine for a new connection.
+     *
+     * @param peerAddress the address a client connects to, which identifies the session to resume; {@code null} for a
+     *                    server
+     */
+    @NotNull
+    SSLEngine createEngine(@Nullable SocketAddress peerAddress) {
+        SSLEngine engine;
+        if (peerAddress instanceof InetSocketAddress) {
+            InetSocketAddress address = (InetSocketAddress) peerAddress;
+            engine = this.sslContext.createSSLEngine(address.getHostString(), address.getPort());
+        } else {
+            engine = this.sslContext.createSSLEngine();
+        }
+
+        boolean clientMode = peerAddress != null;
+        engine.setUseClientMode(clientMode);
+        SSLParameters parameters = engine.getSSLParameters();
+        if (this.protocols != null)
+            parameters.setProtocols(this.protocols);
+        if (this.cipherSuites != null)
+            parameters.setCipherSuites(this.cipherSuites);
+        if (clientMode && this.endpointIdentification)
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        if (!clientMode)
+            parameters.setNeedClientAuth(this.needClientAuth);
+        engine.setSSLParameters(parameters);
+        return engine;
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.tth05.scnet.message;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The base class for state messages where only the newest value of each key matters, for example the position of an
+ * entity. While a message is still queued for sending, enqueueing a newer message of the same type with an
+ * {@link Object#equals(Object) equal} key replaces the queued one in place. The newer message takes over the position
+ * of the replaced message in the queue, so a slow peer only receives the latest state of each key instead of every
+ * stale version of it.
+ * <br>
+ * Messages which were already written to the connection are never replaced. Conflation only applies to the regular
+ * queue of the message processor, not to streams or messages which are appended to an outbound journal.
+ */
+public abstract class AbstractConflatingMessage extends AbstractMessage {
+
+    /**
+     * @return the key which identifies the state this message describes. Has to implement {@link Object#equals(Object)}
+     * and {@link Object#hashCode()}, and must not change while the message is queued.
+     */
+    @NotNull
+    public abstract Object getConflationKey();
+}
@@ -0,0 +1,18 @@
+package com.github.tth05.scnet.message;
+
+/**
+ * The base class for large state messages which change only slightly between versions. Instead of the full payload,
+ * the message processor sends the difference to the previous message of the same type, which the peer already
+ * received on the same connection. The peer applies the difference to its copy of the previous version, so listeners
+ * always receive the complete message.
+ * <br>
+ * The difference is computed on the encoded bytes, so subclasses should write their fields at stable offsets, for
+ * example by writing fixed size fields before variable size ones. If the difference is not smaller than the message
+ * itself, the full message is sent instead. The previous versions are dropped once the connection is lost, unless a
+ * reliable session is resumed.
+ * <br>
+ * Only messages of the regular queue are delta encoded. Messages which are enqueued on a stream, appended to an
+ * outbound journal or broadcast as an {@link EncodedMessage} are always sent in full.
+ */
+public abstract class AbstractDeltaMessage extends AbstractMessage {
+}
@@ -0,0 +1,209 @@
+package com.github.tth05.scnet.message;
+
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The base class for messages which don't copy their data into fields, but instead read and write fields at fixed
+ * offsets directly in a wrapped {@link ByteBuffer}. Subclasses define the layout by passing offsets to the accessor
+ * methods of this class:
+ * <pre>{@code
+ * public double getX() {
+ *     return getDouble(X_OFFSET);
+ * }
+ * }</pre>
+ * <strong>Receiving:</strong><br>
+ * The message processor keeps a single instance per registered flyweight type and wraps it around the frame in its
+ * read buffer while the listeners are called. No data is copied, but the wrapped data is only valid until the listener
+ * returns. The message must therefore not be kept around; any required values have to be copied out of it.
+ * <br><br>
+ * <strong>Sending:</strong><br>
+ * A flyweight created using {@link #AbstractFlyweightMessage(int)} wraps its own buffer, which is filled using the put
+ * methods and then written in a single bulk copy.
+ */
+public abstract class AbstractFlyweightMessage extends AbstractMessage {
+
+    /**
+     * The wrapped buffer
+     */
+    @Nullable
+    private ByteBuffer buffer;
+    /**
+     * The absolute index in {@link #buffer} at which this message starts
+     */
+    private int offset;
+    /**
+     * The length in bytes of this message
+     */
+    private int length;
+
+    /**
+     * Creates a flyweight which doesn't wrap any buffer. Messages registered with a message processor need a public
+     * default constructor which calls this constructor.
+     */
+    protected AbstractFlyweightMessage() {
+    }
+
+    /**
+     * Creates a flyweight which wraps a new buffer with the given {@code length}. Used to create messages which will
+     * be sent.
+     *
+     * @param length the length of the message in bytes
+     */
+    protected AbstractFlyweightMessage(int length) {
+        wrap(ByteBuffer.allocate(length), 0, length);
+    }
+
+    /**
+     * Wraps this flyweight around the given range of the given {@code buffer}. The position and limit of the buffer
+     * are not used or modified by this flyweight.
+     *
+     * @param buffer the buffer containing the message data
+     * @param offset the absolute index at which the message starts
+     * @param length the length of the message
+     * @throws IndexOutOfBoundsException if the range is not contained in the buffer
+     */
+    public final void wrap(@NotNull ByteBuffer buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buffer.capacity())
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", capacity: " + buffer.capacity());
+
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Releases the reference to the currently wrapped buffer.
+     */
+    public final void unwrap() {
+        this.buffer = null;
+        this.offset = 0;
+        this.length = 0;
+    }
+
+    /**
+     * @return the length of the wrapped message in bytes
+     */
+    public final int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Copies the remaining bytes of the given stream into a new buffer and wraps it. The message processor does not
+     * call this method for registered flyweights, it only exists to make flyweights usable like any other message.
+     */
+    @Override
+    public final void read(@NotNull ByteBufferInputStream messageStream) {
+        int length = messageStream.remaining();
+        wrap(ByteBuffer.wrap(messageStream.readByteArray(length)), 0, length);
+    }
+
+    /**
+     * Writes the wrapped bytes to the given stream.
+     */
+    @Override
+    public final void write(@NotNull ByteBufferOutputStream messageStream) {
+        ByteBuffer buffer = buffer();
+        if (buffer.hasArray()) {
+            messageStream.writeByteArray(buffer.array(), buffer.arrayOffset() + this.offset, this.length);
+        } else {
+            ByteBuffer view = buffer.duplicate();
+            view.limit(this.offset + this.length);
+            view.position(this.offset);
+            messageStream.writeByteBuffer(view);
+        }
+    }
+
+    protected final byte getByte(int fieldOffset) {
+        return buffer().get(index(fieldOffset, Byte.BYTES));
+    }
+
+    protected final boolean getBoolean(int fieldOffset) {
+        return getByte(fieldOffset) != 0;
+    }
+
+    protected final short getShort(int fieldOffset) {
+        return buffer().getShort(index(fieldOffset, Short.BYTES));
+    }
+
+    protected final int getInt(int fieldOffset) {
+        return buffer().getInt(index(fieldOffset, Integer.BYTES));
+    }
+
+    protected final long getLong(int fieldOffset) {
+        return buffer().getLong(index(fieldOffset, Long.BYTES));
+    }
+
+    protected final float getFloat(int fieldOffset) {
+        return buffer().getFloat(index(fieldOffset, Float.BYTES));
+    }
+
+    protected final double getDouble(int fieldOffset) {
+        return buffer().getDouble(index(fieldOffset, Double.BYTES));
+    }
+
+    /**
+     * Copies {@code length} bytes starting at {@code fieldOffset} into the given array.
+     */
+    protected final void getBytes(int fieldOffset, byte @NotNull [] dst, int dstOffset, int length) {
+        buffer().get(index(fieldOffset, length), dst, dstOffset, length);
+    }
+
+    protected final void putByte(int fieldOffset, byte value) {
+        buffer().put(index(fieldOffset, Byte.BYTES), value);
+    }
+
+    protected final void putBoolean(int fieldOffset, boolean value) {
+        putByte(fieldOffset, (byte) (value ? 1 : 0));
+    }
+
+    protected final void putShort(int fieldOffset, short value) {
+        buffer().putShort(index(fieldOffset, Short.BYTES), value);
+    }
+
+    protected final void putInt(int fieldOffset, int value) {
+        buffer().putInt(index(fieldOffset, Integer.BYTES), value);
+    }
+
+    protected final void putLong(int fieldOffset, long value) {
+        buffer().putLong(index(fieldOffset, Long.BYTES), value);
+    }
+
+    protected final void putFloat(int fieldOffset, float value) {
+        buffer().putFloat(index(fieldOffset, Float.BYTES), value);
+    }
+
+    protected final void putDouble(int fieldOffset, double value) {
+        buffer().putDouble(index(fieldOffset, Double.BYTES), value);
+    }
+
+    /**
+     * Copies {@code length} bytes from the given array into this message, starting at {@code fieldOffset}.
+     */
+    protected final void putBytes(int fieldOffset, byte @NotNull [] src, int srcOffset, int length) {
+        buffer().put(index(fieldOffset, length), src, srcOffset, length);
+    }
+
+    /**
+     * @return the absolute index of the given field in the wrapped buffer
+     * @throws IndexOutOfBoundsException if the field is not contained in this message
+     */
+    private int index(int fieldOffset, int fieldLength) {
+        if (fieldOffset < 0 || fieldOffset + fieldLength > this.length)
+            throw new IndexOutOfBoundsException("Field at " + fieldOffset + " with length " + fieldLength + " exceeds message length " + this.length);
+
+        return this.offset + fieldOffset;
+    }
+
+    @NotNull
+    private ByteBuffer buffer() {
+        if (this.buffer == null)
+            throw new IllegalStateException("Flyweight is not wrapped around a buffer");
+
+        return this.buffer;
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.tth05.scnet.message;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * The base class for messages whose instances are pooled and re-used by the message processor instead of allocating a
+ * new instance for every received message. This is useful for high-frequency messages which are consumed
+ * synchronously by their listeners.
+ * <br><br>
+ * <strong>Lifetime:</strong><br>
+ * A received message is taken from the pool of its type, read and then posted to the {@link IMessageBus}. Once
+ * {@link IMessageBus#post(Object)} returns, the processor calls {@link #release()} and the instance goes back
+ * into the pool, where it will be overwritten by the next received message of the same type. A listener which wants to
+ * keep the message after it returns has to call {@link #retain()} and must call {@link #release()} once it's done
+ * with the message.
+ * <br>
+ * Instances which were created manually, for example to send them, do not belong to any pool. Calling
+ * {@link #retain()} or {@link #release()} on them has no effect.
+ */
+public abstract class AbstractRecyclableMessage extends AbstractMessage {
+
+    private static final AtomicIntegerFieldUpdater<AbstractRecyclableMessage> REFERENCE_COUNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(AbstractRecyclableMessage.class, "referenceCount");
+
+    /**
+     * The pool this instance belongs to
+     */
+    @Nullable
+    MessagePool<?> pool;
+
+    /**
+     * The amount of owners of this message. The message is returned to its {@link #pool} once this reaches zero.
+     */
+    private volatile int referenceCount;
+
+    /**
+     * Prevents this message from being recycled once the listener returns. Every call to this method has to be
+     * followed by a call to {@link #release()}.
+     *
+     * @throws IllegalStateException if this message was already recycled
+     */
+    public final void retain() {
+        if (this.pool == null)
+            return;
+
+        int count;
+        do {
+            count = this.referenceCount;
+            if (count < 1)
+                throw new IllegalStateException("Message was already recycled");
+        } while (!REFERENCE_COUNT_UPDATER.compareAndSet(this, count, count + 1));
+    }
+
+    /**
+     * Gives up one reference to this message. If this was the last reference, the message is returned to its pool
+     * and may not be used anymore.
+     *
+     * @throws IllegalStateException if this message was already recycled
+     */
+    public final void release() {
+        if (this.pool == null)
+            return;
+
+        int count = REFERENCE_COUNT_UPDATER.decrementAndGet(this);
+        if (count == 0) {
+            onRecycle();
+            this.pool.recycle(this);
+        } else if (count < 0) {
+            REFERENCE_COUNT_UPDATER.incrementAndGet(this);
+            throw new IllegalStateException("Message was already recycled");
+        }
+    }
+
+    /**
+     * Called before this message is returned to its pool. Can be overridden to clear references to larger objects
+     * which should not be kept alive by the pool.
+     */
+    protected void onRecycle() {
+    }
+
+    /**
+     * Marks this message as owned by a single reference. Called by the {@link MessagePool} when the message is handed
+     * out.
+     */
+    final void acquired() {
+        this.referenceCount = 1;
+    }
+}
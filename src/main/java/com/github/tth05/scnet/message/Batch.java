@@ -0,0 +1,581 @@
+package com.github.tth05.scnet.message;
+
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+import java.nio.BufferUnderflowException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Many records of the same class, which are sent in a single frame. The batch is stored in columns: every component of
+ * the record is kept in an array of its own, which is written and read using the bulk methods of the streams. Compared
+ * to sending every record as its own message, this saves the frame header, the queue node and the
+ * {@link IMessageBus#post(Object)} call of each record.
+ * <br>
+ * Register the record class using {@link IMessageProcessor#registerBatch(short, Class)} and enqueue a batch like any
+ * other message. A received batch is passed to the listeners registered with
+ * {@link IMessageBus#listenBatches(Class, java.util.function.Consumer)} in a single call, and every record of it is
+ * posted to the listeners of the record class.
+ * <br>
+ * Supported component types are all primitives, {@link String}s, which are written using
+ * {@link ByteBufferOutputStream#writeInternedString(String)}, and enums, which are written as their ordinal. Components
+ * must not be {@code null}. A batch of records without any components may contain at most
+ * {@value #MAX_EMPTY_RECORDS} records.
+ * <br>
+ * The layout is built separately from the one of {@link com.github.tth05.scnet.message.impl.RecordCodec}, because
+ * every column has to be a single array of fixed-size elements, which nested records and arrays are not. Strings are
+ * interned here, since the same values tend to repeat across the rows of a batch, while a record sent on its own is
+ * written like the stream methods of a hand-written message would write it.
+ *
+ * @param <T> the class of the records
+ */
+public final class Batch<T extends Record> implements Iterable<T> {
+
+    private static final ClassValue<Layout> LAYOUTS = new ClassValue<Layout>() {
+        @Override
+        protected Layout computeValue(Class<?> type) {
+            return new Layout(type);
+        }
+    };
+
+    /**
+     * The maximum size of a batch of records without components. Their size can't be checked against the remaining
+     * bytes of a received batch, and every record is posted on its own.
+     */
+    public static final int MAX_EMPTY_RECORDS = 1 << 16;
+
+    private static final int BOOLEAN = 0;
+    private static final int BYTE = 1;
+    private static final int SHORT = 2;
+    private static final int CHAR = 3;
+    private static final int INT = 4;
+    private static final int LONG = 5;
+    private static final int FLOAT = 6;
+    private static final int DOUBLE = 7;
+    private static final int STRING = 8;
+    private static final int ENUM = 9;
+
+    @NotNull
+    private final Class<T> recordClass;
+    @NotNull
+    private final Layout layout;
+    private final int size;
+    /**
+     * An array of {@link #size} elements for each component, a primitive array for primitive components and an
+     * {@code Object[]} for all others
+     */
+    @NotNull
+    private final Object[] columns;
+
+    private Batch(@NotNull Class<T> recordClass, int size, @NotNull Object[] columns) {
+        this.recordClass = recordClass;
+        this.layout = LAYOUTS.get(recordClass);
+        this.size = size;
+        this.columns = columns;
+    }
+
+    /**
+     * Creates a batch containing the given records, in iteration order. The components are copied into the columns
+     * right away, so the records can be changed or reused afterwards.
+     *
+     * @param recordClass the exact class of all records
+     * @param records     the records
+     * @return the new batch
+     * @throws IllegalArgumentException if a component of the record has an unsupported type, or the record has no
+     *                                  components and there are more than {@link #MAX_EMPTY_RECORDS} records
+     */
+    @NotNull
+    public static <T extends Record> Batch<T> of(@NotNull Class<T> recordClass, @NotNull Collection<? extends T> records) {
+        Layout layout = LAYOUTS.get(recordClass);
+        int size = records.size();
+        if (layout.kinds.length == 0 && size > MAX_EMPTY_RECORDS)
+            throw new IllegalArgumentException("A batch of " + recordClass.getName() + " can't contain more than " + MAX_EMPTY_RECORDS + " records");
+        Object[] columns = layout.newColumns(size);
+        int row = 0;
+        for (T record : records) {
+            if (record.getClass() != recordClass)
+                throw new IllegalArgumentException("Record " + record.getClass().getName() + " is not a " + recordClass.getName());
+            layout.writeRow(columns, row++, record);
+        }
+
+        return new Batch<>(recordClass, size, columns);
+    }
+
+    /**
+     * @param recordClass the class of the records
+     * @return an empty batch
+     * @throws IllegalArgumentException if a component of the record has an unsupported type
+     */
+    @NotNull
+    public static <T extends Record> Batch<T> empty(@NotNull Class<T> recordClass) {
+        return new Batch<>(recordClass, 0, LAYOUTS.get(recordClass).newColumns(0));
+    }
+
+    /**
+     * Reads a batch in the format written by {@link #write(ByteBufferOutputStream)}.
+     *
+     * @param recordClass the class of the records
+     * @throws BufferUnderflowException if the batch is longer than the remaining bytes
+     */
+    @NotNull
+    public static <T extends Record> Batch<T> read(@NotNull Class<T> recordClass, @NotNull ByteBufferInputStream messageStream) {
+        Layout layout = LAYOUTS.get(recordClass);
+        int size = messageStream.readInt();
+        //Every element of a column takes at least one byte
+        if (size < 0 || size > (layout.kinds.length > 0 ? messageStream.remaining() : MAX_EMPTY_RECORDS))
+            throw new BufferUnderflowException();
+
+        Object[] columns = layout.newColumns(size);
+        for (int c = 0; c < columns.length; c++) {
+            Object column = columns[c];
+            switch (layout.kinds[c]) {
+                case BOOLEAN:
+                    boolean[] booleans = (boolean[]) column;
+                    for (int i = 0; i < size; i++)
+                        booleans[i] = messageStream.readBoolean();
+                    break;
+                case BYTE:
+                    messageStream.readByteArray((byte[]) column, 0, size);
+                    break;
+                case SHORT:
+                    messageStream.readShortArray((short[]) column, 0, size);
+                    break;
+                case CHAR:
+                    char[] chars = (char[]) column;
+                    for (int i = 0; i < size; i++)
+                        chars[i] = (char) messageStream.readShort();
+                    break;
+                case INT:
+                    messageStream.readIntArray((int[]) column, 0, size);
+                    break;
+                case LONG:
+                    messageStream.readLongArray((long[]) column, 0, size);
+                    break;
+                case FLOAT:
+                    messageStream.readFloatArray((float[]) column, 0, size);
+                    break;
+                case DOUBLE:
+                    messageStream.readDoubleArray((double[]) column, 0, size);
+                    break;
+                case STRING:
+                    Object[] strings = (Object[]) column;
+                    for (int i = 0; i < size; i++)
+                        strings[i] = messageStream.readInternedString();
+                    break;
+                default:
+                    Object[] constants = layout.enumConstants[c];
+                    Object[] values = (Object[]) column;
+                    for (int i = 0; i < size; i++)
+                        values[i] = constants[messageStream.readInt()];
+                    break;
+            }
+        }
+
+        return new Batch<>(recordClass, size, columns);
+    }
+
+    /**
+     * Writes the amount of records, followed by all columns in the declaration order of the components.
+     */
+    public void write(@NotNull ByteBufferOutputStream messageStream) {
+        messageStream.writeInt(this.size);
+        for (int c = 0; c < this.columns.length; c++) {
+            Object column = this.columns[c];
+            switch (this.layout.kinds[c]) {
+                case BOOLEAN:
+                    for (boolean value : (boolean[]) column)
+                        messageStream.writeBoolean(value);
+                    break;
+                case BYTE:
+                    messageStream.writeByteArray((byte[]) column);
+                    break;
+                case SHORT:
+                    messageStream.writeShortArray((short[]) column);
+                    break;
+                case CHAR:
+                    for (char value : (char[]) column)
+                        messageStream.writeShort((short) value);
+                    break;
+                case INT:
+                    messageStream.writeIntArray((int[]) column);
+                    break;
+                case LONG:
+                    messageStream.writeLongArray((long[]) column);
+                    break;
+                case FLOAT:
+                    messageStream.writeFloatArray((float[]) column);
+                    break;
+                case DOUBLE:
+                    messageStream.writeDoubleArray((double[]) column);
+                    break;
+                case STRING:
+                    for (Object value : (Object[]) column)
+                        messageStream.writeInternedString((String) value);
+                    break;
+                default:
+                    for (Object value : (Object[]) column)
+                        messageStream.writeInt(((Enum<?>) value).ordinal());
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Creates the record at the given index from the values of the columns. Use a {@link #cursor()} to read the values
+     * without creating any records.
+     *
+     * @return a new record
+     * @throws IndexOutOfBoundsException if the index is negative or not smaller than {@link #size()}
+     */
+    @NotNull
+    public T get(int index) {
+        Objects.checkIndex(index, this.size);
+        try {
+            @SuppressWarnings("unchecked")
+            T record = (T) (Object) this.layout.rowReader.invokeExact(this.columns, index);
+            return record;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * @return an iterator which creates every record using {@link #get(int)}
+     */
+    @NotNull
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return this.index < Batch.this.size;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return get(this.index++);
+            }
+        };
+    }
+
+    /**
+     * @return a new cursor which is positioned before the first record
+     */
+    @NotNull
+    @Contract("-> new")
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns the column of the given component, which is a primitive array for primitive components and an
+     * {@code Object[]} of the values otherwise. The array contains exactly {@link #size()} elements and must not be
+     * modified.
+     *
+     * @param component the index of the component in declaration order
+     * @throws IndexOutOfBoundsException if there is no component with the given index
+     */
+    @NotNull
+    @Contract(pure = true)
+    public Object getColumn(int component) {
+        return this.columns[component];
+    }
+
+    /**
+     * @param name the name of a component
+     * @return the index of the component with the given name, for use with {@link #getColumn(int)} and the
+     * {@link Cursor}
+     * @throws IllegalArgumentException if the record has no component with the given name
+     */
+    @Contract(pure = true)
+    public int getComponentIndex(@NotNull String name) {
+        for (int c = 0; c < this.layout.names.length; c++) {
+            if (this.layout.names[c].equals(name))
+                return c;
+        }
+        throw new IllegalArgumentException(this.recordClass.getName() + " has no component " + name);
+    }
+
+    /**
+     * @return the amount of records in this batch
+     */
+    @Contract(pure = true)
+    public int size() {
+        return this.size;
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    public Class<T> getRecordClass() {
+        return this.recordClass;
+    }
+
+    /**
+     * Reads the values of one record at a time straight from the columns, without creating the record. The getters
+     * take the index of the component, see {@link #getComponentIndex(String)}, and throw a {@link ClassCastException}
+     * if the component has a different type.
+     * <pre>{@code
+     * Batch<Position>.Cursor cursor = batch.cursor();
+     * while (cursor.next())
+     *     move(cursor.getInt(0), cursor.getDouble(1), cursor.getDouble(2));
+     * }</pre>
+     */
+    public final class Cursor {
+
+        private int index = -1;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves this cursor to the next record.
+         *
+         * @return {@code false} if there are no more records; {@code true} otherwise
+         */
+        public boolean next() {
+            if (this.index < Batch.this.size)
+                this.index++;
+            return this.index < Batch.this.size;
+        }
+
+        /**
+         * @return the index of the current record
+         */
+        @Contract(pure = true)
+        public int getIndex() {
+            return this.index;
+        }
+
+        public boolean getBoolean(int component) {
+            return ((boolean[]) Batch.this.columns[component])[this.index];
+        }
+
+        public byte getByte(int component) {
+            return ((byte[]) Batch.this.columns[component])[this.index];
+        }
+
+        public short getShort(int component) {
+            return ((short[]) Batch.this.columns[component])[this.index];
+        }
+
+        public char getChar(int component) {
+            return ((char[]) Batch.this.columns[component])[this.index];
+        }
+
+        public int getInt(int component) {
+            return ((int[]) Batch.this.columns[component])[this.index];
+        }
+
+        public long getLong(int component) {
+            return ((long[]) Batch.this.columns[component])[this.index];
+        }
+
+        public float getFloat(int component) {
+            return ((float[]) Batch.this.columns[component])[this.index];
+        }
+
+        public double getDouble(int component) {
+            return ((double[]) Batch.this.columns[component])[this.index];
+        }
+
+        /**
+         * @return the value of a {@link String} or enum component
+         */
+        @NotNull
+        public <V> V getObject(int component) {
+            @SuppressWarnings("unchecked")
+            V value = (V) ((Object[]) Batch.this.columns[component])[this.index];
+            return value;
+        }
+
+        /**
+         * @return the current record, see {@link Batch#get(int)}
+         */
+        @NotNull
+        public T get() {
+            return Batch.this.get(this.index);
+        }
+    }
+
+    /**
+     * The components of a record class, built once per class
+     */
+    private static final class Layout {
+
+        private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+        @NotNull
+        private final String[] names;
+        /**
+         * The column kind of each component, for example {@link #INT}
+         */
+        private final int @NotNull [] kinds;
+        /**
+         * The constants of each enum component
+         */
+        @NotNull
+        private final Object[][] enumConstants;
+        /**
+         * {@code (Object[] columns, int row, Object record)void}, stores all components of a record in the columns
+         */
+        @NotNull
+        private final MethodHandle rowWriter;
+        /**
+         * {@code (Object[] columns, int row)Object}, creates a record from the values in the columns
+         */
+        @NotNull
+        private final MethodHandle rowReader;
+
+        private Layout(@NotNull Class<?> recordClass) {
+            if (!recordClass.isRecord())
+                throw new IllegalArgumentException(recordClass + " is not a record");
+
+            RecordComponent[] components = recordClass.getRecordComponents();
+            Class<?>[] types = new Class<?>[components.length];
+            this.names = new String[components.length];
+            this.kinds = new int[components.length];
+            this.enumConstants = new Object[components.length][];
+            for (int c = 0; c < components.length; c++) {
+                types[c] = components[c].getType();
+                this.names[c] = components[c].getName();
+                this.kinds[c] = getKind(components[c]);
+                if (this.kinds[c] == ENUM)
+                    this.enumConstants[c] = types[c].getEnumConstants();
+            }
+
+            try {
+                //Allows non-public records
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(recordClass, LOOKUP);
+                MethodHandle requireNonNull = LOOKUP.findStatic(Objects.class, "requireNonNull", MethodType.methodType(Object.class, Object.class));
+                MethodHandle rowWriter = MethodHandles.empty(MethodType.methodType(void.class, Object[].class, int.class, Object.class));
+                Class<?>[] rowTypes = new Class<?>[components.length * 2];
+                //The parameter of each component is replaced by (Object[] columns, int row) below
+                MethodHandle rowReader = lookup.findConstructor(recordClass, MethodType.methodType(void.class, types));
+                for (int c = components.length - 1; c >= 0; c--) {
+                    //(Object[])C[] where C is the element type of the column
+                    Class<?> columnType = types[c].isPrimitive() ? types[c].arrayType() : Object[].class;
+                    MethodHandle column = MethodHandles.insertArguments(MethodHandles.arrayElementGetter(Object[].class), 1, c)
+                            .asType(MethodType.methodType(columnType, Object[].class));
+
+                    //(Object[] columns, int row, Object record)void, every fold runs its combiner before the target
+                    MethodHandle accessor = lookup.unreflect(components[c].getAccessor())
+                            .asType(MethodType.methodType(columnType.getComponentType(), Object.class));
+                    if (!types[c].isPrimitive())
+                        accessor = MethodHandles.filterReturnValue(accessor, requireNonNull);
+                    MethodHandle setter = MethodHandles.filterArguments(MethodHandles.arrayElementSetter(columnType), 0, column);
+                    rowWriter = MethodHandles.foldArguments(rowWriter, MethodHandles.filterArguments(setter, 2, accessor));
+
+                    //(Object[] columns, int row)T replaces the parameter of the constructor
+                    MethodHandle getter = MethodHandles.filterArguments(MethodHandles.arrayElementGetter(columnType), 0, column)
+                            .asType(MethodType.methodType(types[c], Object[].class, int.class));
+                    rowReader = MethodHandles.collectArguments(rowReader, c, getter);
+                    rowTypes[c * 2] = Object[].class;
+                    rowTypes[c * 2 + 1] = int.class;
+                }
+
+                //Every getter receives the same columns and row
+                int[] reorder = new int[components.length * 2];
+                for (int i = 0; i < reorder.length; i++)
+                    reorder[i] = i % 2;
+                this.rowReader = MethodHandles.permuteArguments(rowReader.asType(MethodType.methodType(Object.class, rowTypes)),
+                        MethodType.methodType(Object.class, Object[].class, int.class), reorder);
+                this.rowWriter = rowWriter;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Unable to build the batch layout for " + recordClass.getName(), e);
+            }
+        }
+
+        @NotNull
+        private Object[] newColumns(int size) {
+            Object[] columns = new Object[this.kinds.length];
+            for (int c = 0; c < columns.length; c++) {
+                switch (this.kinds[c]) {
+                    case BOOLEAN:
+                        columns[c] = new boolean[size];
+                        break;
+                    case BYTE:
+                        columns[c] = new byte[size];
+                        break;
+                    case SHORT:
+                        columns[c] = new short[size];
+                        break;
+                    case CHAR:
+                        columns[c] = new char[size];
+                        break;
+                    case INT:
+                        columns[c] = new int[size];
+                        break;
+                    case LONG:
+                        columns[c] = new long[size];
+                        break;
+                    case FLOAT:
+                        columns[c] = new float[size];
+                        break;
+                    case DOUBLE:
+                        columns[c] = new double[size];
+                        break;
+                    default:
+                        columns[c] = new Object[size];
+                        break;
+                }
+            }
+            return columns;
+        }
+
+        /**
+         * Copies the components of the given {@code record} into the given row of the columns.
+         */
+        private void writeRow(@NotNull Object[] columns, int row, @NotNull Object record) {
+            try {
+                this.rowWriter.invokeExact(columns, row, record);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        /**
+         * @throws IllegalArgumentException if the type of the given component is not supported
+         */
+        private static int getKind(@NotNull RecordComponent component) {
+            Class<?> type = component.getType();
+            if (type == boolean.class)
+                return BOOLEAN;
+            if (type == byte.class)
+                return BYTE;
+            if (type == short.class)
+                return SHORT;
+            if (type == char.class)
+                return CHAR;
+            if (type == int.class)
+                return INT;
+            if (type == long.class)
+                return LONG;
+            if (type == float.class)
+                return FLOAT;
+            if (type == double.class)
+                return DOUBLE;
+            if (type == String.class)
+                return STRING;
+            if (type.isEnum())
+                return ENUM;
+            throw new IllegalArgumentException("Unsupported type " + type.getName() + " of component " + component.getName());
+        }
+    }
+}
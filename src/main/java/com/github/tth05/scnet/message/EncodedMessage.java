@@ -0,0 +1,137 @@
+package com.github.tth05.scnet.message;
+
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A message which was already encoded, so it can be enqueued on many processors while
+ * {@link AbstractMessage#write(ByteBufferOutputStream)} only runs once. The payload is kept in a shared read-only
+ * buffer, and every processor writes it using its own duplicate view. The frame is sent with the id which the
+ * receiving processor registered for the {@link #getMessageClass() original message class}.
+ * <br><br>
+ * <strong>Lifetime:</strong><br>
+ * An encoded message starts with a reference count of one, which belongs to the creator. Every enqueue has to
+ * {@link #retain()} it first, and the processor {@link #release()}s that reference once the payload was written.
+ * The payload is dropped when the last reference is released.
+ */
+public final class EncodedMessage extends AbstractMessageOutgoing {
+
+    private static final AtomicIntegerFieldUpdater<EncodedMessage> REFERENCE_COUNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(EncodedMessage.class, "referenceCount");
+
+    @NotNull
+    private final Class<? extends AbstractMessage> messageClass;
+    /**
+     * The read-only payload, {@code null} once the last reference was released
+     */
+    @Nullable
+    private volatile ByteBuffer payload;
+    private volatile int referenceCount = 1;
+
+    private EncodedMessage(@NotNull Class<? extends AbstractMessage> messageClass, @NotNull ByteBuffer payload) {
+        this.messageClass = messageClass;
+        this.payload = payload;
+    }
+
+    /**
+     * Encodes the given {@code message} once.
+     *
+     * @param message the message to encode
+     * @return the encoded message, with a reference count of one
+     */
+    @NotNull
+    public static EncodedMessage encode(@NotNull AbstractMessage message) {
+        if (message instanceof EncodedMessage)
+            throw new IllegalArgumentException("Message is already encoded");
+
+        ByteBufferOutputStream messageStream = new ByteBufferOutputStream(64);
+        message.write(messageStream);
+        ByteBuffer payload = messageStream.getBuffer();
+        payload.flip();
+        return new EncodedMessage(message.getClass(), payload.asReadOnlyBuffer());
+    }
+
+    /**
+     * Writes the payload into the given stream, which is used by processors that can't write the payload directly.
+     */
+    @Override
+    public void write(@NotNull ByteBufferOutputStream messageStream) {
+        messageStream.writeByteBuffer(getPayload());
+    }
+
+    /**
+     * @return a new read-only view of the payload, from position {@code 0} up to the limit {@link #getSize()}
+     * @throws IllegalStateException if the last reference was already released
+     */
+    @NotNull
+    public ByteBuffer getPayload() {
+        ByteBuffer payload = this.payload;
+        if (payload == null)
+            throw new IllegalStateException("Message was already released");
+
+        return payload.duplicate();
+    }
+
+    /**
+     * @return the size of the payload in bytes
+     * @throws IllegalStateException if the last reference was already released
+     */
+    public int getSize() {
+        ByteBuffer payload = this.payload;
+        if (payload == null)
+            throw new IllegalStateException("Message was already released");
+
+        return payload.limit();
+    }
+
+    /**
+     * @return the class of the message which was encoded
+     */
+    @NotNull
+    @Contract(pure = true)
+    public Class<? extends AbstractMessage> getMessageClass() {
+        return this.messageClass;
+    }
+
+    /**
+     * Adds a reference, which has to be given up by calling {@link #release()}.
+     *
+     * @throws IllegalStateException if the last reference was already released
+     */
+    public void retain() {
+        int count;
+        do {
+            count = this.referenceCount;
+            if (count < 1)
+                throw new IllegalStateException("Message was already released");
+        } while (!REFERENCE_COUNT_UPDATER.compareAndSet(this, count, count + 1));
+    }
+
+    /**
+     * Gives up one reference. If this was the last reference, the payload is dropped.
+     *
+     * @throws IllegalStateException if the last reference was already released
+     */
+    public void release() {
+        int count = REFERENCE_COUNT_UPDATER.decrementAndGet(this);
+        if (count == 0) {
+            this.payload = null;
+        } else if (count < 0) {
+            REFERENCE_COUNT_UPDATER.incrementAndGet(this);
+            throw new IllegalStateException("Message was already released");
+        }
+    }
+
+    /**
+     * @return the amount of references to this message, {@code 0} once it was released
+     */
+    @Contract(pure = true)
+    public int getReferenceCount() {
+        return this.referenceCount;
+    }
+}
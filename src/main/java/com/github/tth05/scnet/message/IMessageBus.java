@@ -8,18 +8,21 @@ import java.util.function.Consumer;
 /**
  * A message bus is responsible for receiving messages from a {@link IMessageProcessor} and distributing them to
  * listeners. All methods in this class should be thread-safe.
+ * <br>
+ * Messages are usually {@link AbstractMessage}s, but may be instances of any class which the processor knows how to
+ * read, for example records. Listeners are registered for the exact class of the message.
  */
 public interface IMessageBus {
 
     /**
      * @see #listenAlways(Class, Object, Consumer)
      */
-    <T extends AbstractMessage> void listenAlways(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener);
+    <T> void listenAlways(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener);
 
     /**
      * @see #listenOnce(Class, Object, Consumer)
      */
-    <T extends AbstractMessage> void listenOnce(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener);
+    <T> void listenOnce(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener);
 
     /**
      * Registers a given {@code listener} with this message bus to receive events for the given {@code messageClass}.
@@ -29,18 +32,18 @@ public interface IMessageBus {
      *                         later be used to call {@link #unregister(Class, Object)}
      * @param listener         The listener
      */
-    <T extends AbstractMessage> void listenAlways(@NotNull Class<T> messageClass, @Nullable Object associatedObject, @NotNull Consumer<T> listener);
+    <T> void listenAlways(@NotNull Class<T> messageClass, @Nullable Object associatedObject, @NotNull Consumer<T> listener);
 
     /**
      * Behaves like {@link #listenAlways(Class, Consumer)}, but the {@code listener} will unregistered after receiving a
      * single message.
      */
-    <T extends AbstractMessage> void listenOnce(@NotNull Class<T> messageClass, @Nullable Object associatedObject, @NotNull Consumer<T> listener);
+    <T> void listenOnce(@NotNull Class<T> messageClass, @Nullable Object associatedObject, @NotNull Consumer<T> listener);
 
     /**
      * Unregisters the given listener
      */
-    <T extends AbstractMessage> void unregister(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener);
+    <T> void unregister(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener);
 
     /**
      * Unregisters the given listener
@@ -48,12 +51,57 @@ public interface IMessageBus {
      * @param associatedObject The object which was used to register some listener. If this is {@code null}, this method
      *                         will do nothing
      */
-    <T extends AbstractMessage> void unregister(@NotNull Class<T> messageClass, @Nullable Object associatedObject);
+    <T> void unregister(@NotNull Class<T> messageClass, @Nullable Object associatedObject);
+
+    /**
+     * Checks if any listener is registered for the given {@code messageClass}. A {@link IMessageProcessor} may use this
+     * to skip reading messages which would not be received by anyone. This check is called for every received message
+     * and should therefore be cheap.
+     *
+     * @param messageClass the class of the message
+     * @return {@code true} if a message of the given class may be received by a listener; {@code false} otherwise
+     */
+    default boolean hasListeners(@NotNull Class<?> messageClass) {
+        return true;
+    }
+
+    /**
+     * Registers a given {@code listener} which receives every {@link Batch} of the given {@code recordClass} in a single
+     * call. Listeners of the record class itself receive every record of the batch on its own.
+     *
+     * @param recordClass the class of the records in the batch
+     * @param listener    the listener
+     */
+    <T extends Record> void listenBatches(@NotNull Class<T> recordClass, @NotNull Consumer<Batch<T>> listener);
+
+    /**
+     * Unregisters the given batch listener
+     */
+    <T extends Record> void unregisterBatches(@NotNull Class<T> recordClass, @NotNull Consumer<Batch<T>> listener);
+
+    /**
+     * Checks if any batch listener is registered for the given {@code recordClass}, like {@link #hasListeners(Class)}.
+     *
+     * @param recordClass the class of the records in the batch
+     * @return {@code true} if a batch of the given class may be received by a listener; {@code false} otherwise
+     */
+    default boolean hasBatchListeners(@NotNull Class<?> recordClass) {
+        return false;
+    }
+
+    /**
+     * Distributes a batch to all batch listeners of its record class. Should be called by a {@link IMessageProcessor},
+     * which posts the records of the batch on their own afterwards.
+     *
+     * @param batch The batch to post
+     */
+    default void postBatch(@NotNull Batch<?> batch) {
+    }
 
     /**
      * Posts a message to this bus and distributes it to all listeners. Should be called by a {@link IMessageProcessor}.
      *
      * @param message The message to post
      */
-    void post(@NotNull AbstractMessage message);
+    void post(@NotNull Object message);
 }
@@ -0,0 +1,37 @@
+package com.github.tth05.scnet.message;
+
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads and writes messages of a class which does not extend {@link AbstractMessage}. A codec is registered together
+ * with its message class using {@link IMessageProcessor#registerMessage(short, Class, IMessageCodec)}, which allows
+ * sending existing objects without wrapping them. Received messages are posted to the {@link IMessageBus} like any
+ * other message.
+ * <br>
+ * A codec is shared between all messages of its class and may be called from multiple processors at once, it should
+ * therefore be stateless.
+ *
+ * @param <T> the type of the messages
+ */
+public interface IMessageCodec<T> {
+
+    /**
+     * Reads a message which was written by {@link #write(Object, ByteBufferOutputStream)}.
+     *
+     * @param messageStream the input stream to read from
+     * @return the read message
+     */
+    @NotNull
+    T read(@NotNull ByteBufferInputStream messageStream);
+
+    /**
+     * Writes the given {@code message}. This should match the data that is read in
+     * {@link #read(ByteBufferInputStream)}.
+     *
+     * @param message       the message to write
+     * @param messageStream the output stream to write to
+     */
+    void write(@NotNull T message, @NotNull ByteBufferOutputStream messageStream);
+}
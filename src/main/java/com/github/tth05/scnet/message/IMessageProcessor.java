@@ -1,10 +1,18 @@
 package com.github.tth05.scnet.message;
 
+import com.github.tth05.scnet.wait.IWaitStrategy;
+import com.github.tth05.scnet.wait.SleepingWaitStrategy;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
 
 /**
  * A message processor will send enqueued messages and forward received messages to a {@link IMessageBus}.
@@ -27,45 +35,217 @@ public interface IMessageProcessor {
      */
     <T extends AbstractMessage> void registerMessage(short id, @NotNull Class<T> messageClass);
 
+    /**
+     * Registers a message class which does not extend {@link AbstractMessage}, so it can be received/sent. Messages of
+     * the given class are read and written by the given {@code codec}, received messages are posted to the
+     * {@link IMessageBus} like any other message.
+     *
+     * @param id           the id for the message, has to be unique amongst all other messages
+     * @param messageClass the exact class of the messages
+     * @param codec        the codec which reads and writes the messages
+     * @throws IllegalArgumentException if the given {@code id} is smaller than 1, there already is a message
+     *                                  registered with the given id, or the class extends {@link AbstractMessage}
+     */
+    <T> void registerMessage(short id, @NotNull Class<T> messageClass, @NotNull IMessageCodec<T> codec);
+
+    /**
+     * Registers a record with this message processor, so it can be received/sent without subclassing
+     * {@link AbstractMessage}. The components of the record are read and written in their declaration order.
+     *
+     * @param id          the id for the record, has to be unique amongst all other messages
+     * @param recordClass the class of the record
+     * @throws IllegalArgumentException if the given {@code id} is smaller than 1, there already is a message
+     *                                  registered with the given id, or a component of the record is not supported
+     */
+    <R extends Record> void registerRecord(short id, @NotNull Class<R> recordClass);
+
+    /**
+     * Registers batches of the given record class with this message processor, so a {@link Batch} of these records can
+     * be received/sent as a single message. This is independent of {@link #registerRecord(short, Class)}, a record
+     * class can be registered both ways with different ids.
+     *
+     * @param id          the id for batches of the record, has to be unique amongst all other messages
+     * @param recordClass the class of the records
+     * @throws IllegalArgumentException if the given {@code id} is smaller than 1, there already is a message
+     *                                  registered with the given id, or a component of the record is not supported
+     */
+    <R extends Record> void registerBatch(short id, @NotNull Class<R> recordClass);
+
+    /**
+     * @param messageClass the class of a message
+     * @return {@code true} if messages of the given class are registered for sending; {@code false} otherwise
+     */
+    @Contract(pure = true)
+    default boolean canSend(@NotNull Class<?> messageClass) {
+        return true;
+    }
+
     /**
      * Enqueues a message to be sent at some point in the future. If a non-registered message is enqueued,
-     * {@link #process(Selector, SocketChannel, IMessageBus)} when raise and exception when it tries to send it.
+     * {@link #write(WritableByteChannel)} will raise an exception when it tries to send it.
+     * <br>
+     * The message is either an {@link AbstractMessage}, an instance of a class which was registered with a
+     * {@link #registerMessage(short, Class, IMessageCodec) codec}, or a {@link Batch} of records which were registered
+     * using {@link #registerBatch(short, Class)}. An {@link EncodedMessage} is sent with the id of its original message
+     * class. Its reference has to be retained before enqueueing it.
      *
      * @param message the message to enqueue
      */
-    void enqueueMessage(@NotNull AbstractMessage message);
+    void enqueueMessage(@NotNull Object message);
+
+    /**
+     * Enqueues a message to be sent before queued messages of lower priorities. Implementations which don't support
+     * priorities treat this like {@link #enqueueMessage(Object)}.
+     *
+     * @param message  the message to enqueue
+     * @param priority the priority of the message
+     */
+    default void enqueueMessage(@NotNull Object message, @NotNull MessagePriority priority) {
+        enqueueMessage(message);
+    }
+
+    /**
+     * Reads all available messages from the {@code channel} and forwards them to the {@code messageBus}. Called by the
+     * event loop when the channel is readable. The channel is either the socket channel itself or a channel which
+     * decrypts the data of the socket channel, and has to be in non-blocking mode.
+     *
+     * @param channel    the channel to read from
+     * @param messageBus the message bus which should process received messages
+     * @return {@code false} if something went wrong during reading or the end of the stream was reached; {@code true}
+     * otherwise
+     */
+    boolean read(@NotNull ReadableByteChannel channel, @NotNull IMessageBus messageBus);
+
+    /**
+     * Writes as many enqueued messages to the {@code channel} as it accepts without blocking. Anything which could not
+     * be written stays pending until the next call. The channel is either the socket channel itself or a channel which
+     * encrypts the data before writing it to the socket channel.
+     *
+     * @param channel the channel to write to
+     * @return {@code false} if something went wrong during writing; {@code true} otherwise
+     */
+    boolean write(@NotNull WritableByteChannel channel);
 
     /**
-     * This method will write all enqueued messages to the {@code channel} and then read all available messages and
-     * forward them to the {@code messageBus}. The given {@code selector} will be used to check for
-     * {@link java.nio.channels.SelectionKey#OP_READ} and {@link java.nio.channels.SelectionKey#OP_WRITE}.
+     * Writes all enqueued messages to the {@code channel} and then reads all available messages and forwards them to
+     * the {@code messageBus}. The given {@code selector} is used to check for {@link SelectionKey#OP_READ} and
+     * {@link SelectionKey#OP_WRITE}.
      *
      * @param selector   the selector to select the read and write keys from
      * @param channel    the channel to read from and write to
      * @param messageBus the message bus which should process received messages
      * @return {@code false} if something went wrong during reading or writing, and the process loop may not be able to
      * continue in the future; {@code true} otherwise.
+     * @deprecated the event loop of a client or server calls {@link #read(ReadableByteChannel, IMessageBus)} and
+     * {@link #write(WritableByteChannel)} directly, this only delegates to them
      */
-    boolean process(@NotNull Selector selector, @NotNull SocketChannel channel, @NotNull IMessageBus messageBus);
+    @Deprecated
+    default boolean process(@NotNull Selector selector, @NotNull SocketChannel channel, @NotNull IMessageBus messageBus) {
+        try {
+            if (selector.select(5) < 1)
+                return true;
+
+            for (Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext(); ) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+
+                if (key.isWritable() && hasPendingWrites() && !write(channel))
+                    return false;
+                if (key.isReadable() && !read(channel, messageBus))
+                    return false;
+            }
+
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * @return {@code true} if there are enqueued messages or bytes which still have to be written; {@code false}
+     * otherwise. Bytes which are held back by write coalescing only count once they have to be written.
+     */
+    boolean hasPendingWrites();
+
+    /**
+     * Makes the next write send all messages which are enqueued at the time of this call immediately, even if
+     * implementations which coalesce writes would otherwise hold them back. Does nothing by default, because
+     * implementations without coalescing write everything right away.
+     */
+    default void flush() {
+    }
+
+    /**
+     * @return the time in nanoseconds until the bytes which are held back by write coalescing have to be written, or
+     * {@code -1} if no bytes are held back. The event loop uses this to write them in time.
+     */
+    default long getFlushDelay() {
+        return -1;
+    }
+
+    /**
+     * Sets a handler which is run every time a message is enqueued. The event loop uses this to wake up if it waits
+     * for its selector.
+     *
+     * @param wakeupHandler the handler, or {@code null} to remove it
+     */
+    void setWakeupHandler(@Nullable Runnable wakeupHandler);
+
+    /**
+     * Ends the reliable session of this processor, if it has one. The next {@link #reset()} will then start a new
+     * session instead of keeping the current one. Called when a client is closed on purpose.
+     */
+    default void endSession() {
+    }
+
+    /**
+     * Releases native resources held by this processor. Called when a client or server is closed on purpose, after its
+     * connection was closed. The processor can still be used afterwards and acquires the resources again when needed.
+     */
+    default void releaseResources() {
+    }
 
     /**
      * Resets all buffers and message queues of this message processor to put it back in its original state. This should
      * not reset the buffer size's set by {@link #setReadBufferSize(int)} or {@link #setWriteBufferSize(int)}.
      * <br>
+     * Implementations which support resuming a session after a connection dropped may keep the queued messages and the
+     * session state, until the session is {@link #endSession() ended}.
+     * <br>
      * This should be called when connection is lost.
      */
     void reset();
 
+    /**
+     * @param waitStrategy the new wait strategy
+     * @see #getWaitStrategy()
+     */
+    void setWaitStrategy(@NotNull IWaitStrategy waitStrategy);
+
+    /**
+     * @return the strategy which the event loop of a client or server with its own thread uses to wait for its
+     * selector. Enqueued messages are written before waiting. Defaults to a {@link SleepingWaitStrategy} with a delay
+     * of {@code 5}ms.
+     */
+    @NotNull
+    @Contract(pure = true)
+    IWaitStrategy getWaitStrategy();
+
     /**
      * @param delay the delay in milliseconds
      * @see #getProcessLoopDelay()
+     * @deprecated equivalent to {@code setWaitStrategy(new SleepingWaitStrategy(delay))}
      */
+    @Deprecated
     void setProcessLoopDelay(int delay);
 
     /**
-     * @return the delay that {@link #process(Selector, SocketChannel, IMessageBus)} will wait before performing any
-     * operations. This will save the CPU from unnecessary strain. Defaults to {@code 5}ms.
+     * @return the delay that the event loop will wait before performing any operations, if the current wait strategy
+     * is a {@link SleepingWaitStrategy}; {@code 0} otherwise.
+     * @deprecated use {@link #getWaitStrategy()} instead
      */
+    @Deprecated
     @Contract(pure = true)
     int getProcessLoopDelay();
 
@@ -0,0 +1,92 @@
+package com.github.tth05.scnet.message;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool for instances of a single {@link AbstractRecyclableMessage} type. All methods in this class are
+ * thread-safe, because messages may be released by threads other than the one that received them.
+ *
+ * @param <T> the type of the pooled messages
+ */
+public final class MessagePool<T extends AbstractRecyclableMessage> {
+
+    /**
+     * The default amount of idle instances which a pool keeps
+     */
+    public static final int DEFAULT_CAPACITY = 32;
+
+    /**
+     * Creates new instances if the pool is empty
+     */
+    @NotNull
+    private final Supplier<? extends T> factory;
+    /**
+     * A stack of idle instances
+     */
+    @NotNull
+    private final AbstractRecyclableMessage[] idle;
+    /**
+     * The amount of instances in {@link #idle}
+     */
+    private int size;
+
+    public MessagePool(@NotNull Supplier<? extends T> factory) {
+        this(factory, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param factory  the factory which is used to create new instances when the pool is empty
+     * @param capacity the maximum amount of idle instances. Released instances which exceed this limit are left to
+     *                 the garbage collector.
+     */
+    public MessagePool(@NotNull Supplier<? extends T> factory, int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Negative capacity: " + capacity);
+
+        this.factory = factory;
+        this.idle = new AbstractRecyclableMessage[capacity];
+    }
+
+    /**
+     * @return an idle instance from this pool, or a new instance if the pool is empty. The returned instance has a
+     * reference count of one and has to be {@link AbstractRecyclableMessage#release()}d after use.
+     */
+    @NotNull
+    public T acquire() {
+        AbstractRecyclableMessage message = null;
+        synchronized (this) {
+            if (this.size > 0) {
+                message = this.idle[--this.size];
+                this.idle[this.size] = null;
+            }
+        }
+
+        if (message == null) {
+            message = this.factory.get();
+            message.pool = this;
+        }
+
+        message.acquired();
+        //Only instances created by the factory are put into this pool
+        @SuppressWarnings("unchecked")
+        T pooled = (T) message;
+        return pooled;
+    }
+
+    /**
+     * @return the amount of idle instances in this pool
+     */
+    public synchronized int getIdleCount() {
+        return this.size;
+    }
+
+    /**
+     * Puts the given message back into this pool if there's space left.
+     */
+    synchronized void recycle(@NotNull AbstractRecyclableMessage message) {
+        if (this.size < this.idle.length)
+            this.idle[this.size++] = message;
+    }
+}
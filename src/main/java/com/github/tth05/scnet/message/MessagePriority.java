@@ -0,0 +1,37 @@
+package com.github.tth05.scnet.message;
+
+/**
+ * The priority lanes of the outgoing message queue. The processor drains the lanes in rounds, from the highest to the
+ * lowest priority, and writes up to the {@link #getDefaultWeight() weight} of each lane in messages per round. Higher
+ * priorities therefore overtake queued messages of lower priorities, while lower priorities still get a fair share
+ * and can't be starved.
+ */
+public enum MessagePriority {
+
+    /**
+     * For heartbeats and control messages
+     */
+    HIGH(16),
+    /**
+     * The priority of all messages which don't specify one
+     */
+    NORMAL(4),
+    /**
+     * For bulk transfers
+     */
+    LOW(1);
+
+    private final int defaultWeight;
+
+    MessagePriority(int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    /**
+     * @return the amount of messages of this priority which are written per round, unless the processor was configured
+     * differently
+     */
+    public int getDefaultWeight() {
+        return this.defaultWeight;
+    }
+}
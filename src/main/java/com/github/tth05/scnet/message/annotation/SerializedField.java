@@ -0,0 +1,40 @@
+package com.github.tth05.scnet.message.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field which is read and written by the serializer that the {@code processor} module generates for the
+ * declaring message class. For a message {@code PositionMessage}, the processor generates a
+ * {@code PositionMessageSerializer} in the same package, whose static {@code read} and {@code write} methods handle
+ * all annotated fields in their declaration order:
+ * <pre>{@code
+ * public class PositionMessage extends AbstractMessage {
+ *
+ *     @SerializedField
+ *     int x;
+ *     @SerializedField
+ *     String name;
+ *
+ *     @Override
+ *     public void read(@NotNull ByteBufferInputStream messageStream) {
+ *         PositionMessageSerializer.read(this, messageStream);
+ *     }
+ *
+ *     @Override
+ *     public void write(@NotNull ByteBufferOutputStream messageStream) {
+ *         PositionMessageSerializer.write(this, messageStream);
+ *     }
+ * }
+ * }</pre>
+ * Supported are all primitive types, {@link String} and {@code byte[]}. The fields must not be {@code private},
+ * {@code static} or {@code final}. The generated code writes the same bytes as the equivalent calls to the
+ * {@link com.github.tth05.scnet.util.ByteBufferOutputStream}, where {@code float}s and {@code double}s are written
+ * as their raw bits, {@code char}s as {@code short}s, and arrays are prefixed with their length.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface SerializedField {
+}
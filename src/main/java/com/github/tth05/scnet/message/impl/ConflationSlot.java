@@ -0,0 +1,73 @@
+package com.github.tth05.scnet.message.impl;
+
+import com.github.tth05.scnet.message.AbstractMessage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * The place of an {@link com.github.tth05.scnet.message.AbstractConflatingMessage} in the outgoing queue. The slot is
+ * queued instead of the message, and holds the newest message with its key until it is written.
+ */
+final class ConflationSlot {
+
+    private static final AtomicReferenceFieldUpdater<ConflationSlot, AbstractMessage> MESSAGE_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(ConflationSlot.class, AbstractMessage.class, "message");
+
+    /**
+     * The slots of all queued messages of one type, by their key
+     */
+    @NotNull
+    private final Map<Object, ConflationSlot> slots;
+    @NotNull
+    private final Object key;
+    /**
+     * The newest message, or {@code null} once this slot was closed
+     */
+    @Nullable
+    private volatile AbstractMessage message;
+
+    ConflationSlot(@NotNull Map<Object, ConflationSlot> slots, @NotNull Object key, @NotNull AbstractMessage message) {
+        this.slots = slots;
+        this.key = key;
+        this.message = message;
+    }
+
+    /**
+     * Replaces the message of this slot.
+     *
+     * @return {@code false} if this slot was already closed; {@code true} otherwise
+     */
+    boolean replace(@NotNull AbstractMessage message) {
+        AbstractMessage current;
+        do {
+            current = this.message;
+            if (current == null)
+                return false;
+        } while (!MESSAGE_UPDATER.compareAndSet(this, current, message));
+
+        return true;
+    }
+
+    /**
+     * Closes this slot once it was taken from the queue. Messages with the same key which are enqueued afterwards get
+     * a new slot.
+     *
+     * @return the newest message of this slot
+     */
+    @Nullable
+    AbstractMessage close() {
+        this.slots.remove(this.key, this);
+        return MESSAGE_UPDATER.getAndSet(this, null);
+    }
+
+    /**
+     * @return the newest message of this slot, or {@code null} if it was closed
+     */
+    @Nullable
+    AbstractMessage getMessage() {
+        return this.message;
+    }
+}
@@ -1,90 +1,163 @@
 package com.github.tth05.scnet.message.impl;
 
-import com.github.tth05.scnet.message.AbstractMessage;
+import com.github.tth05.scnet.message.Batch;
 import com.github.tth05.scnet.message.IMessageBus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
- * Default implementation of {@link IMessageBus}
+ * Default implementation of {@link IMessageBus}. Listeners are stored in copy-on-write arrays, which makes
+ * {@link #post(Object)} and {@link #hasListeners(Class)} lock-free.
  */
 public class DefaultMessageBus implements IMessageBus {
 
     /**
-     * A map containing the registered listeners for each event
+     * A map containing the registered listeners for each event. Arrays in this map are never modified, they are
+     * replaced instead. Classes without listeners are removed from this map.
      */
     @NotNull
-    private final Map<Class<?>, List<RegisteredListener>> listeners = new HashMap<>();
+    private final Map<Class<?>, RegisteredListener[]> listeners = new ConcurrentHashMap<>();
+    /**
+     * The registered batch listeners for each record class, stored like {@link #listeners}
+     */
+    @NotNull
+    private final Map<Class<?>, RegisteredListener[]> batchListeners = new ConcurrentHashMap<>();
 
     @Override
-    public <T extends AbstractMessage> void listenAlways(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener) {
+    public <T> void listenAlways(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener) {
         listenAlways(messageClass, null, listener);
     }
 
     @Override
-    public <T extends AbstractMessage> void listenAlways(@NotNull Class<T> messageClass, @Nullable Object associatedObject, @NotNull Consumer<T> listener) {
-        synchronized (this.listeners) {
-            this.listeners.computeIfAbsent(messageClass, (c) -> new ArrayList<>()).add(new RegisteredListener(false, listener, associatedObject));
-        }
+    public <T> void listenAlways(@NotNull Class<T> messageClass, @Nullable Object associatedObject, @NotNull Consumer<T> listener) {
+        addListener(this.listeners, messageClass, new RegisteredListener(false, listener, associatedObject));
     }
 
     @Override
-    public <T extends AbstractMessage> void listenOnce(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener) {
+    public <T> void listenOnce(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener) {
         listenOnce(messageClass, null, listener);
     }
 
     @Override
-    public <T extends AbstractMessage> void listenOnce(@NotNull Class<T> messageClass, @Nullable Object associatedObject, @NotNull Consumer<T> listener) {
-        synchronized (this.listeners) {
-            this.listeners.computeIfAbsent(messageClass, (c) -> new ArrayList<>()).add(new RegisteredListener(true, listener, associatedObject));
-        }
+    public <T> void listenOnce(@NotNull Class<T> messageClass, @Nullable Object associatedObject, @NotNull Consumer<T> listener) {
+        addListener(this.listeners, messageClass, new RegisteredListener(true, listener, associatedObject));
     }
 
     @Override
-    public <T extends AbstractMessage> void unregister(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener) {
-        synchronized (this.listeners) {
-            List<RegisteredListener> registeredListeners = this.listeners.get(messageClass);
-            if (registeredListeners == null)
-                return;
-
-            registeredListeners.removeIf(rl -> rl.listener == listener);
-        }
+    public <T> void unregister(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener) {
+        removeListeners(this.listeners, messageClass, rl -> rl.listener == (Object) listener);
     }
 
     @Override
-    public <T extends AbstractMessage> void unregister(@NotNull Class<T> messageClass, @Nullable Object associatedObject) {
+    public <T> void unregister(@NotNull Class<T> messageClass, @Nullable Object associatedObject) {
         if (associatedObject == null)
             return;
 
-        synchronized (this.listeners) {
-            List<RegisteredListener> registeredListeners = this.listeners.get(messageClass);
-            if (registeredListeners == null)
-                return;
+        removeListeners(this.listeners, messageClass, rl -> rl.associatedObject == associatedObject);
+    }
+
+    @Override
+    public boolean hasListeners(@NotNull Class<?> messageClass) {
+        return this.listeners.containsKey(messageClass);
+    }
+
+    @Override
+    public <T extends Record> void listenBatches(@NotNull Class<T> recordClass, @NotNull Consumer<Batch<T>> listener) {
+        addListener(this.batchListeners, recordClass, new RegisteredListener(false, listener, null));
+    }
+
+    @Override
+    public <T extends Record> void unregisterBatches(@NotNull Class<T> recordClass, @NotNull Consumer<Batch<T>> listener) {
+        removeListeners(this.batchListeners, recordClass, rl -> rl.listener == (Object) listener);
+    }
+
+    @Override
+    public boolean hasBatchListeners(@NotNull Class<?> recordClass) {
+        return this.batchListeners.containsKey(recordClass);
+    }
+
+    @Override
+    public void postBatch(@NotNull Batch<?> batch) {
+        RegisteredListener[] registeredListeners = this.batchListeners.get(batch.getRecordClass());
+        if (registeredListeners == null)
+            return;
 
-            registeredListeners.removeIf(rl -> rl.associatedObject == associatedObject);
+        for (RegisteredListener listener : registeredListeners) {
+            try {
+                listener.listener.accept(batch);
+            } catch (Throwable t) {
+                System.err.println("Exception occurred while handling batch: " + batch.getRecordClass().getName());
+                t.printStackTrace();
+            }
         }
     }
 
     @Override
-    public void post(@NotNull AbstractMessage message) {
-        synchronized (this.listeners) {
-            for (Iterator<RegisteredListener> iterator = this.listeners.getOrDefault(message.getClass(), Collections.emptyList()).iterator(); iterator.hasNext(); ) {
-                RegisteredListener listener = iterator.next();
-
-                try {
-                    //noinspection unchecked
-                    listener.listener.accept(message);
-                } catch (Throwable t) {
-                    System.err.println("Exception occurred while handling message: " + message.getClass().getName());
-                    t.printStackTrace();
-                }
-
-                if (listener.once)
-                    iterator.remove();
+    public void post(@NotNull Object message) {
+        RegisteredListener[] registeredListeners = this.listeners.get(message.getClass());
+        if (registeredListeners == null)
+            return;
+
+        for (RegisteredListener listener : registeredListeners) {
+            //Only the first post may call a once-listener
+            if (listener.once && !listener.consumed.compareAndSet(false, true))
+                continue;
+
+            try {
+                listener.listener.accept(message);
+            } catch (Throwable t) {
+                System.err.println("Exception occurred while handling message: " + message.getClass().getName());
+                t.printStackTrace();
             }
+
+            if (listener.once)
+                removeListeners(this.listeners, message.getClass(), rl -> rl == listener);
+        }
+    }
+
+    /**
+     * Appends the given {@code listener} to the listeners of the given {@code messageClass} in the given map.
+     */
+    private static void addListener(@NotNull Map<Class<?>, RegisteredListener[]> listeners, @NotNull Class<?> messageClass, @NotNull RegisteredListener listener) {
+        synchronized (listeners) {
+            RegisteredListener[] registeredListeners = listeners.get(messageClass);
+            if (registeredListeners == null) {
+                registeredListeners = new RegisteredListener[]{listener};
+            } else {
+                registeredListeners = Arrays.copyOf(registeredListeners, registeredListeners.length + 1);
+                registeredListeners[registeredListeners.length - 1] = listener;
+            }
+
+            listeners.put(messageClass, registeredListeners);
+        }
+    }
+
+    /**
+     * Removes all listeners of the given {@code messageClass} in the given map which match the given {@code filter}.
+     */
+    private static void removeListeners(@NotNull Map<Class<?>, RegisteredListener[]> listeners, @NotNull Class<?> messageClass, @NotNull Predicate<RegisteredListener> filter) {
+        synchronized (listeners) {
+            RegisteredListener[] registeredListeners = listeners.get(messageClass);
+            if (registeredListeners == null)
+                return;
+
+            RegisteredListener[] remainingListeners = Arrays.stream(registeredListeners)
+                    .filter(filter.negate())
+                    .toArray(RegisteredListener[]::new);
+            if (remainingListeners.length == registeredListeners.length)
+                return;
+
+            if (remainingListeners.length == 0)
+                listeners.remove(messageClass);
+            else
+                listeners.put(messageClass, remainingListeners);
         }
     }
 
@@ -95,14 +168,23 @@ public class DefaultMessageBus implements IMessageBus {
     private static final class RegisteredListener {
 
         private final boolean once;
+        /**
+         * Only receives messages of the class which it was registered for
+         */
         @NotNull
-        private final Consumer listener;
+        private final Consumer<Object> listener;
         @Nullable
         private final Object associatedObject;
+        /**
+         * Whether a once-listener already received its message
+         */
+        @NotNull
+        private final AtomicBoolean consumed = new AtomicBoolean();
 
+        @SuppressWarnings("unchecked")
         private RegisteredListener(boolean once, @NotNull Consumer<?> listener, @Nullable Object associatedObject) {
             this.once = once;
-            this.listener = listener;
+            this.listener = (Consumer<Object>) listener;
             this.associatedObject = associatedObject;
         }
     }
@@ -4,23 +4,30 @@ import com.github.tth05.scnet.message.*;
 import com.github.tth05.scnet.util.ByteBufferInputStream;
 import com.github.tth05.scnet.util.ByteBufferOutputStream;
 import com.github.tth05.scnet.util.ByteBufferUtils;
+import com.github.tth05.scnet.util.StringTable;
+import com.github.tth05.scnet.wait.IWaitStrategy;
+import com.github.tth05.scnet.wait.SleepingWaitStrategy;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.lang.invoke.LambdaMetafactory;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
-import java.nio.channels.SocketChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 /**
@@ -28,27 +35,65 @@ import java.util.function.Supplier;
  */
 public class DefaultMessageProcessor implements IMessageProcessor {
 
+    public static final int DEFAULT_MAX_FRAME_SIZE = 1 << 24;
+
     /**
      * The length in bytes of each message header.
      */
-    private static final int MESSAGE_HEADER_BYTES = Byte.BYTES * 6;
+    static final int MESSAGE_HEADER_BYTES = Byte.BYTES * 6;
+    /**
+     * The id of the frames which contain the Strings interned by the message in the next frame
+     */
+    static final short STRING_DEFINITIONS_ID = -6;
 
     /**
-     * A map of registered incoming messages. The key is the id of the message.
+     * An array of registered incoming messages, indexed by the id of the message. The array grows when messages with
+     * higher ids are registered.
      */
     @NotNull
-    private final Map<Short, RegisteredIncomingMessage> incomingMessages = new HashMap<>();
+    private RegisteredIncomingMessage[] incomingMessages = new RegisteredIncomingMessage[1];
     /**
      * A map of registered outgoing messages. The key is the message class, and the value is the id for that message.
      */
     @NotNull
-    private final Map<Class<? extends AbstractMessage>, Short> outgoingMessages = new HashMap<>();
+    private final Map<Class<?>, Short> outgoingMessages = new HashMap<>();
+    /**
+     * The codecs of all messages which were registered with one, by message class
+     */
+    @NotNull
+    private final Map<Class<?>, IMessageCodec<?>> codecs = new HashMap<>();
+    /**
+     * The ids of all records which were registered for batches, by record class
+     */
+    @NotNull
+    private final Map<Class<?>, Short> outgoingBatches = new HashMap<>();
 
     /**
-     * A queue containing all messages which are queued for sending.
+     * A queue for each {@link MessagePriority}, indexed by its ordinal, containing all messages which are queued for
+     * sending.
+     */
+    @NotNull
+    private final Queue<Object>[] outgoingMessageQueues;
+    /**
+     * The amount of messages which are written from each queue per round, indexed by the ordinal of the priority
+     */
+    @NotNull
+    private final int[] priorityWeights;
+    /**
+     * @see #setMessagePriority(Class, MessagePriority)
+     */
+    @NotNull
+    private final Map<Class<?>, MessagePriority> messagePriorities = new ConcurrentHashMap<>();
+    /**
+     * The slots of all queued {@link AbstractConflatingMessage}s, by message class and key
+     */
+    @NotNull
+    private final Map<Class<? extends AbstractMessage>, Map<Object, ConflationSlot>> conflationSlots = new ConcurrentHashMap<>();
+    /**
+     * @see #getConflatedMessageCount()
      */
     @NotNull
-    private final Queue<AbstractMessage> outgoingMessageQueue = new ConcurrentLinkedDeque<>();
+    private final AtomicLong conflatedMessageCount = new AtomicLong();
 
     /**
      * A buffer for messages to allow for batch writing of multiple queued messages.
@@ -62,238 +107,1279 @@ public class DefaultMessageProcessor implements IMessageProcessor {
     @NotNull
     private ByteBuffer messageWriteBuffer = ByteBuffer.allocate(512);
     /**
-     * A buffer used for batch reading.
+     * A buffer used for batch reading. Between reads, this buffer is in write mode and contains the bytes of any
+     * partially received frame in {@code [0;position[}.
      */
     @NotNull
     private ByteBuffer readBuffer = ByteBuffer.allocateDirect(4096);
+    /**
+     * An input stream wrapping the {@link #readBuffer}, which is re-used for every received message.
+     */
+    @NotNull
+    private ByteBufferInputStream readStream = new ByteBufferInputStream(this.readBuffer);
 
     /**
-     * @see #getProcessLoopDelay()
+     * @see #getWaitStrategy()
      */
-    private int processLoopDelay = 5;
+    @NotNull
+    private volatile IWaitStrategy waitStrategy = new SleepingWaitStrategy(5);
+    /**
+     * @see #setWakeupHandler(Runnable)
+     */
+    @Nullable
+    private volatile Runnable wakeupHandler;
+    /**
+     * @see #setReliableSession(ReliableSession)
+     */
+    @Nullable
+    private ReliableSession reliableSession;
+    /**
+     * All opened streams, indexed by their id. Replaced when a stream is opened.
+     */
+    @NotNull
+    private volatile MessageStream[] streams = new MessageStream[0];
+    /**
+     * The index in {@link #streams} of the stream which sends the next fragment
+     */
+    private int nextStream;
+    /**
+     * Encodes and decodes {@link AbstractDeltaMessage}s
+     */
+    @NotNull
+    private final DeltaCodec deltaCodec = new DeltaCodec();
+    /**
+     * @see #setFrameCompression(FrameCompression)
+     */
+    @Nullable
+    private FrameCompression frameCompression;
+    /**
+     * The Strings interned by sent and received messages, see {@link ByteBufferOutputStream#writeInternedString(String)}
+     */
+    @NotNull
+    private final StringTable sentStrings = new StringTable();
+    @NotNull
+    private final StringTable receivedStrings = new StringTable();
+    /**
+     * The stream into which the body of a {@link #STRING_DEFINITIONS_ID} frame is written
+     */
+    @NotNull
+    private final ByteBufferOutputStream stringDefinitionStream = new ByteBufferOutputStream(64);
+    /**
+     * @see #setWriteCoalescing(int, long, TimeUnit)
+     */
+    private volatile int coalescingThreshold;
+    /**
+     * The maximum time in nanoseconds for which bytes are held back, {@code 0} if coalescing is disabled
+     */
+    private volatile long coalescingDelay;
+    /**
+     * Set while bytes in the {@link #writeBuffer} are held back, since {@link #heldSince}
+     */
+    private boolean holding;
+    private long heldSince;
+    /**
+     * Set once the bytes in the {@link #writeBuffer} are being written, until all of them were accepted by the channel
+     */
+    private boolean flushing;
+    /**
+     * The number of calls to {@link #flush()}, and the number which was seen by the last write which emptied the
+     * {@link #writeBuffer}
+     */
+    private final AtomicLong flushRequests = new AtomicLong();
+    private long handledFlushRequests;
+    /**
+     * The number of calls to {@link #flush()} seen by the current write
+     */
+    private long seenFlushRequests;
+    /**
+     * @see #setMaxFrameSize(int)
+     */
+    private volatile int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
     public DefaultMessageProcessor() {
+        MessagePriority[] priorities = MessagePriority.values();
+        this.outgoingMessageQueues = new Queue[priorities.length];
+        this.priorityWeights = new int[priorities.length];
+        for (MessagePriority priority : priorities) {
+            this.outgoingMessageQueues[priority.ordinal()] = new ConcurrentLinkedDeque<>();
+            this.priorityWeights[priority.ordinal()] = priority.getDefaultWeight();
+        }
+
         //Register noop message
-        this.incomingMessages.put((short) 0, new RegisteredIncomingMessage(EmptyMessage.class));
+        this.incomingMessages[0] = new RegisteredIncomingMessage(EmptyMessage.class);
         this.outgoingMessages.put(EmptyMessage.class, (short) 0);
     }
 
     @Override
     public <T extends AbstractMessage> void registerMessage(short id, @NotNull Class<T> messageClass) {
-        if (id < 1)
-            throw new IllegalArgumentException("id has to be greater than zero");
-        if (this.incomingMessages.containsKey(id) || this.outgoingMessages.containsKey(id))
-            throw new IllegalArgumentException("message with id " + id + " is already registered");
+        checkUnusedId(id);
 
         if (AbstractMessageIncoming.class.isAssignableFrom(messageClass)) {
-            this.incomingMessages.put(id, new RegisteredIncomingMessage(messageClass));
+            putIncomingMessage(id, new RegisteredIncomingMessage(messageClass));
         } else if (AbstractMessageOutgoing.class.isAssignableFrom(messageClass)) {
             this.outgoingMessages.put(messageClass, id);
         } else if (AbstractMessage.class.isAssignableFrom(messageClass)) {
-            this.incomingMessages.put(id, new RegisteredIncomingMessage(messageClass));
+            putIncomingMessage(id, new RegisteredIncomingMessage(messageClass));
             this.outgoingMessages.put(messageClass, id);
         } else {
             throw new IllegalArgumentException("messageClass does not implement AbstractMessage");
         }
     }
 
+    /**
+     * @throws IllegalArgumentException if the given {@code id} is smaller than 1 or already used by another message
+     */
+    private void checkUnusedId(short id) {
+        if (id < 1)
+            throw new IllegalArgumentException("id has to be greater than zero");
+        if ((id < this.incomingMessages.length && this.incomingMessages[id] != null) ||
+            this.outgoingMessages.containsValue(id) || this.outgoingBatches.containsValue(id))
+            throw new IllegalArgumentException("message with id " + id + " is already registered");
+    }
+
+    /**
+     * Stores the given {@code message} in {@link #incomingMessages}, growing the array if needed.
+     */
+    private void putIncomingMessage(short id, @NotNull RegisteredIncomingMessage message) {
+        if (id >= this.incomingMessages.length)
+            this.incomingMessages = Arrays.copyOf(this.incomingMessages, id + 1);
+        this.incomingMessages[id] = message;
+    }
+
+    @Override
+    public <T> void registerMessage(short id, @NotNull Class<T> messageClass, @NotNull IMessageCodec<T> codec) {
+        checkUnusedId(id);
+        if (AbstractMessage.class.isAssignableFrom(messageClass))
+            throw new IllegalArgumentException("messageClass implements AbstractMessage and does not need a codec");
+
+        putIncomingMessage(id, new RegisteredIncomingMessage(messageClass, codec, false));
+        this.outgoingMessages.put(messageClass, id);
+        this.codecs.put(messageClass, codec);
+    }
+
+    /**
+     * Registers the record with its {@link RecordCodec}.
+     */
     @Override
-    public void enqueueMessage(@NotNull AbstractMessage message) {
-        this.outgoingMessageQueue.offer(message);
+    public <R extends Record> void registerRecord(short id, @NotNull Class<R> recordClass) {
+        registerMessage(id, recordClass, RecordCodec.of(recordClass));
     }
 
     @Override
-    public boolean process(@NotNull Selector selector, @NotNull SocketChannel channel, @NotNull IMessageBus messageBus) {
-        try {
-            Thread.sleep(this.processLoopDelay);
+    public <R extends Record> void registerBatch(short id, @NotNull Class<R> recordClass) {
+        checkUnusedId(id);
+        if (this.outgoingBatches.containsKey(recordClass))
+            throw new IllegalArgumentException("batches of " + recordClass.getName() + " are already registered");
+        //Builds the layout, which fails for unsupported records
+        Batch.empty(recordClass);
 
-            int selected = selector.select(5);
-            if (selected < 1)
-                return true;
+        putIncomingMessage(id, new RegisteredIncomingMessage(recordClass, null, true));
+        this.outgoingBatches.put(recordClass, id);
+    }
+
+    @Override
+    public boolean canSend(@NotNull Class<?> messageClass) {
+        return this.outgoingMessages.containsKey(messageClass);
+    }
 
-            for (Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext(); ) {
-                SelectionKey key = iterator.next();
+    /**
+     * Enqueues the given {@code message} with the priority of its class.
+     *
+     * @see #setMessagePriority(Class, MessagePriority)
+     */
+    @Override
+    public void enqueueMessage(@NotNull Object message) {
+        Class<?> messageClass = message instanceof EncodedMessage ? ((EncodedMessage) message).getMessageClass() : message.getClass();
+        enqueueMessage(message, this.messagePriorities.getOrDefault(messageClass, MessagePriority.NORMAL));
+    }
 
-                if (key.isWritable() && !this.outgoingMessageQueue.isEmpty()) {
-                    doWrite(channel);
-                }
-                if (key.isReadable()) {
-                    if (!doRead(channel, messageBus))
-                        return false;
+    /**
+     * Enqueues the given {@code message} with the given priority. Messages which are appended to an
+     * {@link OutboundJournal} are always sent in the order they were enqueued.
+     * <br>
+     * An {@link AbstractConflatingMessage} replaces a queued message of the same type and key in place, and keeps the
+     * priority of the replaced message.
+     */
+    @Override
+    public void enqueueMessage(@NotNull Object message, @NotNull MessagePriority priority) {
+        ReliableSession session = this.reliableSession;
+        OutboundJournal journal = session != null ? session.getJournal() : null;
+        if (journal != null) {
+            //Encode the message right away, so it doesn't stay on the heap while the connection is down
+            short messageId = getMessageId(message);
+            if (messageId == -1)
+                throw new IllegalArgumentException("Message " + message.getClass() + " is not registered");
+            boolean appended = journal.append(messageId, message, this);
+            if (message instanceof EncodedMessage)
+                ((EncodedMessage) message).release();
+            if (!appended)
+                return;
+        } else if (message instanceof AbstractConflatingMessage) {
+            if (!offerConflatingMessage((AbstractConflatingMessage) message, this.outgoingMessageQueues[priority.ordinal()], true))
+                return;
+        } else {
+            this.outgoingMessageQueues[priority.ordinal()].offer(message);
+        }
+
+        wakeup();
+    }
+
+    /**
+     * Replaces the queued message with the same key as the given {@code message}, or queues a new slot for it.
+     *
+     * @param replace {@code true} if a queued message should be replaced; {@code false} if the given message should be
+     *                dropped instead
+     * @return {@code true} if a new slot was queued; {@code false} if the message was conflated
+     */
+    private boolean offerConflatingMessage(@NotNull AbstractConflatingMessage message, @NotNull Queue<Object> queue, boolean replace) {
+        Map<Object, ConflationSlot> slots = this.conflationSlots.computeIfAbsent(message.getClass(), (c) -> new ConcurrentHashMap<>());
+        Object key = message.getConflationKey();
+        while (true) {
+            ConflationSlot slot = slots.get(key);
+            if (slot != null) {
+                //A closed slot was already removed from the map, so the next attempt creates a new one
+                if (!replace || slot.replace(message)) {
+                    this.conflatedMessageCount.incrementAndGet();
+                    return false;
                 }
+                continue;
+            }
 
-                iterator.remove();
+            slot = new ConflationSlot(slots, key, message);
+            if (slots.putIfAbsent(key, slot) == null) {
+                queue.offer(slot);
+                return true;
             }
+        }
+    }
+
+    /**
+     * @return the amount of {@link AbstractConflatingMessage}s which were replaced by a newer message with the same key
+     * before they were sent
+     */
+    public long getConflatedMessageCount() {
+        return this.conflatedMessageCount.get();
+    }
 
+    /**
+     * Opens a logical stream with the {@link MessageStream#DEFAULT_WINDOW_SIZE default window size} and
+     * {@link MessageStream#DEFAULT_FRAGMENT_SIZE default fragment size}.
+     *
+     * @see #openStream(short, int, int)
+     */
+    @NotNull
+    public MessageStream openStream(short id) {
+        return openStream(id, MessageStream.DEFAULT_WINDOW_SIZE, MessageStream.DEFAULT_FRAGMENT_SIZE);
+    }
+
+    /**
+     * Opens a logical stream, whose messages are split into fragments which are interleaved with the messages of all
+     * other streams. The stream has to be opened with the same settings on both sides before connecting. Streams can't
+     * be used together with an {@link OutboundJournal}.
+     *
+     * @param id           the id of the stream, has to be greater than zero and unique amongst all streams
+     * @param windowSize   the maximum amount of bytes in flight before the receiver grants new credit
+     * @param fragmentSize the maximum payload size of a single fragment
+     * @return the stream, on which messages can be enqueued
+     * @throws IllegalArgumentException if the id is invalid or already in use
+     * @see MessageStream
+     */
+    @NotNull
+    public synchronized MessageStream openStream(short id, int windowSize, int fragmentSize) {
+        if (id < 1)
+            throw new IllegalArgumentException("id has to be greater than zero");
+        MessageStream[] streams = this.streams;
+        if (getStream(id) != null)
+            throw new IllegalArgumentException("stream with id " + id + " is already open");
+
+        MessageStream stream = new MessageStream(id, windowSize, fragmentSize, this::wakeup);
+        MessageStream[] newStreams = Arrays.copyOf(streams, Math.max(streams.length, id + 1));
+        newStreams[id] = stream;
+        this.streams = newStreams;
+        return stream;
+    }
+
+    /**
+     * @return the stream with the given id, or {@code null} if it was not opened
+     */
+    @Nullable
+    public MessageStream getStream(short id) {
+        MessageStream[] streams = this.streams;
+        return id > 0 && id < streams.length ? streams[id] : null;
+    }
+
+    /**
+     * Runs the {@link #wakeupHandler}, if there is one.
+     */
+    private void wakeup() {
+        Runnable wakeupHandler = this.wakeupHandler;
+        if (wakeupHandler != null)
+            wakeupHandler.run();
+    }
+
+    @Override
+    public boolean read(@NotNull ReadableByteChannel channel, @NotNull IMessageBus messageBus) {
+        return doRead(channel, messageBus);
+    }
+
+    @Override
+    public boolean write(@NotNull WritableByteChannel channel) {
+        try {
+            doWrite(channel);
             return true;
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
+        } catch (IOException e) {
             return false;
         }
     }
 
+    @Override
+    public boolean hasPendingWrites() {
+        if (this.writeBuffer.position() > 0 && isFlushDue())
+            return true;
+
+        ReliableSession session = this.reliableSession;
+        if (session != null) {
+            if (session.hasPendingControlFrames())
+                return true;
+            //Queued messages have to wait
+            if (!session.isEstablished() || session.isBlocked())
+                return false;
+            if (session.getJournal() != null)
+                return session.getJournal().hasUnsentFrames();
+        }
+
+        for (MessageStream stream : this.streams) {
+            if (stream != null && (stream.hasSendableData() || stream.hasPendingWindowUpdate()))
+                return true;
+        }
+
+        for (Queue<Object> queue : this.outgoingMessageQueues) {
+            if (!queue.isEmpty())
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void flush() {
+        this.flushRequests.incrementAndGet();
+        wakeup();
+    }
+
+    @Override
+    public long getFlushDelay() {
+        if (!this.holding || this.flushing)
+            return -1;
+        return Math.max(0, this.heldSince + this.coalescingDelay - System.nanoTime());
+    }
+
+    @Override
+    public void setWakeupHandler(@Nullable Runnable wakeupHandler) {
+        this.wakeupHandler = wakeupHandler;
+    }
+
     @Override
     public void reset() {
-        this.outgoingMessageQueue.clear();
+        ReliableSession session = this.reliableSession;
+        //Queued messages are kept for a session which will be resumed
+        boolean keepSession = session != null && !session.onConnectionReset();
+        if (!keepSession) {
+            for (Queue<Object> queue : this.outgoingMessageQueues)
+                drain(queue);
+            for (Map<Object, ConflationSlot> slots : this.conflationSlots.values())
+                slots.clear();
+            this.deltaCodec.reset();
+            this.sentStrings.reset();
+            this.receivedStrings.reset();
+        }
+        for (MessageStream stream : this.streams) {
+            if (stream != null)
+                stream.reset(keepSession);
+        }
         this.messageWriteBuffer.clear();
         this.writeBuffer.clear();
         this.readBuffer.clear();
+        this.holding = false;
+        this.flushing = false;
+        this.handledFlushRequests = this.flushRequests.get();
     }
 
     /**
-     * Writes all queued messages in batches to the given {@code channel}.
+     * Writes queued messages in batches to the given {@code channel}. If the channel does not accept any more data,
+     * the unwritten bytes stay in the {@link #writeBuffer} and the remaining messages stay queued until the next call.
+     * If write coalescing is enabled, the bytes of the queued messages are only written once the
+     * {@link #isFlushDue() flush is due}.
      *
      * @param channel the channel to write to
      * @throws IOException if any write operation failed
      */
-    private void doWrite(SocketChannel channel) throws IOException {
-        for (Iterator<AbstractMessage> iterator = this.outgoingMessageQueue.iterator(); iterator.hasNext(); iterator.remove()) {
-            AbstractMessage message = iterator.next();
-            ByteBufferOutputStream messageOutStream = new ByteBufferOutputStream(this.messageWriteBuffer);
-            try {
-                message.write(messageOutStream);
-            } catch (Throwable t) {
-                System.err.println("Exception occurred while serializing message: " + message.getClass().getName());
-                t.printStackTrace();
-                continue;
+    private void doWrite(WritableByteChannel channel) throws IOException {
+        this.seenFlushRequests = this.flushRequests.get();
+        //Don't encode any more messages while the channel is still full
+        if (!flushCoalesced(channel))
+            return;
+
+        ReliableSession session = this.reliableSession;
+        if (session != null) {
+            session.writeControlFrames(this.writeBuffer);
+            if (!session.isEstablished()) {
+                flushWriteBuffer(channel);
+                return;
             }
 
-            //If the buffer increased in size, save the reference
-            if (this.messageWriteBuffer != messageOutStream.getBuffer()) {
-                this.messageWriteBuffer = messageOutStream.getBuffer();
+            //Frames which the peer did not receive have to be sent before any new messages
+            while (session.replay(this.writeBuffer)) {
+                if (!flushWriteBuffer(channel))
+                    return;
             }
 
-            int size = this.messageWriteBuffer.position();
-            short messageId = this.outgoingMessages.getOrDefault(message.getClass(), (short) -1);
-            if (messageId == -1)
-                throw new IllegalArgumentException("Message " + message.getClass() + " is not registered");
+            //Frames in the journal are sent straight from the segment files
+            OutboundJournal journal = session.getJournal();
+            if (journal != null) {
+                if (flushWriteBuffer(channel))
+                    journal.transferTo(channel);
+                return;
+            }
+        }
 
-            //If the current message doesn't fit into our writeBuffer, then flush it
-            if (this.writeBuffer.position() + MESSAGE_HEADER_BYTES + size > this.writeBuffer.capacity()) {
-                this.writeBuffer.flip();
-                while (this.writeBuffer.hasRemaining())
-                    channel.write(this.writeBuffer);
-                this.writeBuffer.clear();
+        for (MessageStream stream : this.streams) {
+            if (stream != null && stream.hasPendingWindowUpdate())
+                stream.writeWindowUpdate(this.writeBuffer);
+        }
 
-                if (MESSAGE_HEADER_BYTES + size > this.writeBuffer.capacity()) {
-                    this.writeBuffer = ByteBuffer.allocateDirect(MESSAGE_HEADER_BYTES + size);
+        //Fragments of the streams are sent in turns, with the messages of the regular queue in between
+        boolean drained = false;
+        while (writeQueuedMessages(channel, session)) {
+            int fragments = writeStreamFragments(channel, session);
+            if (fragments < 0)
+                return;
+            if (fragments == 0) {
+                drained = true;
+                break;
+            }
+        }
+
+        //All messages which were queued before the flush requests were seen are written now
+        if (flushCoalesced(channel) && drained && !this.holding)
+            this.handledFlushRequests = this.seenFlushRequests;
+    }
+
+    /**
+     * Writes the {@link #writeBuffer} if the {@link #isFlushDue() flush is due}, and holds its bytes back otherwise.
+     *
+     * @return {@code false} if the channel did not accept all bytes which had to be written; {@code true} otherwise
+     * @throws IOException if any write operation failed
+     */
+    private boolean flushCoalesced(WritableByteChannel channel) throws IOException {
+        if (this.writeBuffer.position() > 0 && !isFlushDue()) {
+            if (!this.holding) {
+                this.holding = true;
+                this.heldSince = System.nanoTime();
+            }
+            return true;
+        }
+
+        return flushWriteBuffer(channel);
+    }
+
+    /**
+     * @return {@code true} if the bytes in the {@link #writeBuffer} have to be written now, because coalescing is
+     * disabled, a flush was requested or is in progress, at least {@link #coalescingThreshold} bytes are pending, or
+     * the bytes were held back for {@link #coalescingDelay} nanoseconds
+     */
+    private boolean isFlushDue() {
+        long coalescingDelay = this.coalescingDelay;
+        if (coalescingDelay == 0 || this.flushing || this.flushRequests.get() != this.handledFlushRequests)
+            return true;
+        if (this.writeBuffer.position() >= this.coalescingThreshold)
+            return true;
+        return this.holding && System.nanoTime() - this.heldSince >= coalescingDelay;
+    }
+
+    /**
+     * Appends the messages of the {@link #outgoingMessageQueues} to the {@link #writeBuffer}. The queues are drained in
+     * rounds, starting with the highest priority, and each round writes up to the weight of each queue in messages.
+     *
+     * @return {@code false} if the channel did not accept all pending bytes; {@code true} otherwise
+     * @throws IOException if any write operation failed
+     */
+    private boolean writeQueuedMessages(WritableByteChannel channel, @Nullable ReliableSession session) throws IOException {
+        boolean written;
+        do {
+            written = false;
+            for (int i = 0; i < this.outgoingMessageQueues.length; i++) {
+                Queue<Object> queue = this.outgoingMessageQueues[i];
+                for (int j = 0; j < this.priorityWeights[i]; j++) {
+                    int result = writeQueuedMessage(channel, session, queue);
+                    if (result < 0)
+                        return false;
+                    if (result == 0)
+                        break;
+                    written = true;
                 }
             }
+        } while (written);
+
+        return true;
+    }
+
+    /**
+     * Appends the first message of the given {@code queue} to the {@link #writeBuffer}.
+     *
+     * @return {@code 1} if a message was written, {@code 0} if the queue is empty or the retransmit buffer of the
+     * session is full, or {@code -1} if the channel did not accept all pending bytes
+     * @throws IOException if any write operation failed
+     */
+    private int writeQueuedMessage(WritableByteChannel channel, @Nullable ReliableSession session, Queue<Object> queue) throws IOException {
+        Object message;
+        while ((message = queue.peek()) != null) {
+            ConflationSlot slot = null;
+            if (message instanceof ConflationSlot) {
+                slot = (ConflationSlot) message;
+                message = slot.getMessage();
+                if (message == null) {
+                    queue.poll();
+                    continue;
+                }
+            }
+
+            ByteBuffer payload;
+            if (message instanceof EncodedMessage) {
+                //Already encoded, write a view of the shared payload
+                payload = ((EncodedMessage) message).getPayload();
+            } else {
+                payload = encode(message, this.messageWriteBuffer, this.sentStrings);
+                if (payload == null) {
+                    this.sentStrings.rollback();
+                    dequeue(queue, slot, message);
+                    continue;
+                }
+                this.messageWriteBuffer = payload;
+            }
+
+            short messageId = getMessageId(message);
+            if (messageId == -1) {
+                this.sentStrings.rollback();
+                dequeue(queue, slot, message);
+                throw new IllegalArgumentException("Message " + message.getClass() + " is not registered");
+            }
+
+            short frameId = messageId;
+            boolean delta = message instanceof AbstractDeltaMessage;
+            if (delta) {
+                payload = this.deltaCodec.encode(messageId, payload);
+                frameId = DeltaCodec.DELTA_ID;
+            }
+            int sizeFlags = 0;
+            FrameCompression compression = this.frameCompression;
+            ByteBuffer compressedPayload = compression != null ? compression.compress(payload) : null;
+            if (compressedPayload != null) {
+                payload = compressedPayload;
+                sizeFlags = FrameCompression.FLAG_COMPRESSED;
+            }
+            int size = payload.remaining();
+
+            //Strings which were interned by this message are sent in a frame of their own before it
+            ByteBuffer definitions = null;
+            if (this.sentStrings.hasPendingStrings()) {
+                this.stringDefinitionStream.getBuffer().clear();
+                this.sentStrings.writePendingStrings(this.stringDefinitionStream);
+                definitions = this.stringDefinitionStream.getBuffer().flip();
+            }
+            int definitionsLength = definitions != null ? MESSAGE_HEADER_BYTES + definitions.remaining() : 0;
+
+            //Keep the message queued until the peer acknowledged enough frames
+            if (session != null && !session.hasRoomFor(definitionsLength + MESSAGE_HEADER_BYTES + size)) {
+                //The message is encoded again later, which interns the same Strings again
+                this.sentStrings.rollback();
+                return 0;
+            }
+
+            boolean flushed = makeRoom(channel, definitionsLength + MESSAGE_HEADER_BYTES + size);
+            //Only dequeue the message once the flush succeeded, a failed flush would lose it otherwise
+            dequeue(queue, slot, message);
+
+            if (definitions != null) {
+                int definitionsStart = this.writeBuffer.position();
+                this.writeBuffer.putShort(STRING_DEFINITIONS_ID);
+                this.writeBuffer.putInt(definitions.remaining());
+                this.writeBuffer.put(definitions);
+                this.sentStrings.commit();
+                if (session != null)
+                    session.retain(this.writeBuffer, definitionsStart);
+            }
 
             //Append the packet to the writeBuffer
-            this.writeBuffer.putShort(messageId);
-            this.writeBuffer.putInt(size);
-            this.messageWriteBuffer.flip();
-            this.writeBuffer.put(this.messageWriteBuffer);
+            int frameStart = this.writeBuffer.position();
+            this.writeBuffer.putShort(frameId);
+            this.writeBuffer.putInt(size | sizeFlags);
+            this.writeBuffer.put(payload);
+            if (delta)
+                this.deltaCodec.commit(messageId, this.messageWriteBuffer);
+            if (session != null)
+                session.retain(this.writeBuffer, frameStart);
+            if (message instanceof EncodedMessage)
+                ((EncodedMessage) message).release();
+
+            return flushed ? 1 : -1;
         }
 
-        this.writeBuffer.flip();
-        while (this.writeBuffer.hasRemaining())
-            channel.write(this.writeBuffer);
-        this.writeBuffer.clear();
+        return 0;
     }
 
     /**
-     * Reads all available messages from the given {@code channel} and {@link IMessageBus#post(AbstractMessage)}s them.
+     * Removes all messages from the given {@code queue}, which are dropped. Queued {@link ConflationSlot}s are closed and
+     * the references of queued {@link EncodedMessage}s are released.
+     */
+    static void drain(@NotNull Queue<Object> queue) {
+        Object message;
+        while ((message = queue.poll()) != null) {
+            if (message instanceof ConflationSlot)
+                message = ((ConflationSlot) message).close();
+            if (message instanceof EncodedMessage)
+                ((EncodedMessage) message).release();
+        }
+    }
+
+    /**
+     * Removes the first message from the given {@code queue}. If it was a {@link ConflationSlot} and its message was
+     * replaced after it had been encoded, the newer message is queued again, unless a message with the same key was
+     * queued in the meantime.
+     *
+     * @param written the message which was taken from the slot
+     */
+    private void dequeue(@NotNull Queue<Object> queue, @Nullable ConflationSlot slot, @NotNull Object written) {
+        queue.poll();
+        if (slot == null)
+            return;
+
+        AbstractMessage newest = slot.close();
+        if (newest != null && newest != written)
+            offerConflatingMessage((AbstractConflatingMessage) newest, queue, false);
+    }
+
+    /**
+     * Appends at most one fragment of every stream to the {@link #writeBuffer}, starting with the stream after the one
+     * which sent the last fragment.
+     *
+     * @return the number of written fragments, or {@code -1} if the channel did not accept all pending bytes
+     * @throws IOException if any write operation failed
+     */
+    private int writeStreamFragments(WritableByteChannel channel, @Nullable ReliableSession session) throws IOException {
+        MessageStream[] streams = this.streams;
+        int fragments = 0;
+        for (int i = 0; i < streams.length; i++) {
+            int index = (this.nextStream + i) % streams.length;
+            MessageStream stream = streams[index];
+            if (stream == null || !stream.hasSendableData() || !stream.prepareMessage(this))
+                continue;
+
+            int frameLength = MESSAGE_HEADER_BYTES + MessageStream.FRAGMENT_HEADER_BYTES + stream.getNextFragmentLength();
+            if (session != null && !session.hasRoomFor(frameLength))
+                break;
+
+            boolean flushed = makeRoom(channel, frameLength);
+            int frameStart = this.writeBuffer.position();
+            stream.writeFragment(this.writeBuffer, stream.getNextFragmentLength());
+            if (session != null)
+                session.retain(this.writeBuffer, frameStart);
+            fragments++;
+            this.nextStream = index + 1;
+
+            if (!flushed)
+                return -1;
+        }
+
+        return fragments;
+    }
+
+    /**
+     * Makes sure that a frame of the given length fits into the {@link #writeBuffer}, by flushing it or by moving it
+     * into a bigger buffer.
+     *
+     * @return {@code false} if the channel did not accept all pending bytes; {@code true} otherwise
+     * @throws IOException if any write operation failed
+     */
+    private boolean makeRoom(WritableByteChannel channel, int frameLength) throws IOException {
+        if (this.writeBuffer.remaining() >= frameLength)
+            return true;
+
+        boolean flushed = flushWriteBuffer(channel);
+        //Grow the buffer if the message is too large, or if the channel didn't accept all pending bytes
+        if (this.writeBuffer.remaining() < frameLength) {
+            this.writeBuffer.flip();
+            this.writeBuffer = ByteBufferUtils.moveToNewDirectBuffer(this.writeBuffer, this.writeBuffer.remaining() + frameLength);
+        }
+        return flushed;
+    }
+
+    /**
+     * @return the registered id of the given {@code message}, or of the original message class if it is an
+     * {@link EncodedMessage}; {@code -1} if the message is not registered
+     */
+    short getMessageId(@NotNull Object message) {
+        if (message instanceof Batch)
+            return this.outgoingBatches.getOrDefault(((Batch<?>) message).getRecordClass(), (short) -1);
+
+        Class<?> messageClass = message instanceof EncodedMessage ? ((EncodedMessage) message).getMessageClass() : message.getClass();
+        return this.outgoingMessages.getOrDefault(messageClass, (short) -1);
+    }
+
+    /**
+     * Encodes the payload of the given {@code message} into a re-used buffer using
+     * {@link #writeMessage(Object, ByteBufferOutputStream)}. Exceptions thrown while writing the message are printed.
+     *
+     * @param buffer      the buffer to encode into, which is cleared first
+     * @param stringTable the table which interned Strings are added to, or {@code null} to write them in full
+     * @return the flipped buffer containing the payload, which is a new buffer if the given one was too small; or
+     * {@code null} if the message could not be written
+     */
+    @Nullable
+    ByteBuffer encode(@NotNull Object message, @NotNull ByteBuffer buffer, @Nullable StringTable stringTable) {
+        ByteBufferOutputStream messageOutStream = new ByteBufferOutputStream(buffer);
+        messageOutStream.setStringTable(stringTable);
+        try {
+            writeMessage(message, messageOutStream);
+        } catch (Throwable t) {
+            System.err.println("Exception occurred while serializing message: " + message.getClass().getName());
+            t.printStackTrace();
+            return null;
+        }
+
+        return messageOutStream.getBuffer().flip();
+    }
+
+    /**
+     * Writes the payload of the given {@code message}, using the {@link IMessageCodec} of its class if it was
+     * registered with one.
+     *
+     * @throws IllegalArgumentException if the message is neither an {@link AbstractMessage} nor registered with a codec
+     */
+    void writeMessage(@NotNull Object message, @NotNull ByteBufferOutputStream messageStream) {
+        if (message instanceof AbstractMessage) {
+            ((AbstractMessage) message).write(messageStream);
+            return;
+        }
+        if (message instanceof Batch) {
+            ((Batch<?>) message).write(messageStream);
+            return;
+        }
+
+        //Codecs are registered for the exact class of their messages
+        @SuppressWarnings("unchecked")
+        IMessageCodec<Object> codec = (IMessageCodec<Object>) this.codecs.get(message.getClass());
+        if (codec == null)
+            throw new IllegalArgumentException("Message " + message.getClass() + " is not registered");
+        codec.write(message, messageStream);
+    }
+
+    /**
+     * Writes the content of the {@link #writeBuffer} to the given {@code channel} until everything is written or the
+     * channel does not accept any more bytes. Unwritten bytes are moved to the front of the buffer.
+     *
+     * @param channel the channel to write to
+     * @return {@code true} if the buffer was written completely; {@code false} otherwise
+     * @throws IOException if any write operation failed
+     */
+    private boolean flushWriteBuffer(WritableByteChannel channel) throws IOException {
+        if (this.writeBuffer.position() > 0) {
+            //Once started, the remaining bytes are written as soon as the channel accepts them
+            this.flushing = true;
+            this.writeBuffer.flip();
+            while (this.writeBuffer.hasRemaining()) {
+                if (channel.write(this.writeBuffer) < 1)
+                    break;
+            }
+            this.writeBuffer.compact();
+            if (this.writeBuffer.position() > 0)
+                return false;
+        }
+
+        this.flushing = false;
+        this.holding = false;
+        return true;
+    }
+
+    /**
+     * Reads all available messages from the given {@code channel} and {@link IMessageBus#post(Object)}s them.
+     * Frames which are only partially received stay in the {@link #readBuffer} until the rest of their bytes arrives.
      *
      * @param channel    the channel to read from
      * @param messageBus the {@link IMessageBus} which should handle incoming messages
      * @return {@code false} if something went wrong during reading, and further reading may not be possible;
      * {@code true} otherwise
      */
-    private boolean doRead(SocketChannel channel, IMessageBus messageBus) {
+    private boolean doRead(ReadableByteChannel channel, IMessageBus messageBus) {
         try {
-            this.readBuffer.clear();
-            int bytesInBuffer = channel.read(this.readBuffer);
-            if (bytesInBuffer == -1)
-                return false;
-
-            int messageStart = 0;
             while (true) {
-                //Move remaining bytes to front
-                if (this.readBuffer.capacity() - messageStart < MESSAGE_HEADER_BYTES) {
-                    ByteBufferUtils.moveToFrontAndClear(this.readBuffer, messageStart);
-                    messageStart = 0;
-                    bytesInBuffer = this.readBuffer.position();
-                }
+                int freeBytes = this.readBuffer.remaining();
+                int bytesRead = channel.read(this.readBuffer);
+                if (bytesRead == -1)
+                    return false;
 
-                //2 bytes id, 4 bytes size
-                if (bytesInBuffer - messageStart < MESSAGE_HEADER_BYTES) {
-                    if (!ByteBufferUtils.readAtLeastBlocking(channel, this.readBuffer, 6))
-                        return false;
-                    bytesInBuffer = this.readBuffer.position();
-                }
+                this.readBuffer.flip();
+                if (!processFrames(messageBus))
+                    return false;
 
-                this.readBuffer.position(messageStart);
-                short id = this.readBuffer.getShort();
-                int size = this.readBuffer.getInt();
-
-                if (this.readBuffer.capacity() - messageStart < MESSAGE_HEADER_BYTES + size) { //Full message is not contained in current buffer
-                    if (MESSAGE_HEADER_BYTES + size <= this.readBuffer.capacity()) { //If the buffer can hold the message, then move it to the front and read the rest
-                        this.readBuffer.limit(bytesInBuffer);
-                        ByteBufferUtils.moveToFrontAndClear(this.readBuffer, messageStart);
-                    } else { //If the full message can't fit into the buffer, then move it to the front in a new buffer
-                        //Create new buffer which can hold the message
-                        this.readBuffer.position(messageStart);
-                        this.readBuffer.limit(bytesInBuffer);
-                        this.readBuffer = ByteBufferUtils.moveToNewDirectBuffer(this.readBuffer, MESSAGE_HEADER_BYTES + size);
+                //Keep the remaining partial frame. If it doesn't fit into the buffer, then move it into a bigger one.
+                if (this.readBuffer.remaining() >= MESSAGE_HEADER_BYTES) {
+                    //The size was checked against the max frame size by processFrames
+                    long frameLength = (long) MESSAGE_HEADER_BYTES + (this.readBuffer.getInt(this.readBuffer.position() + Short.BYTES) & ~FrameCompression.FLAG_COMPRESSED);
+                    if (frameLength > this.readBuffer.capacity()) {
+                        setReadBuffer(ByteBufferUtils.moveToNewDirectBuffer(this.readBuffer, (int) frameLength));
+                        continue;
                     }
+                }
+                this.readBuffer.compact();
 
-                    messageStart = 0;
-                    //Read the full message
-                    if (!ByteBufferUtils.readAtLeastBlocking(channel, this.readBuffer, messageStart + MESSAGE_HEADER_BYTES + size))
+                //The channel had less data than we could have read, so there's nothing left
+                if (bytesRead < freeBytes)
+                    return true;
+            }
+        } catch (IOException t) {
+            return false;
+        }
+    }
+
+    /**
+     * Processes all complete frames between the {@link #readBuffer}'s position and limit. The position is left at the
+     * start of the first incomplete frame.
+     *
+     * @param messageBus the {@link IMessageBus} which should handle incoming messages
+     * @return {@code false} if a malformed frame or a frame larger than {@link #getMaxFrameSize()} was encountered;
+     * {@code true} otherwise
+     */
+    private boolean processFrames(IMessageBus messageBus) {
+        int limit = this.readBuffer.limit();
+        int maxFrameSize = this.maxFrameSize;
+        while (limit - this.readBuffer.position() >= MESSAGE_HEADER_BYTES) {
+            int frameStart = this.readBuffer.position();
+            //2 bytes id, 4 bytes size
+            short id = this.readBuffer.getShort(frameStart);
+            int size = this.readBuffer.getInt(frameStart + Short.BYTES);
+            boolean compressed = (size & FrameCompression.FLAG_COMPRESSED) != 0;
+            size &= ~FrameCompression.FLAG_COMPRESSED;
+            if (size > maxFrameSize)
+                return false;
+
+            long frameEnd = (long) frameStart + MESSAGE_HEADER_BYTES + size;
+            if (frameEnd > limit)
+                break;
+
+            //Bound the buffer to the current frame, so messages can't read into the next one
+            this.readBuffer.position(frameStart + MESSAGE_HEADER_BYTES);
+            this.readBuffer.limit((int) frameEnd);
+
+            try {
+                ReliableSession session = this.reliableSession;
+                if (compressed) {
+                    if (!processCompressedFrame(session, id, messageBus))
                         return false;
-                    bytesInBuffer = this.readBuffer.position();
-                } else if (bytesInBuffer - messageStart < MESSAGE_HEADER_BYTES + size) { //Full message is not contained in buffer but fits
-                    this.readBuffer.position(bytesInBuffer);
-                    //Read rest of message
-                    if (!ByteBufferUtils.readAtLeastBlocking(channel, this.readBuffer, messageStart + MESSAGE_HEADER_BYTES + size))
+                } else if (id == MessageStream.FRAGMENT_ID || id == MessageStream.WINDOW_UPDATE_ID) {
+                    if (!processStreamFrame(session, id, size, messageBus))
                         return false;
-                    bytesInBuffer = this.readBuffer.position();
-                }
-
-                this.readBuffer.position(messageStart + MESSAGE_HEADER_BYTES);
-
-                //Process the message
-                RegisteredIncomingMessage registeredMessage = this.incomingMessages.get(id);
-                if (registeredMessage != null) {
-                    AbstractMessage message = registeredMessage.newInstance();
-                    try {
-                        message.read(new ByteBufferInputStream(this.readBuffer));
-                        messageBus.post(message);
-                    } catch (Throwable t) {
-                        System.err.println("Exception while reading message " + message.getClass().getName());
-                        t.printStackTrace();
+                } else if (id == DeltaCodec.DELTA_ID) {
+                    if (!processDeltaFrame(session, this.readBuffer, messageBus))
+                        return false;
+                } else if (id == STRING_DEFINITIONS_ID) {
+                    if (!processStringDefinitions(session))
+                        return false;
+                } else {
+                    if (session != null) {
+                        boolean valid = id < 0 ? processControlFrame(session, id, frameStart + MESSAGE_HEADER_BYTES, size) : session.onFrameReceived();
+                        if (!valid)
+                            return false;
                     }
+
+                    //Process the message
+                    if (id >= 0)
+                        postMessage(messageBus, id, this.readBuffer, this.readStream);
                 }
+            } finally {
+                //Skip the frame even if processing it threw
+                this.readBuffer.limit(limit);
+                this.readBuffer.position((int) frameEnd);
+            }
+        }
 
-                messageStart += MESSAGE_HEADER_BYTES + size;
+        return true;
+    }
 
-                //If we've processed everything that's currently in the buffer, read more or return
-                if (messageStart >= bytesInBuffer) {
-                    this.readBuffer.rewind();
-                    bytesInBuffer = channel.read(this.readBuffer);
-                    messageStart = 0;
+    /**
+     * Reads the message with the given id from the given {@code buffer} and posts it, if anybody is listening for it.
+     *
+     * @param buffer the buffer which contains the payload in {@code [position;limit[}
+     * @param stream the input stream which wraps the {@code buffer}
+     */
+    private void postMessage(@NotNull IMessageBus messageBus, short id, @NotNull ByteBuffer buffer, @NotNull ByteBufferInputStream stream) {
+        RegisteredIncomingMessage registeredMessage = id < this.incomingMessages.length ? this.incomingMessages[id] : null;
+        if (registeredMessage == null)
+            return;
+        if (registeredMessage.batch) {
+            postBatch(messageBus, registeredMessage.messageClass.asSubclass(Record.class), stream);
+            return;
+        }
+        //Skip the payload if nobody is listening for this message
+        if (!messageBus.hasListeners(registeredMessage.messageClass))
+            return;
 
-                    if (bytesInBuffer == 0)
-                        break;
-                    if (bytesInBuffer == -1)
-                        return false;
-                }
+        stream.setStringTable(this.receivedStrings);
+        if (registeredMessage.codec != null) {
+            try {
+                messageBus.post(registeredMessage.codec.read(stream));
+            } catch (Throwable t) {
+                System.err.println("Exception while reading message " + registeredMessage.messageClass.getName());
+                t.printStackTrace();
             }
+            return;
+        }
 
-            return true;
-        } catch (IOException t) {
+        AbstractMessage message = registeredMessage.newInstance();
+        try {
+            if (registeredMessage.flyweight != null)
+                registeredMessage.flyweight.wrap(buffer, buffer.position(), buffer.remaining());
+            else
+                message.read(stream);
+            messageBus.post(message);
+        } catch (Throwable t) {
+            System.err.println("Exception while reading message " + message.getClass().getName());
+            t.printStackTrace();
+        } finally {
+            registeredMessage.recycle(message);
+        }
+    }
+
+    /**
+     * Reads a {@link Batch} and passes it to the batch listeners, followed by posting every record to the listeners of
+     * the record class. The payload is skipped if there are neither.
+     */
+    private void postBatch(@NotNull IMessageBus messageBus, @NotNull Class<? extends Record> recordClass, @NotNull ByteBufferInputStream stream) {
+        boolean batchListeners = messageBus.hasBatchListeners(recordClass);
+        boolean recordListeners = messageBus.hasListeners(recordClass);
+        if (!batchListeners && !recordListeners)
+            return;
+
+        stream.setStringTable(this.receivedStrings);
+        Batch<?> batch;
+        try {
+            batch = Batch.read(recordClass, stream);
+        } catch (Throwable t) {
+            System.err.println("Exception while reading batch " + recordClass.getName());
+            t.printStackTrace();
+            return;
+        }
+
+        if (batchListeners)
+            messageBus.postBatch(batch);
+        if (recordListeners) {
+            for (Record record : batch)
+                messageBus.post(record);
+        }
+    }
+
+    /**
+     * Passes a received fragment or window update to its stream. The payload of the frame is between the
+     * {@link #readBuffer}'s position and limit. Fragments count as message frames of a reliable session.
+     *
+     * @return {@code false} if the frame is invalid or the stream was not opened; {@code true} otherwise
+     */
+    private boolean processStreamFrame(@Nullable ReliableSession session, short id, int size, @NotNull IMessageBus messageBus) {
+        if (id == MessageStream.WINDOW_UPDATE_ID) {
+            if (size != MessageStream.WINDOW_UPDATE_BYTES)
+                return false;
+
+            MessageStream stream = getStream(this.readBuffer.getShort());
+            return stream != null && stream.onWindowUpdate(this.readBuffer.getInt());
+        }
+
+        if (size < MessageStream.FRAGMENT_HEADER_BYTES || (session != null && !session.onFrameReceived()))
+            return false;
+
+        MessageStream stream = getStream(this.readBuffer.getShort());
+        short messageId = this.readBuffer.getShort();
+        byte flags = this.readBuffer.get();
+        if (stream == null || messageId < 0 || !stream.receiveFragment(this.readBuffer))
+            return false;
+
+        if ((flags & MessageStream.FLAG_LAST) != 0) {
+            postMessage(messageBus, messageId, stream.getReceivedMessage(), stream.getReceiveStream());
+            stream.clearReceivedMessage();
+        }
+        return true;
+    }
+
+    /**
+     * Decompresses a received frame and processes it like an uncompressed one. The payload of the frame is between
+     * the {@link #readBuffer}'s position and limit. Only message frames and delta frames can be compressed.
+     *
+     * @return {@code false} if the frame is invalid or compression is disabled; {@code true} otherwise
+     */
+    private boolean processCompressedFrame(@Nullable ReliableSession session, short id, @NotNull IMessageBus messageBus) {
+        FrameCompression compression = this.frameCompression;
+        if (compression == null || (id < 0 && id != DeltaCodec.DELTA_ID))
+            return false;
+
+        ByteBuffer payload = compression.decompress(this.readBuffer);
+        if (payload == null)
+            return false;
+        if (id == DeltaCodec.DELTA_ID)
+            return processDeltaFrame(session, payload, messageBus);
+        if (session != null && !session.onFrameReceived())
+            return false;
+
+        postMessage(messageBus, id, payload, compression.getDecompressStream());
+        return true;
+    }
+
+    /**
+     * Reconstructs and posts a received delta encoded message. Delta frames count as message frames of a reliable
+     * session.
+     *
+     * @param buffer the buffer which contains the payload of the frame in {@code [position;limit[}
+     * @return {@code false} if the frame is invalid; {@code true} otherwise
+     */
+    private boolean processDeltaFrame(@Nullable ReliableSession session, @NotNull ByteBuffer buffer, @NotNull IMessageBus messageBus) {
+        if (buffer.remaining() < DeltaCodec.DELTA_HEADER_BYTES || (session != null && !session.onFrameReceived()))
+            return false;
+
+        short messageId = buffer.getShort();
+        ByteBuffer message = this.deltaCodec.decode(messageId, buffer);
+        if (message == null)
+            return false;
+
+        postMessage(messageBus, messageId, message, this.deltaCodec.getReceiveStream());
+        return true;
+    }
+
+    /**
+     * Adds the Strings of a received {@link #STRING_DEFINITIONS_ID} frame to the {@link #receivedStrings}. The payload
+     * of the frame is between the {@link #readBuffer}'s position and limit. These frames count as message frames of a
+     * reliable session, so a resumed session neither loses nor repeats any definitions.
+     *
+     * @return {@code false} if the frame is invalid or the table is full; {@code true} otherwise
+     */
+    private boolean processStringDefinitions(@Nullable ReliableSession session) {
+        if (session != null && !session.onFrameReceived())
+            return false;
+
+        try {
+            while (this.readStream.remaining() > 0) {
+                if (!this.receivedStrings.define(this.readStream.readString()))
+                    return false;
+            }
+        } catch (BufferUnderflowException e) {
             return false;
         }
+        return true;
+    }
+
+    /**
+     * Passes a received control frame of a reliable session to the given {@code session}.
+     *
+     * @param offset the offset of the payload in the {@link #readBuffer}
+     * @return {@code false} if the frame is invalid; {@code true} otherwise
+     */
+    private boolean processControlFrame(@NotNull ReliableSession session, short id, int offset, int size) {
+        switch (id) {
+            case ReliableSession.HELLO_ID:
+                if (size != ReliableSession.HELLO_BYTES || !session.onHello(
+                        this.readBuffer.getLong(offset),
+                        this.readBuffer.getLong(offset + Long.BYTES),
+                        this.readBuffer.get(offset + Long.BYTES * 2) != 0
+                ))
+                    return false;
+
+                //The peer starts from scratch, therefore nothing of the previous session may be referenced anymore
+                if (!session.isResumed()) {
+                    this.deltaCodec.reset();
+                    this.sentStrings.reset();
+                    this.receivedStrings.reset();
+                    for (MessageStream stream : this.streams) {
+                        if (stream != null)
+                            stream.restartTransfer();
+                    }
+                }
+                return true;
+            case ReliableSession.ACK_ID:
+                return size == ReliableSession.ACK_BYTES && session.onAcknowledgement(this.readBuffer.getLong(offset));
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Replaces the {@link #readBuffer} and the {@link #readStream} which wraps it.
+     */
+    private void setReadBuffer(@NotNull ByteBuffer buffer) {
+        this.readBuffer = buffer;
+        this.readStream = new ByteBufferInputStream(buffer);
+    }
+
+    /**
+     * Sets the priority of all messages of the given class, which are enqueued without a priority.
+     *
+     * @param messageClass the class of the messages
+     * @param priority     the priority, defaults to {@link MessagePriority#NORMAL}
+     */
+    public void setMessagePriority(@NotNull Class<?> messageClass, @NotNull MessagePriority priority) {
+        this.messagePriorities.put(messageClass, priority);
+    }
+
+    @NotNull
+    public MessagePriority getMessagePriority(@NotNull Class<?> messageClass) {
+        return this.messagePriorities.getOrDefault(messageClass, MessagePriority.NORMAL);
+    }
+
+    /**
+     * Sets the amount of messages of the given priority which are written per round. Has to be set before connecting.
+     *
+     * @param priority the priority
+     * @param weight   the weight, defaults to {@link MessagePriority#getDefaultWeight()}
+     */
+    public void setPriorityWeight(@NotNull MessagePriority priority, int weight) {
+        if (weight < 1)
+            throw new IllegalArgumentException("weight has to be greater than zero");
+
+        this.priorityWeights[priority.ordinal()] = weight;
+    }
+
+    public int getPriorityWeight(@NotNull MessagePriority priority) {
+        return this.priorityWeights[priority.ordinal()];
+    }
+
+    /**
+     * Enables or disables the reliable session mode. Has to be set on both sides before connecting.
+     *
+     * @param reliableSession the session, or {@code null} to disable it
+     * @see ReliableSession
+     */
+    public void setReliableSession(@Nullable ReliableSession reliableSession) {
+        this.reliableSession = reliableSession;
+    }
+
+    @Nullable
+    public ReliableSession getReliableSession() {
+        return this.reliableSession;
+    }
+
+    /**
+     * Enables or disables the compression of frames. Has to be set on both sides before connecting.
+     *
+     * @param frameCompression the compression, or {@code null} to disable it
+     * @see FrameCompression
+     */
+    public void setFrameCompression(@Nullable FrameCompression frameCompression) {
+        this.frameCompression = frameCompression;
+    }
+
+    @Nullable
+    public FrameCompression getFrameCompression() {
+        return this.frameCompression;
     }
 
+    /**
+     * Enables or disables write coalescing. Without coalescing, the bytes of all messages which are queued when the
+     * processor writes are written right away, which sends small messages in separate packets and system calls. With
+     * coalescing, the encoded messages are held back until at least {@code threshold} bytes are pending or until the
+     * first of them was held back for {@code maxDelay}, whichever comes first. {@link #flush()} writes them
+     * immediately. Control frames of a {@link ReliableSession} are never held back.
+     * <pre>{@code
+     * //Throughput: send at least 8KB at once, but never wait longer than 200 microseconds
+     * processor.setWriteCoalescing(8192, 200, TimeUnit.MICROSECONDS);
+     * }</pre>
+     *
+     * @param threshold the amount of pending bytes at which they are written, limited by the
+     *                  {@link #getWriteBufferSize() write buffer size}
+     * @param maxDelay  the maximum time for which bytes are held back, or {@code 0} to disable coalescing
+     * @param unit      the unit of {@code maxDelay}
+     */
+    public void setWriteCoalescing(int threshold, long maxDelay, @NotNull TimeUnit unit) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("threshold has to be positive");
+        if (maxDelay < 0)
+            throw new IllegalArgumentException("maxDelay has to be positive");
+
+        this.coalescingThreshold = threshold;
+        this.coalescingDelay = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * @return the amount of pending bytes at which coalesced writes are flushed
+     * @see #setWriteCoalescing(int, long, TimeUnit)
+     */
+    public int getWriteCoalescingThreshold() {
+        return this.coalescingThreshold;
+    }
+
+    /**
+     * @return the maximum time in nanoseconds for which bytes are held back, or {@code 0} if coalescing is disabled
+     * @see #setWriteCoalescing(int, long, TimeUnit)
+     */
+    public long getWriteCoalescingDelay() {
+        return this.coalescingDelay;
+    }
+
+    /**
+     * @param maxFrameSize the maximum payload size in bytes of a received frame
+     * @see #getMaxFrameSize()
+     */
+    public void setMaxFrameSize(int maxFrameSize) {
+        if (maxFrameSize < 1 || maxFrameSize > Integer.MAX_VALUE - MESSAGE_HEADER_BYTES)
+            throw new IllegalArgumentException("maxFrameSize has to be between 1 and " + (Integer.MAX_VALUE - MESSAGE_HEADER_BYTES));
+
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * @return the maximum payload size in bytes of a received frame. The read buffer grows up to this size to hold a
+     * frame. A peer which announces a larger frame is treated like it sent a malformed frame, and the connection is
+     * closed. Defaults to {@code 16}MB.
+     */
+    @Contract(pure = true)
+    public int getMaxFrameSize() {
+        return this.maxFrameSize;
+    }
+
+    @Override
+    public void endSession() {
+        ReliableSession session = this.reliableSession;
+        if (session != null)
+            session.end();
+    }
+
+    /**
+     * Releases the native memory of the {@link #getFrameCompression() frame compression}.
+     */
+    @Override
+    public void releaseResources() {
+        FrameCompression compression = this.frameCompression;
+        if (compression != null)
+            compression.close();
+    }
+
+    @Override
+    public void setWaitStrategy(@NotNull IWaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    @NotNull
+    @Override
+    public IWaitStrategy getWaitStrategy() {
+        return this.waitStrategy;
+    }
+
+    @Deprecated
+    @Override
     public void setProcessLoopDelay(int processLoopDelay) {
-        this.processLoopDelay = processLoopDelay;
+        setWaitStrategy(new SleepingWaitStrategy(processLoopDelay));
     }
 
+    @Deprecated
+    @Override
     public int getProcessLoopDelay() {
-        return processLoopDelay;
+        IWaitStrategy waitStrategy = this.waitStrategy;
+        return waitStrategy instanceof SleepingWaitStrategy ? ((SleepingWaitStrategy) waitStrategy).getDelay() : 0;
     }
 
     @Override
@@ -308,7 +1394,10 @@ public class DefaultMessageProcessor implements IMessageProcessor {
 
     @Override
     public void setReadBufferSize(int size) {
-        this.readBuffer = ByteBuffer.allocateDirect(size);
+        if (size < MESSAGE_HEADER_BYTES)
+            throw new IllegalArgumentException("size has to be at least " + MESSAGE_HEADER_BYTES);
+
+        setReadBuffer(ByteBuffer.allocateDirect(size));
     }
 
     @Override
@@ -322,9 +1411,46 @@ public class DefaultMessageProcessor implements IMessageProcessor {
     private static final class RegisteredIncomingMessage {
 
         @NotNull
+        private final Class<?> messageClass;
+        /**
+         * Creates instances of the wrapped message class, or {@code null} if it is read by a {@link #codec}
+         */
+        @Nullable
         private final Supplier<? extends AbstractMessage> instanceSupplier;
+        /**
+         * Reads the wrapped message class, or {@code null} if it is an {@link AbstractMessage} or a batch
+         */
+        @Nullable
+        private final IMessageCodec<?> codec;
+        /**
+         * Whether this id receives {@link Batch}es of the wrapped record class
+         */
+        private final boolean batch;
+        /**
+         * The pool for instances of the wrapped message class, if it is an {@link AbstractRecyclableMessage}
+         */
+        @Nullable
+        private final MessagePool<?> pool;
+        /**
+         * The single instance which is re-used for every received message, if the wrapped message class is an
+         * {@link AbstractFlyweightMessage}
+         */
+        @Nullable
+        private final AbstractFlyweightMessage flyweight;
+
+        private RegisteredIncomingMessage(@NotNull Class<?> messageClass, @Nullable IMessageCodec<?> codec, boolean batch) {
+            this.messageClass = messageClass;
+            this.codec = codec;
+            this.batch = batch;
+            this.instanceSupplier = null;
+            this.pool = null;
+            this.flyweight = null;
+        }
 
         private RegisteredIncomingMessage(@NotNull Class<? extends AbstractMessage> messageClass) {
+            this.messageClass = messageClass;
+            this.codec = null;
+            this.batch = false;
             try {
                 MethodHandles.Lookup lookup = MethodHandles.lookup();
                 MethodHandle constructorHandle = lookup.findConstructor(messageClass, MethodType.methodType(void.class));
@@ -337,15 +1463,51 @@ public class DefaultMessageProcessor implements IMessageProcessor {
             } catch (Throwable e) {
                 throw new IllegalArgumentException("Unable to create lambda factory for constructor. Make sure a default constructor exists", e);
             }
+
+            if (AbstractRecyclableMessage.class.isAssignableFrom(messageClass)) {
+                Supplier<? extends AbstractMessage> instanceSupplier = this.instanceSupplier;
+                this.pool = new MessagePool<>(() -> (AbstractRecyclableMessage) instanceSupplier.get());
+            } else {
+                this.pool = null;
+            }
+
+            if (AbstractFlyweightMessage.class.isAssignableFrom(messageClass))
+                this.flyweight = (AbstractFlyweightMessage) this.instanceSupplier.get();
+            else
+                this.flyweight = null;
         }
 
         /**
-         * @return a new instance of the wrapped message class
+         * @return a new instance of the wrapped message class, a pooled instance if the message class is an
+         * {@link AbstractRecyclableMessage} or the shared instance if it is an {@link AbstractFlyweightMessage}
          */
         @NotNull
-        @Contract(value = "-> new", pure = true)
         public AbstractMessage newInstance() {
+            if (this.flyweight != null)
+                return this.flyweight;
+            if (this.pool != null)
+                return this.pool.acquire();
             return this.instanceSupplier.get();
         }
+
+        /**
+         * Gives up the processor's reference to the given {@code message}, which returns it to the pool if no listener
+         * {@link AbstractRecyclableMessage#retain()}ed it. Flyweights are unwrapped from the read buffer.
+         *
+         * @param message a message returned by {@link #newInstance()}
+         */
+        public void recycle(@NotNull AbstractMessage message) {
+            if (this.flyweight != null) {
+                this.flyweight.unwrap();
+            } else if (this.pool != null) {
+                try {
+                    ((AbstractRecyclableMessage) message).release();
+                } catch (IllegalStateException e) {
+                    //The message is back in the pool already
+                    System.err.println("Message " + message.getClass().getName() + " was released by a listener which did not retain it");
+                    e.printStackTrace();
+                }
+            }
+        }
     }
 }
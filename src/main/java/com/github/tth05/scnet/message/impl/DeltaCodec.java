@@ -0,0 +1,255 @@
+package com.github.tth05.scnet.message.impl;
+
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes {@link com.github.tth05.scnet.message.AbstractDeltaMessage}s against the previous version of the same message
+ * type. Both sides keep the payload of the last frame of each type; TCP delivers the frames in order, so the sender's
+ * last version is always the one the receiver has when the next frame arrives.
+ * <br>
+ * The difference is the XOR of both versions, where the previous version is padded with zeros or truncated to the new
+ * length. It is encoded as the new length, followed by pairs of a run of unchanged bytes and a run of changed bytes,
+ * each length as a varint and the changed run followed by its XOR values.
+ */
+final class DeltaCodec {
+
+    /**
+     * The id of the frames which contain a delta encoded message
+     */
+    static final short DELTA_ID = -5;
+    /**
+     * Message id and flags
+     */
+    static final int DELTA_HEADER_BYTES = Short.BYTES + 1;
+    /**
+     * Set if the frame contains a difference instead of the full message
+     */
+    static final byte FLAG_DELTA = 1;
+
+    /**
+     * The shortest run of unchanged bytes which ends a run of changed bytes, shorter runs cost more than they save
+     */
+    private static final int MIN_UNCHANGED_RUN = 4;
+    private static final int MAX_VARINT_BYTES = 5;
+
+    /**
+     * The payload of the last sent message of each type, indexed by the message id
+     */
+    private byte[] @NotNull [] sendVersions = new byte[0][];
+    /**
+     * The payload of the last received message of each type, indexed by the message id
+     */
+    private byte[] @NotNull [] receiveVersions = new byte[0][];
+
+    /**
+     * The body of the frame which is currently sent
+     */
+    @NotNull
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(512);
+    /**
+     * A view of the last reconstructed message, and an input stream wrapping it
+     */
+    @Nullable
+    private ByteBuffer receiveView;
+    @Nullable
+    private ByteBufferInputStream receiveStream;
+
+    /**
+     * Encodes the body of a delta frame. The previous version is not replaced until
+     * {@link #commit(short, ByteBuffer)} is called.
+     *
+     * @param payload the encoded message in {@code [position;limit[}, which is not consumed
+     * @return a buffer containing the body of the frame in {@code [position;limit[}, which is only valid until the next
+     * call
+     */
+    @NotNull
+    ByteBuffer encode(short messageId, @NotNull ByteBuffer payload) {
+        int start = payload.position();
+        int length = payload.remaining();
+        int fullLength = DELTA_HEADER_BYTES + length;
+        if (this.encodeBuffer.capacity() < fullLength)
+            this.encodeBuffer = ByteBuffer.allocate(Math.max(fullLength, this.encodeBuffer.capacity() * 2));
+
+        ByteBuffer buffer = this.encodeBuffer;
+        buffer.clear();
+        buffer.putShort(messageId);
+
+        byte[] previous = messageId < this.sendVersions.length ? this.sendVersions[messageId] : null;
+        if (previous != null && encodeDelta(buffer, previous, payload, start, length, fullLength)) {
+            buffer.flip();
+            return buffer;
+        }
+
+        //The difference is not smaller than the message
+        buffer.position(Short.BYTES);
+        buffer.put((byte) 0);
+        for (int i = 0; i < length; i++)
+            buffer.put(payload.get(start + i));
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return {@code false} if the difference would be at least {@code fullLength} bytes long; {@code true} otherwise
+     */
+    private static boolean encodeDelta(@NotNull ByteBuffer buffer, byte @NotNull [] previous, @NotNull ByteBuffer payload, int start, int length, int fullLength) {
+        buffer.put(FLAG_DELTA);
+        buffer.putInt(length);
+
+        int i = 0;
+        while (i < length) {
+            int unchangedStart = i;
+            while (i < length && xor(previous, payload, start, i) == 0)
+                i++;
+
+            //Extend the changed run across short runs of unchanged bytes
+            int changedStart = i;
+            while (i < length) {
+                if (xor(previous, payload, start, i) != 0) {
+                    i++;
+                    continue;
+                }
+
+                int j = i;
+                while (j < length && j - i < MIN_UNCHANGED_RUN && xor(previous, payload, start, j) == 0)
+                    j++;
+                if (j == length || j - i >= MIN_UNCHANGED_RUN)
+                    break;
+                i = j;
+            }
+
+            int changed = i - changedStart;
+            if (buffer.position() + MAX_VARINT_BYTES * 2 + changed >= fullLength)
+                return false;
+
+            putVarInt(buffer, changedStart - unchangedStart);
+            putVarInt(buffer, changed);
+            for (int k = changedStart; k < i; k++)
+                buffer.put(xor(previous, payload, start, k));
+        }
+
+        return true;
+    }
+
+    private static byte xor(byte @NotNull [] previous, @NotNull ByteBuffer payload, int start, int index) {
+        return (byte) (payload.get(start + index) ^ (index < previous.length ? previous[index] : 0));
+    }
+
+    /**
+     * Stores the given {@code payload} as the last sent version of the given message type.
+     *
+     * @param payload the encoded message in {@code [position;limit[}, which is not consumed
+     */
+    void commit(short messageId, @NotNull ByteBuffer payload) {
+        if (messageId >= this.sendVersions.length)
+            this.sendVersions = Arrays.copyOf(this.sendVersions, messageId + 1);
+
+        byte[] version = this.sendVersions[messageId];
+        if (version == null || version.length != payload.remaining())
+            version = this.sendVersions[messageId] = new byte[payload.remaining()];
+        payload.duplicate().get(version);
+    }
+
+    /**
+     * Reconstructs a received message from the body of a delta frame.
+     *
+     * @param buffer the buffer which contains the body of the frame after the message id in {@code [position;limit[},
+     *               which is consumed
+     * @return a buffer containing the message in {@code [position;limit[}, which is only valid until the next call; or
+     * {@code null} if the frame is invalid
+     */
+    @Nullable
+    ByteBuffer decode(short messageId, @NotNull ByteBuffer buffer) {
+        if (messageId < 1 || !buffer.hasRemaining())
+            return null;
+        if (messageId >= this.receiveVersions.length)
+            this.receiveVersions = Arrays.copyOf(this.receiveVersions, messageId + 1);
+
+        byte[] version = this.receiveVersions[messageId];
+        byte flags = buffer.get();
+        if ((flags & FLAG_DELTA) == 0) {
+            if (version == null || version.length != buffer.remaining())
+                version = new byte[buffer.remaining()];
+            buffer.get(version);
+        } else {
+            if (version == null || buffer.remaining() < Integer.BYTES)
+                return null;
+            int length = buffer.getInt();
+            if (length < 0)
+                return null;
+            if (version.length != length)
+                version = Arrays.copyOf(version, length);
+
+            int i = 0;
+            while (buffer.hasRemaining()) {
+                int unchanged = getVarInt(buffer);
+                int changed = unchanged < 0 ? -1 : getVarInt(buffer);
+                if (changed < 0 || unchanged > length - i || changed > length - i - unchanged || changed > buffer.remaining())
+                    return null;
+
+                i += unchanged;
+                for (int k = 0; k < changed; k++, i++)
+                    version[i] ^= buffer.get();
+            }
+        }
+
+        this.receiveVersions[messageId] = version;
+        if (this.receiveView == null || this.receiveView.array() != version) {
+            this.receiveView = ByteBuffer.wrap(version);
+            this.receiveStream = new ByteBufferInputStream(this.receiveView);
+        }
+        this.receiveView.clear();
+        return this.receiveView;
+    }
+
+    /**
+     * @return the input stream which wraps the buffer returned by the last call to {@link #decode(short, ByteBuffer)}
+     */
+    @NotNull
+    ByteBufferInputStream getReceiveStream() {
+        if (this.receiveStream == null)
+            throw new IllegalStateException("Nothing was decoded yet");
+
+        return this.receiveStream;
+    }
+
+    /**
+     * Drops all previous versions after the connection was reset.
+     */
+    void reset() {
+        Arrays.fill(this.sendVersions, null);
+        Arrays.fill(this.receiveVersions, null);
+        this.receiveView = null;
+        this.receiveStream = null;
+    }
+
+    private static void putVarInt(@NotNull ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * @return the read value, or {@code -1} if the varint is malformed
+     */
+    private static int getVarInt(@NotNull ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < MAX_VARINT_BYTES * 7; shift += 7) {
+            if (!buffer.hasRemaining())
+                return -1;
+
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value < 0 ? -1 : value;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,330 @@
+package com.github.tth05.scnet.message.impl;
+
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the payload of frames which are at least {@link #getThreshold()} bytes long using {@link Deflater}. A
+ * compressed frame has the highest bit of its size set, and its payload consists of the uncompressed length followed
+ * by the raw deflate data. Frames which would not get smaller are sent uncompressed.
+ * <br>
+ * Compression has to be enabled using {@link DefaultMessageProcessor#setFrameCompression(FrameCompression)} on both
+ * sides before connecting, with the same preset dictionary. The threshold and level only affect the sending side. The
+ * compressor, the decompressor and their buffers are re-used for every frame. All counters can be read from any
+ * thread.
+ * <br>
+ * The compressor and the decompressor hold native memory, which is released by {@link #close()} when the client or
+ * server is closed.
+ * <br>
+ * A received frame whose uncompressed length exceeds {@link #getMaxPayloadSize()}, or which claims a higher ratio
+ * than deflate can achieve, is rejected as malformed before any buffer is allocated for it.
+ */
+public final class FrameCompression {
+
+    public static final int DEFAULT_THRESHOLD = 512;
+    public static final int DEFAULT_MAX_PAYLOAD_SIZE = 1 << 24;
+
+    /**
+     * Deflate can't compress data by more than this factor
+     */
+    private static final int MAX_RATIO = 1032;
+
+    /**
+     * Set in the size of a frame whose payload is compressed
+     */
+    static final int FLAG_COMPRESSED = 1 << 31;
+
+    private final int threshold;
+    private final int level;
+    private final byte @Nullable [] dictionary;
+    /**
+     * The maximum uncompressed size of a received payload
+     */
+    private int maxPayloadSize = DEFAULT_MAX_PAYLOAD_SIZE;
+
+    /**
+     * Created on first use, and again after {@link #close()}
+     */
+    @Nullable
+    private Deflater deflater;
+    @Nullable
+    private Inflater inflater;
+    /**
+     * Contains the payload of the last compressed frame
+     */
+    @NotNull
+    private ByteBuffer compressBuffer = ByteBuffer.allocate(4096);
+    /**
+     * Contains the last decompressed payload, and an input stream wrapping it
+     */
+    @NotNull
+    private ByteBuffer decompressBuffer = ByteBuffer.allocate(4096);
+    @NotNull
+    private ByteBufferInputStream decompressStream = new ByteBufferInputStream(this.decompressBuffer);
+    /**
+     * Catches any bytes beyond the expected length of a decompressed payload
+     */
+    @NotNull
+    private final ByteBuffer overflowBuffer = ByteBuffer.allocate(1);
+
+    private volatile long compressedFrames;
+    private volatile long skippedFrames;
+    private volatile long uncompressedBytes;
+    private volatile long compressedBytes;
+    private volatile long compressionNanos;
+    private volatile long decompressedFrames;
+    private volatile long decompressionNanos;
+
+    /**
+     * Creates a compression with the {@link #DEFAULT_THRESHOLD}, the default level and no dictionary.
+     */
+    public FrameCompression() {
+        this(DEFAULT_THRESHOLD, Deflater.DEFAULT_COMPRESSION, null);
+    }
+
+    /**
+     * @param threshold  the minimum payload size of frames which are compressed
+     * @param level      the compression level, from {@code 0} to {@code 9}, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param dictionary a preset dictionary containing byte sequences which are common in the payloads, or
+     *                   {@code null}. Has to be the same on both sides.
+     */
+    public FrameCompression(int threshold, int level, byte @Nullable [] dictionary) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("threshold can't be negative");
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+
+        this.threshold = threshold;
+        this.level = level;
+        this.dictionary = dictionary != null ? dictionary.clone() : null;
+    }
+
+    /**
+     * Compresses the given {@code payload}, if it is long enough and gets smaller.
+     *
+     * @param payload the payload in {@code [position;limit[}, which is not consumed
+     * @return a buffer containing the compressed payload in {@code [position;limit[}, which is only valid until the
+     * next call; or {@code null} if the payload should be sent uncompressed
+     */
+    @Nullable
+    ByteBuffer compress(@NotNull ByteBuffer payload) {
+        int length = payload.remaining();
+        if (length < this.threshold || length <= Integer.BYTES + 1)
+            return null;
+
+        long start = System.nanoTime();
+        if (this.compressBuffer.capacity() < length)
+            this.compressBuffer = ByteBuffer.allocate(Math.max(length, this.compressBuffer.capacity() * 2));
+
+        //The compressed payload has to be smaller than the original one
+        ByteBuffer buffer = this.compressBuffer;
+        buffer.clear().limit(length - 1);
+        buffer.putInt(length);
+
+        Deflater deflater = this.deflater;
+        if (deflater == null)
+            this.deflater = deflater = new Deflater(this.level, true);
+        else
+            deflater.reset();
+        if (this.dictionary != null)
+            deflater.setDictionary(this.dictionary);
+        deflater.setInput(payload.duplicate());
+        deflater.finish();
+        while (!deflater.finished() && buffer.hasRemaining())
+            deflater.deflate(buffer);
+
+        boolean compressed = deflater.finished();
+        this.compressionNanos += System.nanoTime() - start;
+        if (!compressed) {
+            this.skippedFrames++;
+            return null;
+        }
+
+        buffer.flip();
+        this.compressedFrames++;
+        this.uncompressedBytes += length;
+        this.compressedBytes += buffer.remaining();
+        return buffer;
+    }
+
+    /**
+     * Decompresses the payload of a compressed frame.
+     *
+     * @param buffer the buffer which contains the compressed payload in {@code [position;limit[}, which is consumed
+     * @return a buffer containing the decompressed payload in {@code [position;limit[}, which is only valid until the
+     * next call; or {@code null} if the payload is invalid or too large
+     */
+    @Nullable
+    ByteBuffer decompress(@NotNull ByteBuffer buffer) {
+        if (buffer.remaining() < Integer.BYTES)
+            return null;
+        int length = buffer.getInt();
+        //The length is sent by the peer, don't trust it with an allocation
+        if (length < 0 || length > this.maxPayloadSize || length > (long) buffer.remaining() * MAX_RATIO)
+            return null;
+
+        long start = System.nanoTime();
+        if (this.decompressBuffer.capacity() < length) {
+            int capacity = Math.min(Math.max(length, this.decompressBuffer.capacity() * 2), this.maxPayloadSize);
+            this.decompressBuffer = ByteBuffer.allocate(capacity);
+            this.decompressStream = new ByteBufferInputStream(this.decompressBuffer);
+        }
+
+        ByteBuffer output = this.decompressBuffer;
+        output.clear().limit(length);
+        Inflater inflater = this.inflater;
+        if (inflater == null)
+            this.inflater = inflater = new Inflater(true);
+        else
+            inflater.reset();
+        if (this.dictionary != null)
+            inflater.setDictionary(this.dictionary);
+        inflater.setInput(buffer);
+        try {
+            while (!inflater.finished() && output.hasRemaining()) {
+                if (inflater.inflate(output) == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    return null;
+            }
+            if (output.hasRemaining())
+                return null;
+            //The end of the data might only be noticed by another call, which must not produce more bytes
+            if (!inflater.finished()) {
+                this.overflowBuffer.clear();
+                if (inflater.inflate(this.overflowBuffer) > 0 || !inflater.finished())
+                    return null;
+            }
+        } catch (DataFormatException e) {
+            return null;
+        }
+
+        output.flip();
+        this.decompressedFrames++;
+        this.decompressionNanos += System.nanoTime() - start;
+        return output;
+    }
+
+    /**
+     * Releases the native memory of the compressor and the decompressor. They are created again if this compression
+     * is used afterwards, for example when a closed client connects again. Called by
+     * {@link DefaultMessageProcessor#releaseResources()}, which must not happen while a frame is processed.
+     */
+    public void close() {
+        Deflater deflater = this.deflater;
+        this.deflater = null;
+        if (deflater != null)
+            deflater.end();
+
+        Inflater inflater = this.inflater;
+        this.inflater = null;
+        if (inflater != null)
+            inflater.end();
+    }
+
+    /**
+     * @return the input stream which wraps the buffer returned by {@link #decompress(ByteBuffer)}
+     */
+    @NotNull
+    ByteBufferInputStream getDecompressStream() {
+        return this.decompressStream;
+    }
+
+    /**
+     * @return the minimum payload size of frames which are compressed
+     */
+    @Contract(pure = true)
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    @Contract(pure = true)
+    public int getLevel() {
+        return this.level;
+    }
+
+    /**
+     * @param maxPayloadSize the maximum uncompressed size in bytes of a received payload
+     * @see #getMaxPayloadSize()
+     */
+    public void setMaxPayloadSize(int maxPayloadSize) {
+        if (maxPayloadSize < 1)
+            throw new IllegalArgumentException("maxPayloadSize has to be greater than zero");
+
+        this.maxPayloadSize = maxPayloadSize;
+    }
+
+    /**
+     * @return the maximum uncompressed size in bytes of a received payload. A peer which sends a larger payload is
+     * treated like it sent a malformed frame, and the connection is closed. Defaults to {@code 16}MB.
+     */
+    @Contract(pure = true)
+    public int getMaxPayloadSize() {
+        return this.maxPayloadSize;
+    }
+
+    /**
+     * @return the amount of frames which were sent compressed
+     */
+    public long getCompressedFrameCount() {
+        return this.compressedFrames;
+    }
+
+    /**
+     * @return the amount of frames above the threshold which were sent uncompressed, because they would not have
+     * gotten smaller
+     */
+    public long getSkippedFrameCount() {
+        return this.skippedFrames;
+    }
+
+    /**
+     * @return the total size of the payloads of all compressed frames before compression
+     */
+    public long getUncompressedBytes() {
+        return this.uncompressedBytes;
+    }
+
+    /**
+     * @return the total size of the payloads of all compressed frames after compression
+     */
+    public long getCompressedBytes() {
+        return this.compressedBytes;
+    }
+
+    /**
+     * @return the ratio between the {@link #getUncompressedBytes() uncompressed} and the
+     * {@link #getCompressedBytes() compressed} size of all compressed frames, or {@code 1} if nothing was compressed
+     * yet
+     */
+    public double getCompressionRatio() {
+        long compressedBytes = this.compressedBytes;
+        return compressedBytes == 0 ? 1 : this.uncompressedBytes / (double) compressedBytes;
+    }
+
+    /**
+     * @return the total time in nanoseconds spent compressing frames, including skipped frames
+     */
+    public long getCompressionTime() {
+        return this.compressionNanos;
+    }
+
+    /**
+     * @return the amount of received frames which were decompressed
+     */
+    public long getDecompressedFrameCount() {
+        return this.decompressedFrames;
+    }
+
+    /**
+     * @return the total time in nanoseconds spent decompressing frames
+     */
+    public long getDecompressionTime() {
+        return this.decompressionNanos;
+    }
+}
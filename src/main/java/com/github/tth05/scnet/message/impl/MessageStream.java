@@ -0,0 +1,340 @@
+package com.github.tth05.scnet.message.impl;
+
+import com.github.tth05.scnet.message.EncodedMessage;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * A logical stream inside a single connection, opened using {@link DefaultMessageProcessor#openStream(short)} with
+ * the same id and settings on both sides.
+ * <br>
+ * Messages which are enqueued on a stream are split into fragments of at most {@link #getFragmentSize()} bytes. The
+ * processor sends one fragment of every stream in turns, and writes the messages of its regular queue in between. A
+ * large message therefore does not delay the messages of other streams or of the regular queue. Messages of the same
+ * stream keep their order, but there's no order between different streams.
+ * <br>
+ * Every stream has its own credit-based flow control. The sender may only send {@link #getWindowSize()} bytes until
+ * the receiver grants new credit, which it does once it processed half of the window. A stream whose receiver falls
+ * behind is paused without affecting the other streams.
+ */
+public final class MessageStream {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 16;
+    public static final int DEFAULT_FRAGMENT_SIZE = 4096;
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 1 << 24;
+
+    /**
+     * The id of the frames which contain a fragment of a message
+     */
+    static final short FRAGMENT_ID = -3;
+    /**
+     * The id of the control frames which grant new credit to the sender of a stream
+     */
+    static final short WINDOW_UPDATE_ID = -4;
+    /**
+     * Stream id, message id and flags
+     */
+    static final int FRAGMENT_HEADER_BYTES = Short.BYTES * 2 + 1;
+    /**
+     * Stream id and granted credit
+     */
+    static final int WINDOW_UPDATE_BYTES = Short.BYTES + Integer.BYTES;
+    /**
+     * Set on the last fragment of a message
+     */
+    static final byte FLAG_LAST = 1;
+
+    private final short id;
+    private final int windowSize;
+    private final int fragmentSize;
+    /**
+     * The maximum size of a received message, larger messages are rejected
+     */
+    private int maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+    /**
+     * Wakes up the processor's loop when a message is enqueued
+     */
+    @NotNull
+    private final Runnable wakeupHandler;
+
+    /**
+     * A queue containing all messages of this stream which are queued for sending
+     */
+    @NotNull
+    private final Queue<Object> outgoingMessageQueue = new ConcurrentLinkedDeque<>();
+    /**
+     * Contains the remaining bytes of the message which is currently sent in {@code [position;limit[}
+     */
+    @NotNull
+    private ByteBuffer sendBuffer = ByteBuffer.allocate(512);
+    /**
+     * The id of the message which is currently sent, or {@code -1} if there is none
+     */
+    private short sendMessageId = -1;
+    /**
+     * The amount of bytes which may still be sent
+     */
+    private int credit;
+
+    /**
+     * Contains the fragments of the message which is currently received in {@code [0;position[}
+     */
+    @NotNull
+    private ByteBuffer receiveBuffer = ByteBuffer.allocate(512);
+    /**
+     * An input stream wrapping the {@link #receiveBuffer}
+     */
+    @NotNull
+    private ByteBufferInputStream receiveStream = new ByteBufferInputStream(this.receiveBuffer);
+    /**
+     * The amount of received bytes for which no credit was granted yet
+     */
+    private int consumed;
+
+    MessageStream(short id, int windowSize, int fragmentSize, @NotNull Runnable wakeupHandler) {
+        if (windowSize < 1)
+            throw new IllegalArgumentException("windowSize has to be greater than zero");
+        if (fragmentSize < 1)
+            throw new IllegalArgumentException("fragmentSize has to be greater than zero");
+
+        this.id = id;
+        this.windowSize = windowSize;
+        this.fragmentSize = fragmentSize;
+        this.wakeupHandler = wakeupHandler;
+        this.credit = windowSize;
+    }
+
+    /**
+     * Enqueues a message to be sent on this stream. The message has to be registered with the processor.
+     *
+     * @param message the message to enqueue
+     */
+    public void enqueueMessage(@NotNull Object message) {
+        this.outgoingMessageQueue.offer(message);
+        this.wakeupHandler.run();
+    }
+
+    /**
+     * @return {@code true} if a fragment can be sent right now; {@code false} if there's nothing to send or the stream
+     * ran out of credit
+     */
+    boolean hasSendableData() {
+        return this.credit > 0 && (this.sendMessageId != -1 || !this.outgoingMessageQueue.isEmpty());
+    }
+
+    /**
+     * Encodes the next queued message, unless a message is currently sent.
+     *
+     * @param processor the processor which resolves the message ids
+     * @return {@code true} if a message is ready to be sent; {@code false} if the queue is empty
+     * @throws IllegalArgumentException if the next message is not registered
+     */
+    boolean prepareMessage(@NotNull DefaultMessageProcessor processor) {
+        Object message;
+        while (this.sendMessageId == -1 && (message = this.outgoingMessageQueue.poll()) != null) {
+            short messageId = processor.getMessageId(message);
+            if (messageId == -1)
+                throw new IllegalArgumentException("Message " + message.getClass() + " is not registered");
+
+            ByteBuffer payload = processor.encode(message, this.sendBuffer, null);
+            if (message instanceof EncodedMessage)
+                ((EncodedMessage) message).release();
+            if (payload == null)
+                continue;
+
+            this.sendBuffer = payload;
+            this.sendMessageId = messageId;
+        }
+
+        return this.sendMessageId != -1;
+    }
+
+    /**
+     * @return the length of the next fragment, limited by the fragment size and the available credit
+     */
+    int getNextFragmentLength() {
+        return Math.min(this.sendBuffer.remaining(), Math.min(this.fragmentSize, this.credit));
+    }
+
+    /**
+     * Writes the next fragment of the {@link #prepareMessage(DefaultMessageProcessor) prepared} message into the given
+     * {@code buffer}, which needs enough room for the frame.
+     *
+     * @param length the length of the fragment, as returned by {@link #getNextFragmentLength()}
+     */
+    void writeFragment(@NotNull ByteBuffer buffer, int length) {
+        boolean last = length == this.sendBuffer.remaining();
+        buffer.putShort(FRAGMENT_ID).putInt(FRAGMENT_HEADER_BYTES + length);
+        buffer.putShort(this.id).putShort(this.sendMessageId).put(last ? FLAG_LAST : 0);
+
+        int limit = this.sendBuffer.limit();
+        this.sendBuffer.limit(this.sendBuffer.position() + length);
+        buffer.put(this.sendBuffer);
+        this.sendBuffer.limit(limit);
+
+        this.credit -= length;
+        if (last)
+            this.sendMessageId = -1;
+    }
+
+    /**
+     * @return {@code true} if the receiver processed enough bytes to grant new credit to the sender
+     */
+    boolean hasPendingWindowUpdate() {
+        return this.consumed > 0 && this.consumed >= this.windowSize / 2;
+    }
+
+    /**
+     * Writes a window update frame which grants all consumed bytes as new credit, if it fits into the given
+     * {@code buffer}.
+     */
+    void writeWindowUpdate(@NotNull ByteBuffer buffer) {
+        if (buffer.remaining() < DefaultMessageProcessor.MESSAGE_HEADER_BYTES + WINDOW_UPDATE_BYTES)
+            return;
+
+        buffer.putShort(WINDOW_UPDATE_ID).putInt(WINDOW_UPDATE_BYTES);
+        buffer.putShort(this.id).putInt(this.consumed);
+        this.consumed = 0;
+    }
+
+    /**
+     * Handles a received window update.
+     *
+     * @return {@code false} if the credit is invalid; {@code true} otherwise
+     */
+    boolean onWindowUpdate(int credit) {
+        if (credit < 1 || this.credit + credit > this.windowSize)
+            return false;
+
+        this.credit += credit;
+        return true;
+    }
+
+    /**
+     * Appends a received fragment to the message which is currently received.
+     *
+     * @param buffer the buffer which contains the fragment in {@code [position;limit[}, which is consumed
+     * @return {@code false} if the fragment exceeds the window which was granted to the sender, or the message would
+     * become larger than {@link #getMaxMessageSize()}; {@code true} otherwise
+     */
+    boolean receiveFragment(@NotNull ByteBuffer buffer) {
+        int length = buffer.remaining();
+        //The sender may not send more than the credit which was granted to it
+        if (length > this.windowSize - this.consumed || length > this.maxMessageSize - this.receiveBuffer.position())
+            return false;
+
+        if (this.receiveBuffer.remaining() < length) {
+            int capacity = Math.max(this.receiveBuffer.capacity() * 2, this.receiveBuffer.position() + length);
+            ByteBuffer newBuffer = ByteBuffer.allocate(Math.min(capacity, this.maxMessageSize));
+            this.receiveBuffer.flip();
+            newBuffer.put(this.receiveBuffer);
+            this.receiveBuffer = newBuffer;
+            this.receiveStream = new ByteBufferInputStream(newBuffer);
+        }
+
+        this.receiveBuffer.put(buffer);
+        this.consumed += length;
+        return true;
+    }
+
+    /**
+     * Flips the {@link #receiveBuffer}, so it contains the completely received message in {@code [0;limit[}. Has to be
+     * followed by a call to {@link #clearReceivedMessage()}.
+     */
+    @NotNull
+    ByteBuffer getReceivedMessage() {
+        this.receiveBuffer.flip();
+        return this.receiveBuffer;
+    }
+
+    @NotNull
+    ByteBufferInputStream getReceiveStream() {
+        return this.receiveStream;
+    }
+
+    void clearReceivedMessage() {
+        this.receiveBuffer.clear();
+    }
+
+    /**
+     * Resets the flow control after the connection was reset. Queued and partially transferred messages are only
+     * dropped if the {@code session} is not kept.
+     *
+     * @param keepSession {@code true} if a reliable session will be resumed; {@code false} otherwise
+     */
+    /**
+     * Sends the message which is currently sent again from its first fragment, and drops the partially received
+     * message. Called when a new reliable session was started, whose peer did not receive any of the fragments.
+     */
+    void restartTransfer() {
+        if (this.sendMessageId != -1)
+            this.sendBuffer.rewind();
+        this.receiveBuffer.clear();
+    }
+
+    void reset(boolean keepSession) {
+        if (!keepSession) {
+            DefaultMessageProcessor.drain(this.outgoingMessageQueue);
+            this.sendMessageId = -1;
+            this.sendBuffer.clear();
+            this.receiveBuffer.clear();
+        }
+
+        this.credit = this.windowSize;
+        this.consumed = 0;
+    }
+
+    @Contract(pure = true)
+    public short getId() {
+        return this.id;
+    }
+
+    /**
+     * @return the maximum amount of bytes which can be in flight before the receiver grants new credit
+     */
+    @Contract(pure = true)
+    public int getWindowSize() {
+        return this.windowSize;
+    }
+
+    /**
+     * @return the maximum payload size of a single fragment
+     */
+    @Contract(pure = true)
+    public int getFragmentSize() {
+        return this.fragmentSize;
+    }
+
+    /**
+     * @param maxMessageSize the maximum size in bytes of a received message
+     * @see #getMaxMessageSize()
+     */
+    public void setMaxMessageSize(int maxMessageSize) {
+        if (maxMessageSize < 1)
+            throw new IllegalArgumentException("maxMessageSize has to be greater than zero");
+
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * @return the maximum size in bytes of a received message. A peer which sends a larger message is treated like it
+     * sent a malformed frame, and the connection is closed. Defaults to {@code 16}MB.
+     */
+    @Contract(pure = true)
+    public int getMaxMessageSize() {
+        return this.maxMessageSize;
+    }
+
+    /**
+     * @return the amount of bytes which may currently be sent without waiting for the receiver
+     */
+    @Contract(pure = true)
+    public int getCredit() {
+        return this.credit;
+    }
+}
@@ -0,0 +1,328 @@
+package com.github.tth05.scnet.message.impl;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An outbound queue of a {@link ReliableSession} which stores encoded frames in memory-mapped segment files instead of
+ * the heap. Messages are encoded as soon as they are enqueued, so the heap usage stays flat while the peer is not
+ * reachable. The frames are then sent using {@link FileChannel#transferTo(long, long, WritableByteChannel)}, and each
+ * segment is deleted once the peer acknowledged all of its frames.
+ * <pre>{@code
+ * OutboundJournal journal = new OutboundJournal(Paths.get("journal"));
+ * processor.setReliableSession(new ReliableSession(true, journal));
+ * }</pre>
+ * The journal only bridges outages of the connection. Any segments which are left over from a previous run are deleted
+ * when it is opened.
+ */
+public final class OutboundJournal implements AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 24;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    @NotNull
+    private final Path directory;
+    private final int segmentSize;
+
+    /**
+     * All segments in the order they were written. The first one contains the oldest unacknowledged frame, the last
+     * one is appended to.
+     */
+    @NotNull
+    private final List<Segment> segments = new ArrayList<>();
+    private long nextSegmentIndex;
+    /**
+     * A buffer into which a single message is encoded before it's copied into a segment
+     */
+    @NotNull
+    private ByteBuffer messageWriteBuffer = ByteBuffer.allocate(512);
+
+    /**
+     * The offset of the oldest unacknowledged frame in the first segment
+     */
+    private int headOffset;
+    /**
+     * The number of unacknowledged frames
+     */
+    private long frameCount;
+    /**
+     * The number of unacknowledged bytes
+     */
+    private long retainedBytes;
+
+    /**
+     * The index in {@link #segments} of the segment which is currently sent
+     */
+    private int sendSegment;
+    /**
+     * The offset up to which the current segment was sent
+     */
+    private int sendOffset;
+    /**
+     * The end offset of the frame which is currently sent, equal to {@link #sendOffset} between two frames
+     */
+    private int sendFrameEnd;
+
+    private boolean closed;
+
+    /**
+     * @param directory the directory in which the segment files are stored, created if it does not exist
+     * @throws IOException if the directory could not be created or cleared
+     */
+    public OutboundJournal(@NotNull Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param directory   the directory in which the segment files are stored, created if it does not exist
+     * @param segmentSize the size in bytes of each segment file. Larger frames get a segment of their own.
+     * @throws IOException if the directory could not be created or cleared
+     */
+    public OutboundJournal(@NotNull Path directory, int segmentSize) throws IOException {
+        if (segmentSize < DefaultMessageProcessor.MESSAGE_HEADER_BYTES)
+            throw new IllegalArgumentException("segmentSize has to be at least " + DefaultMessageProcessor.MESSAGE_HEADER_BYTES);
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream)
+                Files.delete(file);
+        }
+    }
+
+    /**
+     * Encodes the given {@code message} and appends it as a frame.
+     *
+     * @param id        the id of the message
+     * @param message   the message to encode
+     * @param processor the processor which knows how to write the message
+     * @return {@code false} if the message could not be encoded; {@code true} otherwise
+     * @throws UncheckedIOException if a new segment could not be created
+     */
+    synchronized boolean append(short id, @NotNull Object message, @NotNull DefaultMessageProcessor processor) {
+        if (this.closed)
+            throw new IllegalStateException("Journal is closed");
+
+        ByteBuffer payload = processor.encode(message, this.messageWriteBuffer, null);
+        if (payload == null)
+            return false;
+        this.messageWriteBuffer = payload;
+
+        int size = payload.remaining();
+        int frameLength = DefaultMessageProcessor.MESSAGE_HEADER_BYTES + size;
+        Segment segment = this.segments.isEmpty() ? null : this.segments.get(this.segments.size() - 1);
+        //Frames never span two segments
+        if (segment == null || segment.buffer.remaining() < frameLength) {
+            try {
+                segment = newSegment(Math.max(this.segmentSize, frameLength));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        segment.buffer.putShort(id).putInt(size).put(payload);
+        this.frameCount++;
+        this.retainedBytes += frameLength;
+        return true;
+    }
+
+    /**
+     * Transfers unsent frames to the given {@code channel} until everything is sent or the channel does not accept any
+     * more bytes.
+     *
+     * @return {@code true} if all frames were sent; {@code false} otherwise
+     * @throws IOException if the transfer failed
+     */
+    synchronized boolean transferTo(@NotNull WritableByteChannel channel) throws IOException {
+        while (this.sendSegment < this.segments.size()) {
+            Segment segment = this.segments.get(this.sendSegment);
+            int end = segment.buffer.position();
+            if (this.sendOffset < end) {
+                this.sendOffset += (int) segment.channel.transferTo(this.sendOffset, end - this.sendOffset, channel);
+
+                //Find the end of the frame which is sent now
+                while (this.sendFrameEnd < this.sendOffset)
+                    this.sendFrameEnd += DefaultMessageProcessor.MESSAGE_HEADER_BYTES + segment.buffer.getInt(this.sendFrameEnd + Short.BYTES);
+                if (this.sendOffset < end)
+                    return false;
+            }
+
+            //The last segment might still be appended to
+            if (this.sendSegment == this.segments.size() - 1)
+                return true;
+
+            this.sendSegment++;
+            this.sendOffset = 0;
+            this.sendFrameEnd = 0;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return {@code true} if no frame was partially sent, which allows other frames to be sent in between
+     */
+    synchronized boolean isAtFrameBoundary() {
+        return this.sendOffset == this.sendFrameEnd;
+    }
+
+    /**
+     * @return {@code true} if some frames were not sent yet; {@code false} otherwise
+     */
+    synchronized boolean hasUnsentFrames() {
+        if (this.sendSegment >= this.segments.size())
+            return false;
+
+        return this.sendSegment < this.segments.size() - 1 || this.sendOffset < this.segments.get(this.sendSegment).buffer.position();
+    }
+
+    /**
+     * Makes the next {@link #transferTo(WritableByteChannel)} start again at the oldest unacknowledged frame.
+     */
+    synchronized void rewind() {
+        this.sendSegment = 0;
+        this.sendOffset = this.headOffset;
+        this.sendFrameEnd = this.headOffset;
+    }
+
+    /**
+     * Removes the given number of oldest frames, which were acknowledged by the peer. Segments which don't contain
+     * any unacknowledged frames anymore are deleted.
+     */
+    synchronized void acknowledge(long frames) {
+        for (long i = 0; i < frames && this.frameCount > 0; i++) {
+            Segment segment = this.segments.get(0);
+            int frameLength = DefaultMessageProcessor.MESSAGE_HEADER_BYTES + segment.buffer.getInt(this.headOffset + Short.BYTES);
+            this.headOffset += frameLength;
+            this.frameCount--;
+            this.retainedBytes -= frameLength;
+
+            //The last segment is kept for further frames
+            if (this.headOffset == segment.buffer.position() && this.segments.size() > 1) {
+                this.segments.remove(0);
+                segment.delete();
+                this.headOffset = 0;
+
+                this.sendSegment--;
+                if (this.sendSegment < 0) {
+                    this.sendSegment = 0;
+                    this.sendOffset = 0;
+                    this.sendFrameEnd = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all frames and deletes all segments.
+     */
+    synchronized void clear() {
+        for (Segment segment : this.segments)
+            segment.delete();
+        this.segments.clear();
+
+        this.headOffset = 0;
+        this.frameCount = 0;
+        this.retainedBytes = 0;
+        this.sendSegment = 0;
+        this.sendOffset = 0;
+        this.sendFrameEnd = 0;
+    }
+
+    @NotNull
+    private Segment newSegment(int size) throws IOException {
+        Path file = this.directory.resolve(SEGMENT_PREFIX + this.nextSegmentIndex++ + SEGMENT_SUFFIX);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            Segment segment = new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            this.segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of frames which were not acknowledged yet
+     */
+    @Contract(pure = true)
+    public synchronized long getFrameCount() {
+        return this.frameCount;
+    }
+
+    /**
+     * @return the amount of bytes of all frames which were not acknowledged yet
+     */
+    @Contract(pure = true)
+    public synchronized long getRetainedBytes() {
+        return this.retainedBytes;
+    }
+
+    @Contract(pure = true)
+    public synchronized int getSegmentCount() {
+        return this.segments.size();
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Deletes all segments. Appending to a closed journal is not possible anymore.
+     */
+    @Override
+    public synchronized void close() {
+        clear();
+        this.closed = true;
+    }
+
+    private static final class Segment {
+
+        @NotNull
+        private final Path file;
+        @NotNull
+        private final FileChannel channel;
+        /**
+         * The mapped file, the position is the end of the last frame
+         */
+        @NotNull
+        private final MappedByteBuffer buffer;
+
+        private Segment(@NotNull Path file, @NotNull FileChannel channel, @NotNull MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private void delete() {
+            try {
+                this.channel.close();
+                Files.deleteIfExists(this.file);
+            } catch (IOException e) {
+                //Some platforms don't allow deleting a file while it's still mapped
+                this.file.toFile().deleteOnExit();
+            }
+        }
+    }
+}
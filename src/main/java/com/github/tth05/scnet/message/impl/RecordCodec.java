@@ -0,0 +1,362 @@
+package com.github.tth05.scnet.message.impl;
+
+import com.github.tth05.scnet.message.IMessageCodec;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads and writes the components of a record in their declaration order, which allows sending records without
+ * subclassing {@link com.github.tth05.scnet.message.AbstractMessage}. Register a record using
+ * {@link com.github.tth05.scnet.message.IMessageProcessor#registerRecord(short, Class)}.
+ * <br>
+ * Supported component types are all primitives, {@link String}s, enums, nested records and primitive arrays. The
+ * components are written like the equivalent calls to the {@link ByteBufferOutputStream} would write them: enums as
+ * their ordinal, {@code float}s and {@code double}s as their raw bits, {@code char}s as {@code short}s and arrays
+ * prefixed with their length. Components must not be {@code null}.
+ * <br>
+ * The serialization plan is built once per record class, by combining the accessors and the canonical constructor of
+ * the record with the stream methods into one {@link MethodHandle} for reading and one for writing. Nested records
+ * are inlined into the plan of the outer record. No reflection is used after the plan was built.
+ * <br>
+ * A {@link com.github.tth05.scnet.message.Batch} of records uses a columnar layout of its own, which supports fewer
+ * component types.
+ */
+public final class RecordCodec<R extends Record> implements IMessageCodec<R> {
+
+    private static final ClassValue<RecordCodec<?>> CODECS = new ClassValue<RecordCodec<?>>() {
+        @Override
+        protected RecordCodec<?> computeValue(Class<?> type) {
+            return create(type.asSubclass(Record.class), new HashSet<>());
+        }
+    };
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    @NotNull
+    private final Class<R> recordClass;
+    /**
+     * {@code (ByteBufferInputStream)Object}
+     */
+    @NotNull
+    private final MethodHandle reader;
+    /**
+     * {@code (ByteBufferOutputStream, Object)void}
+     */
+    @NotNull
+    private final MethodHandle writer;
+    /**
+     * The typed reader, which is inlined into the plans of records containing this record
+     */
+    @NotNull
+    private final MethodHandle typedReader;
+    /**
+     * The typed writer, which is inlined into the plans of records containing this record
+     */
+    @NotNull
+    private final MethodHandle typedWriter;
+
+    private RecordCodec(@NotNull Class<R> recordClass, @NotNull Set<Class<?>> visiting) {
+        if (!recordClass.isRecord())
+            throw new IllegalArgumentException(recordClass + " is not a record");
+        if (!visiting.add(recordClass))
+            throw new IllegalArgumentException("Record " + recordClass.getName() + " contains itself");
+
+        this.recordClass = recordClass;
+        RecordComponent[] components = recordClass.getRecordComponents();
+        Class<?>[] types = new Class<?>[components.length];
+        MethodHandle[] componentReaders = new MethodHandle[components.length];
+        MethodHandle writer = MethodHandles.empty(MethodType.methodType(void.class, ByteBufferOutputStream.class, recordClass));
+        try {
+            //Allows non-public records
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(recordClass, LOOKUP);
+            //Write the components in reverse order, every fold runs its combiner before the target
+            for (int i = components.length - 1; i >= 0; i--) {
+                RecordComponent component = components[i];
+                types[i] = component.getType();
+                RecordCodec<?> nestedCodec = types[i].isRecord() ? create(types[i].asSubclass(Record.class), visiting) : null;
+                componentReaders[i] = nestedCodec != null ? nestedCodec.typedReader : getReader(component);
+
+                //(ByteBufferOutputStream, R)void
+                MethodHandle accessor = lookup.unreflect(component.getAccessor());
+                MethodHandle componentWriter = MethodHandles.filterArguments(nestedCodec != null ? nestedCodec.typedWriter : getWriter(component), 1, accessor);
+                writer = MethodHandles.foldArguments(writer, componentWriter);
+            }
+
+            MethodHandle constructor = lookup.findConstructor(recordClass, MethodType.methodType(void.class, types));
+            this.typedReader = combineReaders(constructor, types, componentReaders);
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unable to build the serialization plan for " + recordClass.getName(), e);
+        } finally {
+            visiting.remove(recordClass);
+        }
+
+        this.typedWriter = writer;
+        this.reader = this.typedReader.asType(MethodType.methodType(Object.class, ByteBufferInputStream.class));
+        this.writer = writer.asType(MethodType.methodType(void.class, ByteBufferOutputStream.class, Object.class));
+    }
+
+    /**
+     * @param recordClass the class of the record
+     * @return the cached codec of the given record class
+     * @throws IllegalArgumentException if a component has an unsupported type, or the record is not accessible
+     */
+    @NotNull
+    public static <R extends Record> RecordCodec<R> of(@NotNull Class<R> recordClass) {
+        //The codec was created for exactly this class
+        @SuppressWarnings("unchecked")
+        RecordCodec<R> codec = (RecordCodec<R>) CODECS.get(recordClass);
+        return codec;
+    }
+
+    /**
+     * Builds a new codec for the given record class, which captures the type variable of a wildcard class.
+     *
+     * @param visiting the record classes whose plans are currently built, to detect records containing themselves
+     */
+    @NotNull
+    private static <R extends Record> RecordCodec<R> create(@NotNull Class<R> recordClass, @NotNull Set<Class<?>> visiting) {
+        return new RecordCodec<>(recordClass, visiting);
+    }
+
+    /**
+     * Writes all components of the given {@code record}.
+     */
+    @Override
+    public void write(@NotNull R record, @NotNull ByteBufferOutputStream messageStream) {
+        try {
+            this.writer.invokeExact(messageStream, (Object) record);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Reads all components and creates a new record from them.
+     */
+    @NotNull
+    @Override
+    public R read(@NotNull ByteBufferInputStream messageStream) {
+        try {
+            @SuppressWarnings("unchecked")
+            R record = (R) (Object) this.reader.invokeExact(messageStream);
+            return record;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    public Class<R> getRecordClass() {
+        return this.recordClass;
+    }
+
+    /**
+     * Passes the results of the given readers, which are called in order, to the given {@code constructor}.
+     *
+     * @return {@code (ByteBufferInputStream)R}
+     */
+    @NotNull
+    private static MethodHandle combineReaders(@NotNull MethodHandle constructor, @NotNull Class<?>[] types, @NotNull MethodHandle[] readers) {
+        int count = types.length;
+        //(T[n-1], ..., T[0], ByteBufferInputStream)R
+        Class<?>[] reversedTypes = new Class<?>[count + 1];
+        int[] reorder = new int[count];
+        for (int i = 0; i < count; i++) {
+            reversedTypes[count - 1 - i] = types[i];
+            reorder[i] = count - 1 - i;
+        }
+        reversedTypes[count] = ByteBufferInputStream.class;
+        MethodHandle target = MethodHandles.permuteArguments(constructor, MethodType.methodType(constructor.type().returnType(), reversedTypes), reorder);
+
+        //Every fold consumes the leading argument by calling its reader, the outermost fold reads the first component
+        for (int i = count - 1; i >= 0; i--) {
+            Class<?>[] previousTypes = new Class<?>[i];
+            for (int j = 0; j < i; j++)
+                previousTypes[j] = types[i - 1 - j];
+            target = MethodHandles.foldArguments(target, MethodHandles.dropArguments(readers[i], 0, previousTypes));
+        }
+
+        return target;
+    }
+
+    /**
+     * @return {@code (ByteBufferInputStream)T} for the type {@code T} of the given component
+     */
+    @NotNull
+    private static MethodHandle getReader(@NotNull RecordComponent component) throws ReflectiveOperationException {
+        Class<?> type = component.getType();
+        if (type.isEnum()) {
+            MethodHandle readEnum = LOOKUP.findStatic(RecordCodec.class, "readEnum", MethodType.methodType(Enum.class, Enum[].class, ByteBufferInputStream.class));
+            return MethodHandles.insertArguments(readEnum, 0, (Object) type.getEnumConstants()).asType(MethodType.methodType(type, ByteBufferInputStream.class));
+        }
+
+        String name = getMethodSuffix(component);
+        if (type.isArray() || type == char.class || type == float.class || type == double.class)
+            return LOOKUP.findStatic(RecordCodec.class, "read" + name, MethodType.methodType(type, ByteBufferInputStream.class));
+        return LOOKUP.findVirtual(ByteBufferInputStream.class, "read" + name, MethodType.methodType(type));
+    }
+
+    /**
+     * @return {@code (ByteBufferOutputStream, T)void} for the type {@code T} of the given component
+     */
+    @NotNull
+    private static MethodHandle getWriter(@NotNull RecordComponent component) throws ReflectiveOperationException {
+        Class<?> type = component.getType();
+        if (type.isEnum()) {
+            MethodHandle writeEnum = LOOKUP.findStatic(RecordCodec.class, "writeEnum", MethodType.methodType(void.class, ByteBufferOutputStream.class, Enum.class));
+            return writeEnum.asType(MethodType.methodType(void.class, ByteBufferOutputStream.class, type));
+        }
+
+        String name = getMethodSuffix(component);
+        if (type.isArray() || type == char.class || type == float.class || type == double.class)
+            return LOOKUP.findStatic(RecordCodec.class, "write" + name, MethodType.methodType(void.class, ByteBufferOutputStream.class, type));
+        if (type == byte.class) //writeByte takes an int
+            return LOOKUP.findVirtual(ByteBufferOutputStream.class, "writeByte", MethodType.methodType(void.class, int.class)).asType(MethodType.methodType(void.class, ByteBufferOutputStream.class, byte.class));
+        return LOOKUP.findVirtual(ByteBufferOutputStream.class, "write" + name, MethodType.methodType(void.class, type));
+    }
+
+    /**
+     * @return the name of the read and write methods of the given component's type, for example {@code Int} or
+     * {@code IntArray}
+     * @throws IllegalArgumentException if the type is not supported
+     */
+    @NotNull
+    private static String getMethodSuffix(@NotNull RecordComponent component) {
+        Class<?> type = component.getType();
+        Class<?> elementType = type.isArray() ? type.getComponentType() : type;
+        String name;
+        if (elementType == String.class && !type.isArray())
+            name = "String";
+        else if (elementType.isPrimitive())
+            name = Character.toUpperCase(elementType.getName().charAt(0)) + elementType.getName().substring(1);
+        else
+            throw new IllegalArgumentException("Unsupported type " + type.getName() + " of component " + component.getName());
+
+        return type.isArray() ? name + "Array" : name;
+    }
+
+    private static Enum<?> readEnum(Enum<?>[] constants, ByteBufferInputStream messageStream) {
+        return constants[messageStream.readInt()];
+    }
+
+    private static void writeEnum(ByteBufferOutputStream messageStream, Enum<?> value) {
+        messageStream.writeInt(value.ordinal());
+    }
+
+    private static char readChar(ByteBufferInputStream messageStream) {
+        return (char) messageStream.readShort();
+    }
+
+    private static void writeChar(ByteBufferOutputStream messageStream, char value) {
+        messageStream.writeShort((short) value);
+    }
+
+    private static float readFloat(ByteBufferInputStream messageStream) {
+        return Float.intBitsToFloat(messageStream.readInt());
+    }
+
+    private static void writeFloat(ByteBufferOutputStream messageStream, float value) {
+        messageStream.writeInt(Float.floatToRawIntBits(value));
+    }
+
+    private static double readDouble(ByteBufferInputStream messageStream) {
+        return Double.longBitsToDouble(messageStream.readLong());
+    }
+
+    private static void writeDouble(ByteBufferOutputStream messageStream, double value) {
+        messageStream.writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    private static byte[] readByteArray(ByteBufferInputStream messageStream) {
+        return messageStream.readByteArray(messageStream.readInt());
+    }
+
+    private static void writeByteArray(ByteBufferOutputStream messageStream, byte[] array) {
+        messageStream.writeInt(array.length);
+        messageStream.writeByteArray(array);
+    }
+
+    private static boolean[] readBooleanArray(ByteBufferInputStream messageStream) {
+        boolean[] array = new boolean[messageStream.readInt()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = messageStream.readBoolean();
+        return array;
+    }
+
+    private static void writeBooleanArray(ByteBufferOutputStream messageStream, boolean[] array) {
+        messageStream.writeInt(array.length);
+        for (boolean value : array)
+            messageStream.writeBoolean(value);
+    }
+
+    private static short[] readShortArray(ByteBufferInputStream messageStream) {
+        return messageStream.readShortArray(messageStream.readInt());
+    }
+
+    private static void writeShortArray(ByteBufferOutputStream messageStream, short[] array) {
+        messageStream.writeInt(array.length);
+        messageStream.writeShortArray(array);
+    }
+
+    private static char[] readCharArray(ByteBufferInputStream messageStream) {
+        char[] array = new char[messageStream.readInt()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = (char) messageStream.readShort();
+        return array;
+    }
+
+    private static void writeCharArray(ByteBufferOutputStream messageStream, char[] array) {
+        messageStream.writeInt(array.length);
+        for (char value : array)
+            messageStream.writeShort((short) value);
+    }
+
+    private static int[] readIntArray(ByteBufferInputStream messageStream) {
+        return messageStream.readIntArray(messageStream.readInt());
+    }
+
+    private static void writeIntArray(ByteBufferOutputStream messageStream, int[] array) {
+        messageStream.writeInt(array.length);
+        messageStream.writeIntArray(array);
+    }
+
+    private static long[] readLongArray(ByteBufferInputStream messageStream) {
+        return messageStream.readLongArray(messageStream.readInt());
+    }
+
+    private static void writeLongArray(ByteBufferOutputStream messageStream, long[] array) {
+        messageStream.writeInt(array.length);
+        messageStream.writeLongArray(array);
+    }
+
+    private static float[] readFloatArray(ByteBufferInputStream messageStream) {
+        return messageStream.readFloatArray(messageStream.readInt());
+    }
+
+    private static void writeFloatArray(ByteBufferOutputStream messageStream, float[] array) {
+        messageStream.writeInt(array.length);
+        messageStream.writeFloatArray(array);
+    }
+
+    private static double[] readDoubleArray(ByteBufferInputStream messageStream) {
+        return messageStream.readDoubleArray(messageStream.readInt());
+    }
+
+    private static void writeDoubleArray(ByteBufferOutputStream messageStream, double[] array) {
+        messageStream.writeInt(array.length);
+        messageStream.writeDoubleArray(array);
+    }
+}
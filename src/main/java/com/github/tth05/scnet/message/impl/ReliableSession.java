@@ -0,0 +1,479 @@
+package com.github.tth05.scnet.message.impl;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The state of a reliable session, which allows a connection to be resumed after it dropped without losing any
+ * messages. Set it using {@link DefaultMessageProcessor#setReliableSession(ReliableSession)} on both sides, with the
+ * client as the {@code initiator}.
+ * <br>
+ * Every message frame which is sent is implicitly numbered. The receiver periodically acknowledges all frames it
+ * received so far, and the sender retains all frames which were not acknowledged yet in its retransmit buffer. When a
+ * connection is established, the initiator sends a hello frame with its session id and its received sequence number.
+ * If the responder knows the session, both sides replay all retained frames which the other side did not receive.
+ * Otherwise, for example after the responder was restarted, a new session with the same id is started on both sides.
+ * The frames in the retransmit buffer may depend on delta encoding or String table state of the previous session,
+ * therefore they are dropped. The frames in an {@link OutboundJournal} don't depend on such state and are sent again
+ * from the start.
+ * <br>
+ * The retransmit buffer is bounded. If it is full, no more messages are sent until the peer acknowledges some frames.
+ * Alternatively, an {@link OutboundJournal} can be used, which retains the frames on disk instead.
+ * All methods except {@link #end()} and the getters are called by the processor on its I/O thread.
+ */
+public final class ReliableSession {
+
+    /**
+     * The id of the control frame which starts or resumes a session
+     */
+    static final short HELLO_ID = -1;
+    /**
+     * The id of the control frame which acknowledges received frames
+     */
+    static final short ACK_ID = -2;
+    /**
+     * Session id, received sequence number and resumed flag
+     */
+    static final int HELLO_BYTES = Long.BYTES * 2 + 1;
+    /**
+     * The cumulative sequence number of received frames
+     */
+    static final int ACK_BYTES = Long.BYTES;
+
+    public static final int DEFAULT_RETRANSMIT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Whether this side sends the first hello frame
+     */
+    private final boolean initiator;
+    /**
+     * The id of the current session, {@code 0} if the responder has not seen any session yet
+     */
+    private long sessionId;
+
+    /**
+     * The number of frames sent in this session
+     */
+    private long sentSequence;
+    /**
+     * The number of sent frames which were acknowledged by the peer
+     */
+    private long acknowledgedSequence;
+    /**
+     * The number of frames received in this session
+     */
+    private long receivedSequence;
+    /**
+     * The {@link #receivedSequence} which was last sent to the peer
+     */
+    private long lastAcknowledgement;
+
+    /**
+     * @see #getJournal()
+     */
+    @Nullable
+    private final OutboundJournal journal;
+    /**
+     * Contains the encoded frames with the sequence numbers {@code ]acknowledgedSequence;sentSequence]} in
+     * {@code [retainedStart;position[}
+     */
+    @NotNull
+    private ByteBuffer retransmitBuffer;
+    private int retainedStart;
+    /**
+     * The configured capacity of the {@link #retransmitBuffer}. The buffer only grows beyond it while a larger frame
+     * is retained.
+     */
+    private final int retransmitBufferSize;
+    /**
+     * The offset in the {@link #retransmitBuffer} up to which the retained frames were replayed, or {@code -1} if
+     * nothing has to be replayed
+     */
+    private int replayOffset = -1;
+
+    private boolean helloPending;
+    private boolean resumed;
+    private boolean established;
+    /**
+     * Set if the last frame did not fit into the retransmit buffer
+     */
+    private boolean blocked;
+    /**
+     * Set by {@link #end()}, which makes the next connection start a new session
+     */
+    private volatile boolean ended;
+
+    /**
+     * @param initiator {@code true} for the client side; {@code false} for the server side
+     */
+    public ReliableSession(boolean initiator) {
+        this(initiator, DEFAULT_RETRANSMIT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param initiator            {@code true} for the client side; {@code false} for the server side
+     * @param retransmitBufferSize the amount of bytes of unacknowledged frames which are retained
+     */
+    public ReliableSession(boolean initiator, int retransmitBufferSize) {
+        if (retransmitBufferSize < 1)
+            throw new IllegalArgumentException("retransmitBufferSize has to be greater than zero");
+
+        this.initiator = initiator;
+        this.journal = null;
+        this.retransmitBufferSize = retransmitBufferSize;
+        this.retransmitBuffer = ByteBuffer.allocate(retransmitBufferSize);
+        startNewSession();
+    }
+
+    /**
+     * @param initiator {@code true} for the client side; {@code false} for the server side
+     * @param journal   the journal which retains all queued and unacknowledged frames instead of the retransmit buffer
+     */
+    public ReliableSession(boolean initiator, @NotNull OutboundJournal journal) {
+        this.initiator = initiator;
+        this.journal = journal;
+        this.retransmitBufferSize = 0;
+        this.retransmitBuffer = ByteBuffer.allocate(0);
+        startNewSession();
+    }
+
+    /**
+     * Called when the connection is reset. The session is kept, unless it was {@link #end()}ed.
+     *
+     * @return {@code true} if a new session was started; {@code false} if the session will be resumed
+     */
+    boolean onConnectionReset() {
+        boolean newSession = this.ended;
+        if (newSession) {
+            this.ended = false;
+            startNewSession();
+        }
+
+        this.established = false;
+        this.helloPending = this.initiator;
+        this.replayOffset = -1;
+        return newSession;
+    }
+
+    /**
+     * Ends this session. The next connection will start a new session instead of resuming this one.
+     */
+    void end() {
+        this.ended = true;
+    }
+
+    /**
+     * Writes any pending hello and acknowledgement frames into the given {@code buffer}, if they fit.
+     */
+    void writeControlFrames(@NotNull ByteBuffer buffer) {
+        if (this.helloPending && buffer.remaining() >= DefaultMessageProcessor.MESSAGE_HEADER_BYTES + HELLO_BYTES) {
+            buffer.putShort(HELLO_ID).putInt(HELLO_BYTES);
+            buffer.putLong(this.sessionId).putLong(this.receivedSequence).put((byte) (this.resumed ? 1 : 0));
+            this.lastAcknowledgement = this.receivedSequence;
+            this.helloPending = false;
+        }
+
+        //A replay might have stopped in the middle of a frame, therefore acknowledgements have to wait until it's done
+        if (this.established && isAtFrameBoundary() && this.receivedSequence != this.lastAcknowledgement &&
+            buffer.remaining() >= DefaultMessageProcessor.MESSAGE_HEADER_BYTES + ACK_BYTES) {
+            buffer.putShort(ACK_ID).putInt(ACK_BYTES).putLong(this.receivedSequence);
+            this.lastAcknowledgement = this.receivedSequence;
+        }
+    }
+
+    /**
+     * Copies as many retained frames which have to be replayed into the given {@code buffer} as fit.
+     *
+     * @return {@code true} if there are more frames to replay; {@code false} otherwise
+     */
+    boolean replay(@NotNull ByteBuffer buffer) {
+        if (this.replayOffset < 0)
+            return false;
+
+        int end = this.retransmitBuffer.position();
+        int length = Math.min(buffer.remaining(), end - this.replayOffset);
+        this.retransmitBuffer.limit(this.replayOffset + length);
+        this.retransmitBuffer.position(this.replayOffset);
+        buffer.put(this.retransmitBuffer);
+        this.retransmitBuffer.limit(this.retransmitBuffer.capacity());
+        this.retransmitBuffer.position(end);
+
+        this.replayOffset += length;
+        if (this.replayOffset < end)
+            return true;
+
+        this.replayOffset = -1;
+        return false;
+    }
+
+    /**
+     * @return {@code true} if a frame of the given length can be retained; {@code false} if the retransmit buffer is
+     * too full, in which case the session stays {@link #isBlocked() blocked} until the peer acknowledges some frames
+     */
+    boolean hasRoomFor(int frameLength) {
+        int retained = this.retransmitBuffer.position() - this.retainedStart;
+        //A frame which is larger than the buffer can always be sent on its own
+        this.blocked = retained > 0 && this.retransmitBuffer.capacity() - retained < frameLength;
+        return !this.blocked;
+    }
+
+    /**
+     * Retains a frame which is about to be sent.
+     *
+     * @param buffer     the buffer which contains the frame in {@code [frameStart;position[}, which is left unchanged
+     * @param frameStart the offset of the frame in the buffer
+     */
+    void retain(@NotNull ByteBuffer buffer, int frameStart) {
+        int frameLength = buffer.position() - frameStart;
+        if (this.retransmitBuffer.remaining() < frameLength) {
+            //Move the retained frames to the front
+            this.retransmitBuffer.limit(this.retransmitBuffer.position());
+            this.retransmitBuffer.position(this.retainedStart);
+            this.retransmitBuffer.compact();
+            if (this.replayOffset >= 0)
+                this.replayOffset -= this.retainedStart;
+            this.retainedStart = 0;
+
+            if (this.retransmitBuffer.capacity() < frameLength) {
+                ByteBuffer newBuffer = ByteBuffer.allocate(frameLength);
+                this.retransmitBuffer.flip();
+                newBuffer.put(this.retransmitBuffer);
+                this.retransmitBuffer = newBuffer;
+            }
+        }
+
+        int position = buffer.position();
+        int limit = buffer.limit();
+        buffer.position(frameStart).limit(position);
+        this.retransmitBuffer.put(buffer);
+        buffer.limit(limit);
+        this.sentSequence++;
+    }
+
+    /**
+     * Called for every received message frame.
+     *
+     * @return {@code false} if the frame was not expected; {@code true} otherwise
+     */
+    boolean onFrameReceived() {
+        if (!this.established)
+            return false;
+
+        this.receivedSequence++;
+        return true;
+    }
+
+    /**
+     * Handles a received hello frame, which establishes the session.
+     *
+     * @param sessionId        the session id of the peer
+     * @param receivedSequence the number of frames the peer received in this session
+     * @param resumed          for the initiator, whether the responder resumed the session
+     * @return {@code false} if the frame is invalid; {@code true} otherwise
+     */
+    boolean onHello(long sessionId, long receivedSequence, boolean resumed) {
+        if (this.established)
+            return false;
+
+        if (this.initiator) {
+            if (sessionId != this.sessionId)
+                return false;
+        } else {
+            resumed = this.sessionId != 0 && sessionId == this.sessionId;
+            this.sessionId = sessionId;
+            this.helloPending = true;
+        }
+
+        if (!resumed) {
+            //The peer does not know anything about this session, its received sequence number belongs to another one
+            if (this.initiator && receivedSequence != 0)
+                return false;
+            restartSession();
+            receivedSequence = 0;
+        }
+        this.resumed = resumed;
+
+        if (!onAcknowledgement(receivedSequence))
+            return false;
+
+        if (this.journal != null)
+            this.journal.rewind();
+        else if (this.retransmitBuffer.position() > this.retainedStart)
+            this.replayOffset = this.retainedStart;
+        this.established = true;
+        return true;
+    }
+
+    /**
+     * Removes all frames up to the given sequence number from the retransmit buffer.
+     *
+     * @return {@code false} if the sequence number is invalid; {@code true} otherwise
+     */
+    boolean onAcknowledgement(long sequence) {
+        if (sequence < this.acknowledgedSequence || sequence > getSentSequence())
+            return false;
+
+        if (this.journal != null) {
+            this.journal.acknowledge(sequence - this.acknowledgedSequence);
+            this.acknowledgedSequence = sequence;
+            return true;
+        }
+
+        for (; this.acknowledgedSequence < sequence; this.acknowledgedSequence++) {
+            int size = this.retransmitBuffer.getInt(this.retainedStart + Short.BYTES) & ~FrameCompression.FLAG_COMPRESSED;
+            this.retainedStart += DefaultMessageProcessor.MESSAGE_HEADER_BYTES + size;
+        }
+
+        if (this.replayOffset >= 0 && this.replayOffset < this.retainedStart)
+            this.replayOffset = this.retainedStart;
+        if (this.retainedStart == this.retransmitBuffer.position()) {
+            this.retransmitBuffer.clear();
+            this.retainedStart = 0;
+            this.replayOffset = -1;
+        }
+        shrinkRetransmitBuffer();
+
+        this.blocked = false;
+        return true;
+    }
+
+    /**
+     * Replaces a {@link #retransmitBuffer} which grew for an oversized frame with one of the configured size, once the
+     * remaining retained frames fit into it again.
+     */
+    private void shrinkRetransmitBuffer() {
+        int retained = this.retransmitBuffer.position() - this.retainedStart;
+        if (this.retransmitBuffer.capacity() <= this.retransmitBufferSize || retained > this.retransmitBufferSize)
+            return;
+
+        ByteBuffer newBuffer = ByteBuffer.allocate(this.retransmitBufferSize);
+        this.retransmitBuffer.flip().position(this.retainedStart);
+        newBuffer.put(this.retransmitBuffer);
+        this.retransmitBuffer = newBuffer;
+        if (this.replayOffset >= 0)
+            this.replayOffset -= this.retainedStart;
+        this.retainedStart = 0;
+    }
+
+    /**
+     * @return {@code true} if any control frames or replayed frames have to be written; {@code false} otherwise
+     */
+    boolean hasPendingControlFrames() {
+        return this.helloPending || (this.established && (this.receivedSequence != this.lastAcknowledgement || this.replayOffset >= 0));
+    }
+
+    /**
+     * @return {@code true} if no retained frame was partially written, which allows control frames to be written
+     */
+    private boolean isAtFrameBoundary() {
+        return this.journal != null ? this.journal.isAtFrameBoundary() : this.replayOffset < 0;
+    }
+
+    /**
+     * @return the number of frames sent in this session, including queued frames if a journal is used
+     */
+    private long getSentSequence() {
+        return this.journal != null ? this.acknowledgedSequence + this.journal.getFrameCount() : this.sentSequence;
+    }
+
+    private void startNewSession() {
+        if (this.initiator) {
+            long sessionId;
+            do {
+                sessionId = ThreadLocalRandom.current().nextLong();
+            } while (sessionId == 0);
+            this.sessionId = sessionId;
+        } else {
+            this.sessionId = 0;
+        }
+
+        restartSession();
+        if (this.journal != null)
+            this.journal.clear();
+    }
+
+    /**
+     * Starts over with the current session id. The retransmit buffer is cleared, while the frames in the journal are
+     * kept to be sent again from the start.
+     */
+    private void restartSession() {
+        this.sentSequence = 0;
+        this.acknowledgedSequence = 0;
+        this.receivedSequence = 0;
+        this.lastAcknowledgement = 0;
+        this.retransmitBuffer.clear();
+        this.retainedStart = 0;
+        this.replayOffset = -1;
+        this.resumed = false;
+        this.blocked = false;
+        shrinkRetransmitBuffer();
+    }
+
+    /**
+     * @return {@code true} if the hello frames were exchanged and messages can be sent
+     */
+    @Contract(pure = true)
+    public boolean isEstablished() {
+        return this.established;
+    }
+
+    /**
+     * @return {@code true} if the retransmit buffer is full and no more messages are sent until the peer acknowledges
+     * some frames
+     */
+    @Contract(pure = true)
+    public boolean isBlocked() {
+        return this.blocked;
+    }
+
+    /**
+     * @return {@code true} if the last hello frames resumed the session; {@code false} if a new session was started
+     */
+    @Contract(pure = true)
+    public boolean isResumed() {
+        return this.resumed;
+    }
+
+    @Contract(pure = true)
+    public long getSessionId() {
+        return this.sessionId;
+    }
+
+    /**
+     * @return the number of sent frames which were not acknowledged yet
+     */
+    @Contract(pure = true)
+    public long getUnacknowledgedFrames() {
+        return getSentSequence() - this.acknowledgedSequence;
+    }
+
+    /**
+     * @return the amount of bytes in the retransmit buffer or the journal
+     */
+    @Contract(pure = true)
+    public long getRetainedBytes() {
+        return this.journal != null ? this.journal.getRetainedBytes() : this.retransmitBuffer.position() - this.retainedStart;
+    }
+
+    /**
+     * @return the journal which retains the frames of this session, or {@code null} if the retransmit buffer is used
+     */
+    @Nullable
+    @Contract(pure = true)
+    public OutboundJournal getJournal() {
+        return this.journal;
+    }
+
+    /**
+     * @return the current capacity of the retransmit buffer, which is only larger than the configured size while a
+     * frame larger than it is retained
+     */
+    @Contract(pure = true)
+    public int getRetransmitBufferSize() {
+        return this.retransmitBuffer.capacity();
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.tth05.scnet.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * An {@link InputStream} and {@link DataInput} which reads directly from the buffer of a {@link ByteBufferInputStream},
+ * without copying its content into an intermediate array. This allows reading messages with libraries which only
+ * understand the standard JDK interfaces.
+ * <br>
+ * Received messages are bounded to their frame, so the end of the stream is the end of the current message. Reading
+ * past it throws an {@link EOFException} instead of reading into the next message. Instances are obtained using
+ * {@link ByteBufferInputStream#asDataInput()}.
+ */
+public final class ByteBufferDataInput extends InputStream implements DataInput {
+
+    @NotNull
+    private final ByteBuffer buf;
+
+    ByteBufferDataInput(@NotNull ByteBuffer buffer) {
+        this.buf = buffer;
+    }
+
+    @Override
+    public int read() {
+        return this.buf.hasRemaining() ? this.buf.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte @NotNull [] b, int off, int len) {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0)
+            return 0;
+
+        int remaining = this.buf.remaining();
+        if (remaining == 0)
+            return -1;
+
+        int count = Math.min(len, remaining);
+        this.buf.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        int count = (int) Math.max(0, Math.min(n, this.buf.remaining()));
+        this.buf.position(this.buf.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return this.buf.remaining();
+    }
+
+    @Override
+    public void readFully(byte @NotNull [] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte @NotNull [] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        require(len);
+        this.buf.get(b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n) {
+        return (int) skip(n);
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        require(Byte.BYTES);
+        return this.buf.get();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        require(Short.BYTES);
+        return this.buf.getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        require(Character.BYTES);
+        return this.buf.getChar();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        require(Integer.BYTES);
+        return this.buf.getInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        require(Long.BYTES);
+        return this.buf.getLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /**
+     * Reads a line of bytes like {@link DataInputStream#readLine()}. Every byte is converted to a char without decoding.
+     */
+    @Nullable
+    @Override
+    public String readLine() {
+        if (!this.buf.hasRemaining())
+            return null;
+
+        StringBuilder line = new StringBuilder();
+        while (this.buf.hasRemaining()) {
+            char c = (char) (this.buf.get() & 0xFF);
+            if (c == '\n')
+                break;
+            if (c == '\r') {
+                if (this.buf.hasRemaining() && this.buf.get(this.buf.position()) == '\n')
+                    this.buf.get();
+                break;
+            }
+            line.append(c);
+        }
+
+        return line.toString();
+    }
+
+    @NotNull
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+    /**
+     * @throws EOFException if less than {@code bytes} bytes are left in the current message
+     */
+    private void require(int bytes) throws EOFException {
+        if (this.buf.remaining() < bytes)
+            throw new EOFException("Tried to read " + bytes + " bytes, but only " + this.buf.remaining() + " are left");
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.tth05.scnet.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataOutput;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.util.Objects;
+
+/**
+ * An {@link OutputStream} and {@link DataOutput} which writes directly to a {@link ByteBufferOutputStream}, without
+ * going through an intermediate array. This allows writing messages with libraries which only understand the standard
+ * JDK interfaces. The written bytes are the same as those of a {@link java.io.DataOutputStream}.
+ * <br>
+ * Instances are obtained using {@link ByteBufferOutputStream#asDataOutput()}.
+ */
+public final class ByteBufferDataOutput extends OutputStream implements DataOutput {
+
+    @NotNull
+    private final ByteBufferOutputStream stream;
+
+    ByteBufferDataOutput(@NotNull ByteBufferOutputStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public void write(int b) {
+        this.stream.writeByte(b);
+    }
+
+    @Override
+    public void write(byte @NotNull [] b) {
+        this.stream.writeByteArray(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte @NotNull [] b, int off, int len) {
+        Objects.checkFromIndexSize(off, len, b.length);
+        this.stream.writeByteArray(b, off, len);
+    }
+
+    @Override
+    public void writeBoolean(boolean v) {
+        this.stream.writeBoolean(v);
+    }
+
+    @Override
+    public void writeByte(int v) {
+        this.stream.writeByte(v);
+    }
+
+    @Override
+    public void writeShort(int v) {
+        this.stream.writeShort((short) v);
+    }
+
+    @Override
+    public void writeChar(int v) {
+        this.stream.writeShort((short) v);
+    }
+
+    @Override
+    public void writeInt(int v) {
+        this.stream.writeInt(v);
+    }
+
+    @Override
+    public void writeLong(long v) {
+        this.stream.writeLong(v);
+    }
+
+    @Override
+    public void writeFloat(float v) {
+        this.stream.writeInt(Float.floatToIntBits(v));
+    }
+
+    @Override
+    public void writeDouble(double v) {
+        this.stream.writeLong(Double.doubleToLongBits(v));
+    }
+
+    /**
+     * Writes the low byte of every char of the given String.
+     */
+    @Override
+    public void writeBytes(@NotNull String s) {
+        int length = s.length();
+        this.stream.ensureCapacity(length);
+        for (int i = 0; i < length; i++)
+            this.stream.writeByte(s.charAt(i));
+    }
+
+    @Override
+    public void writeChars(@NotNull String s) {
+        int length = s.length();
+        this.stream.ensureCapacity(length * Character.BYTES);
+        for (int i = 0; i < length; i++)
+            this.stream.writeShort((short) s.charAt(i));
+    }
+
+    /**
+     * Writes the given String in modified UTF-8 like {@link java.io.DataOutputStream#writeUTF(String)}.
+     *
+     * @throws UTFDataFormatException if the encoded String is longer than 65535 bytes
+     */
+    @Override
+    public void writeUTF(@NotNull String s) throws UTFDataFormatException {
+        int length = s.length();
+        int utfLength = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80 || c == 0)
+                utfLength += c >= 0x800 ? 2 : 1;
+        }
+        if (utfLength > 0xFFFF)
+            throw new UTFDataFormatException("Encoded string is too long: " + utfLength + " bytes");
+
+        this.stream.ensureCapacity(Short.BYTES + utfLength);
+        this.stream.writeShort((short) utfLength);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80 && c != 0) {
+                this.stream.writeByte(c);
+            } else if (c < 0x800) {
+                this.stream.writeByte(0xC0 | (c >> 6));
+                this.stream.writeByte(0x80 | (c & 0x3F));
+            } else {
+                this.stream.writeByte(0xE0 | (c >> 12));
+                this.stream.writeByte(0x80 | ((c >> 6) & 0x3F));
+                this.stream.writeByte(0x80 | (c & 0x3F));
+            }
+        }
+    }
+}
@@ -2,25 +2,54 @@ package com.github.tth05.scnet.util;
 
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 
 /**
  * An input stream which reads data from a given {@link ByteBuffer}.
  */
 public class ByteBufferInputStream {
 
+    /**
+     * The maximum size of the scratch array, longer Strings use a temporary array instead
+     */
+    private static final int MAX_SCRATCH_SIZE = 8192;
+
     /**
      * The internal buffer which contains the data to read.
      */
     @NotNull
     private final ByteBuffer buf;
+    /**
+     * Reused to decode Strings from direct buffers, at most {@link #MAX_SCRATCH_SIZE} bytes long
+     */
+    private byte @Nullable [] scratch;
+    /**
+     * The lazily created adapter of this stream
+     */
+    @Nullable
+    private ByteBufferDataInput dataInput;
+    /**
+     * @see #setStringTable(StringTable)
+     */
+    @Nullable
+    private StringTable stringTable;
 
     public ByteBufferInputStream(@NotNull ByteBuffer buffer) {
         this.buf = buffer;
     }
 
+    /**
+     * @return the amount of bytes which are left to read
+     */
+    public int remaining() {
+        return this.buf.remaining();
+    }
+
     public byte readByte() {
         return this.buf.get();
     }
@@ -36,6 +65,129 @@ public class ByteBufferInputStream {
         this.buf.get(ar, offset, length);
     }
 
+    @Contract("_ -> new")
+    public short @NotNull [] readShortArray(int length) {
+        short[] ar = new short[length];
+        readShortArray(ar, 0, length);
+        return ar;
+    }
+
+    /**
+     * Reads shorts like {@link #readIntArray(int[], int, int)}.
+     */
+    public void readShortArray(short @NotNull [] ar, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, ar.length);
+        if (this.buf.remaining() < length * Short.BYTES)
+            throw new BufferUnderflowException();
+        int position = this.buf.position();
+        if (length < ByteBufferUtils.BULK_COPY_THRESHOLD) {
+            for (int i = 0; i < length; i++)
+                ar[offset + i] = this.buf.getShort(position + i * Short.BYTES);
+        } else {
+            this.buf.asShortBuffer().get(ar, offset, length);
+        }
+        this.buf.position(position + length * Short.BYTES);
+    }
+
+    @Contract("_ -> new")
+    public int @NotNull [] readIntArray(int length) {
+        int[] ar = new int[length];
+        readIntArray(ar, 0, length);
+        return ar;
+    }
+
+    /**
+     * Reads {@code length} ints into the given array, using an {@link java.nio.IntBuffer} view for long arrays.
+     * Counterpart of {@link ByteBufferOutputStream#writeIntArray(int[], int, int)}.
+     *
+     * @throws BufferUnderflowException if less than {@code length} ints are left
+     */
+    public void readIntArray(int @NotNull [] ar, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, ar.length);
+        if (this.buf.remaining() < length * Integer.BYTES)
+            throw new BufferUnderflowException();
+        int position = this.buf.position();
+        if (length < ByteBufferUtils.BULK_COPY_THRESHOLD) {
+            for (int i = 0; i < length; i++)
+                ar[offset + i] = this.buf.getInt(position + i * Integer.BYTES);
+        } else {
+            this.buf.asIntBuffer().get(ar, offset, length);
+        }
+        this.buf.position(position + length * Integer.BYTES);
+    }
+
+    @Contract("_ -> new")
+    public long @NotNull [] readLongArray(int length) {
+        long[] ar = new long[length];
+        readLongArray(ar, 0, length);
+        return ar;
+    }
+
+    /**
+     * Reads longs like {@link #readIntArray(int[], int, int)}.
+     */
+    public void readLongArray(long @NotNull [] ar, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, ar.length);
+        if (this.buf.remaining() < length * Long.BYTES)
+            throw new BufferUnderflowException();
+        int position = this.buf.position();
+        if (length < ByteBufferUtils.BULK_COPY_THRESHOLD) {
+            for (int i = 0; i < length; i++)
+                ar[offset + i] = this.buf.getLong(position + i * Long.BYTES);
+        } else {
+            this.buf.asLongBuffer().get(ar, offset, length);
+        }
+        this.buf.position(position + length * Long.BYTES);
+    }
+
+    @Contract("_ -> new")
+    public float @NotNull [] readFloatArray(int length) {
+        float[] ar = new float[length];
+        readFloatArray(ar, 0, length);
+        return ar;
+    }
+
+    /**
+     * Reads floats like {@link #readIntArray(int[], int, int)}.
+     */
+    public void readFloatArray(float @NotNull [] ar, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, ar.length);
+        if (this.buf.remaining() < length * Float.BYTES)
+            throw new BufferUnderflowException();
+        int position = this.buf.position();
+        if (length < ByteBufferUtils.BULK_COPY_THRESHOLD) {
+            for (int i = 0; i < length; i++)
+                ar[offset + i] = this.buf.getFloat(position + i * Float.BYTES);
+        } else {
+            this.buf.asFloatBuffer().get(ar, offset, length);
+        }
+        this.buf.position(position + length * Float.BYTES);
+    }
+
+    @Contract("_ -> new")
+    public double @NotNull [] readDoubleArray(int length) {
+        double[] ar = new double[length];
+        readDoubleArray(ar, 0, length);
+        return ar;
+    }
+
+    /**
+     * Reads doubles like {@link #readIntArray(int[], int, int)}.
+     */
+    public void readDoubleArray(double @NotNull [] ar, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, ar.length);
+        if (this.buf.remaining() < length * Double.BYTES)
+            throw new BufferUnderflowException();
+        int position = this.buf.position();
+        if (length < ByteBufferUtils.BULK_COPY_THRESHOLD) {
+            for (int i = 0; i < length; i++)
+                ar[offset + i] = this.buf.getDouble(position + i * Double.BYTES);
+        } else {
+            this.buf.asDoubleBuffer().get(ar, offset, length);
+        }
+        this.buf.position(position + length * Double.BYTES);
+    }
+
     public boolean readBoolean() {
         return readByte() != 0;
     }
@@ -53,14 +205,178 @@ public class ByteBufferInputStream {
     }
 
     /**
-     * Reads a String in the format written by {@link ByteBufferOutputStream#writeString(String)}.
+     * Reads an int in the format written by {@link ByteBufferOutputStream#writeVarInt(int)}.
+     *
+     * @return the int
+     * @throws BufferUnderflowException if the buffer ends before the last byte of the int
+     * @throws IllegalStateException    if the int is longer than 5 bytes
+     */
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = this.buf.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    /**
+     * Reads a String in the format written by {@link ByteBufferOutputStream#writeString(String)}. The String is decoded
+     * straight from the buffer if it is backed by an array, otherwise the bytes are copied into a scratch array which
+     * is reused by later calls.
      *
      * @return the String
+     * @throws BufferUnderflowException if the String is longer than the remaining bytes
      */
     @NotNull
     @Contract("-> new")
     public String readString() {
+        int length = readStringLength();
+        int position = this.buf.position();
+        String s;
+        if (this.buf.hasArray()) {
+            s = new String(this.buf.array(), this.buf.arrayOffset() + position, length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = length <= MAX_SCRATCH_SIZE ? getScratch(length) : new byte[length];
+            this.buf.get(position, bytes, 0, length);
+            s = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        this.buf.position(position + length);
+        return s;
+    }
+
+    /**
+     * Reads a String in the format written by {@link ByteBufferOutputStream#writeString(String)} and appends its chars
+     * to the given {@code builder}, without creating a String. Malformed input is replaced by {@code '\uFFFD'}.
+     *
+     * @param builder the builder to append to, which can be reused for every message
+     * @return the given builder
+     * @throws BufferUnderflowException if the String is longer than the remaining bytes
+     */
+    @NotNull
+    @Contract("_ -> param1")
+    public StringBuilder readString(@NotNull StringBuilder builder) {
+        int length = readStringLength();
+        byte[] bytes;
+        int position;
+        if (this.buf.hasArray()) {
+            bytes = this.buf.array();
+            position = this.buf.arrayOffset() + this.buf.position();
+        } else {
+            bytes = length <= MAX_SCRATCH_SIZE ? getScratch(length) : new byte[length];
+            position = 0;
+            this.buf.get(this.buf.position(), bytes, 0, length);
+        }
+        this.buf.position(this.buf.position() + length);
+
+        int end = position + length;
+        builder.ensureCapacity(builder.length() + length);
+        while (position < end) {
+            int b = bytes[position++];
+            if (b >= 0) {
+                builder.append((char) b);
+                continue;
+            }
+
+            int continuationBytes;
+            int codePoint;
+            if ((b & 0xE0) == 0xC0) {
+                continuationBytes = 1;
+                codePoint = b & 0x1F;
+            } else if ((b & 0xF0) == 0xE0) {
+                continuationBytes = 2;
+                codePoint = b & 0x0F;
+            } else if ((b & 0xF8) == 0xF0) {
+                continuationBytes = 3;
+                codePoint = b & 0x07;
+            } else {
+                builder.append('\uFFFD');
+                continue;
+            }
+
+            int sequenceEnd = position + continuationBytes;
+            for (; position < sequenceEnd && position < end; position++) {
+                int continuation = bytes[position];
+                if ((continuation & 0xC0) != 0x80)
+                    break;
+                codePoint = (codePoint << 6) | (continuation & 0x3F);
+            }
+
+            //Truncated sequences, overlong encodings, surrogates and values above U+10FFFF are malformed
+            int minimum = continuationBytes == 1 ? 0x80 : continuationBytes == 2 ? 0x800 : 0x10000;
+            if (position != sequenceEnd || codePoint < minimum || codePoint > Character.MAX_CODE_POINT ||
+                (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE))
+                builder.append('\uFFFD');
+            else
+                builder.appendCodePoint(codePoint);
+        }
+
+        return builder;
+    }
+
+    /**
+     * Reads a String in the format written by {@link ByteBufferOutputStream#writeInternedString(String)}. Interned
+     * Strings are looked up in the {@link StringTable} of this stream, which returns the same instance every time
+     * without decoding or allocating anything.
+     *
+     * @return the String
+     * @throws IllegalStateException    if the String refers to an id which is not part of the table
+     * @throws BufferUnderflowException if the String is longer than the remaining bytes
+     */
+    @NotNull
+    public String readInternedString() {
+        int id = readVarInt();
+        if (id == 0)
+            return readString();
+
+        String s = this.stringTable != null ? this.stringTable.get(id) : null;
+        if (s == null)
+            throw new IllegalStateException("Unknown string id " + id);
+        return s;
+    }
+
+    /**
+     * Sets the table which is used by {@link #readInternedString()}. The message processor sets the table of its
+     * connection before reading a message.
+     *
+     * @param stringTable the table, or {@code null} if no Strings were interned
+     */
+    public void setStringTable(@Nullable StringTable stringTable) {
+        this.stringTable = stringTable;
+    }
+
+    /**
+     * Reads the length prefix of a String and checks that the String is fully contained in the buffer.
+     */
+    private int readStringLength() {
         int length = this.buf.getInt();
-        return new String(readByteArray(length), StandardCharsets.UTF_8);
+        if (length < 0 || length > this.buf.remaining())
+            throw new BufferUnderflowException();
+        return length;
+    }
+
+    /**
+     * @return the scratch array, grown to hold at least {@code length} bytes
+     */
+    private byte @NotNull [] getScratch(int length) {
+        if (this.scratch == null || this.scratch.length < length)
+            this.scratch = new byte[Math.max(length, 64)];
+        return this.scratch;
+    }
+
+    /**
+     * Returns an adapter which implements {@link java.io.InputStream} and {@link java.io.DataInput} on top of the
+     * buffer of this stream. Both share the same position, so reads can be mixed freely.
+     *
+     * @return the adapter of this stream, which is only created once
+     */
+    @NotNull
+    public ByteBufferDataInput asDataInput() {
+        if (this.dataInput == null)
+            this.dataInput = new ByteBufferDataInput(this.buf);
+        return this.dataInput;
     }
 }
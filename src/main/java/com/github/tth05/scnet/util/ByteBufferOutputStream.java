@@ -2,9 +2,10 @@ package com.github.tth05.scnet.util;
 
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 
 /**
  * An output stream which writes bytes to a {@link ByteBuffer}, allocating a new buffer with a bigger size when needed.
@@ -19,6 +20,16 @@ public class ByteBufferOutputStream {
      */
     @NotNull
     private ByteBuffer buf;
+    /**
+     * The lazily created adapter of this stream
+     */
+    @Nullable
+    private ByteBufferDataOutput dataOutput;
+    /**
+     * @see #setStringTable(StringTable)
+     */
+    @Nullable
+    private StringTable stringTable;
 
     public ByteBufferOutputStream() {
         this(32);
@@ -53,6 +64,119 @@ public class ByteBufferOutputStream {
         this.buf.put(ar, offset, length);
     }
 
+    /**
+     * Writes all remaining bytes of the given {@code buffer} to this output stream. The position of the given buffer
+     * will be advanced to its limit.
+     *
+     * @param buffer the buffer to copy from
+     */
+    public void writeByteBuffer(@NotNull ByteBuffer buffer) {
+        ensureFits(buffer.remaining());
+        this.buf.put(buffer);
+    }
+
+    public void writeShortArray(short @NotNull [] ar) {
+        writeShortArray(ar, 0, ar.length);
+    }
+
+    /**
+     * Writes shorts like {@link #writeIntArray(int[], int, int)}.
+     */
+    public void writeShortArray(short @NotNull [] ar, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, ar.length);
+        ensureFits(length * Short.BYTES);
+        int position = this.buf.position();
+        if (length < ByteBufferUtils.BULK_COPY_THRESHOLD) {
+            for (int i = 0; i < length; i++)
+                this.buf.putShort(position + i * Short.BYTES, ar[offset + i]);
+        } else {
+            this.buf.asShortBuffer().put(ar, offset, length);
+        }
+        this.buf.position(position + length * Short.BYTES);
+    }
+
+    public void writeIntArray(int @NotNull [] ar) {
+        writeIntArray(ar, 0, ar.length);
+    }
+
+    /**
+     * Writes {@code length} ints of the given array, without a length prefix. The buffer is only grown once, and long
+     * arrays are copied at once using an {@link java.nio.IntBuffer} view, which is faster than writing every element
+     * on its own.
+     */
+    public void writeIntArray(int @NotNull [] ar, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, ar.length);
+        ensureFits(length * Integer.BYTES);
+        int position = this.buf.position();
+        if (length < ByteBufferUtils.BULK_COPY_THRESHOLD) {
+            for (int i = 0; i < length; i++)
+                this.buf.putInt(position + i * Integer.BYTES, ar[offset + i]);
+        } else {
+            this.buf.asIntBuffer().put(ar, offset, length);
+        }
+        this.buf.position(position + length * Integer.BYTES);
+    }
+
+    public void writeLongArray(long @NotNull [] ar) {
+        writeLongArray(ar, 0, ar.length);
+    }
+
+    /**
+     * Writes longs like {@link #writeIntArray(int[], int, int)}.
+     */
+    public void writeLongArray(long @NotNull [] ar, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, ar.length);
+        ensureFits(length * Long.BYTES);
+        int position = this.buf.position();
+        if (length < ByteBufferUtils.BULK_COPY_THRESHOLD) {
+            for (int i = 0; i < length; i++)
+                this.buf.putLong(position + i * Long.BYTES, ar[offset + i]);
+        } else {
+            this.buf.asLongBuffer().put(ar, offset, length);
+        }
+        this.buf.position(position + length * Long.BYTES);
+    }
+
+    public void writeFloatArray(float @NotNull [] ar) {
+        writeFloatArray(ar, 0, ar.length);
+    }
+
+    /**
+     * Writes floats like {@link #writeIntArray(int[], int, int)}.
+     */
+    public void writeFloatArray(float @NotNull [] ar, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, ar.length);
+        ensureFits(length * Float.BYTES);
+        int position = this.buf.position();
+        if (length < ByteBufferUtils.BULK_COPY_THRESHOLD) {
+            for (int i = 0; i < length; i++)
+                this.buf.putFloat(position + i * Float.BYTES, ar[offset + i]);
+        } else {
+            this.buf.asFloatBuffer().put(ar, offset, length);
+        }
+        this.buf.position(position + length * Float.BYTES);
+    }
+
+    public void writeDoubleArray(double @NotNull [] ar) {
+        writeDoubleArray(ar, 0, ar.length);
+    }
+
+    /**
+     * Writes doubles like {@link #writeIntArray(int[], int, int)}.
+     */
+    public void writeDoubleArray(double @NotNull [] ar, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, ar.length);
+        ensureFits(length * Double.BYTES);
+        int position = this.buf.position();
+        if (length < ByteBufferUtils.BULK_COPY_THRESHOLD) {
+            for (int i = 0; i < length; i++)
+                this.buf.putDouble(position + i * Double.BYTES, ar[offset + i]);
+        } else {
+            this.buf.asDoubleBuffer().put(ar, offset, length);
+        }
+        this.buf.position(position + length * Double.BYTES);
+    }
+
     public void writeBoolean(boolean b) {
         writeByte(b ? 1 : 0);
     }
@@ -67,6 +191,22 @@ public class ByteBufferOutputStream {
         this.buf.putInt(i);
     }
 
+    /**
+     * Writes the given int with 7 bits per byte, where the highest bit of each byte marks that another byte follows.
+     * Small non-negative values take a single byte, negative values always take 5 bytes. Works in conjunction with
+     * {@link ByteBufferInputStream#readVarInt()}.
+     *
+     * @param i the int to write
+     */
+    public void writeVarInt(int i) {
+        ensureFits(5);
+        while ((i & ~0x7F) != 0) {
+            this.buf.put((byte) ((i & 0x7F) | 0x80));
+            i >>>= 7;
+        }
+        this.buf.put((byte) i);
+    }
+
     public void writeLong(long l) {
         ensureFits(8);
         this.buf.putLong(l);
@@ -77,12 +217,139 @@ public class ByteBufferOutputStream {
      * conjunction with {@link ByteBufferInputStream#readString()}.
      *
      * @param s the String to write
+     * @see #writeString(CharSequence)
+     */
+    public void writeString(@NotNull String s) {
+        writeUtf8(s);
+    }
+
+    /**
+     * Writes the given chars like {@link #writeString(String)}, which allows reusing a {@link StringBuilder} instead
+     * of creating a new String for every message.
+     *
+     * @param s the chars to write
+     */
+    public void writeString(@NotNull CharSequence s) {
+        writeUtf8(s);
+    }
+
+    /**
+     * Writes the given String using the {@link StringTable} of this stream. The first time a String is written on a
+     * connection, the message processor sends it to the peer once and it gets a small id; afterwards only the id is
+     * written as a varint. The receiver returns the same String instance for every occurrence. Without a table, or if
+     * the String can't be interned, a {@code 0} followed by the String is written. Works in conjunction with
+     * {@link ByteBufferInputStream#readInternedString()}.
+     * <br>
+     * This is meant for a small set of Strings which are repeated often, like keys or type names. Every interned String
+     * is kept until the connection is closed.
+     *
+     * @param s the String to write
+     */
+    public void writeInternedString(@NotNull String s) {
+        int id = this.stringTable != null ? this.stringTable.intern(s) : 0;
+        writeVarInt(id);
+        if (id == 0)
+            writeUtf8(s);
+    }
+
+    /**
+     * Encodes the given chars as UTF-8 directly into the buffer, prefixed with their length in bytes. The length is
+     * written after the chars were encoded, so no intermediate array is needed. Unpaired surrogates are written as
+     * {@code '?'}, like {@link String#getBytes(java.nio.charset.Charset)} does.
+     */
+    private void writeUtf8(@NotNull CharSequence s) {
+        int length = s.length();
+        //Enough room for an ASCII String, which is the common case
+        ensureFits(Integer.BYTES + length);
+        int start = this.buf.position();
+        byte[] array = this.buf.array();
+        int offset = this.buf.arrayOffset() + start + Integer.BYTES;
+        int i = 0;
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80)
+                break;
+            array[offset + i] = (byte) c;
+        }
+
+        int end = offset + i;
+        if (i < length) {
+            //No char takes more than 3 bytes, a surrogate pair takes 4 bytes for 2 chars
+            this.buf.position(end - this.buf.arrayOffset());
+            ensureFits((length - i) * 3);
+            end = encodeUtf8(s, i, this.buf.array(), this.buf.arrayOffset() + this.buf.position());
+        }
+
+        int byteLength = end - this.buf.arrayOffset() - start - Integer.BYTES;
+        this.buf.putInt(start, byteLength);
+        this.buf.position(start + Integer.BYTES + byteLength);
+    }
+
+    /**
+     * Encodes all chars of {@code s} from index {@code from} into the given array, which has to be big enough.
+     *
+     * @return the index in the array after the last written byte
+     */
+    private static int encodeUtf8(@NotNull CharSequence s, int from, byte @NotNull [] array, int offset) {
+        int length = s.length();
+        for (int i = from; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                array[offset++] = (byte) c;
+            } else if (c < 0x800) {
+                array[offset++] = (byte) (0xC0 | (c >> 6));
+                array[offset++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                    array[offset++] = (byte) (0xF0 | (codePoint >> 18));
+                    array[offset++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    array[offset++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    array[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    array[offset++] = '?';
+                }
+            } else {
+                array[offset++] = (byte) (0xE0 | (c >> 12));
+                array[offset++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                array[offset++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        return offset;
+    }
+
+    /**
+     * Makes sure that at least {@code bytes} more bytes can be written without growing the internal buffer again. Used
+     * to pre-size the buffer once if the size of a message is known up front.
+     *
+     * @param bytes the amount of bytes which will be written
+     */
+    public void ensureCapacity(int bytes) {
+        ensureFits(bytes);
+    }
+
+    /**
+     * Returns an adapter which implements {@link java.io.OutputStream} and {@link java.io.DataOutput} on top of this
+     * stream. Writes to the adapter grow the buffer just like the methods of this stream, so both can be mixed freely.
+     *
+     * @return the adapter of this stream, which is only created once
+     */
+    @NotNull
+    public ByteBufferDataOutput asDataOutput() {
+        if (this.dataOutput == null)
+            this.dataOutput = new ByteBufferDataOutput(this);
+        return this.dataOutput;
+    }
+
+    /**
+     * Sets the table which is used by {@link #writeInternedString(String)}. The message processor sets the table of
+     * its connection before writing a message.
+     *
+     * @param stringTable the table, or {@code null} to write all Strings in full
      */
-    public void writeString(String s) {
-        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
-        ensureFits(bytes.length + 4);
-        this.buf.putInt(bytes.length);
-        this.buf.put(bytes);
+    public void setStringTable(@Nullable StringTable stringTable) {
+        this.stringTable = stringTable;
     }
 
     /**
@@ -8,6 +8,13 @@ import java.nio.channels.SocketChannel;
 
 public class ByteBufferUtils {
 
+    /**
+     * The amount of elements from which on primitive arrays are copied using a typed buffer view. Creating the view
+     * costs more than copying shorter arrays element by element, see {@code BulkCopyThresholdBenchmark}. Int arrays
+     * break even at around 128 elements, arrays of 8 byte elements only at 1024 or more.
+     */
+    static final int BULK_COPY_THRESHOLD = 256;
+
     private ByteBufferUtils() {
     }
 
@@ -89,10 +96,8 @@ public class ByteBufferUtils {
         if (offset > buffer.limit())
             throw new IllegalArgumentException("offset cannot be greater than the buffer's limit");
 
-        byte[] tmp = new byte[buffer.limit() - offset];
         buffer.position(offset);
-        buffer.get(tmp);
-        buffer.clear();
-        buffer.put(tmp);
+        //Copies in-place without any temporary array
+        buffer.compact();
     }
 }
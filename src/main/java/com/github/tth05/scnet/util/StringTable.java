@@ -0,0 +1,146 @@
+package com.github.tth05.scnet.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One direction of the string table of a connection, used by {@link ByteBufferOutputStream#writeInternedString(String)}
+ * and {@link ByteBufferInputStream#readInternedString()}. Every String which is interned gets the next id, starting at
+ * {@code 1}. Both sides assign the ids in the same order, because the message processor sends the Strings which were
+ * added while writing a message before the message itself.
+ * <br>
+ * The sending side adds Strings as pending, which become visible to the peer once they were
+ * {@link #commit() committed}. The table is bounded: once {@link #MAX_SIZE} Strings were added, or if a String is longer
+ * than {@link #MAX_STRING_LENGTH}, the String is written in full instead.
+ */
+public final class StringTable {
+
+    /**
+     * The maximum amount of Strings in a table
+     */
+    public static final int MAX_SIZE = 4096;
+    /**
+     * The maximum length in chars of an interned String
+     */
+    public static final int MAX_STRING_LENGTH = 256;
+
+    /**
+     * All Strings of this table, the String with id {@code n} is stored at index {@code n - 1}
+     */
+    @NotNull
+    private String[] strings = new String[16];
+    private int size;
+    /**
+     * The amount of Strings which were committed, all Strings after it are pending
+     */
+    private int committedSize;
+    /**
+     * The ids of all Strings, only used by the sending side
+     */
+    @Nullable
+    private Map<String, Integer> ids;
+
+    /**
+     * Returns the id of the given String, adding it as pending if it's not part of this table yet.
+     *
+     * @return the id of the String, or {@code 0} if the String can't be interned
+     */
+    public int intern(@NotNull String s) {
+        if (this.ids == null)
+            this.ids = new HashMap<>();
+
+        Integer id = this.ids.get(s);
+        if (id != null)
+            return id;
+        if (this.size == MAX_SIZE || s.length() > MAX_STRING_LENGTH)
+            return 0;
+
+        add(s);
+        this.ids.put(s, this.size);
+        return this.size;
+    }
+
+    /**
+     * @return the String with the given id, or {@code null} if there is none
+     */
+    @Nullable
+    public String get(int id) {
+        return id > 0 && id <= this.size ? this.strings[id - 1] : null;
+    }
+
+    /**
+     * Adds a String which was received from the peer, which is committed immediately.
+     *
+     * @return {@code false} if the table is full or the String is too long; {@code true} otherwise
+     */
+    public boolean define(@NotNull String s) {
+        if (this.size == MAX_SIZE || s.length() > MAX_STRING_LENGTH)
+            return false;
+
+        add(s);
+        this.committedSize = this.size;
+        return true;
+    }
+
+    /**
+     * @return {@code true} if Strings were interned since the last {@link #commit()}; {@code false} otherwise
+     */
+    public boolean hasPendingStrings() {
+        return this.size > this.committedSize;
+    }
+
+    /**
+     * Writes all pending Strings using {@link ByteBufferOutputStream#writeString(String)}.
+     */
+    public void writePendingStrings(@NotNull ByteBufferOutputStream stream) {
+        for (int i = this.committedSize; i < this.size; i++)
+            stream.writeString(this.strings[i]);
+    }
+
+    /**
+     * Marks all pending Strings as sent.
+     */
+    public void commit() {
+        this.committedSize = this.size;
+    }
+
+    /**
+     * Removes all pending Strings, because the message which interned them was not sent.
+     */
+    public void rollback() {
+        for (int i = this.committedSize; i < this.size; i++) {
+            if (this.ids != null)
+                this.ids.remove(this.strings[i]);
+            this.strings[i] = null;
+        }
+        this.size = this.committedSize;
+    }
+
+    /**
+     * Removes all Strings after the connection was reset.
+     */
+    public void reset() {
+        Arrays.fill(this.strings, 0, this.size, null);
+        this.size = 0;
+        this.committedSize = 0;
+        if (this.ids != null)
+            this.ids.clear();
+    }
+
+    /**
+     * @return the amount of Strings in this table, including pending ones
+     */
+    public int size() {
+        return this.size;
+    }
+
+    private void add(@NotNull String s) {
+        if (this.size == this.strings.length)
+            this.strings = Arrays.copyOf(this.strings, Math.min(this.size * 2, MAX_SIZE));
+        this.strings[this.size++] = s;
+    }
+}
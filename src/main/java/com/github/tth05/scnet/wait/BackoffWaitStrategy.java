@@ -0,0 +1,58 @@
+package com.github.tth05.scnet.wait;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Polls the selector using {@link Selector#selectNow()} and progressively backs off when the loop is idle: First it
+ * spins, then it yields and finally it parks the thread. The park time doubles with every idle iteration until it
+ * reaches a maximum. Any work resets the loop to spinning.
+ */
+public class BackoffWaitStrategy implements IWaitStrategy {
+
+    private final int spinTries;
+    private final int yieldTries;
+    private final long minParkNanos;
+    private final long maxParkNanos;
+
+    public BackoffWaitStrategy() {
+        this(100, 10, TimeUnit.MICROSECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * @param spinTries    the amount of idle iterations in which the loop spins
+     * @param yieldTries   the amount of idle iterations after {@code spinTries} in which the loop yields
+     * @param minParkNanos the initial park time
+     * @param maxParkNanos the maximum park time
+     */
+    public BackoffWaitStrategy(int spinTries, int yieldTries, long minParkNanos, long maxParkNanos) {
+        if (minParkNanos < 1 || maxParkNanos < minParkNanos)
+            throw new IllegalArgumentException("Invalid park times");
+
+        this.spinTries = spinTries;
+        this.yieldTries = yieldTries;
+        this.minParkNanos = minParkNanos;
+        this.maxParkNanos = maxParkNanos;
+    }
+
+    @Override
+    public int select(@NotNull Selector selector, int idleCount) throws IOException {
+        int selected = selector.selectNow();
+        if (selected > 0 || idleCount < this.spinTries)
+            return selected;
+
+        if (idleCount < this.spinTries + this.yieldTries) {
+            Thread.yield();
+        } else {
+            int parkRound = Math.min(idleCount - this.spinTries - this.yieldTries, 62);
+            long parkNanos = this.minParkNanos << parkRound;
+            LockSupport.parkNanos(parkNanos > 0 ? Math.min(parkNanos, this.maxParkNanos) : this.maxParkNanos);
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.tth05.scnet.wait;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+
+/**
+ * Blocks in {@link Selector#select(long)} until keys are ready or the loop is woken up using
+ * {@link Selector#wakeup()}. Uses no CPU while idle, but every wakeup costs a system call and a context switch.
+ */
+public class BlockingWaitStrategy implements IWaitStrategy {
+
+    /**
+     * The maximum time to block, {@code 0} blocks indefinitely
+     */
+    private final long timeout;
+
+    public BlockingWaitStrategy() {
+        this(0);
+    }
+
+    /**
+     * @param timeout the maximum time in milliseconds to block, {@code 0} to block until a key is ready or the loop is
+     *                woken up
+     */
+    public BlockingWaitStrategy(long timeout) {
+        if (timeout < 0)
+            throw new IllegalArgumentException("Negative timeout: " + timeout);
+
+        this.timeout = timeout;
+    }
+
+    @Override
+    public int select(@NotNull Selector selector, int idleCount) throws IOException {
+        return selector.select(this.timeout);
+    }
+
+    @Override
+    public void signal(@NotNull Selector selector) {
+        selector.wakeup();
+    }
+}
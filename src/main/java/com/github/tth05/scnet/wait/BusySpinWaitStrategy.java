@@ -0,0 +1,18 @@
+package com.github.tth05.scnet.wait;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+
+/**
+ * Never waits and polls the selector using {@link Selector#selectNow()}. This gives the lowest possible latency, but
+ * fully occupies one core per loop. Should only be used if the loop runs on a dedicated core.
+ */
+public class BusySpinWaitStrategy implements IWaitStrategy {
+
+    @Override
+    public int select(@NotNull Selector selector, int idleCount) throws IOException {
+        return selector.selectNow();
+    }
+}
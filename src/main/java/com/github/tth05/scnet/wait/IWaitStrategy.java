@@ -0,0 +1,38 @@
+package com.github.tth05.scnet.wait;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+
+/**
+ * A wait strategy decides how an I/O loop waits for its {@link Selector} to become ready. This is a trade-off between
+ * latency and CPU usage: spinning strategies react immediately but occupy a core, while blocking strategies free the
+ * core but have to be woken up.
+ * <br>
+ * Implementations should be stateless, so a single instance can be shared between multiple loops.
+ */
+public interface IWaitStrategy {
+
+    /**
+     * Waits until keys of the given {@code selector} are ready, or until this strategy decides to return control to
+     * the loop.
+     *
+     * @param selector  the selector to select from
+     * @param idleCount the amount of consecutive previous calls in which the loop did not do any work. Can be used to
+     *                  back off gradually.
+     * @return the amount of selected keys, like {@link Selector#select()}
+     * @throws IOException if selecting fails
+     */
+    int select(@NotNull Selector selector, int idleCount) throws IOException;
+
+    /**
+     * Notifies a loop which might be waiting in {@link #select(Selector, int)} that new work is available, for
+     * example because a message was enqueued. Does nothing by default, because non-blocking strategies will notice
+     * the work on their own shortly.
+     *
+     * @param selector the selector which is used by the loop
+     */
+    default void signal(@NotNull Selector selector) {
+    }
+}
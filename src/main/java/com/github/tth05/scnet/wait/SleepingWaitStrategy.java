@@ -0,0 +1,52 @@
+package com.github.tth05.scnet.wait;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+
+/**
+ * Sleeps a fixed amount of time before every {@link Selector#selectNow()}. This caps the CPU usage of the loop, but
+ * adds up to {@code delay} milliseconds of latency to every read and write.
+ */
+public class SleepingWaitStrategy implements IWaitStrategy {
+
+    /**
+     * The delay in milliseconds
+     */
+    private final int delay;
+
+    public SleepingWaitStrategy() {
+        this(5);
+    }
+
+    /**
+     * @param delay the time in milliseconds to sleep before every select
+     */
+    public SleepingWaitStrategy(int delay) {
+        if (delay < 0)
+            throw new IllegalArgumentException("Negative delay: " + delay);
+
+        this.delay = delay;
+    }
+
+    @Override
+    public int select(@NotNull Selector selector, int idleCount) throws IOException {
+        if (this.delay > 0) {
+            try {
+                Thread.sleep(this.delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return selector.selectNow();
+    }
+
+    /**
+     * @return the delay in milliseconds
+     */
+    public int getDelay() {
+        return this.delay;
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.tth05.scnet.wait;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+
+/**
+ * Polls the selector using {@link Selector#selectNow()} and calls {@link Thread#yield()} once the loop was idle for a
+ * given amount of iterations. Latency stays low, while other threads still get a chance to run on the same core.
+ */
+public class YieldingWaitStrategy implements IWaitStrategy {
+
+    /**
+     * The amount of idle iterations before yielding
+     */
+    private final int spinTries;
+
+    public YieldingWaitStrategy() {
+        this(100);
+    }
+
+    /**
+     * @param spinTries the amount of idle iterations in which the loop spins before it starts to yield
+     */
+    public YieldingWaitStrategy(int spinTries) {
+        this.spinTries = spinTries;
+    }
+
+    @Override
+    public int select(@NotNull Selector selector, int idleCount) throws IOException {
+        int selected = selector.selectNow();
+        if (selected < 1 && idleCount >= this.spinTries)
+            Thread.yield();
+
+        return selected;
+    }
+}
@@ -1,9 +1,19 @@
 package com.github.tth05.scnet;
 
+import com.github.tth05.scnet.message.IMessageBus;
+import com.github.tth05.scnet.message.impl.DefaultMessageBus;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
 import org.junit.platform.commons.util.ReflectionUtils;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.function.BiConsumer;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
@@ -23,6 +33,22 @@ public abstract class AbstractSCNetTest {
         }
     }
 
+    /**
+     * Connects two plain socket channels, so a test can inspect the raw frames which a processor writes to the
+     * {@code sender}.
+     */
+    public void withRawPeer(RawPeerConsumer consumer) throws IOException {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open();
+             SocketChannel sender = SocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            sender.connect(serverChannel.getLocalAddress());
+
+            try (SocketChannel receiver = serverChannel.accept()) {
+                consumer.accept(sender, receiver);
+            }
+        }
+    }
+
     public ServerClient getClientFromServer(Server s) {
         return assertDoesNotThrow(() -> {
             Field field = ReflectionUtils.findFields(Server.class, f -> f.getName().equals("client"), ReflectionUtils.HierarchyTraversalMode.TOP_DOWN).get(0);
@@ -30,4 +56,56 @@ public abstract class AbstractSCNetTest {
             return (ServerClient) field.get(s);
         });
     }
+
+    /**
+     * Reads the next frame from the given blocking {@code channel}.
+     *
+     * @return the header and payload of the frame in {@code [0;limit[}
+     */
+    public static ByteBuffer readFrame(ReadableByteChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(6);
+        readFully(channel, header);
+        //Ignore the flag of compressed frames
+        ByteBuffer frame = ByteBuffer.allocate(6 + (header.getInt(2) & Integer.MAX_VALUE));
+        frame.put(header.flip());
+        readFully(channel, frame);
+        return frame.flip();
+    }
+
+    /**
+     * Lets the given {@code processor} read the given frames, like the event loop does once they arrived.
+     *
+     * @param frames the frames in {@code [position;limit[}, which have to fit into a pipe
+     * @return the result of {@link DefaultMessageProcessor#read(ReadableByteChannel, IMessageBus)}
+     */
+    public static boolean receiveFrames(DefaultMessageProcessor processor, ByteBuffer frames) throws IOException {
+        return receiveFrames(processor, frames, new DefaultMessageBus());
+    }
+
+    /**
+     * Works like {@link #receiveFrames(DefaultMessageProcessor, ByteBuffer)}, but posts the messages to the given
+     * {@code messageBus}.
+     */
+    public static boolean receiveFrames(DefaultMessageProcessor processor, ByteBuffer frames, IMessageBus messageBus) throws IOException {
+        Pipe pipe = Pipe.open();
+        try (Pipe.SinkChannel sink = pipe.sink(); Pipe.SourceChannel source = pipe.source()) {
+            while (frames.hasRemaining())
+                sink.write(frames);
+            source.configureBlocking(false);
+            return processor.read(source, messageBus);
+        }
+    }
+
+    public static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0)
+                throw new IOException("End of stream");
+        }
+    }
+
+    @FunctionalInterface
+    public interface RawPeerConsumer {
+
+        void accept(SocketChannel sender, SocketChannel receiver) throws IOException;
+    }
 }
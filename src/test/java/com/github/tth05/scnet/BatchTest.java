@@ -0,0 +1,161 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.Batch;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class BatchTest extends AbstractSCNetTest {
+
+    @Test
+    public void testColumnsAndCursor() {
+        List<Entity> entities = createEntities(100);
+        Batch<Entity> batch = Batch.of(Entity.class, entities);
+
+        ByteBufferOutputStream outputStream = new ByteBufferOutputStream();
+        batch.write(outputStream);
+        ByteBufferInputStream inputStream = new ByteBufferInputStream(outputStream.getBuffer().flip());
+        Batch<Entity> received = Batch.read(Entity.class, inputStream);
+        assertEquals(0, inputStream.remaining());
+
+        assertEquals(100, received.size());
+        for (int i = 0; i < entities.size(); i++)
+            assertEquals(entities.get(i), received.get(i));
+        assertThrows(IndexOutOfBoundsException.class, () -> received.get(100));
+
+        int id = received.getComponentIndex("id");
+        int x = received.getComponentIndex("x");
+        int type = received.getComponentIndex("type");
+        assertArrayEquals(entities.stream().mapToInt(Entity::id).toArray(), (int[]) received.getColumn(id));
+        assertThrows(IllegalArgumentException.class, () -> received.getComponentIndex("missing"));
+
+        Batch<Entity>.Cursor cursor = received.cursor();
+        int count = 0;
+        while (cursor.next()) {
+            Entity entity = entities.get(cursor.getIndex());
+            assertEquals(entity.id(), cursor.getInt(id));
+            assertEquals(entity.x(), cursor.getDouble(x));
+            assertSame(entity.type(), cursor.getObject(type));
+            assertThrows(ClassCastException.class, () -> cursor.getLong(id));
+            count++;
+        }
+        assertEquals(100, count);
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void testPerRecordOverhead() throws IOException {
+        withRawPeer((sender, receiver) -> {
+            DefaultMessageProcessor processor = new DefaultMessageProcessor();
+            processor.registerBatch((short) 1, IntRecord.class);
+            List<IntRecord> records = new ArrayList<>();
+            for (int i = 0; i < 10000; i++)
+                records.add(new IntRecord(i));
+            processor.enqueueMessage(Batch.of(IntRecord.class, records));
+            assertTrue(processor.write(sender));
+
+            ByteBuffer header = ByteBuffer.allocate(6);
+            readFully(receiver, header);
+            //A single frame with the count followed by the raw ints
+            assertEquals(1, header.getShort(0));
+            assertEquals(4 + 10000 * 4, header.getInt(2));
+        });
+    }
+
+    @Test
+    public void testBatchAndRecordListeners() {
+        withClientAndServer((s, c) -> {
+            c.getMessageProcessor().registerBatch((short) 1, Entity.class);
+            s.getMessageProcessor().registerBatch((short) 1, Entity.class);
+
+            List<Batch<Entity>> batches = Collections.synchronizedList(new ArrayList<>());
+            List<Entity> records = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch latch = new CountDownLatch(2 + 2 * 50);
+            Consumer<Batch<Entity>> batchListener = (b) -> {
+                batches.add(b);
+                latch.countDown();
+            };
+            s.getMessageBus().listenBatches(Entity.class, batchListener);
+            s.getMessageBus().listenAlways(Entity.class, (e) -> {
+                records.add(e);
+                latch.countDown();
+            });
+
+            List<Entity> entities = createEntities(100);
+            c.getMessageProcessor().enqueueMessage(Batch.of(Entity.class, entities.subList(0, 50)));
+            c.getMessageProcessor().enqueueMessage(Batch.of(Entity.class, entities.subList(50, 100)));
+            assertTrue(assertDoesNotThrow(() -> latch.await(5, TimeUnit.SECONDS)));
+
+            assertEquals(2, batches.size());
+            assertEquals(50, batches.get(1).size());
+            assertEquals(entities.get(50), batches.get(1).get(0));
+            assertEquals(entities, records);
+
+            s.getMessageBus().unregisterBatches(Entity.class, batchListener);
+            assertFalse(s.getMessageBus().hasBatchListeners(Entity.class));
+        });
+    }
+
+    @Test
+    public void testUnsupportedRecords() {
+        DefaultMessageProcessor processor = new DefaultMessageProcessor();
+        assertThrows(IllegalArgumentException.class, () -> processor.registerBatch((short) 1, ArrayRecord.class));
+        processor.registerBatch((short) 1, IntRecord.class);
+        assertThrows(IllegalArgumentException.class, () -> processor.registerBatch((short) 2, IntRecord.class));
+        assertThrows(IllegalArgumentException.class, () -> processor.registerRecord((short) 1, Entity.class));
+    }
+
+    @Test
+    public void testSizeOfEmptyRecordsIsBounded() {
+        //Nothing but the size
+        ByteBuffer payload = ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE);
+        assertThrows(BufferUnderflowException.class, () -> Batch.read(EmptyRecord.class, new ByteBufferInputStream(payload.duplicate())));
+        payload.putInt(0, Batch.MAX_EMPTY_RECORDS);
+        assertEquals(Batch.MAX_EMPTY_RECORDS, Batch.read(EmptyRecord.class, new ByteBufferInputStream(payload.duplicate())).size());
+
+        List<EmptyRecord> records = Collections.nCopies(Batch.MAX_EMPTY_RECORDS + 1, new EmptyRecord());
+        assertThrows(IllegalArgumentException.class, () -> Batch.of(EmptyRecord.class, records));
+    }
+
+    private static List<Entity> createEntities(int count) {
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entities.add(new Entity(i, i * 1.5, -i, i % 3 == 0 ? "minecraft:zombie" : "minecraft:c\u00f6w",
+                    Type.values()[i % Type.values().length], (short) i, (byte) i, (char) ('a' + i % 26), i * 0.25f,
+                    (long) i << 40, i % 2 == 0));
+        }
+        return entities;
+    }
+
+    public enum Type {
+        HOSTILE, PASSIVE, NEUTRAL
+    }
+
+    public record Entity(int id, double x, double y, String name, Type type, short health, byte flags, char tag,
+                         float yaw, long uuid, boolean alive) {
+    }
+
+    public record IntRecord(int i) {
+    }
+
+    public record ArrayRecord(int[] values) {
+    }
+
+    public record EmptyRecord() {
+    }
+}
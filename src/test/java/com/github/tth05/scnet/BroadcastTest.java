@@ -0,0 +1,162 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.AbstractMessage;
+import com.github.tth05.scnet.message.EncodedMessage;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import com.github.tth05.scnet.message.impl.MessageStream;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class BroadcastTest extends AbstractSCNetTest {
+
+    private static final int SUBSCRIBERS = 3;
+
+    @Test
+    public void testBroadcastEncodesOnce() {
+        List<Server> servers = new ArrayList<>();
+        List<Client> clients = new ArrayList<>();
+
+        try (EventLoopGroup group = new EventLoopGroup(2)) {
+            CountDownLatch latch = new CountDownLatch(SUBSCRIBERS);
+            AtomicInteger unsubscribedReceived = new AtomicInteger();
+            for (int i = 0; i < SUBSCRIBERS + 2; i++) {
+                int port = 6979 + i;
+                Server server = new Server(group);
+                servers.add(server);
+                //The last server does not send this message type at all
+                if (i != SUBSCRIBERS + 1)
+                    server.getMessageProcessor().registerMessage((short) 1, CountingMessage.class);
+                server.bind(new InetSocketAddress(port));
+
+                //The second to last server has no client
+                if (i == SUBSCRIBERS)
+                    continue;
+
+                Client client = new Client(group);
+                clients.add(client);
+                client.getMessageProcessor().registerMessage((short) 1, CountingMessage.class);
+                boolean subscribed = i < SUBSCRIBERS;
+                client.getMessageBus().listenAlways(CountingMessage.class, (m) -> {
+                    assertEquals("Update", m.getValue());
+                    if (subscribed)
+                        latch.countDown();
+                    else
+                        unsubscribedReceived.incrementAndGet();
+                });
+                assertTrue(client.connect(new InetSocketAddress(port)));
+            }
+
+            for (Server server : servers) {
+                while (server != servers.get(SUBSCRIBERS) && !server.isClientConnected())
+                    assertDoesNotThrow(() -> Thread.sleep(10));
+            }
+
+            CountingMessage message = new CountingMessage("Update");
+            assertEquals(SUBSCRIBERS, Server.broadcast(message, servers));
+
+            assertTrue(assertDoesNotThrow(() -> latch.await(5, TimeUnit.SECONDS)));
+            assertEquals(1, message.writeCount.get());
+            assertEquals(0, unsubscribedReceived.get());
+        } finally {
+            clients.forEach(Client::close);
+            servers.forEach(Server::close);
+        }
+    }
+
+    @Test
+    public void testBroadcastWithoutReceiversDoesNotEncode() {
+        try (Server server = new Server()) {
+            server.getMessageProcessor().registerMessage((short) 1, CountingMessage.class);
+
+            CountingMessage message = new CountingMessage("Update");
+            assertEquals(0, Server.broadcast(message, Collections.singletonList(server)));
+            assertEquals(0, message.writeCount.get());
+        }
+    }
+
+    @Test
+    public void testEncodedMessageReferenceCount() {
+        CountingMessage message = new CountingMessage("Update");
+        EncodedMessage encodedMessage = EncodedMessage.encode(message);
+        assertEquals(CountingMessage.class, encodedMessage.getMessageClass());
+        assertTrue(encodedMessage.getPayload().isReadOnly());
+
+        //Every view starts at the beginning of the payload
+        ByteBufferInputStream view = new ByteBufferInputStream(encodedMessage.getPayload());
+        assertEquals("Update", view.readString());
+        assertEquals(0, encodedMessage.getPayload().position());
+        assertEquals(encodedMessage.getSize(), encodedMessage.getPayload().remaining());
+
+        encodedMessage.retain();
+        encodedMessage.release();
+        assertEquals(1, encodedMessage.getReferenceCount());
+        encodedMessage.release();
+        assertEquals(0, encodedMessage.getReferenceCount());
+        assertThrows(IllegalStateException.class, encodedMessage::getPayload);
+        assertThrows(IllegalStateException.class, encodedMessage::retain);
+        assertThrows(IllegalStateException.class, encodedMessage::release);
+        assertThrows(IllegalArgumentException.class, () -> EncodedMessage.encode(encodedMessage));
+    }
+
+    @Test
+    public void testResetReleasesQueuedEncodedMessages() {
+        DefaultMessageProcessor processor = new DefaultMessageProcessor();
+        processor.registerMessage((short) 1, CountingMessage.class);
+        MessageStream stream = processor.openStream((short) 1, 1024, 256);
+        EncodedMessage encodedMessage = EncodedMessage.encode(new CountingMessage("Update"));
+
+        encodedMessage.retain();
+        processor.enqueueMessage(encodedMessage);
+        encodedMessage.retain();
+        stream.enqueueMessage(encodedMessage);
+        assertEquals(3, encodedMessage.getReferenceCount());
+
+        //Dropped messages don't keep their payload alive
+        processor.reset();
+        assertEquals(1, encodedMessage.getReferenceCount());
+        assertFalse(processor.hasPendingWrites());
+        encodedMessage.release();
+    }
+
+    public static final class CountingMessage extends AbstractMessage {
+
+        private final AtomicInteger writeCount = new AtomicInteger();
+        private String value;
+
+        public CountingMessage() {
+        }
+
+        public CountingMessage(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return this.value;
+        }
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            this.value = messageStream.readString();
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            this.writeCount.incrementAndGet();
+            messageStream.writeString(this.value);
+        }
+    }
+}
@@ -81,6 +81,25 @@ public class ByteBufferInputStreamTest {
         assertThrows(BufferUnderflowException.class, stream::readByte);
     }
 
+    @Test
+    public void testReadPrimitiveArrays() {
+        buffer.putInt(1).putInt(2).putInt(3);
+        buffer.putShort(Short.MIN_VALUE);
+        buffer.putLong(Long.MAX_VALUE);
+        buffer.putFloat(1.5f);
+        buffer.putDouble(-2.5);
+        buffer.flip();
+
+        int[] ints = new int[5];
+        stream.readIntArray(ints, 1, 3);
+        assertArrayEquals(new int[]{0, 1, 2, 3, 0}, ints);
+        assertArrayEquals(new short[]{Short.MIN_VALUE}, stream.readShortArray(1));
+        assertArrayEquals(new long[]{Long.MAX_VALUE}, stream.readLongArray(1));
+        assertArrayEquals(new float[]{1.5f}, stream.readFloatArray(1));
+        assertArrayEquals(new double[]{-2.5}, stream.readDoubleArray(1));
+        assertThrows(BufferUnderflowException.class, () -> stream.readIntArray(1));
+    }
+
     @Test
     public void testReadString() {
         buffer.putInt(14);
@@ -90,4 +109,45 @@ public class ByteBufferInputStreamTest {
         assertEquals("testReadString", stream.readString());
         assertThrows(BufferUnderflowException.class, buffer::get);
     }
+
+    @Test
+    public void testReadUnicodeString() {
+        String s = "ascii \u00e4\u00df \u20ac \ud83d\ude00 end";
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(100);
+        for (ByteBuffer b : new ByteBuffer[]{buffer, direct}) {
+            b.putInt(bytes.length).put(bytes);
+            b.putInt(bytes.length).put(bytes);
+            b.flip();
+
+            ByteBufferInputStream in = new ByteBufferInputStream(b);
+            assertEquals(s, in.readString());
+            StringBuilder builder = new StringBuilder("prefix");
+            assertSame(builder, in.readString(builder));
+            assertEquals("prefix" + s, builder.toString());
+            assertThrows(BufferUnderflowException.class, in::readByte);
+        }
+    }
+
+    @Test
+    public void testReadMalformedStringIntoBuilder() {
+        //Truncated 2 byte sequence, overlong encoding of '/', encoded surrogate and a lone continuation byte
+        byte[] bytes = {'a', (byte) 0xC3, 'b', (byte) 0xC0, (byte) 0xAF, (byte) 0xED, (byte) 0xA0, (byte) 0x80, (byte) 0x80};
+        buffer.putInt(bytes.length).put(bytes);
+        buffer.putInt(1).put((byte) 0xE2);
+        buffer.flip();
+
+        assertEquals("a\ufffdb\ufffd\ufffd\ufffd", stream.readString(new StringBuilder()).toString());
+        assertEquals("\ufffd", stream.readString(new StringBuilder()).toString());
+        assertEquals(0, stream.remaining());
+    }
+
+    @Test
+    public void testReadStringLongerThanBuffer() {
+        buffer.putInt(10);
+        buffer.put((byte) 1);
+        buffer.flip();
+
+        assertThrows(BufferUnderflowException.class, stream::readString);
+    }
 }
@@ -4,6 +4,7 @@ import com.github.tth05.scnet.util.ByteBufferOutputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
@@ -81,6 +82,23 @@ public class ByteBufferOutputStreamTest {
         assertThrows(BufferUnderflowException.class, buffer::get);
     }
 
+    @Test
+    public void testWriteByteBuffer() {
+        ByteBuffer src = ByteBuffer.allocateDirect(20);
+        for (int i = 0; i < 20; i++)
+            src.put((byte) i);
+        src.position(5);
+
+        stream.writeByteBuffer(src);
+        assertFalse(src.hasRemaining());
+
+        ByteBuffer buffer = stream.getBuffer();
+        buffer.flip();
+        for (int i = 5; i < 20; i++)
+            assertEquals(i, buffer.get());
+        assertThrows(BufferUnderflowException.class, buffer::get);
+    }
+
     @Test
     public void testWriteBoolean() {
         stream.writeBoolean(true);
@@ -123,6 +141,28 @@ public class ByteBufferOutputStreamTest {
         assertThrows(BufferUnderflowException.class, buffer::get);
     }
 
+    @Test
+    public void testWritePrimitiveArrays() {
+        stream.writeIntArray(new int[]{1, 2, 3, 4, 5}, 1, 3);
+        stream.writeShortArray(new short[]{Short.MIN_VALUE});
+        stream.writeLongArray(new long[]{Long.MAX_VALUE, -1});
+        stream.writeFloatArray(new float[]{1.5f, Float.NaN});
+        stream.writeDoubleArray(new double[]{-2.5});
+
+        ByteBuffer buffer = stream.getBuffer();
+        buffer.flip();
+        assertEquals(2, buffer.getInt());
+        assertEquals(3, buffer.getInt());
+        assertEquals(4, buffer.getInt());
+        assertEquals(Short.MIN_VALUE, buffer.getShort());
+        assertEquals(Long.MAX_VALUE, buffer.getLong());
+        assertEquals(-1, buffer.getLong());
+        assertEquals(Float.floatToRawIntBits(1.5f), buffer.getInt());
+        assertEquals(Float.floatToRawIntBits(Float.NaN), buffer.getInt());
+        assertEquals(Double.doubleToRawLongBits(-2.5), buffer.getLong());
+        assertThrows(BufferUnderflowException.class, buffer::get);
+    }
+
     @Test
     public void testWriteString() {
         stream.writeString("testWriteString");
@@ -135,4 +175,48 @@ public class ByteBufferOutputStreamTest {
         assertEquals("testWriteString", new String(dst, StandardCharsets.UTF_8));
         assertThrows(BufferUnderflowException.class, buffer::get);
     }
+
+    @Test
+    public void testWriteUnicodeString() {
+        //Starts with ASCII, so the encoder has to switch paths and grow the buffer in the middle of the String
+        String s = "ascii \u00e4\u00df \u20ac \ud83d\ude00 \ud800 end";
+        stream.writeString(s);
+        stream.writeString(new StringBuilder("\u00e4b"));
+
+        ByteBuffer buffer = stream.getBuffer();
+        buffer.flip();
+        byte[] expected = s.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length, buffer.getInt());
+        byte[] dst = new byte[expected.length];
+        buffer.get(dst);
+        assertArrayEquals(expected, dst);
+        assertEquals(3, buffer.getInt());
+        assertEquals((byte) 0xC3, buffer.get());
+        assertEquals((byte) 0xA4, buffer.get());
+        assertEquals('b', buffer.get());
+        assertThrows(BufferUnderflowException.class, buffer::get);
+    }
+
+    @Test
+    public void testWriteStringDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ReadAllocationTest.assumeAllocationMeasurable(threadBean);
+
+        stream = new ByteBufferOutputStream(1024);
+        StringBuilder builder = new StringBuilder("Entity \u00e4 ");
+        for (int i = 0; i < 20000; i++) {
+            stream.getBuffer().clear();
+            stream.writeString("Entity");
+            stream.writeString(builder);
+        }
+
+        long allocatedBefore = threadBean.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 20000; i++) {
+            stream.getBuffer().clear();
+            stream.writeString("Entity");
+            stream.writeString(builder);
+        }
+        long allocated = threadBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        assertTrue(allocated < 20000, () -> "Allocated " + allocated + " bytes");
+    }
 }
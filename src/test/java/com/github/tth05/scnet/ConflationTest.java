@@ -0,0 +1,122 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.AbstractConflatingMessage;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class ConflationTest extends AbstractSCNetTest {
+
+    @Test
+    public void testQueuedMessagesAreReplaced() throws IOException {
+        withRawPeer((sender, receiver) -> {
+            DefaultMessageProcessor processor = new DefaultMessageProcessor();
+            processor.registerMessage((short) 1, SendMessageTest.IntMessage.class);
+            processor.registerMessage((short) 2, PositionMessage.class);
+
+            processor.enqueueMessage(new PositionMessage(1, 0));
+            processor.enqueueMessage(new SendMessageTest.IntMessage(5));
+            for (int i = 1; i < 100; i++)
+                processor.enqueueMessage(new PositionMessage(i % 2, i));
+            assertEquals(98, processor.getConflatedMessageCount());
+            assertTrue(processor.write(sender));
+
+            //The newest position of entity 1 keeps the place of the first one
+            assertEquals(Arrays.asList("2:1=99", "1", "2:0=98"), readFrames(receiver, 3));
+
+            //Written messages are not replaced anymore
+            processor.enqueueMessage(new PositionMessage(1, 100));
+            assertTrue(processor.write(sender));
+            assertEquals(Collections.singletonList("2:1=100"), readFrames(receiver, 1));
+            assertEquals(98, processor.getConflatedMessageCount());
+        });
+    }
+
+    @Test
+    public void testPeerReceivesLatestValues() {
+        int entities = 16;
+        int updates = 20000;
+        withClientAndServer((s, c) -> {
+            c.getMessageProcessor().registerMessage((short) 2, PositionMessage.class);
+            s.getMessageProcessor().registerMessage((short) 2, PositionMessage.class);
+
+            Map<Integer, Integer> positions = new ConcurrentHashMap<>();
+            CountDownLatch latch = new CountDownLatch(entities);
+            s.getMessageBus().listenAlways(PositionMessage.class, (m) -> {
+                Integer previous = positions.put(m.entity, m.position);
+                assertTrue(previous == null || previous < m.position);
+                if (m.position >= updates - entities)
+                    latch.countDown();
+            });
+
+            for (int i = 0; i < updates; i++)
+                c.getMessageProcessor().enqueueMessage(new PositionMessage(i % entities, i));
+
+            assertTrue(assertDoesNotThrow(() -> latch.await(8, TimeUnit.SECONDS)));
+            for (int i = 0; i < entities; i++)
+                assertEquals(updates - entities + i, positions.get(i));
+        });
+    }
+
+    private static List<String> readFrames(SocketChannel channel, int count) throws IOException {
+        List<String> frames = new ArrayList<>();
+        while (frames.size() < count) {
+            ByteBuffer frame = readFrame(channel);
+            if (frame.getShort(0) == 2)
+                frames.add("2:" + frame.getInt(6) + "=" + frame.getInt(10));
+            else
+                frames.add(Short.toString(frame.getShort(0)));
+        }
+        return frames;
+    }
+
+    public static final class PositionMessage extends AbstractConflatingMessage {
+
+        private int entity;
+        private int position;
+
+        public PositionMessage() {
+        }
+
+        public PositionMessage(int entity, int position) {
+            this.entity = entity;
+            this.position = position;
+        }
+
+        @NotNull
+        @Override
+        public Object getConflationKey() {
+            return this.entity;
+        }
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            this.entity = messageStream.readInt();
+            this.position = messageStream.readInt();
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeInt(this.entity);
+            messageStream.writeInt(this.position);
+        }
+    }
+}
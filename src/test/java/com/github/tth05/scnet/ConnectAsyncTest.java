@@ -0,0 +1,121 @@
+package com.github.tth05.scnet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class ConnectAsyncTest extends AbstractSCNetTest {
+
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("localhost", 6975);
+
+    @Test
+    public void testConnectAsync() {
+        try (Server s = new Server(); Client c = new Client()) {
+            s.bind(ADDRESS);
+            s.getMessageProcessor().registerMessage((short) 1, SendMessageTest.IntMessage.class);
+            c.getMessageProcessor().registerMessage((short) 1, SendMessageTest.IntMessage.class);
+
+            CountDownLatch latch = new CountDownLatch(1);
+            s.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> latch.countDown());
+
+            assertDoesNotThrow(() -> c.connectAsync(ADDRESS).get(2, TimeUnit.SECONDS));
+            assertTrue(c.isConnected());
+
+            c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(5));
+            assertTrue(assertDoesNotThrow(() -> latch.await(2, TimeUnit.SECONDS)));
+        }
+    }
+
+    @Test
+    public void testRetryUntilServerIsBound() {
+        try (Server s = new Server(); Client c = new Client()) {
+            CompletableFuture<Void> future = c.connectAsync(ADDRESS, new ConnectOptions()
+                    .setMaxAttempts(Integer.MAX_VALUE)
+                    .setInitialBackoff(10)
+                    .setMaxBackoff(20));
+
+            assertDoesNotThrow(() -> Thread.sleep(100));
+            assertFalse(future.isDone());
+            s.bind(ADDRESS);
+
+            assertDoesNotThrow(() -> future.get(2, TimeUnit.SECONDS));
+            assertTrue(c.isConnected());
+        }
+    }
+
+    @Test
+    public void testFailAfterMaxAttempts() {
+        try (Client c = new Client()) {
+            long start = System.nanoTime();
+            CompletableFuture<Void> future = c.connectAsync(ADDRESS, new ConnectOptions()
+                    .setMaxAttempts(3)
+                    .setInitialBackoff(50)
+                    .setJitter(0));
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+            assertInstanceOf(ConnectException.class, e.getCause());
+            //Two delays of 50ms and 100ms
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+            assertFalse(c.isConnected());
+        }
+    }
+
+    //The client is closed on purpose before the end of the try block
+    @SuppressWarnings("try")
+    @Test
+    public void testCancel() {
+        try (Server s = new Server(); Client c = new Client()) {
+            CompletableFuture<Void> future = c.connectAsync(ADDRESS, new ConnectOptions()
+                    .setMaxAttempts(Integer.MAX_VALUE)
+                    .setInitialBackoff(10));
+            assertDoesNotThrow(() -> Thread.sleep(50));
+            assertTrue(future.cancel(true));
+            assertThrows(CancellationException.class, future::join);
+
+            //No more attempts are made after cancelling
+            s.bind(ADDRESS);
+            assertDoesNotThrow(() -> Thread.sleep(100));
+            assertFalse(c.isConnected());
+            assertNull(getClientFromServer(s));
+
+            //Closing the client cancels a pending connect
+            CompletableFuture<Void> future2 = c.connectAsync(new InetSocketAddress("localhost", 6976), new ConnectOptions()
+                    .setMaxAttempts(Integer.MAX_VALUE)
+                    .setInitialBackoff(10));
+            c.close();
+            assertTrue(future2.isCancelled());
+
+            assertDoesNotThrow(() -> c.connectAsync(ADDRESS).get(2, TimeUnit.SECONDS));
+            assertTrue(c.isConnected());
+        }
+    }
+
+    @Test
+    public void testBackoffDelay() {
+        ConnectOptions options = new ConnectOptions()
+                .setInitialBackoff(100)
+                .setMaxBackoff(1000)
+                .setBackoffMultiplier(2)
+                .setJitter(0.5);
+
+        for (int i = 0; i < 100; i++) {
+            long delay = options.getBackoffDelay(3);
+            assertTrue(delay >= 200 && delay <= 400, () -> "Delay " + delay);
+            long maxDelay = options.getBackoffDelay(20);
+            assertTrue(maxDelay >= 500 && maxDelay <= 1000, () -> "Delay " + maxDelay);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> options.setJitter(2));
+        assertThrows(IllegalArgumentException.class, () -> options.setMaxAttempts(0));
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.IMessageCodec;
+import com.github.tth05.scnet.util.ByteBufferDataInput;
+import com.github.tth05.scnet.util.ByteBufferDataOutput;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class DataAdapterTest extends AbstractSCNetTest {
+
+    @Test
+    public void testSameOutputAsDataOutputStream() throws IOException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        writeAll(new DataOutputStream(expected));
+
+        //Starts with a too small buffer to make sure the adapter follows the growing buffer
+        ByteBufferOutputStream outputStream = new ByteBufferOutputStream(1);
+        ByteBufferDataOutput dataOutput = outputStream.asDataOutput();
+        assertSame(dataOutput, outputStream.asDataOutput());
+        writeAll(dataOutput);
+
+        ByteBuffer written = outputStream.getBuffer().flip();
+        assertEquals(ByteBuffer.wrap(expected.toByteArray()), written);
+
+        ByteBufferDataInput dataInput = new ByteBufferInputStream(written).asDataInput();
+        assertTrue(dataInput.readBoolean());
+        assertEquals(-2, dataInput.readByte());
+        assertEquals(0xFFFF, dataInput.readUnsignedShort());
+        assertEquals('\u00e4', dataInput.readChar());
+        assertEquals(Integer.MIN_VALUE, dataInput.readInt());
+        assertEquals(Long.MAX_VALUE, dataInput.readLong());
+        assertEquals(1.5f, dataInput.readFloat());
+        assertEquals(Math.E, dataInput.readDouble());
+        assertEquals("abc", dataInput.readLine());
+        assertEquals('x', dataInput.readChar());
+        assertEquals("H\u00e4llo \u20ac\u0000", dataInput.readUTF());
+        byte[] bytes = new byte[3];
+        dataInput.readFully(bytes);
+        assertArrayEquals(new byte[]{1, 2, 3}, bytes);
+        assertEquals(0, dataInput.available());
+    }
+
+    @Test
+    public void testInputIsBoundedToBuffer() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        //Only the first 5 bytes belong to the current message
+        buffer.limit(5);
+        ByteBufferDataInput dataInput = new ByteBufferInputStream(buffer).asDataInput();
+
+        byte[] bytes = new byte[8];
+        assertEquals(1, dataInput.read());
+        assertEquals(4, dataInput.read(bytes, 0, bytes.length));
+        assertArrayEquals(new byte[]{2, 3, 4, 5, 0, 0, 0, 0}, bytes);
+        assertEquals(-1, dataInput.read());
+        assertEquals(-1, dataInput.read(bytes, 0, 1));
+        assertEquals(0, dataInput.read(bytes, 0, 0));
+        assertThrows(EOFException.class, dataInput::readInt);
+        assertNull(dataInput.readLine());
+
+        buffer.position(2);
+        //Nothing is consumed if the message is too short
+        assertThrows(EOFException.class, () -> dataInput.readFully(new byte[4]));
+        assertEquals(3, dataInput.skip(10));
+        assertEquals(5, buffer.position());
+    }
+
+    @Test
+    public void testSerializationCodec() {
+        withClientAndServer((s, c) -> {
+            c.getMessageProcessor().registerMessage((short) 1, ArrayList.class, new SerializationCodec());
+            s.getMessageProcessor().registerMessage((short) 1, ArrayList.class, new SerializationCodec());
+
+            List<ArrayList<?>> received = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch latch = new CountDownLatch(2);
+            s.getMessageBus().listenAlways(ArrayList.class, (l) -> {
+                received.add(l);
+                latch.countDown();
+            });
+
+            //Two messages in a row, each ObjectInputStream has to stop at the end of its frame
+            c.getMessageProcessor().enqueueMessage(new ArrayList<>(List.of("a", 1, 2.5)));
+            c.getMessageProcessor().enqueueMessage(new ArrayList<>(List.of("b")));
+            assertTrue(assertDoesNotThrow(() -> latch.await(5, TimeUnit.SECONDS)));
+            assertEquals(List.of("a", 1, 2.5), received.get(0));
+            assertEquals(List.of("b"), received.get(1));
+        });
+    }
+
+    private static void writeAll(DataOutput out) throws IOException {
+        out.writeBoolean(true);
+        out.writeByte(-2);
+        out.writeShort(-1);
+        out.writeChar('\u00e4');
+        out.writeInt(Integer.MIN_VALUE);
+        out.writeLong(Long.MAX_VALUE);
+        out.writeFloat(1.5f);
+        out.writeDouble(Math.E);
+        out.writeBytes("abc\n");
+        out.writeChars("x");
+        out.writeUTF("H\u00e4llo \u20ac\u0000");
+        out.write(new byte[]{0, 1, 2, 3, 4}, 1, 3);
+    }
+
+    /**
+     * A codec which uses Java serialization, as an example of a library which only knows the JDK streams
+     */
+    @SuppressWarnings("rawtypes")
+    public static class SerializationCodec implements IMessageCodec<ArrayList> {
+
+        @NotNull
+        @Override
+        public ArrayList read(@NotNull ByteBufferInputStream messageStream) {
+            try (ObjectInputStream in = new ObjectInputStream(messageStream.asDataInput())) {
+                return (ArrayList) in.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void write(@NotNull ArrayList message, @NotNull ByteBufferOutputStream messageStream) {
+            try (ObjectOutputStream out = new ObjectOutputStream(messageStream.asDataOutput())) {
+                out.writeObject(message);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.AbstractDeltaMessage;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class DeltaMessageTest extends AbstractSCNetTest {
+
+    @Test
+    public void testOnlyChangesAreSent() throws IOException {
+        withRawPeer((sender, receiver) -> {
+            DefaultMessageProcessor processor = new DefaultMessageProcessor();
+            processor.registerMessage((short) 1, WorldStateMessage.class);
+
+            int[] entities = new int[12800];
+            processor.enqueueMessage(new WorldStateMessage(entities.clone()));
+            for (int i = 0; i < 10; i++)
+                entities[i * 1000] = i + 1;
+            processor.enqueueMessage(new WorldStateMessage(entities.clone()));
+            assertTrue(processor.write(sender));
+
+            List<Integer> frameSizes = readFrameSizes(receiver, 2);
+            //The first frame contains the whole message
+            assertEquals(3 + 4 + 4 * entities.length, frameSizes.get(0));
+            assertTrue(frameSizes.get(1) < 100, () -> "Delta frame has " + frameSizes.get(1) + " bytes");
+        });
+    }
+
+    @Test
+    public void testReceiverReconstructsMessages() {
+        int versions = 100;
+        withClientAndServer((s, c) -> {
+            c.getMessageProcessor().registerMessage((short) 1, WorldStateMessage.class);
+            s.getMessageProcessor().registerMessage((short) 1, WorldStateMessage.class);
+
+            List<int[]> sent = new ArrayList<>();
+            List<int[]> received = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch latch = new CountDownLatch(versions);
+            s.getMessageBus().listenAlways(WorldStateMessage.class, (m) -> {
+                received.add(m.entities);
+                latch.countDown();
+            });
+
+            Random random = new Random(1);
+            int[] entities = new int[1000];
+            for (int i = 0; i < versions; i++) {
+                //Change a few values, and sometimes the length
+                if (i % 10 == 9)
+                    entities = Arrays.copyOf(entities, entities.length + random.nextInt(200) - 100);
+                for (int j = 0; j < 5; j++)
+                    entities[random.nextInt(entities.length)] = random.nextInt();
+
+                sent.add(entities.clone());
+                c.getMessageProcessor().enqueueMessage(new WorldStateMessage(entities.clone()));
+            }
+
+            assertTrue(assertDoesNotThrow(() -> latch.await(8, TimeUnit.SECONDS)));
+            for (int i = 0; i < versions; i++)
+                assertArrayEquals(sent.get(i), received.get(i), "Version " + i);
+        });
+    }
+
+    private static List<Integer> readFrameSizes(SocketChannel channel, int count) throws IOException {
+        List<Integer> sizes = new ArrayList<>();
+        while (sizes.size() < count)
+            sizes.add(readFrame(channel).getInt(2));
+        return sizes;
+    }
+
+    public static final class WorldStateMessage extends AbstractDeltaMessage {
+
+        private int[] entities;
+
+        public WorldStateMessage() {
+        }
+
+        public WorldStateMessage(int[] entities) {
+            this.entities = entities;
+        }
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            this.entities = new int[messageStream.readInt()];
+            for (int i = 0; i < this.entities.length; i++)
+                this.entities[i] = messageStream.readInt();
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeInt(this.entities.length);
+            for (int entity : this.entities)
+                messageStream.writeInt(entity);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.tth05.scnet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class EventLoopGroupTest extends AbstractSCNetTest {
+
+    private static final int PAIRS = 4;
+
+    @Test
+    public void testSharedGroup() {
+        Server[] servers = new Server[PAIRS];
+        Client[] clients = new Client[PAIRS];
+
+        try (EventLoopGroup group = new EventLoopGroup(2)) {
+            CountDownLatch latch = new CountDownLatch(PAIRS);
+            for (int i = 0; i < PAIRS; i++) {
+                int port = 6971 + i;
+                servers[i] = new Server(group);
+                servers[i].getMessageProcessor().registerMessage((short) 1, SendMessageTest.IntMessage.class);
+                servers[i].getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> {
+                    if (m.getI() == port)
+                        latch.countDown();
+                });
+                servers[i].bind(new InetSocketAddress(port));
+
+                clients[i] = new Client(group);
+                clients[i].getMessageProcessor().registerMessage((short) 1, SendMessageTest.IntMessage.class);
+                assertTrue(clients[i].connect(new InetSocketAddress(port)));
+                clients[i].getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(port));
+            }
+
+            assertTrue(assertDoesNotThrow(() -> latch.await(5, TimeUnit.SECONDS)));
+            //All connections are served by the threads of the group
+            assertEquals(2, Thread.getAllStackTraces().keySet().stream()
+                    .filter(t -> t.getName().startsWith("SCNet EventLoop"))
+                    .count());
+
+            //Closing a single client doesn't affect the others
+            clients[0].close();
+            assertDoesNotThrow(() -> Thread.sleep(50));
+            assertFalse(servers[0].isClientConnected());
+            for (int i = 1; i < PAIRS; i++)
+                assertTrue(clients[i].isConnected());
+        } finally {
+            for (int i = 0; i < PAIRS; i++) {
+                if (clients[i] != null)
+                    clients[i].close();
+                if (servers[i] != null)
+                    servers[i].close();
+            }
+        }
+    }
+
+    @Test
+    public void testCloseGroupClosesConnections() {
+        Server server;
+        Client client;
+        try (EventLoopGroup group = new EventLoopGroup(1)) {
+            server = new Server(group);
+            server.bind(new InetSocketAddress(6971));
+            client = new Client(group);
+            assertTrue(client.connect(new InetSocketAddress(6971)));
+
+            while (getClientFromServer(server) == null)
+                assertDoesNotThrow(() -> Thread.sleep(10));
+        }
+
+        assertDoesNotThrow(() -> Thread.sleep(50));
+        assertFalse(client.isConnected());
+        assertFalse(server.isClientConnected());
+        server.close();
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.AbstractFlyweightMessage;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.function.Executable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class FlyweightMessageTest extends AbstractSCNetTest {
+
+    @Test
+    public void testAccessors() {
+        PositionMessage message = new PositionMessage(42, 1.5, -2.5);
+        assertEquals(PositionMessage.LENGTH, message.getLength());
+        assertEquals(42, message.getEntityId());
+        assertEquals(1.5, message.getX());
+        assertEquals(-2.5, message.getY());
+    }
+
+    @Test
+    public void testWrapAtOffset() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(100);
+        buffer.putLong(10, 7);
+        buffer.putDouble(18, 3.0);
+
+        PositionMessage message = new PositionMessage();
+        message.wrap(buffer, 10, PositionMessage.LENGTH);
+        assertEquals(7, message.getEntityId());
+        assertEquals(3.0, message.getX());
+        //Position and limit are not touched
+        assertEquals(0, buffer.position());
+        assertEquals(100, buffer.limit());
+
+        message.unwrap();
+        assertThrows(IllegalStateException.class, message::getEntityId);
+    }
+
+    @Test
+    public void testOutOfBounds() {
+        PositionMessage message = new PositionMessage();
+        assertThrows(IndexOutOfBoundsException.class, () -> message.wrap(ByteBuffer.allocate(10), 5, 6));
+
+        message.wrap(ByteBuffer.allocate(10), 0, 10);
+        assertThrows(IndexOutOfBoundsException.class, message::getX);
+    }
+
+    @Test
+    public void testBytes() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(20);
+        NameMessage message = new NameMessage();
+        message.wrap(buffer, 4, NameMessage.LENGTH);
+        message.setName(new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, 1, 8);
+        assertEquals(8, buffer.get(4 + 7));
+
+        byte[] name = new byte[10];
+        message.getName(name, 2);
+        assertArrayEquals(new byte[]{0, 0, 1, 2, 3, 4, 5, 6, 7, 8}, name);
+        assertThrows(IndexOutOfBoundsException.class, () -> message.setName(new byte[9], 0, 9));
+    }
+
+    @Test
+    public void testReadWriteRoundTrip() {
+        ByteBufferOutputStream out = new ByteBufferOutputStream();
+        new PositionMessage(1, 2, 3).write(out);
+
+        ByteBuffer buffer = out.getBuffer();
+        buffer.flip();
+        assertEquals(PositionMessage.LENGTH, buffer.remaining());
+
+        PositionMessage message = new PositionMessage();
+        message.read(new ByteBufferInputStream(buffer));
+        assertEquals(1, message.getEntityId());
+        assertEquals(2, message.getX());
+        assertEquals(3, message.getY());
+    }
+
+    @Test
+    public void testSendFlyweightMessage() {
+        withClientAndServer((s, c) -> {
+            c.getMessageProcessor().registerMessage((short) 1, PositionMessage.class);
+            s.getMessageProcessor().registerMessage((short) 1, PositionMessage.class);
+
+            int count = 100;
+            List<PositionMessage> instances = new ArrayList<>();
+            long[] ids = new long[count];
+            CountDownLatch latch = new CountDownLatch(count);
+            s.getMessageBus().listenAlways(PositionMessage.class, (m) -> {
+                if (!instances.contains(m))
+                    instances.add(m);
+                ids[(int) latch.getCount() - 1] = m.getEntityId();
+                assertEquals(m.getEntityId() * 2.0, m.getX());
+                latch.countDown();
+            });
+
+            for (int i = 0; i < count; i++)
+                c.getMessageProcessor().enqueueMessage(new PositionMessage(count - i, (count - i) * 2.0, 0));
+
+            assertDoesNotThrow((Executable) latch::await);
+            for (int i = 0; i < count; i++)
+                assertEquals(i + 1, ids[i]);
+            assertEquals(1, instances.size());
+        });
+    }
+
+    public static final class PositionMessage extends AbstractFlyweightMessage {
+
+        private static final int ENTITY_ID_OFFSET = 0;
+        private static final int X_OFFSET = 8;
+        private static final int Y_OFFSET = 16;
+        private static final int LENGTH = 24;
+
+        public PositionMessage() {
+        }
+
+        public PositionMessage(long entityId, double x, double y) {
+            super(LENGTH);
+            putLong(ENTITY_ID_OFFSET, entityId);
+            putDouble(X_OFFSET, x);
+            putDouble(Y_OFFSET, y);
+        }
+
+        public long getEntityId() {
+            return getLong(ENTITY_ID_OFFSET);
+        }
+
+        public double getX() {
+            return getDouble(X_OFFSET);
+        }
+
+        public double getY() {
+            return getDouble(Y_OFFSET);
+        }
+    }
+
+    public static final class NameMessage extends AbstractFlyweightMessage {
+
+        private static final int LENGTH = 8;
+
+        public void getName(byte[] dst, int dstOffset) {
+            getBytes(0, dst, dstOffset, LENGTH);
+        }
+
+        public void setName(byte[] src, int srcOffset, int length) {
+            putBytes(0, src, srcOffset, length);
+        }
+    }
+}
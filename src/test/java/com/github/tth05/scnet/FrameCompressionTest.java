@@ -0,0 +1,184 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.IMessageBus;
+import com.github.tth05.scnet.message.impl.DefaultMessageBus;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import com.github.tth05.scnet.message.impl.FrameCompression;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class FrameCompressionTest extends AbstractSCNetTest {
+
+    private static final byte[] DICTIONARY = "{\"entity\":,\"name\":\"Entity \",\"position\":{\"x\":,\"y\":,\"z\":}}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testOnlyLargeFramesAreCompressed() throws IOException {
+        withRawPeer((sender, receiver) -> {
+            DefaultMessageProcessor processor = new DefaultMessageProcessor();
+            FrameCompression compression = new FrameCompression(64, Deflater.DEFAULT_COMPRESSION, null);
+            processor.setFrameCompression(compression);
+            processor.registerMessage((short) 1, BroadcastTest.CountingMessage.class);
+
+            String json = createJson(50);
+            processor.enqueueMessage(new BroadcastTest.CountingMessage(json));
+            processor.enqueueMessage(new BroadcastTest.CountingMessage("{}"));
+            assertTrue(processor.write(sender));
+
+            int size = readFrame(receiver).getInt(2);
+            assertTrue(size < 0);
+            assertTrue((size & Integer.MAX_VALUE) < json.length() / 3);
+
+            int uncompressedSize = readFrame(receiver).getInt(2);
+            assertTrue(uncompressedSize > 0 && uncompressedSize < 64);
+
+            assertEquals(1, compression.getCompressedFrameCount());
+            assertEquals(0, compression.getSkippedFrameCount());
+            assertEquals((size & Integer.MAX_VALUE), compression.getCompressedBytes());
+            assertTrue(compression.getCompressionRatio() > 3);
+            assertTrue(compression.getCompressionTime() > 0);
+        });
+    }
+
+    @Test
+    public void testCompressionIsUsableAfterReleasingResources() throws IOException {
+        withRawPeer((sender, receiver) -> {
+            DefaultMessageProcessor processor = new DefaultMessageProcessor();
+            FrameCompression compression = new FrameCompression(64, Deflater.DEFAULT_COMPRESSION, null);
+            processor.setFrameCompression(compression);
+            processor.registerMessage((short) 1, BroadcastTest.CountingMessage.class);
+
+            String json = createJson(50);
+            processor.enqueueMessage(new BroadcastTest.CountingMessage(json));
+            assertTrue(processor.write(sender));
+            ByteBuffer frame = readFrame(receiver);
+
+            //Like a client which is closed and connects again
+            processor.releaseResources();
+            processor.enqueueMessage(new BroadcastTest.CountingMessage(json));
+            assertTrue(processor.write(sender));
+            assertEquals(frame, readFrame(receiver));
+            assertEquals(2, compression.getCompressedFrameCount());
+        });
+    }
+
+    @Test
+    public void testMessagesAreDecompressed() {
+        int count = 200;
+        FrameCompression clientCompression = new FrameCompression(128, 6, DICTIONARY);
+        FrameCompression serverCompression = new FrameCompression(128, 6, DICTIONARY);
+        withClientAndServer((s, c) -> {
+            ((DefaultMessageProcessor) c.getMessageProcessor()).setFrameCompression(clientCompression);
+            ((DefaultMessageProcessor) s.getMessageProcessor()).setFrameCompression(serverCompression);
+            c.getMessageProcessor().registerMessage((short) 1, BroadcastTest.CountingMessage.class);
+            s.getMessageProcessor().registerMessage((short) 1, BroadcastTest.CountingMessage.class);
+
+            List<String> received = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch latch = new CountDownLatch(count);
+            s.getMessageBus().listenAlways(BroadcastTest.CountingMessage.class, (m) -> {
+                received.add(m.getValue());
+                latch.countDown();
+            });
+
+            List<String> sent = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                sent.add(createJson(i % 20));
+                c.getMessageProcessor().enqueueMessage(new BroadcastTest.CountingMessage(sent.get(i)));
+            }
+
+            assertTrue(assertDoesNotThrow(() -> latch.await(8, TimeUnit.SECONDS)));
+            assertEquals(sent, received);
+            assertEquals(clientCompression.getCompressedFrameCount(), serverCompression.getDecompressedFrameCount());
+            assertTrue(clientCompression.getCompressedFrameCount() > 0);
+        });
+    }
+
+    @Test
+    public void testDifferentDictionaryClosesConnection() {
+        withClientAndServer((s, c) -> {
+            ((DefaultMessageProcessor) c.getMessageProcessor()).setFrameCompression(new FrameCompression(0, 9, DICTIONARY));
+            ((DefaultMessageProcessor) s.getMessageProcessor()).setFrameCompression(new FrameCompression());
+            c.getMessageProcessor().registerMessage((short) 1, BroadcastTest.CountingMessage.class);
+            s.getMessageProcessor().registerMessage((short) 1, BroadcastTest.CountingMessage.class);
+
+            c.getMessageProcessor().enqueueMessage(new BroadcastTest.CountingMessage(createJson(10)));
+            for (int i = 0; i < 100 && c.isConnected(); i++)
+                assertDoesNotThrow(() -> Thread.sleep(20));
+            assertFalse(c.isConnected());
+        });
+    }
+
+    @Test
+    public void testOversizedPayloadIsRejected() throws IOException {
+        byte[] payload = new byte[1000];
+        Deflater deflater = new Deflater(9, true);
+        deflater.setInput(payload);
+        deflater.finish();
+        byte[] compressed = new byte[100];
+        int compressedLength = deflater.deflate(compressed);
+        assertTrue(deflater.finished());
+
+        FrameCompression compression = new FrameCompression();
+        assertTrue(readCompressedFrame(compression, payload.length, compressed, compressedLength));
+        //More than deflate could have compressed into these bytes
+        assertFalse(readCompressedFrame(compression, 1 << 20, compressed, compressedLength));
+
+        compression.setMaxPayloadSize(payload.length - 1);
+        assertEquals(payload.length - 1, compression.getMaxPayloadSize());
+        assertFalse(readCompressedFrame(compression, payload.length, compressed, compressedLength));
+        assertEquals(1, compression.getDecompressedFrameCount());
+        assertThrows(IllegalArgumentException.class, () -> compression.setMaxPayloadSize(0));
+    }
+
+    @Test
+    public void testInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new FrameCompression(-1, 1, null));
+        assertThrows(IllegalArgumentException.class, () -> new FrameCompression(0, 10, null));
+        assertEquals(1, new FrameCompression().getCompressionRatio());
+    }
+
+    private static String createJson(int entities) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < entities; i++) {
+            if (i > 0)
+                builder.append(',');
+            builder.append("{\"entity\":").append(i).append(",\"name\":\"Entity ").append(i)
+                    .append("\",\"position\":{\"x\":").append(i * 3).append(",\"y\":64,\"z\":").append(-i).append("}}");
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * Feeds a compressed frame which claims the given uncompressed {@code length} to a processor.
+     *
+     * @return the result of {@link DefaultMessageProcessor#read(java.nio.channels.ReadableByteChannel, IMessageBus)}
+     */
+    private static boolean readCompressedFrame(FrameCompression compression, int length, byte[] compressed, int compressedLength) throws IOException {
+        DefaultMessageProcessor processor = new DefaultMessageProcessor();
+        processor.setFrameCompression(compression);
+        processor.registerMessage((short) 1, BroadcastTest.CountingMessage.class);
+
+        Pipe pipe = Pipe.open();
+        try (Pipe.SinkChannel sink = pipe.sink(); Pipe.SourceChannel source = pipe.source()) {
+            ByteBuffer frame = ByteBuffer.allocate(6 + 4 + compressedLength);
+            frame.putShort((short) 1).putInt((1 << 31) | (4 + compressedLength));
+            frame.putInt(length).put(compressed, 0, compressedLength);
+            sink.write(frame.flip());
+            source.configureBlocking(false);
+            return processor.read(source, new DefaultMessageBus());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.AbstractMessage;
+import com.github.tth05.scnet.message.annotation.SerializedField;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class GeneratedSerializerTest extends AbstractSCNetTest {
+
+    @Test
+    public void testSameOutputAsHandWrittenMessage() {
+        ByteBufferOutputStream generatedStream = new ByteBufferOutputStream();
+        new GeneratedMessage(true, (byte) -3, (short) 300, '\u00e4', 123456, 1.5f, Long.MIN_VALUE, Math.PI, "H\u00e4llo", new byte[]{1, 2, 3}).write(generatedStream);
+        ByteBufferOutputStream handWrittenStream = new ByteBufferOutputStream();
+        new HandWrittenMessage(true, (byte) -3, (short) 300, '\u00e4', 123456, 1.5f, Long.MIN_VALUE, Math.PI, "H\u00e4llo", new byte[]{1, 2, 3}).write(handWrittenStream);
+
+        ByteBuffer generated = generatedStream.getBuffer().flip();
+        ByteBuffer handWritten = handWrittenStream.getBuffer().flip();
+        assertEquals(handWritten, generated);
+
+        GeneratedMessage message = new GeneratedMessage();
+        message.read(new ByteBufferInputStream(generated));
+        assertEquals("H\u00e4llo", message.string);
+        assertEquals('\u00e4', message.c);
+        assertEquals(Math.PI, message.d);
+        assertArrayEquals(new byte[]{1, 2, 3}, message.bytes);
+        assertFalse(generated.hasRemaining());
+    }
+
+    @Test
+    public void testOutputBufferIsPreSized() {
+        //1 + 1 + 2 + 2 + 4 + 4 + 8 + 8 and the lengths of the string and the array
+        assertEquals(38, GeneratedSerializerTest_GeneratedMessageSerializer.FIXED_SIZE);
+
+        ByteBufferOutputStream stream = new ByteBufferOutputStream(0);
+        new GeneratedMessage(false, (byte) 0, (short) 0, 'a', 0, 0, 0, 0, "abc", new byte[100]).write(stream);
+        //A single allocation which fits the whole message, instead of growing the buffer for every field
+        assertEquals((38 + 3 + 100) * 2, stream.getBuffer().capacity());
+        assertEquals(38 + 3 + 100, stream.getBuffer().position());
+    }
+
+    @Test
+    public void testSendGeneratedMessage() {
+        withClientAndServer((s, c) -> {
+            c.getMessageProcessor().registerMessage((short) 1, GeneratedMessage.class);
+            s.getMessageProcessor().registerMessage((short) 1, GeneratedMessage.class);
+
+            AtomicReference<GeneratedMessage> received = new AtomicReference<>();
+            CountDownLatch latch = new CountDownLatch(1);
+            s.getMessageBus().listenAlways(GeneratedMessage.class, (m) -> {
+                received.set(m);
+                latch.countDown();
+            });
+
+            c.getMessageProcessor().enqueueMessage(new GeneratedMessage(true, (byte) 1, (short) 2, 'c', 4, 5f, 6L, 7d, "Cool!", new byte[]{8}));
+            assertTrue(assertDoesNotThrow(() -> latch.await(5, TimeUnit.SECONDS)));
+
+            GeneratedMessage message = received.get();
+            assertTrue(message.bool);
+            assertEquals(2, message.s);
+            assertEquals(5f, message.f);
+            assertEquals(6L, message.l);
+            assertEquals("Cool!", message.string);
+            assertArrayEquals(new byte[]{8}, message.bytes);
+        });
+    }
+
+    public static class GeneratedMessage extends AbstractMessage {
+
+        @SerializedField
+        boolean bool;
+        @SerializedField
+        byte b;
+        @SerializedField
+        short s;
+        @SerializedField
+        char c;
+        @SerializedField
+        int i;
+        @SerializedField
+        float f;
+        @SerializedField
+        long l;
+        @SerializedField
+        double d;
+        @SerializedField
+        String string;
+        @SerializedField
+        byte[] bytes;
+        //Not serialized
+        int cached;
+
+        public GeneratedMessage() {
+        }
+
+        public GeneratedMessage(boolean bool, byte b, short s, char c, int i, float f, long l, double d, String string, byte[] bytes) {
+            this.bool = bool;
+            this.b = b;
+            this.s = s;
+            this.c = c;
+            this.i = i;
+            this.f = f;
+            this.l = l;
+            this.d = d;
+            this.string = string;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            GeneratedSerializerTest_GeneratedMessageSerializer.read(this, messageStream);
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            GeneratedSerializerTest_GeneratedMessageSerializer.write(this, messageStream);
+        }
+    }
+
+    public static class HandWrittenMessage extends AbstractMessage {
+
+        private final boolean bool;
+        private final byte b;
+        private final short s;
+        private final char c;
+        private final int i;
+        private final float f;
+        private final long l;
+        private final double d;
+        private final String string;
+        private final byte[] bytes;
+
+        public HandWrittenMessage(boolean bool, byte b, short s, char c, int i, float f, long l, double d, String string, byte[] bytes) {
+            this.bool = bool;
+            this.b = b;
+            this.s = s;
+            this.c = c;
+            this.i = i;
+            this.f = f;
+            this.l = l;
+            this.d = d;
+            this.string = string;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeBoolean(this.bool);
+            messageStream.writeByte(this.b);
+            messageStream.writeShort(this.s);
+            messageStream.writeShort((short) this.c);
+            messageStream.writeInt(this.i);
+            messageStream.writeInt(Float.floatToRawIntBits(this.f));
+            messageStream.writeLong(this.l);
+            messageStream.writeLong(Double.doubleToRawLongBits(this.d));
+            messageStream.writeString(this.string);
+            messageStream.writeInt(this.bytes.length);
+            messageStream.writeByteArray(this.bytes);
+        }
+    }
+}
@@ -12,7 +12,7 @@ import org.junit.jupiter.api.Test;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class MessageBusTest {
 
@@ -109,6 +109,22 @@ public class MessageBusTest {
         assertEquals(0, count2.get());
     }
 
+    @Test
+    public void testHasListeners() {
+        assertFalse(bus.hasListeners(DummyMessage.class));
+
+        Consumer<DummyMessage> listener = (m) -> {};
+        bus.listenAlways(DummyMessage.class, listener);
+        assertTrue(bus.hasListeners(DummyMessage.class));
+        bus.unregister(DummyMessage.class, listener);
+        assertFalse(bus.hasListeners(DummyMessage.class));
+
+        bus.listenOnce(DummyMessage.class, listener);
+        assertTrue(bus.hasListeners(DummyMessage.class));
+        bus.post(new DummyMessage());
+        assertFalse(bus.hasListeners(DummyMessage.class));
+    }
+
     public static class DummyMessage extends AbstractMessage {
 
         @Override
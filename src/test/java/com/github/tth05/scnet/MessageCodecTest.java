@@ -0,0 +1,114 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.IMessageCodec;
+import com.github.tth05.scnet.message.MessagePriority;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class MessageCodecTest extends AbstractSCNetTest {
+
+    @Test
+    public void testSendMessageWithCodec() {
+        int count = 100;
+        withClientAndServer((s, c) -> {
+            c.getMessageProcessor().registerMessage((short) 1, Point.class, new PointCodec());
+            s.getMessageProcessor().registerMessage((short) 1, Point.class, new PointCodec());
+            ((DefaultMessageProcessor) c.getMessageProcessor()).setMessagePriority(Point.class, MessagePriority.HIGH);
+
+            List<Point> received = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch latch = new CountDownLatch(count);
+            s.getMessageBus().listenAlways(Point.class, (Point p) -> {
+                received.add(p);
+                latch.countDown();
+            });
+
+            for (int i = 0; i < count; i++)
+                c.getMessageProcessor().enqueueMessage(new Point(i, -i));
+            assertTrue(assertDoesNotThrow(() -> latch.await(5, TimeUnit.SECONDS)));
+
+            for (int i = 0; i < count; i++) {
+                assertEquals(i, received.get(i).x);
+                assertEquals(-i, received.get(i).y);
+            }
+        });
+    }
+
+    @Test
+    public void testInvalidRegistrations() {
+        DefaultMessageProcessor processor = new DefaultMessageProcessor();
+        processor.registerMessage((short) 1, Point.class, new PointCodec());
+        assertTrue(processor.canSend(Point.class));
+
+        assertThrows(IllegalArgumentException.class, () -> processor.registerMessage((short) 0, Point.class, new PointCodec()));
+        assertThrows(IllegalArgumentException.class, () -> processor.registerMessage((short) 1, String.class, new StringCodec()));
+        assertThrows(IllegalArgumentException.class, () -> processor.registerMessage((short) 2, SendMessageTest.IntMessage.class, new IMessageCodec<>() {
+            @NotNull
+            @Override
+            public SendMessageTest.IntMessage read(@NotNull ByteBufferInputStream messageStream) {
+                return new SendMessageTest.IntMessage(messageStream.readInt());
+            }
+
+            @Override
+            public void write(@NotNull SendMessageTest.IntMessage message, @NotNull ByteBufferOutputStream messageStream) {
+                messageStream.writeInt(message.getI());
+            }
+        }));
+        assertFalse(processor.canSend(String.class));
+    }
+
+    /**
+     * A class which neither extends {@link com.github.tth05.scnet.message.AbstractMessage} nor has a default constructor
+     */
+    public static final class Point {
+
+        private final int x;
+        private final int y;
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    public static final class PointCodec implements IMessageCodec<Point> {
+
+        @NotNull
+        @Override
+        public Point read(@NotNull ByteBufferInputStream messageStream) {
+            return new Point(messageStream.readInt(), messageStream.readInt());
+        }
+
+        @Override
+        public void write(@NotNull Point message, @NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeInt(message.x);
+            messageStream.writeInt(message.y);
+        }
+    }
+
+    public static final class StringCodec implements IMessageCodec<String> {
+
+        @NotNull
+        @Override
+        public String read(@NotNull ByteBufferInputStream messageStream) {
+            return messageStream.readString();
+        }
+
+        @Override
+        public void write(@NotNull String message, @NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeString(message);
+        }
+    }
+}
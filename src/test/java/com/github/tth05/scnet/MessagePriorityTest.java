@@ -0,0 +1,101 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.MessagePriority;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class MessagePriorityTest extends AbstractSCNetTest {
+
+    @Test
+    public void testWeightedFairDraining() throws IOException {
+        withRawPeer((sender, receiver) -> {
+            DefaultMessageProcessor processor = new DefaultMessageProcessor();
+            processor.registerMessage((short) 1, SendMessageTest.IntMessage.class);
+            processor.registerMessage((short) 2, ReadAllocationTest.SmallMessage.class);
+            processor.setMessagePriority(ReadAllocationTest.SmallMessage.class, MessagePriority.LOW);
+            assertEquals(MessagePriority.LOW, processor.getMessagePriority(ReadAllocationTest.SmallMessage.class));
+
+            //The low priority messages were queued first
+            for (int i = 0; i < 4; i++)
+                processor.enqueueMessage(new ReadAllocationTest.SmallMessage());
+            for (int i = 0; i < 32; i++)
+                processor.enqueueMessage(new SendMessageTest.IntMessage(i), MessagePriority.HIGH);
+            assertTrue(processor.write(sender));
+
+            List<Short> expected = new ArrayList<>();
+            expected.addAll(Collections.nCopies(16, (short) 1));
+            expected.add((short) 2);
+            expected.addAll(Collections.nCopies(16, (short) 1));
+            expected.addAll(Collections.nCopies(3, (short) 2));
+            assertEquals(expected, readFrameIds(receiver, expected.size()));
+        });
+    }
+
+    @Test
+    public void testHighPriorityOvertakesBulkMessages() {
+        int count = 32000;
+        withClientAndServer((s, c) -> {
+            c.getMessageProcessor().registerMessage((short) 1, SendMessageTest.IntMessage.class);
+            s.getMessageProcessor().registerMessage((short) 1, SendMessageTest.IntMessage.class);
+            c.getMessageProcessor().registerMessage((short) 2, MessageStreamTest.BulkMessage.class);
+            s.getMessageProcessor().registerMessage((short) 2, MessageStreamTest.BulkMessage.class);
+            ((DefaultMessageProcessor) c.getMessageProcessor()).setMessagePriority(MessageStreamTest.BulkMessage.class, MessagePriority.LOW);
+
+            List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch firstReceived = new CountDownLatch(1);
+            CountDownLatch highPriorityEnqueued = new CountDownLatch(1);
+            CountDownLatch latch = new CountDownLatch(count + 1);
+            s.getMessageBus().listenAlways(MessageStreamTest.BulkMessage.class, (m) -> {
+                received.add(0);
+                latch.countDown();
+                //Stall the server, so the socket buffers fill up and the rest of the backlog stays queued
+                if (firstReceived.getCount() > 0) {
+                    firstReceived.countDown();
+                    assertTrue(assertDoesNotThrow(() -> highPriorityEnqueued.await(5, TimeUnit.SECONDS)));
+                }
+            });
+            s.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> {
+                received.add(1);
+                latch.countDown();
+            });
+
+            MessageStreamTest.BulkMessage message = new MessageStreamTest.BulkMessage(0, 1024);
+            for (int i = 0; i < count; i++)
+                c.getMessageProcessor().enqueueMessage(message);
+            assertTrue(assertDoesNotThrow(() -> firstReceived.await(5, TimeUnit.SECONDS)));
+            c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(1), MessagePriority.HIGH);
+            highPriorityEnqueued.countDown();
+
+            assertTrue(assertDoesNotThrow(() -> latch.await(8, TimeUnit.SECONDS)));
+            assertTrue(received.indexOf(1) < count / 2, () -> "High priority message was received at " + received.indexOf(1));
+        });
+    }
+
+    @Test
+    public void testInvalidWeight() {
+        DefaultMessageProcessor processor = new DefaultMessageProcessor();
+        assertThrows(IllegalArgumentException.class, () -> processor.setPriorityWeight(MessagePriority.LOW, 0));
+        processor.setPriorityWeight(MessagePriority.LOW, 2);
+        assertEquals(2, processor.getPriorityWeight(MessagePriority.LOW));
+        assertEquals(MessagePriority.HIGH.getDefaultWeight(), processor.getPriorityWeight(MessagePriority.HIGH));
+    }
+
+    private static List<Short> readFrameIds(SocketChannel channel, int count) throws IOException {
+        List<Short> ids = new ArrayList<>();
+        while (ids.size() < count)
+            ids.add(readFrame(channel).getShort(0));
+        return ids;
+    }
+}
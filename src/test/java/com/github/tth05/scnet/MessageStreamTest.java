@@ -0,0 +1,198 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.AbstractMessage;
+import com.github.tth05.scnet.message.IMessageBus;
+import com.github.tth05.scnet.message.impl.DefaultMessageBus;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import com.github.tth05.scnet.message.impl.MessageStream;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class MessageStreamTest extends AbstractSCNetTest {
+
+    @Test
+    public void testBulkStreamDoesNotBlockRegularMessages() {
+        withClientAndServer((s, c) -> {
+            MessageStream bulkStream = register(c.getMessageProcessor()).openStream((short) 1);
+            register(s.getMessageProcessor()).openStream((short) 1);
+
+            List<String> received = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch latch = new CountDownLatch(2);
+            s.getMessageBus().listenAlways(BulkMessage.class, (m) -> {
+                assertTrue(m.isValid());
+                received.add("bulk");
+                latch.countDown();
+            });
+            s.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> {
+                received.add("small");
+                latch.countDown();
+            });
+
+            //The bulk message needs many window updates, the small one is sent in between
+            bulkStream.enqueueMessage(new BulkMessage(0, 8 << 20));
+            c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(1));
+
+            assertTrue(assertDoesNotThrow(() -> latch.await(8, TimeUnit.SECONDS)));
+            assertEquals(Arrays.asList("small", "bulk"), received);
+        });
+    }
+
+    @Test
+    public void testStreamsInterleaveAndKeepTheirOrder() {
+        int count = 20;
+        withClientAndServer((s, c) -> {
+            DefaultMessageProcessor clientProcessor = register(c.getMessageProcessor());
+            DefaultMessageProcessor serverProcessor = register(s.getMessageProcessor());
+            //Tiny windows and fragments, so the streams depend on many window updates
+            MessageStream stream1 = clientProcessor.openStream((short) 1, 1024, 256);
+            MessageStream stream2 = clientProcessor.openStream((short) 2, 1024, 256);
+            serverProcessor.openStream((short) 1, 1024, 256);
+            serverProcessor.openStream((short) 2, 1024, 256);
+
+            List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch latch = new CountDownLatch(count * 2);
+            s.getMessageBus().listenAlways(BulkMessage.class, (m) -> {
+                assertTrue(m.isValid());
+                received.add(m.tag);
+                latch.countDown();
+            });
+
+            for (int i = 0; i < count; i++) {
+                stream1.enqueueMessage(new BulkMessage(i, 5000));
+                stream2.enqueueMessage(new BulkMessage(1000 + i, 5000));
+            }
+
+            assertTrue(assertDoesNotThrow(() -> latch.await(8, TimeUnit.SECONDS)));
+            List<Integer> expected1 = IntStream.range(0, count).boxed().collect(Collectors.toList());
+            List<Integer> expected2 = IntStream.range(1000, 1000 + count).boxed().collect(Collectors.toList());
+            assertEquals(expected1, received.stream().filter(i -> i < 1000).collect(Collectors.toList()));
+            assertEquals(expected2, received.stream().filter(i -> i >= 1000).collect(Collectors.toList()));
+            //Both streams made progress at the same time
+            assertTrue(received.indexOf(1000) < received.indexOf(count - 1));
+            assertTrue(stream1.getCredit() <= stream1.getWindowSize());
+        });
+    }
+
+    @Test
+    public void testUnknownStreamClosesConnection() {
+        withClientAndServer((s, c) -> {
+            register(s.getMessageProcessor());
+            MessageStream stream = register(c.getMessageProcessor()).openStream((short) 3);
+            stream.enqueueMessage(new BulkMessage(0, 10));
+
+            for (int i = 0; i < 100 && c.isConnected(); i++)
+                assertDoesNotThrow(() -> Thread.sleep(20));
+            assertFalse(c.isConnected());
+        });
+    }
+
+    @Test
+    public void testOpenStreamValidation() {
+        DefaultMessageProcessor processor = new DefaultMessageProcessor();
+        processor.openStream((short) 1);
+        assertThrows(IllegalArgumentException.class, () -> processor.openStream((short) 1));
+        assertThrows(IllegalArgumentException.class, () -> processor.openStream((short) 0));
+        assertThrows(IllegalArgumentException.class, () -> processor.openStream((short) 2, 0, 10));
+        assertNotNull(processor.getStream((short) 1));
+        assertNull(processor.getStream((short) 2));
+    }
+
+    @Test
+    public void testFragmentsBeyondTheWindowAreRejected() throws IOException {
+        DefaultMessageProcessor processor = register(new DefaultMessageProcessor());
+        processor.openStream((short) 1, 64, 64);
+        assertTrue(readFragments(processor, 1, 40, 20));
+        //The sender did not receive new credit for the first fragment yet
+        assertFalse(readFragments(processor, 1, 40));
+    }
+
+    @Test
+    public void testMessagesBeyondTheMaxSizeAreRejected() throws IOException {
+        DefaultMessageProcessor processor = register(new DefaultMessageProcessor());
+        MessageStream stream = processor.openStream((short) 1);
+        stream.setMaxMessageSize(50);
+        assertThrows(IllegalArgumentException.class, () -> stream.setMaxMessageSize(0));
+        assertFalse(readFragments(processor, 1, 40, 40));
+    }
+
+    /**
+     * Feeds fragments of a message which is never completed on the given stream to the {@code processor}.
+     *
+     * @return the result of {@link DefaultMessageProcessor#read(java.nio.channels.ReadableByteChannel, IMessageBus)}
+     */
+    private static boolean readFragments(DefaultMessageProcessor processor, int stream, int... lengths) throws IOException {
+        Pipe pipe = Pipe.open();
+        try (Pipe.SinkChannel sink = pipe.sink(); Pipe.SourceChannel source = pipe.source()) {
+            ByteBuffer frames = ByteBuffer.allocate(1024);
+            for (int length : lengths) {
+                frames.putShort((short) -3).putInt(5 + length);
+                frames.putShort((short) stream).putShort((short) 2).put((byte) 0).put(new byte[length]);
+            }
+            sink.write(frames.flip());
+            source.configureBlocking(false);
+            return processor.read(source, new DefaultMessageBus());
+        }
+    }
+
+    private static DefaultMessageProcessor register(Object processor) {
+        DefaultMessageProcessor messageProcessor = (DefaultMessageProcessor) processor;
+        messageProcessor.registerMessage((short) 1, SendMessageTest.IntMessage.class);
+        messageProcessor.registerMessage((short) 2, BulkMessage.class);
+        return messageProcessor;
+    }
+
+    public static final class BulkMessage extends AbstractMessage {
+
+        private int tag;
+        private byte[] data;
+
+        public BulkMessage() {
+        }
+
+        public BulkMessage(int tag, int size) {
+            this.tag = tag;
+            this.data = new byte[size];
+            for (int i = 0; i < size; i++)
+                this.data[i] = (byte) (i * 31 + tag);
+        }
+
+        public boolean isValid() {
+            for (int i = 0; i < this.data.length; i++) {
+                if (this.data[i] != (byte) (i * 31 + this.tag))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            this.tag = messageStream.readInt();
+            this.data = messageStream.readByteArray(messageStream.readInt());
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeInt(this.tag);
+            messageStream.writeInt(this.data.length);
+            messageStream.writeByteArray(this.data);
+        }
+    }
+}
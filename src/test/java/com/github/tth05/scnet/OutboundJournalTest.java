@@ -0,0 +1,140 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import com.github.tth05.scnet.message.impl.OutboundJournal;
+import com.github.tth05.scnet.message.impl.ReliableSession;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(20)
+public class OutboundJournalTest extends AbstractSCNetTest {
+
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("localhost", 6978);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testMessagesAreSpilledWhileDisconnected() throws IOException {
+        int count = 5000;
+        ReliableSession serverSession = new ReliableSession(false);
+        CountDownLatch latch = new CountDownLatch(count + 1);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+
+        try (Client c = new Client(); OutboundJournal journal = new OutboundJournal(this.directory, 4096)) {
+            ReliableSession clientSession = enableSession(c.getMessageProcessor(), new ReliableSession(true, journal));
+            c.setAutoReconnect(new ConnectOptions().setMaxAttempts(Integer.MAX_VALUE).setInitialBackoff(10).setMaxBackoff(50));
+
+            try (Server s = newServer(serverSession, received, latch)) {
+                assertTrue(c.connect(ADDRESS));
+                c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(-1));
+                while (received.isEmpty())
+                    assertDoesNotThrow(() -> Thread.sleep(10));
+            }
+
+            //The peer is down, so all frames end up in the segment files
+            for (int i = 0; i < count; i++)
+                c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(i));
+            assertTrue(journal.getFrameCount() >= count);
+            assertTrue(journal.getSegmentCount() > 1);
+            assertEquals(journal.getSegmentCount(), countSegmentFiles());
+
+            try (Server s = newServer(serverSession, received, latch)) {
+                assertTrue(assertDoesNotThrow(() -> latch.await(10, TimeUnit.SECONDS)));
+                assertEquals(IntStream.range(-1, count).boxed().collect(Collectors.toList()), received);
+
+                //Acknowledged segments are deleted
+                while (clientSession.getUnacknowledgedFrames() > 0)
+                    assertDoesNotThrow(() -> Thread.sleep(10));
+                assertEquals(0, journal.getRetainedBytes());
+                assertEquals(1, journal.getSegmentCount());
+                assertEquals(1, countSegmentFiles());
+            }
+        }
+    }
+
+    @Test
+    public void testReplayFromJournalAfterConnectionDrop() throws IOException {
+        int count = 3000;
+        try (Server s = new Server(); Client c = new Client(); OutboundJournal journal = new OutboundJournal(this.directory, 1024)) {
+            enableSession(s.getMessageProcessor(), new ReliableSession(false));
+            enableSession(c.getMessageProcessor(), new ReliableSession(true, journal));
+            c.setAutoReconnect(new ConnectOptions().setMaxAttempts(Integer.MAX_VALUE).setInitialBackoff(10));
+
+            CountDownLatch latch = new CountDownLatch(count);
+            List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+            s.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> {
+                received.add(m.getI());
+                latch.countDown();
+            });
+
+            s.bind(ADDRESS);
+            assertTrue(c.connect(ADDRESS));
+            for (int i = 0; i < count; i++) {
+                c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(i));
+                //Drop the connection a few times while messages are in flight
+                if (i % 1000 == 500) {
+                    assertDoesNotThrow(() -> Thread.sleep(5));
+                    s.closeClient();
+                }
+            }
+
+            assertTrue(assertDoesNotThrow(() -> latch.await(10, TimeUnit.SECONDS)), () -> "Received " + received.size());
+            assertEquals(IntStream.range(0, count).boxed().collect(Collectors.toList()), received);
+        }
+    }
+
+    @Test
+    public void testCloseDeletesSegments() throws IOException {
+        OutboundJournal journal = new OutboundJournal(this.directory, 64);
+        DefaultMessageProcessor processor = new DefaultMessageProcessor();
+        enableSession(processor, new ReliableSession(true, journal));
+        for (int i = 0; i < 100; i++)
+            processor.enqueueMessage(new SendMessageTest.IntMessage(i));
+        assertTrue(countSegmentFiles() > 1);
+
+        journal.close();
+        assertEquals(0, countSegmentFiles());
+        assertThrows(IllegalStateException.class, () -> processor.enqueueMessage(new SendMessageTest.IntMessage(0)));
+    }
+
+    private static Server newServer(ReliableSession session, List<Integer> received, CountDownLatch latch) {
+        Server s = new Server();
+        enableSession(s.getMessageProcessor(), session);
+        s.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> {
+            received.add(m.getI());
+            latch.countDown();
+        });
+        s.bind(ADDRESS);
+        return s;
+    }
+
+    private long countSegmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.count();
+        }
+    }
+
+    private static ReliableSession enableSession(Object processor, ReliableSession session) {
+        DefaultMessageProcessor messageProcessor = (DefaultMessageProcessor) processor;
+        messageProcessor.setReliableSession(session);
+        messageProcessor.registerMessage((short) 1, SendMessageTest.IntMessage.class);
+        return session;
+    }
+}
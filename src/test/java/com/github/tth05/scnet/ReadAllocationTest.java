@@ -0,0 +1,149 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.AbstractMessage;
+import com.github.tth05.scnet.message.Batch;
+import com.github.tth05.scnet.message.IMessageBus;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@Timeout(20)
+public class ReadAllocationTest {
+
+    private static final int FRAMES = 20000;
+
+    @Test
+    public void testNoAllocationPerReceivedFrame() throws IOException {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeAllocationMeasurable(threadBean);
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open();
+             SocketChannel sender = SocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            sender.connect(serverChannel.getLocalAddress());
+
+            try (SocketChannel receiver = serverChannel.accept(); Selector selector = Selector.open()) {
+                receiver.configureBlocking(false);
+                receiver.register(selector, SelectionKey.OP_READ);
+
+                DefaultMessageProcessor processor = new DefaultMessageProcessor();
+                //Small buffer to force many partial frames
+                processor.setReadBufferSize(100);
+                processor.registerMessage((short) 1, SmallMessage.class);
+                CountingMessageBus bus = new CountingMessageBus();
+
+                //Warmup
+                receiveFrames(sender, processor, selector, receiver, bus);
+
+                long allocatedBefore = threadBean.getCurrentThreadAllocatedBytes();
+                receiveFrames(sender, processor, selector, receiver, bus);
+                long allocated = threadBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+                assertEquals(FRAMES * 2, bus.count);
+                //Only the message instance itself is allowed to be allocated
+                assertTrue(allocated / FRAMES <= 24, () -> "Allocated " + allocated / FRAMES + " bytes per frame");
+            }
+        }
+    }
+
+    private static void receiveFrames(SocketChannel sender, DefaultMessageProcessor processor, Selector selector,
+                                      SocketChannel receiver, CountingMessageBus bus) throws IOException {
+        int target = bus.count + FRAMES;
+        Thread writer = new Thread(() -> {
+            ByteBuffer frames = ByteBuffer.allocate(FRAMES * 10);
+            for (int i = 0; i < FRAMES; i++)
+                frames.putShort((short) 1).putInt(4).putInt(i);
+            frames.flip();
+            assertDoesNotThrow(() -> {
+                while (frames.hasRemaining())
+                    sender.write(frames);
+            });
+        });
+        writer.start();
+
+        //Read like the event loop does once the channel was selected
+        while (bus.count < target) {
+            if (selector.select() < 1)
+                continue;
+
+            selector.selectedKeys().clear();
+            assertTrue(processor.read(receiver, bus));
+        }
+        assertDoesNotThrow(() -> writer.join());
+    }
+
+    static void assumeAllocationMeasurable(com.sun.management.ThreadMXBean threadBean) {
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    public static final class SmallMessage extends AbstractMessage {
+
+        private int i;
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            this.i = messageStream.readInt();
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeInt(this.i);
+        }
+    }
+
+    /**
+     * A message bus which only counts the received messages without allocating anything.
+     */
+    private static final class CountingMessageBus implements IMessageBus {
+
+        private int count;
+
+        @Override
+        public <T> void listenAlways(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener) {}
+
+        @Override
+        public <T> void listenOnce(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener) {}
+
+        @Override
+        public <T> void listenAlways(@NotNull Class<T> messageClass, @Nullable Object associatedObject, @NotNull Consumer<T> listener) {}
+
+        @Override
+        public <T> void listenOnce(@NotNull Class<T> messageClass, @Nullable Object associatedObject, @NotNull Consumer<T> listener) {}
+
+        @Override
+        public <T> void unregister(@NotNull Class<T> messageClass, @NotNull Consumer<T> listener) {}
+
+        @Override
+        public <T> void unregister(@NotNull Class<T> messageClass, @Nullable Object associatedObject) {}
+
+        @Override
+        public <T extends Record> void listenBatches(@NotNull Class<T> recordClass, @NotNull Consumer<Batch<T>> listener) {}
+
+        @Override
+        public <T extends Record> void unregisterBatches(@NotNull Class<T> recordClass, @NotNull Consumer<Batch<T>> listener) {}
+
+        @Override
+        public void post(@NotNull Object message) {
+            this.count++;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.AbstractMessage;
+import com.github.tth05.scnet.message.impl.RecordCodec;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class RecordCodecTest extends AbstractSCNetTest {
+
+    @Test
+    public void testSameOutputAsHandWrittenMessage() {
+        Player player = new Player(true, (byte) -3, (short) 300, '\u00e4', 123456, 1.5f, Long.MIN_VALUE, Math.PI,
+                "H\u00e4llo", Team.BLUE, new Position(1, 2, 3), new byte[]{1, 2}, new int[]{3, 4, 5}, new double[]{6.5});
+
+        ByteBufferOutputStream recordStream = new ByteBufferOutputStream();
+        RecordCodec.of(Player.class).write(player, recordStream);
+        ByteBufferOutputStream handWrittenStream = new ByteBufferOutputStream();
+        new HandWrittenPlayerMessage(player).write(handWrittenStream);
+
+        ByteBuffer written = recordStream.getBuffer().flip();
+        assertEquals(handWrittenStream.getBuffer().flip(), written);
+
+        Player read = RecordCodec.of(Player.class).read(new ByteBufferInputStream(written));
+        assertFalse(written.hasRemaining());
+        assertEquals(player.name(), read.name());
+        assertEquals(player.c(), read.c());
+        assertEquals(player.d(), read.d());
+        assertEquals(Team.BLUE, read.team());
+        assertEquals(new Position(1, 2, 3), read.position());
+        assertArrayEquals(player.bytes(), read.bytes());
+        assertArrayEquals(player.ints(), read.ints());
+        assertArrayEquals(player.doubles(), read.doubles());
+    }
+
+    @Test
+    public void testCodecIsCached() {
+        assertSame(RecordCodec.of(Position.class), RecordCodec.of(Position.class));
+        assertEquals(Position.class, RecordCodec.of(Position.class).getRecordClass());
+    }
+
+    @Test
+    public void testUnsupportedRecords() {
+        assertThrows(IllegalArgumentException.class, () -> RecordCodec.of(UnsupportedRecord.class));
+        assertThrows(IllegalArgumentException.class, () -> RecordCodec.of(SelfContainingRecord.class));
+    }
+
+    @Test
+    public void testSendRecord() {
+        withClientAndServer((s, c) -> {
+            c.getMessageProcessor().registerRecord((short) 1, Position.class);
+            s.getMessageProcessor().registerRecord((short) 1, Position.class);
+            c.getMessageProcessor().registerMessage((short) 2, SendMessageTest.IntMessage.class);
+            s.getMessageProcessor().registerMessage((short) 2, SendMessageTest.IntMessage.class);
+            assertThrows(IllegalArgumentException.class, () -> s.getMessageProcessor().registerRecord((short) 2, Position.class));
+            assertTrue(c.getMessageProcessor().canSend(Position.class));
+
+            AtomicReference<Position> received = new AtomicReference<>();
+            CountDownLatch latch = new CountDownLatch(2);
+            s.getMessageBus().listenAlways(Position.class, (p) -> {
+                received.set(p);
+                latch.countDown();
+            });
+            s.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> latch.countDown());
+
+            c.getMessageProcessor().enqueueMessage(new Position(-1, 0, 1));
+            c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(5));
+            assertTrue(assertDoesNotThrow(() -> latch.await(5, TimeUnit.SECONDS)));
+            assertEquals(new Position(-1, 0, 1), received.get());
+        });
+    }
+
+    public enum Team {
+        RED, BLUE
+    }
+
+    public record Position(int x, int y, int z) {
+    }
+
+    public record Player(boolean bool, byte b, short s, char c, int i, float f, long l, double d, String name,
+                         Team team, Position position, byte[] bytes, int[] ints, double[] doubles) {
+    }
+
+    private record UnsupportedRecord(List<String> strings) {
+    }
+
+    private record SelfContainingRecord(int i, SelfContainingRecord next) {
+    }
+
+    public static class HandWrittenPlayerMessage extends AbstractMessage {
+
+        private final Player player;
+
+        public HandWrittenPlayerMessage(Player player) {
+            this.player = player;
+        }
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeBoolean(this.player.bool());
+            messageStream.writeByte(this.player.b());
+            messageStream.writeShort(this.player.s());
+            messageStream.writeShort((short) this.player.c());
+            messageStream.writeInt(this.player.i());
+            messageStream.writeInt(Float.floatToRawIntBits(this.player.f()));
+            messageStream.writeLong(this.player.l());
+            messageStream.writeLong(Double.doubleToRawLongBits(this.player.d()));
+            messageStream.writeString(this.player.name());
+            messageStream.writeInt(this.player.team().ordinal());
+            messageStream.writeInt(this.player.position().x());
+            messageStream.writeInt(this.player.position().y());
+            messageStream.writeInt(this.player.position().z());
+            messageStream.writeInt(this.player.bytes().length);
+            messageStream.writeByteArray(this.player.bytes());
+            messageStream.writeInt(this.player.ints().length);
+            for (int i : this.player.ints())
+                messageStream.writeInt(i);
+            messageStream.writeInt(this.player.doubles().length);
+            for (double d : this.player.doubles())
+                messageStream.writeLong(Double.doubleToRawLongBits(d));
+        }
+    }
+}
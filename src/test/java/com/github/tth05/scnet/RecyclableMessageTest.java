@@ -0,0 +1,136 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.AbstractRecyclableMessage;
+import com.github.tth05.scnet.message.MessagePool;
+import com.github.tth05.scnet.message.impl.DefaultMessageBus;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.function.Executable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class RecyclableMessageTest extends AbstractSCNetTest {
+
+    @Test
+    public void testPoolReusesReleasedInstances() {
+        MessagePool<TelemetryMessage> pool = new MessagePool<>(TelemetryMessage::new, 1);
+
+        TelemetryMessage first = pool.acquire();
+        first.release();
+        assertEquals(1, pool.getIdleCount());
+        assertSame(first, pool.acquire());
+
+        TelemetryMessage second = pool.acquire();
+        assertNotSame(first, second);
+        first.release();
+        second.release();
+        //Capacity is exceeded, second instance is dropped
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void testRetainedInstanceIsNotRecycled() {
+        MessagePool<TelemetryMessage> pool = new MessagePool<>(TelemetryMessage::new);
+
+        TelemetryMessage message = pool.acquire();
+        message.retain();
+        message.release();
+        assertEquals(0, pool.getIdleCount());
+        message.release();
+        assertEquals(1, pool.getIdleCount());
+
+        assertThrows(IllegalStateException.class, message::release);
+        assertThrows(IllegalStateException.class, message::retain);
+    }
+
+    @Test
+    public void testReleaseWithoutPoolIsNoop() {
+        TelemetryMessage message = new TelemetryMessage(1);
+        assertDoesNotThrow(message::retain);
+        assertDoesNotThrow(message::release);
+        assertDoesNotThrow(message::release);
+    }
+
+    @Test
+    public void testReceivedMessagesAreRecycled() {
+        withClientAndServer((s, c) -> {
+            c.getMessageProcessor().registerMessage((short) 1, TelemetryMessage.class);
+            s.getMessageProcessor().registerMessage((short) 1, TelemetryMessage.class);
+
+            int count = 1000;
+            Set<TelemetryMessage> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+            AtomicInteger sum = new AtomicInteger();
+            CountDownLatch latch = new CountDownLatch(count);
+            s.getMessageBus().listenAlways(TelemetryMessage.class, (m) -> {
+                instances.add(m);
+                sum.addAndGet(m.value);
+                latch.countDown();
+            });
+
+            for (int i = 0; i < count; i++)
+                c.getMessageProcessor().enqueueMessage(new TelemetryMessage(i));
+
+            assertDoesNotThrow((Executable) latch::await);
+            assertEquals(count * (count - 1) / 2, sum.get());
+            //Listener consumes each message synchronously, so a single instance is enough
+            assertEquals(1, instances.size());
+        });
+    }
+
+    @Test
+    public void testReleaseWithoutRetainDoesNotBreakReading() throws IOException {
+        DefaultMessageProcessor processor = new DefaultMessageProcessor();
+        processor.registerMessage((short) 1, TelemetryMessage.class);
+        DefaultMessageBus bus = new DefaultMessageBus();
+        List<Integer> values = new ArrayList<>();
+        bus.listenAlways(TelemetryMessage.class, (m) -> {
+            values.add(m.value);
+            //Wrong, the processor still owns the message
+            m.release();
+        });
+
+        ByteBuffer frames = ByteBuffer.allocate(20);
+        frames.putShort((short) 1).putInt(4).putInt(1);
+        frames.putShort((short) 1).putInt(4).putInt(2);
+        assertTrue(receiveFrames(processor, frames.flip(), bus));
+        assertEquals(Arrays.asList(1, 2), values);
+    }
+
+    public static final class TelemetryMessage extends AbstractRecyclableMessage {
+
+        private int value;
+
+        public TelemetryMessage() {
+        }
+
+        public TelemetryMessage(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            this.value = messageStream.readInt();
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeInt(this.value);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import com.github.tth05.scnet.message.impl.ReliableSession;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(20)
+public class ReliableSessionTest extends AbstractSCNetTest {
+
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("localhost", 6977);
+
+    @Test
+    public void testReplayAfterConnectionDrop() {
+        int count = 3000;
+        try (Server s = new Server(); Client c = new Client()) {
+            ReliableSession serverSession = enableSession(s.getMessageProcessor(), false, ReliableSession.DEFAULT_RETRANSMIT_BUFFER_SIZE);
+            ReliableSession clientSession = enableSession(c.getMessageProcessor(), true, ReliableSession.DEFAULT_RETRANSMIT_BUFFER_SIZE);
+            c.setAutoReconnect(new ConnectOptions().setMaxAttempts(Integer.MAX_VALUE).setInitialBackoff(10));
+
+            //Echo everything back
+            List<Integer> serverReceived = Collections.synchronizedList(new ArrayList<>());
+            s.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> {
+                serverReceived.add(m.getI());
+                s.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(m.getI()));
+            });
+            List<Integer> clientReceived = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch latch = new CountDownLatch(count);
+            c.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> {
+                clientReceived.add(m.getI());
+                latch.countDown();
+            });
+
+            AtomicInteger disconnects = new AtomicInteger();
+            c.addConnectionListener(new IConnectionListener() {
+                @Override
+                public void onConnected() {}
+
+                @Override
+                public void onDisconnected() {
+                    disconnects.incrementAndGet();
+                }
+            });
+
+            s.bind(ADDRESS);
+            assertTrue(c.connect(ADDRESS));
+            long sessionId = clientSession.getSessionId();
+
+            for (int i = 0; i < count; i++) {
+                c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(i));
+                //Drop the connection a few times while messages are in flight
+                if (i % 1000 == 500) {
+                    assertDoesNotThrow(() -> Thread.sleep(5));
+                    s.closeClient();
+                }
+            }
+
+            assertTrue(assertDoesNotThrow(() -> latch.await(10, TimeUnit.SECONDS)), () -> "Received " + clientReceived.size());
+            assertTrue(disconnects.get() >= 1);
+            List<Integer> expected = IntStream.range(0, count).boxed().collect(Collectors.toList());
+            //Nothing was lost or duplicated
+            assertEquals(expected, serverReceived);
+            assertEquals(expected, clientReceived);
+            assertEquals(sessionId, clientSession.getSessionId());
+            assertEquals(sessionId, serverSession.getSessionId());
+        }
+    }
+
+    @Test
+    public void testBoundedRetransmitBuffer() {
+        int count = 2000;
+        try (Server s = new Server(); Client c = new Client()) {
+            enableSession(s.getMessageProcessor(), false, ReliableSession.DEFAULT_RETRANSMIT_BUFFER_SIZE);
+            ReliableSession clientSession = enableSession(c.getMessageProcessor(), true, 512);
+
+            CountDownLatch latch = new CountDownLatch(count);
+            List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+            s.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> {
+                received.add(m.getI());
+                latch.countDown();
+            });
+
+            s.bind(ADDRESS);
+            assertTrue(c.connect(ADDRESS));
+            for (int i = 0; i < count; i++)
+                c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(i));
+
+            assertTrue(assertDoesNotThrow(() -> latch.await(10, TimeUnit.SECONDS)));
+            assertEquals(IntStream.range(0, count).boxed().collect(Collectors.toList()), received);
+            assertEquals(512, clientSession.getRetransmitBufferSize());
+        }
+    }
+
+    @Test
+    public void testOversizedFrameIsNotRetainedForever() {
+        try (Server s = new Server(); Client c = new Client()) {
+            enableSession(s.getMessageProcessor(), false, ReliableSession.DEFAULT_RETRANSMIT_BUFFER_SIZE);
+            ReliableSession clientSession = enableSession(c.getMessageProcessor(), true, 512);
+            c.getMessageProcessor().registerMessage((short) 2, SendMessageTest.LargeMessage.class);
+            s.getMessageProcessor().registerMessage((short) 2, SendMessageTest.LargeMessage.class);
+
+            CountDownLatch latch = new CountDownLatch(2);
+            s.getMessageBus().listenAlways(SendMessageTest.LargeMessage.class, (m) -> latch.countDown());
+            s.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> latch.countDown());
+
+            s.bind(ADDRESS);
+            assertTrue(c.connect(ADDRESS));
+            c.getMessageProcessor().enqueueMessage(new SendMessageTest.LargeMessage(1000));
+            c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(1));
+            assertTrue(assertDoesNotThrow(() -> latch.await(5, TimeUnit.SECONDS)));
+
+            //The buffer only grows while the large frame is not acknowledged
+            while (clientSession.getRetransmitBufferSize() != 512)
+                assertDoesNotThrow(() -> Thread.sleep(10));
+        }
+    }
+
+    //The client is closed on purpose before the end of the try block
+    @SuppressWarnings("try")
+    @Test
+    public void testCloseStartsNewSession() {
+        try (Server s = new Server(); Client c = new Client()) {
+            ReliableSession serverSession = enableSession(s.getMessageProcessor(), false, ReliableSession.DEFAULT_RETRANSMIT_BUFFER_SIZE);
+            ReliableSession clientSession = enableSession(c.getMessageProcessor(), true, ReliableSession.DEFAULT_RETRANSMIT_BUFFER_SIZE);
+
+            CountDownLatch latch = new CountDownLatch(1);
+            CountDownLatch latch2 = new CountDownLatch(1);
+            s.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> (m.getI() == 1 ? latch : latch2).countDown());
+
+            s.bind(ADDRESS);
+            assertTrue(c.connect(ADDRESS));
+            c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(1));
+            assertTrue(assertDoesNotThrow(() -> latch.await(5, TimeUnit.SECONDS)));
+            long sessionId = clientSession.getSessionId();
+
+            c.close();
+            assertTrue(c.connect(ADDRESS));
+            c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(2));
+
+            assertTrue(assertDoesNotThrow(() -> latch2.await(5, TimeUnit.SECONDS)));
+            assertNotEquals(sessionId, clientSession.getSessionId());
+            assertEquals(clientSession.getSessionId(), serverSession.getSessionId());
+        }
+    }
+
+    @Test
+    public void testServerRestartStartsNewSession() {
+        try (Client c = new Client()) {
+            ReliableSession clientSession = enableSession(c.getMessageProcessor(), true, ReliableSession.DEFAULT_RETRANSMIT_BUFFER_SIZE);
+            c.getMessageProcessor().registerMessage((short) 2, StringTableTest.TagMessage.class);
+            c.setAutoReconnect(new ConnectOptions().setMaxAttempts(Integer.MAX_VALUE).setInitialBackoff(10));
+            CountDownLatch disconnected = new CountDownLatch(1);
+            c.addConnectionListener(new IConnectionListener() {
+                @Override
+                public void onConnected() {}
+
+                @Override
+                public void onDisconnected() {
+                    disconnected.countDown();
+                }
+            });
+            long sessionId;
+
+            try (Server s = new Server()) {
+                enableSession(s.getMessageProcessor(), false, ReliableSession.DEFAULT_RETRANSMIT_BUFFER_SIZE);
+                s.getMessageProcessor().registerMessage((short) 2, StringTableTest.TagMessage.class);
+                CountDownLatch latch = new CountDownLatch(2);
+                s.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> latch.countDown());
+                s.getMessageBus().listenAlways(StringTableTest.TagMessage.class, (m) -> latch.countDown());
+
+                s.bind(ADDRESS);
+                assertTrue(c.connect(ADDRESS));
+                c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(1));
+                //Defines the String in the table of the first session
+                c.getMessageProcessor().enqueueMessage(new StringTableTest.TagMessage("tag", 1));
+                assertTrue(assertDoesNotThrow(() -> latch.await(5, TimeUnit.SECONDS)));
+                sessionId = clientSession.getSessionId();
+            }
+
+            //Frames written before the client noticed would be dropped with the retransmit buffer of the old session
+            assertTrue(assertDoesNotThrow(() -> disconnected.await(5, TimeUnit.SECONDS)));
+            //The new server does not know the session and has an empty String table
+            try (Server s = new Server()) {
+                ReliableSession serverSession = enableSession(s.getMessageProcessor(), false, ReliableSession.DEFAULT_RETRANSMIT_BUFFER_SIZE);
+                s.getMessageProcessor().registerMessage((short) 2, StringTableTest.TagMessage.class);
+                List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+                CountDownLatch latch = new CountDownLatch(2);
+                s.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> {
+                    received.add(m.getI());
+                    latch.countDown();
+                });
+                s.getMessageBus().listenAlways(StringTableTest.TagMessage.class, (m) -> latch.countDown());
+                CountDownLatch clientLatch = new CountDownLatch(1);
+                c.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> clientLatch.countDown());
+
+                s.bind(ADDRESS);
+                c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(2));
+                c.getMessageProcessor().enqueueMessage(new StringTableTest.TagMessage("tag", 2));
+                assertTrue(assertDoesNotThrow(() -> latch.await(10, TimeUnit.SECONDS)));
+                s.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(3));
+                assertTrue(assertDoesNotThrow(() -> clientLatch.await(5, TimeUnit.SECONDS)));
+
+                //Frames of the first session were not replayed
+                assertEquals(Collections.singletonList(2), received);
+                assertFalse(clientSession.isResumed());
+                assertEquals(sessionId, clientSession.getSessionId());
+                assertEquals(sessionId, serverSession.getSessionId());
+            }
+        }
+    }
+
+    private static ReliableSession enableSession(Object processor, boolean initiator, int retransmitBufferSize) {
+        ReliableSession session = new ReliableSession(initiator, retransmitBufferSize);
+        DefaultMessageProcessor messageProcessor = (DefaultMessageProcessor) processor;
+        messageProcessor.setReliableSession(session);
+        messageProcessor.registerMessage((short) 1, SendMessageTest.IntMessage.class);
+        return session;
+    }
+}
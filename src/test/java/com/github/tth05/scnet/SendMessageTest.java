@@ -1,6 +1,8 @@
 package com.github.tth05.scnet;
 
 import com.github.tth05.scnet.message.AbstractMessage;
+import com.github.tth05.scnet.message.impl.DefaultMessageBus;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
 import com.github.tth05.scnet.util.ByteBufferInputStream;
 import com.github.tth05.scnet.util.ByteBufferOutputStream;
 import org.jetbrains.annotations.NotNull;
@@ -8,6 +10,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.function.Executable;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadLocalRandom;
@@ -102,6 +108,83 @@ public class SendMessageTest extends AbstractSCNetTest {
         });
     }
 
+    @Test
+    public void testOversizedFrameIsRejected() throws IOException {
+        DefaultMessageProcessor processor = new DefaultMessageProcessor();
+        processor.registerMessage((short) 1, IntMessage.class);
+        //The end of the frame would overflow an int
+        assertFalse(receiveFrames(processor, ByteBuffer.allocate(6).putShort((short) 1).putInt(Integer.MAX_VALUE - 1).flip()));
+
+        processor.setMaxFrameSize(3);
+        assertFalse(receiveFrames(processor, ByteBuffer.allocate(10).putShort((short) 1).putInt(4).putInt(5).flip()));
+        processor.setMaxFrameSize(4);
+        assertTrue(receiveFrames(processor, ByteBuffer.allocate(10).putShort((short) 1).putInt(4).putInt(5).flip()));
+        assertThrows(IllegalArgumentException.class, () -> processor.setMaxFrameSize(0));
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testDeprecatedProcessDelegatesToReadAndWrite() throws IOException {
+        withRawPeer((sender, receiver) -> {
+            DefaultMessageProcessor senderProcessor = new DefaultMessageProcessor();
+            DefaultMessageProcessor receiverProcessor = new DefaultMessageProcessor();
+            senderProcessor.registerMessage((short) 1, IntMessage.class);
+            receiverProcessor.registerMessage((short) 1, IntMessage.class);
+
+            DefaultMessageBus bus = new DefaultMessageBus();
+            AtomicInteger messagePayload = new AtomicInteger(-1);
+            bus.listenAlways(IntMessage.class, (i) -> messagePayload.set(i.i));
+
+            try (Selector senderSelector = Selector.open(); Selector receiverSelector = Selector.open()) {
+                sender.configureBlocking(false).register(senderSelector, SelectionKey.OP_WRITE);
+                receiver.configureBlocking(false).register(receiverSelector, SelectionKey.OP_READ);
+
+                senderProcessor.enqueueMessage(new IntMessage(5));
+                assertTrue(senderProcessor.process(senderSelector, sender, bus));
+                while (messagePayload.get() == -1)
+                    assertTrue(receiverProcessor.process(receiverSelector, receiver, bus));
+            }
+            assertEquals(5, messagePayload.get());
+        });
+    }
+
+    @Test
+    public void testSkipMessageWithoutListener() {
+        withClientAndServer((s, c) -> {
+            c.getMessageProcessor().registerMessage((short) 1, UnobservedMessage.class);
+            s.getMessageProcessor().registerMessage((short) 1, UnobservedMessage.class);
+            c.getMessageProcessor().registerMessage((short) 2, IntMessage.class);
+            s.getMessageProcessor().registerMessage((short) 2, IntMessage.class);
+
+            CountDownLatch latch = new CountDownLatch(1);
+            s.getMessageBus().listenAlways(IntMessage.class, (i) -> latch.countDown());
+
+            UnobservedMessage.READ_COUNT.set(0);
+            for (int i = 0; i < 10; i++)
+                c.getMessageProcessor().enqueueMessage(new UnobservedMessage());
+            c.getMessageProcessor().enqueueMessage(new IntMessage(5));
+
+            //The following message arrived, therefore the skipped payloads were consumed correctly
+            assertDoesNotThrow((Executable) latch::await);
+            assertEquals(0, UnobservedMessage.READ_COUNT.get());
+        });
+    }
+
+    public static final class UnobservedMessage extends AbstractMessage {
+
+        private static final AtomicInteger READ_COUNT = new AtomicInteger();
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            READ_COUNT.incrementAndGet();
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeLong(Long.MAX_VALUE);
+        }
+    }
+
     public static final class LargeMessage extends AbstractMessage {
 
         private int size;
@@ -143,6 +226,10 @@ public class SendMessageTest extends AbstractSCNetTest {
             this.i = i;
         }
 
+        public int getI() {
+            return this.i;
+        }
+
         @Override
         public void read(@NotNull ByteBufferInputStream messageStream) {
             for (int j = 0; j < 10; j++) {
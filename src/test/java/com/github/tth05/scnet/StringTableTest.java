@@ -0,0 +1,153 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.AbstractMessage;
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import com.github.tth05.scnet.util.ByteBufferInputStream;
+import com.github.tth05.scnet.util.ByteBufferOutputStream;
+import com.github.tth05.scnet.util.StringTable;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class StringTableTest extends AbstractSCNetTest {
+
+    @Test
+    public void testStreamsWithAndWithoutTable() {
+        StringTable sentStrings = new StringTable();
+        ByteBufferOutputStream outputStream = new ByteBufferOutputStream(4);
+        outputStream.writeVarInt(300);
+        outputStream.writeVarInt(-1);
+        outputStream.writeInternedString("literal");
+        outputStream.setStringTable(sentStrings);
+        outputStream.writeInternedString("k\u00e4y");
+        outputStream.writeInternedString("k\u00e4y");
+        outputStream.writeInternedString("x".repeat(StringTable.MAX_STRING_LENGTH + 1));
+        assertEquals(1, sentStrings.size());
+
+        StringTable receivedStrings = new StringTable();
+        assertTrue(receivedStrings.define("k\u00e4y"));
+        ByteBufferInputStream inputStream = new ByteBufferInputStream(outputStream.getBuffer().flip());
+        assertEquals(300, inputStream.readVarInt());
+        assertEquals(-1, inputStream.readVarInt());
+        assertEquals("literal", inputStream.readInternedString());
+        //Unknown without a table
+        int position = outputStream.getBuffer().position();
+        assertThrows(IllegalStateException.class, inputStream::readInternedString);
+        outputStream.getBuffer().position(position);
+
+        inputStream.setStringTable(receivedStrings);
+        String first = inputStream.readInternedString();
+        assertEquals("k\u00e4y", first);
+        assertSame(first, inputStream.readInternedString());
+        assertEquals("x".repeat(StringTable.MAX_STRING_LENGTH + 1), inputStream.readInternedString());
+        assertEquals(0, inputStream.remaining());
+    }
+
+    @Test
+    public void testStringsAreSentOnce() throws IOException {
+        withRawPeer((sender, receiver) -> {
+            DefaultMessageProcessor processor = new DefaultMessageProcessor();
+            processor.registerMessage((short) 1, TagMessage.class);
+            processor.enqueueMessage(new TagMessage("minecraft:zombie", 1));
+            processor.enqueueMessage(new TagMessage("minecraft:zombie", 2));
+            assertTrue(processor.write(sender));
+
+            ByteBuffer frames = ByteBuffer.allocate(6 + 4 + 16 + (6 + 1 + 4) * 2);
+            readFully(receiver, frames);
+            frames.flip();
+
+            //The definition, followed by both messages which only contain the id
+            assertEquals(-6, frames.getShort());
+            assertEquals(4 + 16, frames.getInt());
+            frames.position(frames.position() + 4 + 16);
+            for (int i = 1; i <= 2; i++) {
+                assertEquals(1, frames.getShort());
+                assertEquals(5, frames.getInt());
+                assertEquals(1, frames.get());
+                assertEquals(i, frames.getInt());
+            }
+        });
+    }
+
+    @Test
+    public void testReceiverReturnsSameInstance() {
+        int count = 50;
+        withClientAndServer((s, c) -> {
+            c.getMessageProcessor().registerMessage((short) 1, TagMessage.class);
+            c.getMessageProcessor().registerMessage((short) 2, OtherTagMessage.class);
+            s.getMessageProcessor().registerMessage((short) 1, TagMessage.class);
+            s.getMessageProcessor().registerMessage((short) 2, OtherTagMessage.class);
+
+            List<TagMessage> received = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch latch = new CountDownLatch(count);
+            //Nobody listens for TagMessage, its definitions have to be processed anyway
+            s.getMessageBus().listenAlways(OtherTagMessage.class, (m) -> {
+                received.add(m);
+                latch.countDown();
+            });
+
+            c.getMessageProcessor().enqueueMessage(new TagMessage("shared", -1));
+            for (int i = 0; i < count; i++) {
+                //A new instance every time
+                String tag = new String(i % 2 == 0 ? "shared" : "type:" + (i % 5));
+                c.getMessageProcessor().enqueueMessage(new OtherTagMessage(tag, i));
+            }
+
+            assertTrue(assertDoesNotThrow(() -> latch.await(5, TimeUnit.SECONDS)));
+            for (int i = 0; i < count; i++) {
+                TagMessage message = received.get(i);
+                assertEquals(i, message.value);
+                assertEquals(i % 2 == 0 ? "shared" : "type:" + (i % 5), message.tag);
+                if (i >= 10)
+                    assertSame(received.get(i - 10).tag, message.tag);
+            }
+        });
+    }
+
+    public static class TagMessage extends AbstractMessage {
+
+        private String tag;
+        private int value;
+
+        public TagMessage() {
+        }
+
+        public TagMessage(String tag, int value) {
+            this.tag = tag;
+            this.value = value;
+        }
+
+        @Override
+        public void read(@NotNull ByteBufferInputStream messageStream) {
+            this.tag = messageStream.readInternedString();
+            this.value = messageStream.readInt();
+        }
+
+        @Override
+        public void write(@NotNull ByteBufferOutputStream messageStream) {
+            messageStream.writeInternedString(this.tag);
+            messageStream.writeInt(this.value);
+        }
+    }
+
+    public static class OtherTagMessage extends TagMessage {
+
+        public OtherTagMessage() {
+        }
+
+        public OtherTagMessage(String tag, int value) {
+            super(tag, value);
+        }
+    }
+}
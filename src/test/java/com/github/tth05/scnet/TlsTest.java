@@ -0,0 +1,179 @@
+package com.github.tth05.scnet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class TlsTest extends AbstractSCNetTest {
+
+    @Test
+    public void testMessagesOverTls() {
+        int count = 200;
+        SSLContext context = createContext();
+        try (Server s = new Server(); Client c = new Client()) {
+            s.setTlsOptions(new TlsOptions(context));
+            c.setTlsOptions(new TlsOptions(context).setEndpointIdentification(true));
+            s.getMessageProcessor().registerMessage((short) 1, SendMessageTest.IntMessage.class);
+            s.getMessageProcessor().registerMessage((short) 2, MessageStreamTest.BulkMessage.class);
+            c.getMessageProcessor().registerMessage((short) 1, SendMessageTest.IntMessage.class);
+            c.getMessageProcessor().registerMessage((short) 2, MessageStreamTest.BulkMessage.class);
+
+            CountDownLatch connected = new CountDownLatch(2);
+            s.addConnectionListener(new IConnectionListener() {
+                @Override
+                public void onConnected() {
+                    connected.countDown();
+                }
+
+                @Override
+                public void onDisconnected() {
+                }
+            });
+            c.addConnectionListener(new IConnectionListener() {
+                @Override
+                public void onConnected() {
+                    connected.countDown();
+                }
+
+                @Override
+                public void onDisconnected() {
+                }
+            });
+
+            List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch latch = new CountDownLatch(count + 1);
+            s.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> {
+                received.add(m.getI());
+                latch.countDown();
+            });
+            s.getMessageBus().listenAlways(MessageStreamTest.BulkMessage.class, (m) -> {
+                assertTrue(m.isValid());
+                latch.countDown();
+            });
+
+            s.bind(new InetSocketAddress(6984));
+            assertTrue(c.connect(new InetSocketAddress("localhost", 6984)));
+            //Enqueued before the handshake completed
+            for (int i = 0; i < count; i++)
+                c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(i));
+            //Spans many records
+            c.getMessageProcessor().enqueueMessage(new MessageStreamTest.BulkMessage(1, 1 << 20));
+
+            assertTrue(assertDoesNotThrow(() -> connected.await(5, TimeUnit.SECONDS)));
+            assertTrue(assertDoesNotThrow(() -> latch.await(8, TimeUnit.SECONDS)));
+            assertEquals(IntStream.range(0, count).boxed().collect(Collectors.toList()), received);
+            assertNotNull(c.getTlsSession());
+            assertNotNull(getClientFromServer(s).getTlsSession());
+        }
+    }
+
+    @Test
+    public void testSessionIsResumed() {
+        SSLContext context = createContext();
+        try (Server s = new Server(); Client c = new Client()) {
+            s.setTlsOptions(new TlsOptions(context));
+            //TLS 1.2 keeps the session id when resuming
+            c.setTlsOptions(new TlsOptions(context).setProtocols("TLSv1.2"));
+            s.bind(new InetSocketAddress(6985));
+
+            assertTrue(c.connect(new InetSocketAddress("localhost", 6985)));
+            SSLSession session = awaitSession(c);
+            assertTrue(c.connect(new InetSocketAddress("localhost", 6985)));
+            SSLSession resumedSession = awaitSession(c);
+
+            assertArrayEquals(session.getId(), resumedSession.getId());
+            assertEquals("TLSv1.2", resumedSession.getProtocol());
+        }
+    }
+
+    //The client is closed on purpose before the end of the try block
+    @SuppressWarnings("try")
+    @Test
+    public void testBuffersAreReused() {
+        SSLContext context = createContext();
+        try (Server s = new Server(); Client c = new Client()) {
+            s.setTlsOptions(new TlsOptions(context));
+            c.setTlsOptions(new TlsOptions(context));
+            s.bind(new InetSocketAddress(6986));
+
+            int pooledBuffers = -1;
+            for (int i = 0; i < 3; i++) {
+                assertTrue(c.connect(new InetSocketAddress("localhost", 6986)));
+                awaitSession(c);
+                c.close();
+                //Wait for both sides to release their buffers
+                for (int j = 0; j < 100 && (s.isClientConnected() || TlsChannel.getPooledBufferCount() < 6); j++)
+                    assertDoesNotThrow(() -> Thread.sleep(20));
+
+                //The connections took their buffers from the pool instead of allocating new ones
+                if (pooledBuffers != -1)
+                    assertEquals(pooledBuffers, TlsChannel.getPooledBufferCount());
+                pooledBuffers = TlsChannel.getPooledBufferCount();
+            }
+        }
+    }
+
+    @Test
+    public void testPlaintextClientIsDisconnected() {
+        try (Server s = new Server(); Client c = new Client()) {
+            s.setTlsOptions(new TlsOptions(createContext()));
+            c.getMessageProcessor().registerMessage((short) 1, SendMessageTest.IntMessage.class);
+            s.bind(new InetSocketAddress(6987));
+
+            assertTrue(c.connect(new InetSocketAddress("localhost", 6987)));
+            c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(1));
+
+            for (int i = 0; i < 100 && c.isConnected(); i++)
+                assertDoesNotThrow(() -> Thread.sleep(20));
+            assertFalse(c.isConnected());
+            assertFalse(s.isClientConnected());
+        }
+    }
+
+    private static SSLSession awaitSession(Client client) {
+        for (int i = 0; i < 250 && client.getTlsSession() == null; i++)
+            assertDoesNotThrow(() -> Thread.sleep(20));
+        SSLSession session = client.getTlsSession();
+        assertNotNull(session);
+        return session;
+    }
+
+    /**
+     * @return a context which uses the self-signed test certificate for localhost as key and as trusted certificate
+     */
+    static SSLContext createContext() {
+        return assertDoesNotThrow(() -> {
+            char[] password = "changeit".toCharArray();
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            try (InputStream in = TlsTest.class.getResourceAsStream("/tls/keystore.p12")) {
+                keyStore.load(in, password);
+            }
+
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keyStore, password);
+            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(keyStore);
+
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+            return context;
+        });
+    }
+}
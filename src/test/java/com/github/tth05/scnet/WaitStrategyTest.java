@@ -0,0 +1,65 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.wait.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.nio.channels.Selector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(20)
+public class WaitStrategyTest extends AbstractSCNetTest {
+
+    @Test
+    public void testRoundTripWithEachStrategy() {
+        IWaitStrategy[] strategies = {
+                new BusySpinWaitStrategy(),
+                new YieldingWaitStrategy(),
+                new BackoffWaitStrategy(),
+                new BlockingWaitStrategy(),
+                new SleepingWaitStrategy(1)
+        };
+
+        for (IWaitStrategy strategy : strategies) {
+            withClientAndServer((s, c) -> {
+                s.getMessageProcessor().setWaitStrategy(strategy);
+                c.getMessageProcessor().setWaitStrategy(strategy);
+                s.getMessageProcessor().registerMessage((short) 1, SendMessageTest.IntMessage.class);
+                c.getMessageProcessor().registerMessage((short) 1, SendMessageTest.IntMessage.class);
+
+                //Echo everything back
+                s.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> s.getMessageProcessor().enqueueMessage(m));
+
+                int count = 50;
+                CountDownLatch latch = new CountDownLatch(count);
+                c.getMessageBus().listenAlways(SendMessageTest.IntMessage.class, (m) -> latch.countDown());
+                for (int i = 0; i < count; i++)
+                    c.getMessageProcessor().enqueueMessage(new SendMessageTest.IntMessage(i));
+
+                assertTrue(assertDoesNotThrow(() -> latch.await(2, TimeUnit.SECONDS)), strategy.getClass().getSimpleName());
+            });
+        }
+    }
+
+    @Test
+    public void testBackoffWaitStrategyParksWhenIdle() {
+        BackoffWaitStrategy strategy = new BackoffWaitStrategy(0, 0, TimeUnit.MILLISECONDS.toNanos(20), TimeUnit.MILLISECONDS.toNanos(20));
+        assertDoesNotThrow(() -> {
+            try (Selector selector = Selector.open()) {
+                long start = System.nanoTime();
+                assertEquals(0, strategy.select(selector, 5));
+                assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(15));
+            }
+        });
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new BlockingWaitStrategy(-1));
+        assertThrows(IllegalArgumentException.class, () -> new SleepingWaitStrategy(-1));
+        assertThrows(IllegalArgumentException.class, () -> new BackoffWaitStrategy(1, 1, 10, 5));
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.tth05.scnet;
+
+import com.github.tth05.scnet.message.impl.DefaultMessageProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+public class WriteCoalescingTest extends AbstractSCNetTest {
+
+    @Test
+    public void testThresholdAndFlush() throws IOException {
+        withRawPeer((sender, receiver) -> {
+            receiver.configureBlocking(false);
+            DefaultMessageProcessor processor = new DefaultMessageProcessor();
+            processor.registerRecord((short) 1, IntRecord.class);
+            //A frame of an IntRecord is 10 bytes long
+            processor.setWriteCoalescing(30, 1, TimeUnit.HOURS);
+            ByteBuffer frames = ByteBuffer.allocate(100);
+
+            //Held back until flushed
+            processor.enqueueMessage(new IntRecord(1));
+            processor.enqueueMessage(new IntRecord(2));
+            assertTrue(processor.write(sender));
+            assertFalse(processor.hasPendingWrites());
+            assertTrue(processor.getFlushDelay() > 0);
+            assertEquals(0, receiver.read(frames));
+
+            processor.flush();
+            assertTrue(processor.hasPendingWrites());
+            assertTrue(processor.write(sender));
+            assertEquals(-1, processor.getFlushDelay());
+            readFully(receiver, frames.limit(20));
+
+            //Written once the threshold is reached
+            for (int i = 0; i < 3; i++) {
+                processor.enqueueMessage(new IntRecord(i));
+                assertTrue(processor.write(sender));
+                if (i < 2)
+                    assertEquals(0, receiver.read(frames.clear()));
+                else
+                    readFully(receiver, frames.clear().limit(30));
+            }
+
+            //Disabled coalescing writes everything right away
+            processor.setWriteCoalescing(0, 0, TimeUnit.MICROSECONDS);
+            processor.enqueueMessage(new IntRecord(3));
+            assertTrue(processor.write(sender));
+            readFully(receiver, frames.clear().limit(10));
+            assertThrows(IllegalArgumentException.class, () -> processor.setWriteCoalescing(-1, 0, TimeUnit.MICROSECONDS));
+        });
+    }
+
+    @Test
+    public void testDelayedWriteOnEventLoop() {
+        withClientAndServer((s, c) -> {
+            ((DefaultMessageProcessor) c.getMessageProcessor()).setWriteCoalescing(1 << 20, 50, TimeUnit.MILLISECONDS);
+            c.getMessageProcessor().registerRecord((short) 1, IntRecord.class);
+            s.getMessageProcessor().registerRecord((short) 1, IntRecord.class);
+
+            CountDownLatch latch = new CountDownLatch(10);
+            s.getMessageBus().listenAlways(IntRecord.class, (r) -> latch.countDown());
+
+            //Written by the timer, nothing else wakes up the loop
+            long start = System.nanoTime();
+            for (int i = 0; i < 10; i++)
+                c.getMessageProcessor().enqueueMessage(new IntRecord(i));
+            assertTrue(assertDoesNotThrow(() -> latch.await(5, TimeUnit.SECONDS)));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+            CountDownLatch flushLatch = new CountDownLatch(1);
+            s.getMessageBus().listenAlways(IntRecord.class, (r) -> flushLatch.countDown());
+            ((DefaultMessageProcessor) c.getMessageProcessor()).setWriteCoalescing(1 << 20, 1, TimeUnit.HOURS);
+            c.getMessageProcessor().enqueueMessage(new IntRecord(10));
+            c.getMessageProcessor().flush();
+            assertTrue(assertDoesNotThrow(() -> flushLatch.await(5, TimeUnit.SECONDS)));
+        });
+    }
+
+    @Test
+    public void testSocketOptions() {
+        try (Server s = new Server(); Client c = new Client()) {
+            s.setSocketOptions(new SocketOptions().setTcpNoDelay(true).setReceiveBufferSize(1 << 18));
+            c.setSocketOptions(new SocketOptions().setTcpNoDelay(true).setSendBufferSize(1 << 18));
+            s.bind(new InetSocketAddress(6969));
+            assertTrue(c.connect(new InetSocketAddress(6969)));
+            while (getClientFromServer(s) == null)
+                assertDoesNotThrow(() -> Thread.sleep(50));
+
+            SocketChannel clientChannel = c.socketChannel;
+            SocketChannel serverChannel = getClientFromServer(s).socketChannel;
+            assertNotNull(clientChannel);
+            assertNotNull(serverChannel);
+            assertDoesNotThrow(() -> {
+                assertTrue(clientChannel.getOption(StandardSocketOptions.TCP_NODELAY));
+                assertTrue(serverChannel.getOption(StandardSocketOptions.TCP_NODELAY));
+                //The operating system may round the sizes up
+                assertTrue(clientChannel.getOption(StandardSocketOptions.SO_SNDBUF) >= 1 << 18);
+                assertTrue(serverChannel.getOption(StandardSocketOptions.SO_RCVBUF) >= 1 << 18);
+            });
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new SocketOptions().setSendBufferSize(0));
+        assertThrows(IllegalArgumentException.class, () -> new SocketOptions().setReceiveBufferSize(-1));
+    }
+
+    public record IntRecord(int i) {
+    }
+}